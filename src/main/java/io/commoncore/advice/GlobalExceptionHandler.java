@@ -3,6 +3,7 @@ package io.commoncore.advice;
 import io.commoncore.dto.CustomResponse;
 import io.commoncore.exception.BaseNotFoundException;
 import io.commoncore.exception.BaseValidationException;
+import io.commoncore.exception.ConcurrencyLimitExceededException;
 import io.commoncore.exception.RateLimitExceededException;
 import jakarta.validation.ConstraintViolation;
 import jakarta.validation.ConstraintViolationException;
@@ -60,6 +61,22 @@ public class GlobalExceptionHandler {
                 .body(response);
     }
 
+    @ExceptionHandler(ConcurrencyLimitExceededException.class)
+    public ResponseEntity<CustomResponse<Map<String, Object>>> handleConcurrencyLimitExceededException(ConcurrencyLimitExceededException ex) {
+        HttpStatus status = HttpStatus.valueOf(ex.getStatusCode());
+        Map<String, Object> errorDetails = new HashMap<>();
+        errorDetails.put("timestamp", LocalDateTime.now());
+        errorDetails.put("error", status.getReasonPhrase());
+        errorDetails.put("message", ex.getMessage());
+        errorDetails.put("retryAfterSeconds", ex.getRetryAfterSeconds());
+        
+        CustomResponse<Map<String, Object>> response = CustomResponse.error(status.value(), ex.getMessage());
+        response.setData(errorDetails);
+        return ResponseEntity.status(status)
+                .header("Retry-After", String.valueOf(ex.getRetryAfterSeconds()))
+                .body(response);
+    }
+
     @ExceptionHandler(IllegalArgumentException.class)
     public ResponseEntity<CustomResponse<Map<String, Object>>> handleIllegalArgumentException(IllegalArgumentException ex) {
         Map<String, Object> errorDetails = new HashMap<>();
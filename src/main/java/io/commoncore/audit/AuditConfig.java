@@ -1,5 +1,6 @@
 package io.commoncore.audit;
 
+import io.commoncore.logging.LogThrottle;
 import lombok.RequiredArgsConstructor;
 import org.hibernate.event.service.spi.EventListenerRegistry;
 import org.hibernate.event.spi.EventType;
@@ -26,8 +27,8 @@ public class AuditConfig {
      */
     @Bean
     @ConditionalOnProperty(name = "commoncore.audit.enable-entity-interceptor", havingValue = "true", matchIfMissing = true)
-    public AuditInterceptor auditInterceptor(EntityManagerFactory entityManagerFactory) {
-        AuditInterceptor interceptor = new AuditInterceptor(auditService);
+    public AuditInterceptor auditInterceptor(EntityManagerFactory entityManagerFactory, LogThrottle logThrottle) {
+        AuditInterceptor interceptor = new AuditInterceptor(auditService, logThrottle);
         
         if (entityManagerFactory.unwrap(SessionFactoryImpl.class) != null) {
             SessionFactoryImpl sessionFactory = entityManagerFactory.unwrap(SessionFactoryImpl.class);
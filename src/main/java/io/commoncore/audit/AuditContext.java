@@ -1,5 +1,7 @@
 package io.commoncore.audit;
 
+import io.commoncore.security.ClientIpResolver;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 import org.springframework.web.context.request.RequestContextHolder;
@@ -13,12 +15,15 @@ import java.util.Optional;
  */
 @Slf4j
 @Component
+@RequiredArgsConstructor
 public class AuditContext {
 
     private static final ThreadLocal<String> currentUsername = new ThreadLocal<>();
     private static final ThreadLocal<String> currentUserId = new ThreadLocal<>();
     private static final ThreadLocal<String> currentIpAddress = new ThreadLocal<>();
 
+    private final ClientIpResolver clientIpResolver;
+
     /**
      * Get current username from context
      */
@@ -74,7 +79,7 @@ public class AuditContext {
                     (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
             if (attributes != null) {
                 HttpServletRequest request = attributes.getRequest();
-                return getClientIpAddress(request);
+                return clientIpResolver.resolveText(request);
             }
         } catch (Exception e) {
             log.debug("Could not get IP address from request: {}", e.getMessage());
@@ -112,30 +117,4 @@ public class AuditContext {
         currentUserId.remove();
         currentIpAddress.remove();
     }
-
-    /**
-     * Extract client IP address from request
-     */
-    private String getClientIpAddress(HttpServletRequest request) {
-        String ip = request.getHeader("X-Forwarded-For");
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("X-Real-IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("Proxy-Client-IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getHeader("WL-Proxy-Client-IP");
-        }
-        if (ip == null || ip.isEmpty() || "unknown".equalsIgnoreCase(ip)) {
-            ip = request.getRemoteAddr();
-        }
-        
-        // Handle multiple IPs (X-Forwarded-For can contain multiple IPs)
-        if (ip != null && ip.contains(",")) {
-            ip = ip.split(",")[0].trim();
-        }
-        
-        return ip;
-    }
 }
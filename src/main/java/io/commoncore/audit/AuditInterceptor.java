@@ -1,8 +1,10 @@
 package io.commoncore.audit;
 
+import io.commoncore.logging.LogThrottle;
 import jakarta.persistence.*;
 import lombok.extern.slf4j.Slf4j;
 import org.hibernate.event.spi.*;
+import org.slf4j.event.Level;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 
 import java.lang.reflect.Field;
@@ -18,9 +20,11 @@ import java.util.Map;
 public class AuditInterceptor implements PreInsertEventListener, PreUpdateEventListener, PreDeleteEventListener {
 
     private final AuditService auditService;
+    private final LogThrottle.Site auditFailureLog;
 
-    public AuditInterceptor(AuditService auditService) {
+    public AuditInterceptor(AuditService auditService, LogThrottle logThrottle) {
         this.auditService = auditService;
+        this.auditFailureLog = logThrottle.site(log, Level.ERROR, "Failed to audit {} for {}");
     }
 
     @Override
@@ -34,7 +38,7 @@ public class AuditInterceptor implements PreInsertEventListener, PreUpdateEventL
                 Map<String, Object> entityMap = entityToMap(entity);
                 auditService.log(AuditAction.CREATE, entityType, entityId, null, entityMap, null);
             } catch (Exception e) {
-                log.error("Failed to audit INSERT for {}: {}", entity.getClass().getSimpleName(), e.getMessage(), e);
+                logAuditFailure("INSERT", entity, e);
             }
         }
         return false; // Continue with the operation
@@ -54,7 +58,7 @@ public class AuditInterceptor implements PreInsertEventListener, PreUpdateEventL
                 
                 auditService.log(AuditAction.UPDATE, entityType, entityId, oldEntity, newEntityMap, null);
             } catch (Exception e) {
-                log.error("Failed to audit UPDATE for {}: {}", entity.getClass().getSimpleName(), e.getMessage(), e);
+                logAuditFailure("UPDATE", entity, e);
             }
         }
         return false; // Continue with the operation
@@ -71,12 +75,22 @@ public class AuditInterceptor implements PreInsertEventListener, PreUpdateEventL
                 Map<String, Object> entityMap = entityToMap(entity);
                 auditService.log(AuditAction.DELETE, entityType, entityId, entityMap, null, null);
             } catch (Exception e) {
-                log.error("Failed to audit DELETE for {}: {}", entity.getClass().getSimpleName(), e.getMessage(), e);
+                logAuditFailure("DELETE", entity, e);
             }
         }
         return false; // Continue with the operation
     }
 
+    /**
+     * Log a failed audit with its stack trace; repeated failures are throttled by {@link LogThrottle}
+     */
+    private void logAuditFailure(String operation, Object entity, Exception e) {
+        String entityName = entity.getClass().getSimpleName();
+        if (auditFailureLog.shouldLog(operation + " " + entityName + ": " + e.getClass().getSimpleName())) {
+            log.error("Failed to audit {} for {}: {}", operation, entityName, e.getMessage(), e);
+        }
+    }
+
     /**
      * Check if entity is auditable
      */
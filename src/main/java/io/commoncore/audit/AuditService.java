@@ -1,8 +1,9 @@
 package io.commoncore.audit;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
-import lombok.RequiredArgsConstructor;
+import io.commoncore.logging.LogThrottle;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
@@ -16,13 +17,21 @@ import java.util.Map;
  */
 @Slf4j
 @Service
-@RequiredArgsConstructor
 @ConditionalOnProperty(name = "commoncore.audit.enabled", havingValue = "true", matchIfMissing = false)
 public class AuditService {
 
     private final AuditLogRepository auditLogRepository;
     private final ObjectMapper objectMapper;
     private final AuditContext auditContext;
+    private final LogThrottle.Site auditFailureLog;
+
+    public AuditService(AuditLogRepository auditLogRepository, ObjectMapper objectMapper,
+                        AuditContext auditContext, LogThrottle logThrottle) {
+        this.auditLogRepository = auditLogRepository;
+        this.objectMapper = objectMapper;
+        this.auditContext = auditContext;
+        this.auditFailureLog = logThrottle.site(log, Level.ERROR, "Failed to create audit log for {} {}");
+    }
 
     /**
      * Log an audit event
@@ -56,7 +65,9 @@ public class AuditService {
                         auditContext.getCurrentUsername());
             }
         } catch (Exception e) {
-            log.error("Failed to create audit log for {} {}: {}", entityType, entityId, e.getMessage(), e);
+            if (auditFailureLog.shouldLog(entityType + ": " + e.getClass().getSimpleName())) {
+                log.error("Failed to create audit log for {} {}: {}", entityType, entityId, e.getMessage(), e);
+            }
             // Don't throw exception to avoid breaking the main operation
         }
     }
@@ -0,0 +1,44 @@
+package io.commoncore.binlog;
+
+import io.commoncore.config.CommonCoreProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Configuration for the binary request log
+ */
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "commoncore.logging.binary.enabled", havingValue = "true")
+public class BinaryLogConfig {
+
+    private final CommonCoreProperties properties;
+
+    /**
+     * Used by the logging and performance interceptors instead of JSON log lines
+     */
+    @Bean(destroyMethod = "close")
+    public BinaryLogWriter binaryLogWriter(MeterRegistry meterRegistry) throws IOException {
+        CommonCoreProperties.Logging.Binary config = properties.getLogging().getBinary();
+        BinaryLogWriter writer = new BinaryLogWriter(
+                Path.of(config.getDirectory()),
+                config.getSegmentSizeMb() * 1024L * 1024L,
+                config.getMaxSegments(),
+                config.getDictionarySize()
+        );
+
+        if (properties.getMonitoring().isEnableMetrics()) {
+            FunctionCounter.builder("logging.binary.dropped", writer, BinaryLogWriter::getDroppedCount)
+                    .description("Binary log records that could not be written")
+                    .register(meterRegistry);
+        }
+        return writer;
+    }
+}
@@ -0,0 +1,288 @@
+package io.commoncore.binlog;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import static io.commoncore.binlog.BinaryLogFormat.*;
+
+/**
+ * Reads binary log segments written by {@link BinaryLogWriter}.
+ * <p>
+ * Also a command line tool that prints segments as NDJSON, one object per record with
+ * the field names of the JSON request logs. It needs nothing but this class's package
+ * on the class path:
+ * <pre>
+ * java -cp commoncore.jar io.commoncore.binlog.BinaryLogDecoder logs/requests &gt; requests.ndjson
+ * </pre>
+ * Arguments are segment files or directories, whose segments are read oldest first.
+ * Segments still being written can be read; decoding stops at the last complete record.
+ */
+public final class BinaryLogDecoder {
+
+    private BinaryLogDecoder() {
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: java -cp commoncore.jar " + BinaryLogDecoder.class.getName()
+                    + " <segment file or directory>...");
+            System.exit(2);
+        }
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        StringBuilder line = new StringBuilder(512);
+        for (String arg : args) {
+            for (Path segment : listSegments(Paths.get(arg))) {
+                try {
+                    decode(segment, record -> {
+                        line.setLength(0);
+                        appendJson(record, line);
+                        try {
+                            out.append(line).append('\n');
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                    });
+                } catch (IOException e) {
+                    out.flush();
+                    System.err.println("Skipping the rest of " + segment + ": " + e.getMessage());
+                }
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Segment files in the order they were written
+     */
+    public static List<Path> listSegments(Path path) throws IOException {
+        if (!Files.isDirectory(path)) {
+            return List.of(path);
+        }
+        try (Stream<Path> files = Files.list(path)) {
+            return files.filter(BinaryLogWriter::isSegment).sorted().toList();
+        }
+    }
+
+    /**
+     * Decode every complete record of one segment
+     */
+    public static void decode(Path segment, Consumer<BinaryLogRecord> consumer) throws IOException {
+        MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(segment)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        decode(buffer, consumer);
+    }
+
+    static void decode(ByteBuffer buffer, Consumer<BinaryLogRecord> consumer) throws IOException {
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new IOException("Not a binary log segment");
+        }
+        byte[] magic = new byte[MAGIC.length];
+        buffer.get(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a binary log segment");
+        }
+        int version = buffer.get();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary log version " + version);
+        }
+        long timestamp = buffer.getLong();
+        List<String> dictionary = new ArrayList<>();
+
+        while (buffer.hasRemaining()) {
+            int recordStart = buffer.position();
+            BinaryLogRecord record;
+            try {
+                int length = (int) readVarint(buffer);
+                if (length == 0 || length > buffer.remaining()) {
+                    // End of the written part, or a record still being written
+                    return;
+                }
+                ByteBuffer payload = buffer.slice(buffer.position(), length);
+                buffer.position(buffer.position() + length);
+                try {
+                    record = decodeRecord(payload, timestamp, dictionary);
+                } catch (RuntimeException e) {
+                    throw new IOException("Corrupt record at offset " + recordStart + ": " + e.getMessage(), e);
+                }
+            } catch (BufferUnderflowException e) {
+                return;
+            }
+            timestamp = record.getTimestamp();
+            consumer.accept(record);
+        }
+    }
+
+    private static BinaryLogRecord decodeRecord(ByteBuffer payload, long previousTimestamp, List<String> dictionary) {
+        BinaryLogRecord record = new BinaryLogRecord();
+        record.setType(typeName(payload.get()));
+        int fields = (int) readVarint(payload);
+        record.setError((fields & ERROR) != 0);
+        record.setTimestamp(previousTimestamp + readZigZag(payload));
+
+        if ((fields & REQUEST_ID) != 0) {
+            record.setRequestId(readString(payload));
+        }
+        if ((fields & METHOD) != 0) {
+            record.setMethod(readDictionaryString(payload, dictionary));
+        }
+        if ((fields & URI) != 0) {
+            record.setUri(readDictionaryString(payload, dictionary));
+        }
+        if ((fields & QUERY_STRING) != 0) {
+            record.setQueryString(readString(payload));
+        }
+        if ((fields & REMOTE_ADDR) != 0) {
+            record.setRemoteAddr(readDictionaryString(payload, dictionary));
+        }
+        if ((fields & REMOTE_HOST) != 0) {
+            record.setRemoteHost(readDictionaryString(payload, dictionary));
+        }
+        if ((fields & USER_AGENT) != 0) {
+            record.setUserAgent(readDictionaryString(payload, dictionary));
+        }
+        if ((fields & STATUS) != 0) {
+            record.setStatus((int) readVarint(payload));
+        }
+        if ((fields & DURATION) != 0) {
+            record.setDuration(readVarint(payload));
+        }
+        if ((fields & HEADERS) != 0) {
+            int count = (int) readVarint(payload);
+            Map<String, String> headers = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                headers.put(readDictionaryString(payload, dictionary), readString(payload));
+            }
+            record.setHeaders(headers);
+        }
+        if ((fields & REQUEST_BODY) != 0) {
+            record.setRequestBody(readString(payload));
+        }
+        if ((fields & BODY) != 0) {
+            record.setBody(readString(payload));
+        }
+        if ((fields & ERROR_MESSAGE) != 0) {
+            record.setErrorMessage(readString(payload));
+        }
+        if ((fields & ERROR_TYPE) != 0) {
+            record.setErrorType(readDictionaryString(payload, dictionary));
+        }
+        if ((fields & MEMORY_USED) != 0) {
+            record.setMemoryUsed(readZigZag(payload));
+        }
+        if ((fields & CPU_TIME_USED) != 0) {
+            record.setCpuTimeUsed(readVarint(payload));
+        }
+        return record;
+    }
+
+    private static String readDictionaryString(ByteBuffer payload, List<String> dictionary) {
+        int tag = (int) readVarint(payload);
+        if (tag == STRING_PLAIN) {
+            return readString(payload);
+        }
+        if (tag == STRING_DEFINE) {
+            String value = readString(payload);
+            dictionary.add(value);
+            return value;
+        }
+        return dictionary.get(tag - STRING_REFERENCE);
+    }
+
+    /**
+     * One NDJSON line for a record, with the field names of the JSON request logs
+     */
+    static void appendJson(BinaryLogRecord record, StringBuilder json) {
+        json.append('{');
+        field(json, "timestamp", Instant.ofEpochMilli(record.getTimestamp()).toString(), true);
+        field(json, "level", record.isError() ? "ERROR" : "INFO", false);
+        field(json, "type", record.getType(), false);
+        field(json, "requestId", record.getRequestId(), false);
+        field(json, "method", record.getMethod(), false);
+        field(json, "uri", record.getUri(), false);
+        if (record.getStatus() != null) {
+            json.append(",\"status\":").append(record.getStatus());
+        }
+        if (record.getDuration() != null) {
+            json.append(",\"duration\":").append(record.getDuration()).append(",\"durationUnit\":\"ms\"");
+        }
+        field(json, "queryString", record.getQueryString(), false);
+        field(json, "remoteAddr", record.getRemoteAddr(), false);
+        field(json, "remoteHost", record.getRemoteHost(), false);
+        field(json, "userAgent", record.getUserAgent(), false);
+        if (record.getHeaders() != null) {
+            json.append(BinaryLogRecord.TYPE_REQUEST.equals(record.getType()) ? ",\"headers\":{" : ",\"responseHeaders\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> header : record.getHeaders().entrySet()) {
+                field(json, header.getKey(), header.getValue(), first);
+                first = false;
+            }
+            json.append('}');
+        }
+        field(json, "requestBody", record.getRequestBody(), false);
+        field(json, "body", record.getBody(), false);
+        field(json, "error", record.getErrorMessage(), false);
+        field(json, "errorType", record.getErrorType(), false);
+        if (record.getMemoryUsed() != null) {
+            json.append(",\"memoryUsed\":").append(record.getMemoryUsed()).append(",\"memoryUsedUnit\":\"bytes\"");
+        }
+        if (record.getCpuTimeUsed() != null) {
+            json.append(",\"cpuTimeUsed\":").append(record.getCpuTimeUsed()).append(",\"cpuTimeUsedUnit\":\"ns\"");
+        }
+        json.append('}');
+    }
+
+    private static void field(StringBuilder json, String name, String value, boolean first) {
+        if (value == null) {
+            return;
+        }
+        if (!first) {
+            json.append(',');
+        }
+        quote(json, name);
+        json.append(':');
+        quote(json, value);
+    }
+
+    private static void quote(StringBuilder json, String value) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"' -> json.append("\\\"");
+                case '\\' -> json.append("\\\\");
+                case '\n' -> json.append("\\n");
+                case '\r' -> json.append("\\r");
+                case '\t' -> json.append("\\t");
+                default -> {
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+                }
+            }
+        }
+        json.append('"');
+    }
+}
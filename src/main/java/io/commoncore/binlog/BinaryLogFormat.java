@@ -0,0 +1,113 @@
+package io.commoncore.binlog;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Layout of binary log segments, shared by {@link BinaryLogWriter} and {@link BinaryLogDecoder}.
+ * <p>
+ * A segment starts with the magic {@code CCBL}, a version byte and the segment start
+ * time as an 8-byte epoch millisecond value. Records follow, each a varint length and
+ * that many payload bytes; a zero length marks the end of the written part. A payload
+ * is the record type byte, a varint bit set of the fields present, the zigzag varint
+ * time since the previous record (or the segment start), then the present fields in
+ * bit order.
+ * <p>
+ * Numbers are varints. Strings are a varint UTF-8 length and the bytes. Strings that
+ * repeat, such as methods, URIs and user agents, go through a per-segment dictionary:
+ * a varint 0 is followed by a plain string, 1 by a string that becomes the next
+ * dictionary entry, and n &gt;= 2 refers to entry n - 2. Each segment can therefore be
+ * decoded on its own.
+ */
+final class BinaryLogFormat {
+
+    static final byte[] MAGIC = {'C', 'C', 'B', 'L'};
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = MAGIC.length + 1 + Long.BYTES;
+
+    static final String FILE_PREFIX = "requests-";
+    static final String FILE_SUFFIX = ".cblog";
+
+    static final int TYPE_REQUEST = 1;
+    static final int TYPE_RESPONSE = 2;
+    static final int TYPE_PERFORMANCE = 3;
+
+    static final int ERROR = 1;
+    static final int REQUEST_ID = 1 << 1;
+    static final int METHOD = 1 << 2;
+    static final int URI = 1 << 3;
+    static final int QUERY_STRING = 1 << 4;
+    static final int REMOTE_ADDR = 1 << 5;
+    static final int REMOTE_HOST = 1 << 6;
+    static final int USER_AGENT = 1 << 7;
+    static final int STATUS = 1 << 8;
+    static final int DURATION = 1 << 9;
+    static final int HEADERS = 1 << 10;
+    static final int REQUEST_BODY = 1 << 11;
+    static final int BODY = 1 << 12;
+    static final int ERROR_MESSAGE = 1 << 13;
+    static final int ERROR_TYPE = 1 << 14;
+    static final int MEMORY_USED = 1 << 15;
+    static final int CPU_TIME_USED = 1 << 16;
+
+    static final int STRING_PLAIN = 0;
+    static final int STRING_DEFINE = 1;
+    static final int STRING_REFERENCE = 2;
+
+    private BinaryLogFormat() {
+    }
+
+    static int typeCode(String type) {
+        if (BinaryLogRecord.TYPE_REQUEST.equals(type)) {
+            return TYPE_REQUEST;
+        }
+        if (BinaryLogRecord.TYPE_RESPONSE.equals(type)) {
+            return TYPE_RESPONSE;
+        }
+        if (BinaryLogRecord.TYPE_PERFORMANCE.equals(type)) {
+            return TYPE_PERFORMANCE;
+        }
+        throw new IllegalArgumentException("Unknown binary log record type: " + type);
+    }
+
+    static String typeName(int code) {
+        return switch (code) {
+            case TYPE_REQUEST -> BinaryLogRecord.TYPE_REQUEST;
+            case TYPE_RESPONSE -> BinaryLogRecord.TYPE_RESPONSE;
+            case TYPE_PERFORMANCE -> BinaryLogRecord.TYPE_PERFORMANCE;
+            default -> throw new IllegalArgumentException("Unknown binary log record type: " + code);
+        };
+    }
+
+    static int varintSize(long value) {
+        int size = 1;
+        while ((value & ~0x7FL) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    static long readVarint(ByteBuffer buffer) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    static long readZigZag(ByteBuffer buffer) {
+        long value = readVarint(buffer);
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    static String readString(ByteBuffer buffer) {
+        byte[] bytes = new byte[Math.toIntExact(readVarint(buffer))];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,45 @@
+package io.commoncore.binlog;
+
+import lombok.Data;
+
+import java.util.Map;
+
+/**
+ * One request, response or performance log entry as stored in a binary log segment.
+ * Fields that are null are not written.
+ */
+@Data
+public class BinaryLogRecord {
+
+    public static final String TYPE_REQUEST = "request";
+    public static final String TYPE_RESPONSE = "response";
+    public static final String TYPE_PERFORMANCE = "performance";
+
+    private String type;
+    private boolean error;
+    private long timestamp;
+    private String requestId;
+    private String method;
+    private String uri;
+    private String queryString;
+    private String remoteAddr;
+    private String remoteHost;
+    private String userAgent;
+    private Integer status;
+    private Long duration;
+    private Map<String, String> headers;
+    private String requestBody;
+    private String body;
+    private String errorMessage;
+    private String errorType;
+
+    /**
+     * Heap growth during the request in bytes (performance records)
+     */
+    private Long memoryUsed;
+
+    /**
+     * CPU time of the request thread in nanoseconds (performance records)
+     */
+    private Long cpuTimeUsed;
+}
@@ -0,0 +1,333 @@
+package io.commoncore.binlog;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static io.commoncore.binlog.BinaryLogFormat.*;
+
+/**
+ * Appends {@link BinaryLogRecord}s to rotating memory-mapped segment files, in the
+ * layout described by {@link BinaryLogFormat}.
+ * <p>
+ * A record is encoded into a reusable buffer and copied into the mapped segment; there
+ * is no appender, no JSON and no write system call per record. Segments are created
+ * sparse at their full size and filled in place. When one is full the next is started,
+ * and the oldest are deleted beyond {@code maxSegments}. Use {@link BinaryLogDecoder} to
+ * turn segments into NDJSON.
+ */
+@Slf4j
+public class BinaryLogWriter implements AutoCloseable {
+
+    private static final int MIN_SEGMENT_SIZE = 64 * 1024;
+
+    /**
+     * Longer strings are written in place instead of taking a dictionary entry
+     */
+    private static final int MAX_DICTIONARY_STRING_LENGTH = 256;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final int dictionarySize;
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private final Map<String, Integer> dictionary = new HashMap<>();
+    /**
+     * Dictionary entries defined by the record being encoded, dropped again if it is not written
+     */
+    private final List<String> pendingEntries = new ArrayList<>();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private byte[] buffer = new byte[1024];
+    private int length;
+    private MappedByteBuffer segment;
+    private long lastTimestamp;
+    private int segmentSequence;
+    private boolean closed;
+
+    /**
+     * @param segmentSize    size of one segment file in bytes
+     * @param maxSegments    segments kept in the directory, including those of earlier runs
+     * @param dictionarySize maximum number of dictionary strings per segment
+     */
+    public BinaryLogWriter(Path directory, long segmentSize, int maxSegments, int dictionarySize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = (int) Math.min(Integer.MAX_VALUE, Math.max(MIN_SEGMENT_SIZE, segmentSize));
+        this.maxSegments = Math.max(1, maxSegments);
+        this.dictionarySize = Math.max(0, dictionarySize);
+
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(BinaryLogWriter::isSegment).sorted().forEach(segments::addLast);
+        }
+        openSegment();
+    }
+
+    /**
+     * Append one record; a record that cannot be written is counted as dropped
+     */
+    public synchronized void append(BinaryLogRecord record) {
+        if (closed) {
+            droppedCount.incrementAndGet();
+            return;
+        }
+        try {
+            encode(record);
+            if (!fits()) {
+                openSegment();
+                encode(record);
+                if (!fits()) {
+                    dropPending();
+                    droppedCount.incrementAndGet();
+                    return;
+                }
+            }
+            int position = segment.position();
+            int lengthSize = varintSize(length);
+            segment.position(position + lengthSize);
+            segment.put(buffer, 0, length);
+            // Length last, so a reader never sees a length before its record is complete
+            for (int i = 0, value = length; i < lengthSize; i++, value >>>= 7) {
+                segment.put(position + i, (byte) (i < lengthSize - 1 ? (value & 0x7F) | 0x80 : value));
+            }
+            pendingEntries.clear();
+            lastTimestamp = record.getTimestamp();
+        } catch (IOException | RuntimeException e) {
+            dropPending();
+            droppedCount.incrementAndGet();
+            log.warn("Failed to write binary log record: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Records that could not be written
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Flush the current segment to disk; later records are dropped
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (segment != null) {
+            segment.force();
+        }
+    }
+
+    private boolean fits() {
+        return segment.remaining() >= varintSize(length) + length;
+    }
+
+    private void openSegment() throws IOException {
+        long now = System.currentTimeMillis();
+        Path path = directory.resolve(String.format("%s%013d-%06d%s", FILE_PREFIX, now, segmentSequence++ % 1_000_000, FILE_SUFFIX));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Mapping past the end grows the file sparse; pages are only allocated when written
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+        segment.put(MAGIC).put(VERSION).putLong(now);
+        lastTimestamp = now;
+        dictionary.clear();
+        pendingEntries.clear();
+
+        segments.addLast(path);
+        while (segments.size() > maxSegments) {
+            Files.deleteIfExists(segments.removeFirst());
+        }
+    }
+
+    private void encode(BinaryLogRecord record) {
+        dropPending();
+        length = 0;
+        int fields = fields(record);
+        writeByte(typeCode(record.getType()));
+        writeVarint(fields);
+        long delta = record.getTimestamp() - lastTimestamp;
+        writeVarint((delta << 1) ^ (delta >> 63));
+
+        if ((fields & REQUEST_ID) != 0) {
+            writeString(record.getRequestId());
+        }
+        if ((fields & METHOD) != 0) {
+            writeDictionaryString(record.getMethod());
+        }
+        if ((fields & URI) != 0) {
+            writeDictionaryString(record.getUri());
+        }
+        if ((fields & QUERY_STRING) != 0) {
+            writeString(record.getQueryString());
+        }
+        if ((fields & REMOTE_ADDR) != 0) {
+            writeDictionaryString(record.getRemoteAddr());
+        }
+        if ((fields & REMOTE_HOST) != 0) {
+            writeDictionaryString(record.getRemoteHost());
+        }
+        if ((fields & USER_AGENT) != 0) {
+            writeDictionaryString(record.getUserAgent());
+        }
+        if ((fields & STATUS) != 0) {
+            writeVarint(record.getStatus());
+        }
+        if ((fields & DURATION) != 0) {
+            writeVarint(record.getDuration());
+        }
+        if ((fields & HEADERS) != 0) {
+            writeVarint(record.getHeaders().size());
+            for (Map.Entry<String, String> header : record.getHeaders().entrySet()) {
+                writeDictionaryString(header.getKey());
+                writeString(header.getValue() != null ? header.getValue() : "");
+            }
+        }
+        if ((fields & REQUEST_BODY) != 0) {
+            writeString(record.getRequestBody());
+        }
+        if ((fields & BODY) != 0) {
+            writeString(record.getBody());
+        }
+        if ((fields & ERROR_MESSAGE) != 0) {
+            writeString(record.getErrorMessage());
+        }
+        if ((fields & ERROR_TYPE) != 0) {
+            writeDictionaryString(record.getErrorType());
+        }
+        if ((fields & MEMORY_USED) != 0) {
+            long memoryUsed = record.getMemoryUsed();
+            writeVarint((memoryUsed << 1) ^ (memoryUsed >> 63));
+        }
+        if ((fields & CPU_TIME_USED) != 0) {
+            writeVarint(record.getCpuTimeUsed());
+        }
+    }
+
+    private static int fields(BinaryLogRecord record) {
+        int fields = record.isError() ? ERROR : 0;
+        fields |= record.getRequestId() != null ? REQUEST_ID : 0;
+        fields |= record.getMethod() != null ? METHOD : 0;
+        fields |= record.getUri() != null ? URI : 0;
+        fields |= record.getQueryString() != null ? QUERY_STRING : 0;
+        fields |= record.getRemoteAddr() != null ? REMOTE_ADDR : 0;
+        fields |= record.getRemoteHost() != null ? REMOTE_HOST : 0;
+        fields |= record.getUserAgent() != null ? USER_AGENT : 0;
+        fields |= record.getStatus() != null ? STATUS : 0;
+        fields |= record.getDuration() != null ? DURATION : 0;
+        fields |= record.getHeaders() != null ? HEADERS : 0;
+        fields |= record.getRequestBody() != null ? REQUEST_BODY : 0;
+        fields |= record.getBody() != null ? BODY : 0;
+        fields |= record.getErrorMessage() != null ? ERROR_MESSAGE : 0;
+        fields |= record.getErrorType() != null ? ERROR_TYPE : 0;
+        fields |= record.getMemoryUsed() != null ? MEMORY_USED : 0;
+        fields |= record.getCpuTimeUsed() != null ? CPU_TIME_USED : 0;
+        return fields;
+    }
+
+    private void writeDictionaryString(String value) {
+        Integer entry = dictionary.get(value);
+        if (entry != null) {
+            writeVarint(STRING_REFERENCE + entry);
+        } else if (dictionary.size() < dictionarySize && value.length() <= MAX_DICTIONARY_STRING_LENGTH) {
+            dictionary.put(value, dictionary.size());
+            pendingEntries.add(value);
+            writeVarint(STRING_DEFINE);
+            writeString(value);
+        } else {
+            writeVarint(STRING_PLAIN);
+            writeString(value);
+        }
+    }
+
+    private void dropPending() {
+        for (String entry : pendingEntries) {
+            dictionary.remove(entry);
+        }
+        pendingEntries.clear();
+    }
+
+    private void writeByte(int value) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) value;
+    }
+
+    private void writeVarint(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            buffer[length++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        buffer[length++] = (byte) value;
+    }
+
+    /**
+     * UTF-8 encode straight into the buffer; unpaired surrogates become '?' like in
+     * {@link String#getBytes}
+     */
+    private void writeString(String value) {
+        int utf8Length = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else {
+                utf8Length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        writeVarint(utf8Length);
+        ensureCapacity(utf8Length);
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                buffer[length++] = (byte) c;
+            } else if (c < 0x800) {
+                buffer[length++] = (byte) (0xC0 | (c >> 6));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length()
+                    && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                buffer[length++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[length++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[length++] = '?';
+            } else {
+                buffer[length++] = (byte) (0xE0 | (c >> 12));
+                buffer[length++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[length++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+
+    static boolean isSegment(Path path) {
+        String name = path.getFileName().toString();
+        return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+    }
+}
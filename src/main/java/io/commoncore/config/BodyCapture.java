@@ -0,0 +1,86 @@
+package io.commoncore.config;
+
+import java.util.Arrays;
+
+/**
+ * The first bytes of one request or response body, copied into a pooled buffer as
+ * they pass through; everything past the buffer is only counted.
+ */
+final class BodyCapture {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final BodyCaptureBufferPool pool;
+    private byte[] buffer;
+    private int length;
+    private long total;
+    private boolean released;
+
+    BodyCapture(BodyCaptureBufferPool pool) {
+        this.pool = pool;
+    }
+
+    void write(int b) {
+        total++;
+        if (reserve()) {
+            buffer[length++] = (byte) b;
+        }
+    }
+
+    void write(byte[] bytes, int offset, int count) {
+        total += count;
+        if (count > 0 && reserve()) {
+            int copied = Math.min(count, buffer.length - length);
+            System.arraycopy(bytes, offset, buffer, length, copied);
+            length += copied;
+        }
+    }
+
+    /**
+     * Count bytes that pass through without capturing them
+     */
+    void skip(int count) {
+        total += count;
+    }
+
+    /**
+     * Bytes that passed through, captured or not
+     */
+    long getTotal() {
+        return total;
+    }
+
+    /**
+     * Copy of the captured bytes
+     */
+    byte[] toByteArray() {
+        return buffer != null ? Arrays.copyOf(buffer, length) : EMPTY;
+    }
+
+    void reset() {
+        length = 0;
+        total = 0;
+    }
+
+    /**
+     * Give the buffer back to the pool; nothing is captured afterwards
+     */
+    void release() {
+        released = true;
+        if (buffer != null) {
+            pool.release(buffer);
+            buffer = null;
+            length = 0;
+        }
+    }
+
+    private boolean reserve() {
+        if (buffer == null) {
+            if (released) {
+                return false;
+            }
+            buffer = pool.acquire();
+        }
+        return length < buffer.length;
+    }
+}
@@ -0,0 +1,38 @@
+package io.commoncore.config;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * Pool of fixed-size byte arrays the body capture wrappers copy the start of a body
+ * into. Buffers are taken on the first captured byte and given back when the request
+ * completes, so body logging does not allocate a capture buffer per request.
+ * Buffers beyond the pool's capacity are left to the garbage collector.
+ */
+class BodyCaptureBufferPool {
+
+    /**
+     * Upper bound on the memory the pool keeps for reuse
+     */
+    private static final int MAX_POOLED_BYTES = 4 * 1024 * 1024;
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]> buffers;
+
+    BodyCaptureBufferPool(int bufferSize) {
+        this.bufferSize = Math.max(1, bufferSize);
+        this.buffers = new ArrayBlockingQueue<>(Math.max(1, MAX_POOLED_BYTES / this.bufferSize));
+    }
+
+    int getBufferSize() {
+        return bufferSize;
+    }
+
+    byte[] acquire() {
+        byte[] buffer = buffers.poll();
+        return buffer != null ? buffer : new byte[bufferSize];
+    }
+
+    void release(byte[] buffer) {
+        buffers.offer(buffer);
+    }
+}
@@ -0,0 +1,131 @@
+package io.commoncore.config;
+
+import io.commoncore.interceptor.BodyLogSampler;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.util.WebUtils;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Filter to wrap request/response for body logging.
+ * <p>
+ * Bodies stream straight through; only their first {@code max-body-size} bytes are
+ * copied into pooled buffers, and only for loggable content types. The capture keeps
+ * one byte more than is logged, so the log can show that a body was truncated.
+ * Requests the {@link BodyLogSampler} rules out are not captured at all.
+ * <p>
+ * Async requests keep the wrappers of their initial dispatch: the response writer is
+ * flushed at the end of the async dispatch and the buffers go back to the pool once
+ * the request completes.
+ */
+@Component
+@ConditionalOnExpression("${commoncore.logging.log-request-body:false} or ${commoncore.logging.log-response-body:false}")
+public class BodyCaptureFilter extends OncePerRequestFilter {
+
+    private final CommonCoreProperties properties;
+    private final BodyLogSampler bodyLogSampler;
+    private final BodyCaptureBufferPool bufferPool;
+
+    public BodyCaptureFilter(CommonCoreProperties properties, BodyLogSampler bodyLogSampler) {
+        this.properties = properties;
+        this.bodyLogSampler = bodyLogSampler;
+        this.bufferPool = new BodyCaptureBufferPool(properties.getLogging().getMaxBodySize() + 1);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+
+        if (isAsyncDispatch(request)) {
+            // The wrappers of the initial dispatch, if any, are released when the request completes
+            BodyCaptureResponseWrapper wrappedResponse =
+                    WebUtils.getNativeResponse(response, BodyCaptureResponseWrapper.class);
+            try {
+                chain.doFilter(request, response);
+            } finally {
+                if (wrappedResponse != null && !request.isAsyncStarted()) {
+                    wrappedResponse.flushWriter();
+                }
+            }
+            return;
+        }
+
+        CommonCoreProperties.Logging logging = properties.getLogging();
+        boolean capture = bodyLogSampler.startCapture(request);
+        BodyCaptureRequestWrapper wrappedRequest = null;
+        if (capture && logging.isLogRequestBody()
+                && isLoggable(request.getContentType(), logging.getLoggableContentTypes())) {
+            wrappedRequest = new BodyCaptureRequestWrapper(request, bufferPool);
+        }
+        // The response is always wrapped so its size is known, but only captured if logged
+        BodyCaptureResponseWrapper wrappedResponse = new BodyCaptureResponseWrapper(response, bufferPool,
+                capture && logging.isLogResponseBody() ? logging.getLoggableContentTypes() : List.of());
+
+        HttpServletRequest filteredRequest = wrappedRequest != null ? wrappedRequest : request;
+        try {
+            chain.doFilter(filteredRequest, wrappedResponse);
+        } finally {
+            if (filteredRequest.isAsyncStarted()) {
+                filteredRequest.getAsyncContext().addListener(new BufferReleasingListener(wrappedRequest, wrappedResponse));
+            } else {
+                wrappedResponse.flushWriter();
+                release(wrappedRequest, wrappedResponse);
+            }
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    private static void release(BodyCaptureRequestWrapper wrappedRequest, BodyCaptureResponseWrapper wrappedResponse) {
+        wrappedResponse.release();
+        if (wrappedRequest != null) {
+            wrappedRequest.release();
+        }
+    }
+
+    private static boolean isLoggable(String contentType, List<String> loggableContentTypes) {
+        return contentType != null && loggableContentTypes.stream().anyMatch(contentType::contains);
+    }
+
+    private static final class BufferReleasingListener implements AsyncListener {
+        private final BodyCaptureRequestWrapper wrappedRequest;
+        private final BodyCaptureResponseWrapper wrappedResponse;
+
+        private BufferReleasingListener(BodyCaptureRequestWrapper wrappedRequest,
+                                        BodyCaptureResponseWrapper wrappedResponse) {
+            this.wrappedRequest = wrappedRequest;
+            this.wrappedResponse = wrappedResponse;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release(wrappedRequest, wrappedResponse);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Listeners are dropped when an async dispatch starts async processing again
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
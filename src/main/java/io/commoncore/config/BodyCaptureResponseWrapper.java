@@ -0,0 +1,165 @@
+package io.commoncore.config;
+
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Response wrapper that writes the body straight through to the client and keeps a
+ * copy of its first bytes on the way. Unlike Spring's {@code ContentCachingResponseWrapper}
+ * nothing is held back, so streaming and time to first byte are unaffected.
+ * <p>
+ * Whether the body is captured is decided on its first byte, from the content type
+ * set by then; bodies of other content types are only counted.
+ */
+public class BodyCaptureResponseWrapper extends HttpServletResponseWrapper {
+
+    private final BodyCapture capture;
+    private final List<String> captureContentTypes;
+    private boolean captureDecided;
+    private boolean capturing;
+    private ServletOutputStream outputStream;
+    private PrintWriter writer;
+
+    /**
+     * @param captureContentTypes content types whose body is captured; empty to only count
+     */
+    BodyCaptureResponseWrapper(HttpServletResponse response, BodyCaptureBufferPool pool,
+                               List<String> captureContentTypes) {
+        super(response);
+        this.capture = new BodyCapture(pool);
+        this.captureContentTypes = captureContentTypes;
+    }
+
+    @Override
+    public ServletOutputStream getOutputStream() throws IOException {
+        if (outputStream == null) {
+            outputStream = new CapturingOutputStream(super.getOutputStream());
+        }
+        return outputStream;
+    }
+
+    @Override
+    public PrintWriter getWriter() throws IOException {
+        if (writer == null) {
+            writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+        }
+        return writer;
+    }
+
+    @Override
+    public void flushBuffer() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        super.flushBuffer();
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        capture.reset();
+        captureDecided = false;
+    }
+
+    @Override
+    public void resetBuffer() {
+        super.resetBuffer();
+        capture.reset();
+        captureDecided = false;
+    }
+
+    /**
+     * The captured start of the body, empty if its content type is not captured
+     */
+    public byte[] getContentAsByteArray() {
+        return capture.toByteArray();
+    }
+
+    /**
+     * Number of body bytes written so far, captured or not
+     */
+    public long getContentSize() {
+        return capture.getTotal();
+    }
+
+    /**
+     * Push what the application wrote through {@link #getWriter()} to the client
+     */
+    void flushWriter() {
+        if (writer != null) {
+            writer.flush();
+        }
+    }
+
+    void release() {
+        capture.release();
+    }
+
+    /**
+     * Whether the body is captured or only counted; no buffer is taken for a counted body
+     */
+    private boolean isCapturing() {
+        if (!captureDecided) {
+            captureDecided = true;
+            String contentType = getContentType();
+            capturing = contentType != null && captureContentTypes.stream().anyMatch(contentType::contains);
+        }
+        return capturing;
+    }
+
+    private final class CapturingOutputStream extends ServletOutputStream {
+
+        private final ServletOutputStream delegate;
+
+        private CapturingOutputStream(ServletOutputStream delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            delegate.write(b);
+            if (isCapturing()) {
+                capture.write(b);
+            } else {
+                capture.skip(1);
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            delegate.write(bytes, offset, length);
+            if (isCapturing()) {
+                capture.write(bytes, offset, length);
+            } else {
+                capture.skip(length);
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            delegate.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isReady() {
+            return delegate.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            delegate.setWriteListener(writeListener);
+        }
+    }
+}
@@ -1,9 +1,10 @@
 package io.commoncore.config;
 
-import io.commoncore.interceptor.AdvancedLoggingInterceptor;
-import io.commoncore.interceptor.LoggingInterceptor;
-import io.commoncore.interceptor.PerformanceMonitoringInterceptor;
+import io.commoncore.interceptor.ConcurrencyLimitingInterceptor;
+import io.commoncore.interceptor.ObservationInterceptor;
 import io.commoncore.interceptor.RateLimitingInterceptor;
+import io.commoncore.interceptor.UsageMeteringInterceptor;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.boot.autoconfigure.AutoConfiguration;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -21,21 +22,21 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 @ComponentScan(basePackages = "io.commoncore")
 public class CommonCoreAutoConfiguration implements WebMvcConfigurer {
 
-    private final LoggingInterceptor loggingInterceptor;
     private final RateLimitingInterceptor rateLimitingInterceptor;
-    private final AdvancedLoggingInterceptor advancedLoggingInterceptor;
-    private final PerformanceMonitoringInterceptor performanceMonitoringInterceptor;
+    private final ConcurrencyLimitingInterceptor concurrencyLimitingInterceptor;
+    private final ObservationInterceptor observationInterceptor;
+    private final ObjectProvider<UsageMeteringInterceptor> usageMeteringInterceptor;
     private final CommonCoreProperties properties;
 
-    public CommonCoreAutoConfiguration(LoggingInterceptor loggingInterceptor,
-                                      RateLimitingInterceptor rateLimitingInterceptor,
-                                      AdvancedLoggingInterceptor advancedLoggingInterceptor,
-                                      PerformanceMonitoringInterceptor performanceMonitoringInterceptor,
+    public CommonCoreAutoConfiguration(RateLimitingInterceptor rateLimitingInterceptor,
+                                      ConcurrencyLimitingInterceptor concurrencyLimitingInterceptor,
+                                      ObservationInterceptor observationInterceptor,
+                                      ObjectProvider<UsageMeteringInterceptor> usageMeteringInterceptor,
                                       CommonCoreProperties properties) {
-        this.loggingInterceptor = loggingInterceptor;
         this.rateLimitingInterceptor = rateLimitingInterceptor;
-        this.advancedLoggingInterceptor = advancedLoggingInterceptor;
-        this.performanceMonitoringInterceptor = performanceMonitoringInterceptor;
+        this.concurrencyLimitingInterceptor = concurrencyLimitingInterceptor;
+        this.observationInterceptor = observationInterceptor;
+        this.usageMeteringInterceptor = usageMeteringInterceptor;
         this.properties = properties;
     }
 
@@ -50,8 +51,14 @@ public class CommonCoreAutoConfiguration implements WebMvcConfigurer {
                 rateLimitRegistration.addPathPatterns(
                     properties.getRateLimit().getIncludePatterns().toArray(new String[0])
                 );
+
+                // Policy paths must reach the interceptor even when outside the include patterns
+                properties.getRateLimit().getPolicies().stream()
+                    .map(CommonCoreProperties.RateLimit.Policy::getPathPattern)
+                    .filter(pattern -> pattern != null && !pattern.isEmpty())
+                    .forEach(rateLimitRegistration::addPathPatterns);
             }
-            
+
             // Exclude patterns
             if (!properties.getRateLimit().getExcludePatterns().isEmpty()) {
                 rateLimitRegistration.excludePathPatterns(
@@ -60,60 +67,55 @@ public class CommonCoreAutoConfiguration implements WebMvcConfigurer {
             }
         }
 
-        // Advanced Logging Interceptor (if enabled)
-        if (properties.getLogging().isStructuredLogging() || 
-            properties.getLogging().isLogRequestBody() || 
-            properties.getLogging().isLogResponseBody()) {
-            var advancedLoggingRegistration = registry.addInterceptor(advancedLoggingInterceptor);
-            
-            // Include patterns
-            if (!properties.getInterceptor().getIncludePatterns().isEmpty()) {
-                advancedLoggingRegistration.addPathPatterns(
-                    properties.getInterceptor().getIncludePatterns().toArray(new String[0])
+        // Adaptive Concurrency Limiting Interceptor (after rate limiting, so rejected requests take no slot)
+        if (properties.getRateLimit().getAdaptive().isEnabled()) {
+            var concurrencyRegistration = registry.addInterceptor(concurrencyLimitingInterceptor);
+
+            if (!properties.getRateLimit().getIncludePatterns().isEmpty()) {
+                concurrencyRegistration.addPathPatterns(
+                    properties.getRateLimit().getIncludePatterns().toArray(new String[0])
                 );
             }
-            
-            // Exclude patterns
-            if (!properties.getInterceptor().getExcludePatterns().isEmpty()) {
-                advancedLoggingRegistration.excludePathPatterns(
-                    properties.getInterceptor().getExcludePatterns().toArray(new String[0])
+
+            if (!properties.getRateLimit().getExcludePatterns().isEmpty()) {
+                concurrencyRegistration.excludePathPatterns(
+                    properties.getRateLimit().getExcludePatterns().toArray(new String[0])
+                );
+            }
+        }
+
+        // Usage Metering Interceptor (after rate limiting, so rejected requests are not billed)
+        UsageMeteringInterceptor usageInterceptor = usageMeteringInterceptor.getIfAvailable();
+        if (usageInterceptor != null) {
+            var usageRegistration = registry.addInterceptor(usageInterceptor);
+
+            if (!properties.getUsage().getIncludePatterns().isEmpty()) {
+                usageRegistration.addPathPatterns(
+                    properties.getUsage().getIncludePatterns().toArray(new String[0])
                 );
             }
-        } else {
-            // Standard Logging Interceptor
-            if (properties.getInterceptor().isEnabled()) {
-                var loggingRegistration = registry.addInterceptor(loggingInterceptor);
-                
-                // Include patterns
-                if (!properties.getInterceptor().getIncludePatterns().isEmpty()) {
-                    loggingRegistration.addPathPatterns(
-                        properties.getInterceptor().getIncludePatterns().toArray(new String[0])
-                    );
-                }
-                
-                // Exclude patterns
-                if (!properties.getInterceptor().getExcludePatterns().isEmpty()) {
-                    loggingRegistration.excludePathPatterns(
-                        properties.getInterceptor().getExcludePatterns().toArray(new String[0])
-                    );
-                }
+
+            if (!properties.getUsage().getExcludePatterns().isEmpty()) {
+                usageRegistration.excludePathPatterns(
+                    properties.getUsage().getExcludePatterns().toArray(new String[0])
+                );
             }
         }
 
-        // Performance Monitoring Interceptor
-        if (properties.getMonitoring().isEnabled()) {
-            var performanceRegistration = registry.addInterceptor(performanceMonitoringInterceptor);
-            
+        // Observation Interceptor: logging (advanced or simple), performance metrics and slow request detection in one pass
+        if (ObservationInterceptor.isEnabled(properties)) {
+            var observationRegistration = registry.addInterceptor(observationInterceptor);
+
             // Include patterns
             if (!properties.getInterceptor().getIncludePatterns().isEmpty()) {
-                performanceRegistration.addPathPatterns(
+                observationRegistration.addPathPatterns(
                     properties.getInterceptor().getIncludePatterns().toArray(new String[0])
                 );
             }
-            
+
             // Exclude patterns
             if (!properties.getInterceptor().getExcludePatterns().isEmpty()) {
-                performanceRegistration.excludePathPatterns(
+                observationRegistration.excludePathPatterns(
                     properties.getInterceptor().getExcludePatterns().toArray(new String[0])
                 );
             }
@@ -1,5 +1,9 @@
 package io.commoncore.config;
 
+import io.commoncore.interceptor.LogOverflowPolicy;
+import io.commoncore.ratelimit.ConcurrencyLimitAlgorithm;
+import io.commoncore.ratelimit.RateLimitAlgorithm;
+import io.commoncore.ratelimit.RateLimitKeySource;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
@@ -13,11 +17,13 @@ public class CommonCoreProperties {
 
     private Interceptor interceptor = new Interceptor();
     private RateLimit rateLimit = new RateLimit();
+    private ClientIp clientIp = new ClientIp();
     private Security security = new Security();
     private Actuator actuator = new Actuator();
     private HttpClient httpClient = new HttpClient();
     private Pagination pagination = new Pagination();
     private Audit audit = new Audit();
+    private Usage usage = new Usage();
     private Logging logging = new Logging();
     private Monitoring monitoring = new Monitoring();
 
@@ -62,6 +68,29 @@ public class CommonCoreProperties {
          */
         private long windowSizeInSeconds = 60;
 
+        /**
+         * Further windows enforced together with the one above, e.g. 600 per minute and 50000 per day
+         * on top of 20 per second; all windows are checked and charged in one atomic step (memory store only)
+         * Default: empty
+         */
+        private List<Limit> additionalLimits = new ArrayList<>();
+
+        /**
+         * Rate limiting algorithm
+         * TOKEN_BUCKET: bucket is refilled once per window
+         * GCRA: smooth refill, no burst at window boundaries
+         * Default: TOKEN_BUCKET
+         */
+        private RateLimitAlgorithm algorithm = RateLimitAlgorithm.TOKEN_BUCKET;
+
+        /**
+         * Where rate limits are enforced
+         * INTERCEPTOR: Spring MVC interceptor, after the security filter chain
+         * FILTER: servlet filter ahead of Spring Security, rejected requests skip authentication
+         * Default: INTERCEPTOR
+         */
+        private Mode mode = Mode.INTERCEPTOR;
+
         /**
          * Apply rate limit per IP address
          * If false, applies globally
@@ -69,6 +98,40 @@ public class CommonCoreProperties {
          */
         private boolean perIp = true;
 
+        /**
+         * Leading IPv4 bits that make up an IP rate limit key (e.g. 24 = one bucket per /24)
+         * Default: 32 (one bucket per address)
+         */
+        private int ipv4PrefixLength = 32;
+
+        /**
+         * Leading IPv6 bits that make up an IP rate limit key (e.g. 64 = one bucket per /64)
+         * Default: 128 (one bucket per address)
+         */
+        private int ipv6PrefixLength = 128;
+
+        /**
+         * Request body bytes that cost one extra permit, based on Content-Length (0 = body size is free)
+         * e.g. 1048576 charges a 10 MB upload 10 permits on top of its base cost
+         * Default: 0
+         */
+        private long bytesPerPermit = 0;
+
+        /**
+         * Delay requests over the limit by up to this many milliseconds until their permits
+         * are available, instead of rejecting them (0 = reject right away)
+         * Suited to internal service-to-service traffic where a 429 only causes retries
+         * Default: 0
+         */
+        private long maxDelayMs = 0;
+
+        /**
+         * Requests one client (rate limit key) may have in flight at the same time, so a few
+         * clients with slow requests cannot hold every server thread (0 = no cap)
+         * Default: 0
+         */
+        private int maxConcurrentRequests = 0;
+
         /**
          * Path patterns to include for rate limiting
          * Default: /api/**
@@ -80,6 +143,340 @@ public class CommonCoreProperties {
          * Default: empty
          */
         private List<String> excludePatterns = new ArrayList<>();
+
+        /**
+         * Route specific policies, checked in declaration order
+         * Requests matching no policy use max-requests / window-size-in-seconds above
+         * Default: empty
+         */
+        private List<Policy> policies = new ArrayList<>();
+
+        private Store store = new Store();
+
+        private Adaptive adaptive = new Adaptive();
+
+        private Telemetry telemetry = new Telemetry();
+
+        public enum Mode {
+            INTERCEPTOR,
+            FILTER
+        }
+
+        @Data
+        public static class Limit {
+            /**
+             * Maximum number of requests allowed in this window
+             */
+            private int maxRequests;
+
+            /**
+             * Window size in seconds
+             */
+            private long windowSizeInSeconds;
+        }
+
+        @Data
+        public static class Policy {
+            /**
+             * Policy name, used in rate limit keys and logs
+             * Default: policy-{index}
+             */
+            private String name;
+
+            /**
+             * Ant-style path pattern (e.g. /api/reports/**, /api/search/*)
+             */
+            private String pathPattern;
+
+            /**
+             * HTTP method (empty = any method)
+             * Default: empty
+             */
+            private String method;
+
+            /**
+             * What requests are counted by: IP, PRINCIPAL, API_KEY, HEADER or GLOBAL
+             * Default: IP
+             */
+            private RateLimitKeySource keySource = RateLimitKeySource.IP;
+
+            /**
+             * Header to read the key from when key-source is HEADER
+             */
+            private String headerName;
+
+            /**
+             * Maximum number of requests allowed
+             * Default: 100
+             */
+            private int maxRequests = 100;
+
+            /**
+             * Time window in seconds
+             * Default: 60 (1 minute)
+             */
+            private long windowSizeInSeconds = 60;
+
+            /**
+             * Further windows enforced together with the one above (memory store only)
+             * Default: empty
+             */
+            private List<Limit> additionalLimits = new ArrayList<>();
+
+            /**
+             * Permits charged per request (e.g. 10 for an expensive export)
+             * A @RateLimitCost annotation on the handler takes precedence
+             * Default: 1
+             */
+            private int cost = 1;
+
+            /**
+             * Longest delay before requests over the limit are rejected (empty = same as commoncore.rate-limit.max-delay-ms)
+             * Default: empty
+             */
+            private Long maxDelayMs;
+
+            /**
+             * Requests one key may have in flight at once (empty = same as commoncore.rate-limit.max-concurrent-requests)
+             * Default: empty
+             */
+            private Integer maxConcurrentRequests;
+
+            /**
+             * Algorithm for this policy (empty = same as commoncore.rate-limit.algorithm)
+             * Default: empty
+             */
+            private RateLimitAlgorithm algorithm;
+        }
+
+        @Data
+        public static class Store {
+            /**
+             * Where rate limit state is kept
+             * MEMORY: per application instance
+             * OFF_HEAP: per application instance, fixed size table outside the Java heap (sized by max-keys)
+             * REDIS: shared by all instances through a Redis protocol server
+             * Default: MEMORY
+             */
+            private Type type = Type.MEMORY;
+
+            /**
+             * Hard cap on the number of tracked rate limit keys (0 = unbounded)
+             * At the cap, each new key evicts one of the oldest keys (MEMORY) or, if no slot of its
+             * probe sequence is free or idle, the one closest to being full again (OFF_HEAP)
+             * Default: 1000000
+             */
+            private int maxKeys = 1_000_000;
+
+            /**
+             * Seconds a full (unused) bucket is kept before it expires (0 = never expire)
+             * Default: 300 (5 minutes)
+             */
+            private long idleTimeoutSeconds = 300;
+
+            /**
+             * Permits leased from the shared store at once (REDIS only)
+             * Larger leases mean fewer round trips but coarser fleet-wide enforcement
+             * Default: 10
+             */
+            private int leaseSize = 10;
+
+            /**
+             * Unused leased permits are returned to the shared store after this time (REDIS only)
+             * Default: 1000 (1 second)
+             */
+            private long leaseTtlMs = 1000;
+
+            private Redis redis = new Redis();
+
+            private Snapshot snapshot = new Snapshot();
+
+            public enum Type {
+                MEMORY,
+                OFF_HEAP,
+                REDIS
+            }
+
+            @Data
+            public static class Redis {
+                /**
+                 * Redis host
+                 * Default: localhost
+                 */
+                private String host = "localhost";
+
+                /**
+                 * Redis port
+                 * Default: 6379
+                 */
+                private int port = 6379;
+
+                /**
+                 * Redis password (empty = no AUTH)
+                 * Default: empty
+                 */
+                private String password;
+
+                /**
+                 * Connect/read timeout in milliseconds
+                 * Default: 100
+                 */
+                private int timeoutMs = 100;
+
+                /**
+                 * Maximum number of pooled connections
+                 * Default: 8
+                 */
+                private int poolSize = 8;
+
+                /**
+                 * After a failed call the server is left alone this long (doubling while it stays down)
+                 * and limits are enforced per instance meanwhile
+                 * Default: 1000 (1 second)
+                 */
+                private long retryIntervalMs = 1000;
+
+                /**
+                 * Prefix for rate limit counter keys
+                 * Default: commoncore:ratelimit:
+                 */
+                private String keyPrefix = "commoncore:ratelimit:";
+            }
+
+            @Data
+            public static class Snapshot {
+                /**
+                 * Save buckets on shutdown and restore them on startup (MEMORY only)
+                 * Default: false
+                 */
+                private boolean enabled = false;
+
+                /**
+                 * Snapshot file
+                 * Default: {java.io.tmpdir}/commoncore-ratelimit.snapshot
+                 */
+                private String path = System.getProperty("java.io.tmpdir") + "/commoncore-ratelimit.snapshot";
+
+                /**
+                 * Seconds between periodic snapshots (0 = only on shutdown)
+                 * Default: 60
+                 */
+                private long intervalSeconds = 60;
+            }
+        }
+
+        @Data
+        public static class Adaptive {
+            /**
+             * Limit requests in flight by measured latency, in addition to the rate limits above
+             * Default: false
+             */
+            private boolean enabled = false;
+
+            /**
+             * How the in-flight limit reacts to latency: GRADIENT or AIMD
+             * Default: GRADIENT
+             */
+            private ConcurrencyLimitAlgorithm algorithm = ConcurrencyLimitAlgorithm.GRADIENT;
+
+            /**
+             * In-flight limit used until latency samples arrive
+             * Default: 20
+             */
+            private int initialLimit = 20;
+
+            /**
+             * Lower bound of the in-flight limit
+             * Default: 1
+             */
+            private int minLimit = 1;
+
+            /**
+             * Upper bound of the in-flight limit (keep below the server thread pool size)
+             * Default: 200
+             */
+            private int maxLimit = 200;
+
+            /**
+             * AIMD: requests slower than this count as failures
+             * Default: 5000 (5 seconds)
+             */
+            private long timeoutMs = 5000;
+
+            /**
+             * AIMD: factor applied to the limit on failures
+             * Default: 0.9
+             */
+            private double backoffRatio = 0.9;
+
+            /**
+             * GRADIENT: how much slower than the long term average a request may be before the limit shrinks
+             * Default: 1.5
+             */
+            private double tolerance = 1.5;
+
+            /**
+             * GRADIENT: weight of each new limit estimate
+             * Default: 0.2
+             */
+            private double smoothing = 0.2;
+
+            /**
+             * Status returned when the limit is reached: 503 or 429
+             * Default: 503
+             */
+            private int rejectStatus = 503;
+
+            /**
+             * Retry-After value sent with rejected requests
+             * Default: 1
+             */
+            private long retryAfterSeconds = 1;
+        }
+
+        @Data
+        public static class Telemetry {
+            /**
+             * Track the keys sending the most requests and collecting the most rejections
+             * Default: true
+             */
+            private boolean heavyHitters = true;
+
+            /**
+             * Number of keys listed by the ratelimit actuator endpoint
+             * Default: 20
+             */
+            private int topN = 20;
+
+            /**
+             * Counters per sketch row; larger values over-count less (memory: 4 x 8 bytes each)
+             * Default: 2048
+             */
+            private int sketchWidth = 2048;
+
+            /**
+             * Seconds after which the tracked counts are halved, so old bursts fade out
+             * Default: 60
+             */
+            private long decaySeconds = 60;
+        }
+    }
+
+    @Data
+    public static class ClientIp {
+        /**
+         * Proxies (CIDR or single address) whose forwarding headers are trusted
+         * Headers from any other peer are ignored and the connection address is used
+         * Default: loopback and private networks
+         */
+        private List<String> trustedProxies = new ArrayList<>(List.of(
+                "127.0.0.0/8", "10.0.0.0/8", "172.16.0.0/12", "192.168.0.0/16", "::1", "fc00::/7"));
+
+        /**
+         * Header listing the client and proxy addresses, appended to by each proxy
+         * Default: X-Forwarded-For
+         */
+        private String forwardedHeader = "X-Forwarded-For";
     }
 
     @Data
@@ -305,6 +702,68 @@ public class CommonCoreProperties {
          * Default: 1000 (1 second)
          */
         private long retryDelayMs = 1000;
+
+        /**
+         * Outbound rate limits per target host
+         */
+        private RateLimit rateLimit = new RateLimit();
+
+        @Data
+        public static class RateLimit {
+            /**
+             * Enable/disable outbound rate limiting
+             * Default: false
+             */
+            private boolean enabled = false;
+
+            /**
+             * Requests allowed per window to any host without its own entry in hosts, 0 for no limit
+             * Default: 0
+             */
+            private int maxRequestsPerHost = 0;
+
+            /**
+             * Window size in seconds for max-requests-per-host
+             * Default: 1
+             */
+            private long windowSizeInSeconds = 1;
+
+            /**
+             * Algorithm pacing outbound calls; GCRA spaces them evenly over the window
+             * Default: GCRA
+             */
+            private RateLimitAlgorithm algorithm = RateLimitAlgorithm.GCRA;
+
+            /**
+             * Longest time a call waits for a permit before it fails, in milliseconds
+             * Default: 30000 (30 seconds)
+             */
+            private long maxWaitMs = 30000;
+
+            /**
+             * Limits for individual hosts
+             */
+            private List<Host> hosts = new ArrayList<>();
+
+            @Data
+            public static class Host {
+                /**
+                 * Host name as it appears in the request URL, e.g. api.partner.com
+                 */
+                private String host;
+
+                /**
+                 * Requests allowed per window to this host
+                 */
+                private int maxRequests;
+
+                /**
+                 * Window size in seconds
+                 * Default: 1
+                 */
+                private long windowSizeInSeconds = 1;
+            }
+        }
     }
 
     @Data
@@ -379,6 +838,45 @@ public class CommonCoreProperties {
         private int retentionDays = 90;
     }
 
+    @Data
+    public static class Usage {
+        /**
+         * Enable/disable API usage metering
+         * Default: false
+         */
+        private boolean enabled = false;
+
+        /**
+         * Length of the period one usage row covers, in seconds
+         * Default: 3600 (hourly rows)
+         */
+        private long periodSeconds = 3600;
+
+        /**
+         * How often counted usage is written to the database, in seconds
+         * Default: 60
+         */
+        private long flushIntervalSeconds = 60;
+
+        /**
+         * JDBC batch size of a flush
+         * Default: 500
+         */
+        private int batchSize = 500;
+
+        /**
+         * Path patterns to meter
+         * Default: /api/**
+         */
+        private List<String> includePatterns = new ArrayList<>(List.of("/api/**"));
+
+        /**
+         * Path patterns not to meter
+         * Default: empty
+         */
+        private List<String> excludePatterns = new ArrayList<>();
+    }
+
     @Data
     public static class Logging {
         /**
@@ -432,6 +930,192 @@ public class CommonCoreProperties {
         private List<String> loggableContentTypes = new ArrayList<>(List.of(
                 "application/json", "application/xml"
         ));
+
+        /**
+         * Asynchronous writing of structured logs
+         */
+        private Async async = new Async();
+
+        /**
+         * Which requests get their bodies logged when body logging is on
+         */
+        private Sampling sampling = new Sampling();
+
+        /**
+         * Request IDs in the MDC, response headers and outbound calls
+         */
+        private RequestId requestId = new RequestId();
+
+        /**
+         * Binary request log segments instead of JSON log lines
+         */
+        private Binary binary = new Binary();
+
+        /**
+         * Suppression of repeated per-request warnings logged by CommonCore itself
+         */
+        private Throttle throttle = new Throttle();
+
+        @Data
+        public static class Async {
+            /**
+             * Serialize and write structured logs on a background thread instead of the request thread
+             * Default: true
+             */
+            private boolean enabled = true;
+
+            /**
+             * Number of log events the buffer holds, rounded up to a power of two
+             * Default: 8192
+             */
+            private int bufferSize = 8192;
+
+            /**
+             * What a request does when the buffer is full: DROP the log event or BLOCK until there is room
+             * Default: DROP
+             */
+            private LogOverflowPolicy overflowPolicy = LogOverflowPolicy.DROP;
+
+            /**
+             * Maximum number of events written before the writer releases their slots
+             * Default: 256
+             */
+            private int batchSize = 256;
+        }
+
+        @Data
+        public static class Sampling {
+            /**
+             * Fraction of requests whose bodies are logged, between 0.0 and 1.0
+             * Default: 1.0 (every request)
+             */
+            private double rate = 1.0;
+
+            /**
+             * Always log bodies of requests that fail with a 5xx status or an exception
+             * Default: true
+             */
+            private boolean alwaysOnError = true;
+
+            /**
+             * Always log bodies of requests slower than commoncore.monitoring.slow-query-threshold
+             * Default: true
+             */
+            private boolean alwaysOnSlow = true;
+
+            /**
+             * Per-route sampling rates; the first matching route wins over the base rate
+             * Default: empty
+             */
+            private List<Route> routes = new ArrayList<>();
+
+            @Data
+            public static class Route {
+                /**
+                 * Ant-style path pattern (e.g. /api/payments/**)
+                 */
+                private String pathPattern;
+
+                /**
+                 * HTTP method (empty = any method)
+                 * Default: empty
+                 */
+                private String method;
+
+                /**
+                 * Fraction of matching requests whose bodies are logged, between 0.0 and 1.0
+                 */
+                private double rate;
+            }
+        }
+
+        @Data
+        public static class RequestId {
+            /**
+             * Assign every request an ID and put it in the MDC as "requestId"
+             * Default: true
+             */
+            private boolean enabled = true;
+
+            /**
+             * Header the ID is read from, returned in and sent to other services with
+             * Default: X-Request-Id
+             */
+            private String headerName = "X-Request-Id";
+
+            /**
+             * Keep a well-formed ID sent by the client instead of generating one
+             * Default: true
+             */
+            private boolean acceptIncoming = true;
+
+            /**
+             * Add the current request ID to HttpClientService calls
+             * Default: true
+             */
+            private boolean propagate = true;
+        }
+
+        @Data
+        public static class Binary {
+            /**
+             * Write structured request, response and performance logs to memory-mapped binary segments
+             * Read them with io.commoncore.binlog.BinaryLogDecoder
+             * Default: false
+             */
+            private boolean enabled = false;
+
+            /**
+             * Directory the segment files are written to
+             * Default: logs/requests
+             */
+            private String directory = "logs/requests";
+
+            /**
+             * Size of one segment file in megabytes
+             * Default: 64
+             */
+            private int segmentSizeMb = 64;
+
+            /**
+             * Number of segment files kept; the oldest are deleted
+             * Default: 32
+             */
+            private int maxSegments = 32;
+
+            /**
+             * Maximum number of repeated strings (methods, URIs, user agents, header names) stored once per segment
+             * Default: 4096
+             */
+            private int dictionarySize = 4096;
+        }
+
+        @Data
+        public static class Throttle {
+            /**
+             * Throttle repeated messages such as rate limit rejections, slow requests and audit failures
+             * Default: true
+             */
+            private boolean enabled = true;
+
+            /**
+             * Messages one log site writes per interval before the rest are only counted
+             * Default: 10
+             */
+            private int maxPerInterval = 10;
+
+            /**
+             * Length of an interval; suppressed messages are reported in one summary line at its end
+             * Default: 10
+             */
+            private long intervalSeconds = 10;
+
+            /**
+             * Distinct sample keys (e.g. client keys, URIs) listed in a summary line
+             * Default: 5
+             */
+            private int sampleKeys = 5;
+        }
     }
 
     @Data
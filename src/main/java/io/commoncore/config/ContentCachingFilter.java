@@ -1,48 +0,0 @@
-package io.commoncore.config;
-
-import jakarta.servlet.Filter;
-import jakarta.servlet.FilterChain;
-import jakarta.servlet.ServletException;
-import jakarta.servlet.ServletRequest;
-import jakarta.servlet.ServletResponse;
-import jakarta.servlet.http.HttpServletRequest;
-import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
-import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
-import org.springframework.stereotype.Component;
-import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
-
-import java.io.IOException;
-
-/**
- * Filter to wrap request/response for body logging
- */
-@Component
-@RequiredArgsConstructor
-@ConditionalOnProperty(name = "commoncore.logging.log-request-body", havingValue = "true", matchIfMissing = false)
-public class ContentCachingFilter implements Filter {
-
-    @Override
-    public void doFilter(ServletRequest request, ServletResponse response, FilterChain chain)
-            throws IOException, ServletException {
-        
-        if (request instanceof HttpServletRequest && response instanceof HttpServletResponse) {
-            HttpServletRequest httpRequest = (HttpServletRequest) request;
-            HttpServletResponse httpResponse = (HttpServletResponse) response;
-
-            // Wrap request and response for body caching
-            ContentCachingRequestWrapper wrappedRequest = new ContentCachingRequestWrapper(httpRequest);
-            ContentCachingResponseWrapper wrappedResponse = new ContentCachingResponseWrapper(httpResponse);
-
-            try {
-                chain.doFilter(wrappedRequest, wrappedResponse);
-            } finally {
-                // Copy response body back to original response
-                wrappedResponse.copyBodyToResponse();
-            }
-        } else {
-            chain.doFilter(request, response);
-        }
-    }
-}
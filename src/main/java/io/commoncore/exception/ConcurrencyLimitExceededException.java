@@ -0,0 +1,19 @@
+package io.commoncore.exception;
+
+/**
+ * Thrown when too many requests are already in flight.
+ * Carries the status to answer with (503 or 429).
+ */
+public class ConcurrencyLimitExceededException extends RateLimitExceededException {
+
+    private final int statusCode;
+
+    public ConcurrencyLimitExceededException(String message, long retryAfterSeconds, int statusCode) {
+        super(message, retryAfterSeconds);
+        this.statusCode = statusCode;
+    }
+
+    public int getStatusCode() {
+        return statusCode;
+    }
+}
@@ -2,6 +2,10 @@ package io.commoncore.httpclient;
 
 import io.commoncore.config.CommonCoreProperties;
 import io.commoncore.exception.BaseValidationException;
+import io.commoncore.ratelimit.BlockingRateLimiter;
+import io.commoncore.ratelimit.RateLimitRule;
+import io.commoncore.ratelimit.RateLimiterFactory;
+import io.commoncore.requestid.RequestIdContext;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
@@ -12,11 +16,17 @@ import org.springframework.web.client.HttpServerErrorException;
 import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestTemplate;
 
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 /**
  * HTTP Client Service for making HTTP requests to external services
- * Supports GET, POST, PUT, DELETE methods with automatic error handling and logging
+ * Supports GET, POST, PUT, DELETE methods with automatic error handling and logging.
+ * With commoncore.http-client.rate-limit enabled, calls wait for a permit of their
+ * target host, so upstream quotas are kept instead of answered with 429s.
  */
 @Slf4j
 @Service
@@ -25,11 +35,34 @@ public class HttpClientService {
 
     private final RestTemplate restTemplate;
     private final CommonCoreProperties.HttpClient config;
+    private final CommonCoreProperties.Logging.RequestId requestIdConfig;
+    private final Map<String, BlockingRateLimiter> hostRateLimiters = new HashMap<>();
+    private final BlockingRateLimiter defaultHostRateLimiter;
 
     @Autowired
-    public HttpClientService(RestTemplate restTemplate, CommonCoreProperties properties) {
+    public HttpClientService(RestTemplate restTemplate, CommonCoreProperties properties,
+                             RateLimiterFactory rateLimiterFactory) {
         this.restTemplate = restTemplate;
         this.config = properties.getHttpClient();
+        this.requestIdConfig = properties.getLogging().getRequestId();
+
+        CommonCoreProperties.HttpClient.RateLimit rateLimit = config.getRateLimit();
+        BlockingRateLimiter defaultLimiter = null;
+        if (rateLimit.isEnabled()) {
+            for (CommonCoreProperties.HttpClient.RateLimit.Host host : rateLimit.getHosts()) {
+                if (host.getHost() == null || host.getHost().isEmpty()) {
+                    throw new IllegalStateException("commoncore.http-client.rate-limit.hosts entries need a host");
+                }
+                RateLimitRule rule = new RateLimitRule(host.getMaxRequests(), host.getWindowSizeInSeconds(), rateLimit.getAlgorithm());
+                hostRateLimiters.put(host.getHost().toLowerCase(Locale.ROOT), rateLimiterFactory.create("outbound", rule));
+                log.info("Outbound rate limit for {}: {}", host.getHost(), rule);
+            }
+            if (rateLimit.getMaxRequestsPerHost() > 0) {
+                defaultLimiter = rateLimiterFactory.create("outbound", new RateLimitRule(
+                        rateLimit.getMaxRequestsPerHost(), rateLimit.getWindowSizeInSeconds(), rateLimit.getAlgorithm()));
+            }
+        }
+        this.defaultHostRateLimiter = defaultLimiter;
     }
 
     /**
@@ -103,8 +136,11 @@ public class HttpClientService {
                                  Map<String, String> pathVariables) {
         int attempts = 0;
         Exception lastException = null;
+        String host = config.getRateLimit().isEnabled() ? getHost(buildUrl(url, pathVariables)) : null;
 
         while (attempts <= (config.isEnableRetry() ? config.getMaxRetryAttempts() : 0)) {
+            // Every attempt, retries included, counts against the host's quota
+            awaitPermit(host, method, url);
             try {
                 return executeRequestInternal(method, url, requestBody, responseType, headers, pathVariables);
             } catch (Exception e) {
@@ -131,6 +167,44 @@ public class HttpClientService {
         return null; // This will never be reached, but needed for compilation
     }
 
+    /**
+     * Wait for an outbound permit of the target host, if it has a limit
+     */
+    private void awaitPermit(String host, HttpMethod method, String url) {
+        if (host == null) {
+            return;
+        }
+        BlockingRateLimiter rateLimiter = hostRateLimiters.getOrDefault(host, defaultHostRateLimiter);
+        if (rateLimiter == null) {
+            return;
+        }
+        long maxWaitMs = config.getRateLimit().getMaxWaitMs();
+        try {
+            if (!rateLimiter.tryAcquire(host, 1, maxWaitMs, TimeUnit.MILLISECONDS)) {
+                log.warn("Outbound rate limit for {} exceeded, no permit within {}ms: {} {}", host, maxWaitMs, method, url);
+                throw new RuntimeException(
+                        String.format("Outbound rate limit exceeded: %s %s - no permit within %dms", method, url, maxWaitMs)
+                );
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Request interrupted", e);
+        }
+    }
+
+    /**
+     * Lower-case host of the URL, or null if it has none
+     */
+    private static String getHost(String url) {
+        try {
+            String host = URI.create(url).getHost();
+            return host != null ? host.toLowerCase(Locale.ROOT) : null;
+        } catch (IllegalArgumentException e) {
+            // Unexpanded URI template variables; RestTemplate expands those itself
+            return null;
+        }
+    }
+
     /**
      * Execute HTTP request internally
      */
@@ -198,6 +272,13 @@ public class HttpClientService {
             headers.putAll(customHeaders);
         }
 
+        // Propagate the current request ID unless the caller set one
+        String requestId = RequestIdContext.current();
+        if (requestId != null && requestIdConfig.isEnabled() && requestIdConfig.isPropagate()
+                && !headers.containsKey(requestIdConfig.getHeaderName())) {
+            headers.set(requestIdConfig.getHeaderName(), requestId);
+        }
+
         return headers;
     }
 
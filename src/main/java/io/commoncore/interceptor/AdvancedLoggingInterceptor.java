@@ -1,50 +1,107 @@
 package io.commoncore.interceptor;
 
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.commoncore.binlog.BinaryLogRecord;
+import io.commoncore.binlog.BinaryLogWriter;
+import io.commoncore.config.BodyCaptureRequestWrapper;
+import io.commoncore.config.BodyCaptureResponseWrapper;
 import io.commoncore.config.CommonCoreProperties;
+import io.commoncore.requestid.RequestIdContext;
+import io.commoncore.requestid.RequestIdGenerator;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.stereotype.Component;
-import org.springframework.util.StreamUtils;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
-import org.springframework.web.util.ContentCachingRequestWrapper;
-import org.springframework.web.util.ContentCachingResponseWrapper;
+import org.springframework.web.util.WebUtils;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.StringWriter;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
-import java.util.stream.Collectors;
 
 /**
  * Advanced logging interceptor with request/response body logging,
- * header logging, and sensitive data masking
+ * header logging, and sensitive data masking.
+ * <p>
+ * Structured logs are written asynchronously by default: the request thread only
+ * copies the request data into a preallocated event of an {@link AsyncLogPipeline};
+ * masking, JSON serialization and the appender run on the log writer thread.
+ * <p>
+ * With {@code commoncore.logging.binary.enabled=true} the events go to a
+ * {@link BinaryLogWriter} instead of the JSON log lines.
+ * <p>
+ * Registered through {@link ObservationInterceptor}, which calls {@link #onRequest}
+ * and {@link #onCompletion} with the request's shared start time.
  */
 @Component
 @Slf4j
-@RequiredArgsConstructor
-public class AdvancedLoggingInterceptor implements HandlerInterceptor {
+public class AdvancedLoggingInterceptor implements HandlerInterceptor, DisposableBean {
 
     private final CommonCoreProperties properties;
     private final ObjectMapper objectMapper;
     private final SensitiveDataMasker sensitiveDataMasker;
+    private final BodyLogSampler bodyLogSampler;
+    private final AsyncLogPipeline pipeline;
+    private final BinaryLogWriter binaryLogWriter;
 
-    @Override
-    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
-        long startTime = System.currentTimeMillis();
-        request.setAttribute("startTime", startTime);
-        request.setAttribute("requestId", UUID.randomUUID().toString());
+    public AdvancedLoggingInterceptor(CommonCoreProperties properties, ObjectMapper objectMapper,
+                                      SensitiveDataMasker sensitiveDataMasker, BodyLogSampler bodyLogSampler,
+                                      ObjectProvider<BinaryLogWriter> binaryLogWriter, MeterRegistry meterRegistry) {
+        this.properties = properties;
+        this.objectMapper = objectMapper;
+        this.sensitiveDataMasker = sensitiveDataMasker;
+        this.bodyLogSampler = bodyLogSampler;
+        this.binaryLogWriter = binaryLogWriter.getIfAvailable();
 
-        if (properties.getLogging().isStructuredLogging()) {
-            logStructuredRequest(request);
+        CommonCoreProperties.Logging.Async config = properties.getLogging().getAsync();
+        if (properties.getLogging().isStructuredLogging() && config.isEnabled()) {
+            // Only the writer thread uses this buffer
+            StringWriter buffer = new StringWriter(1024);
+            this.pipeline = new AsyncLogPipeline("commoncore-log-writer", config.getBufferSize(),
+                    config.getOverflowPolicy(), config.getBatchSize(), event -> writeEvent(event, buffer));
+
+            if (properties.getMonitoring().isEnableMetrics()) {
+                Gauge.builder("logging.async.queue.depth", pipeline, AsyncLogPipeline::getQueueDepth)
+                        .description("Structured log events waiting to be written")
+                        .register(meterRegistry);
+                Gauge.builder("logging.async.queue.capacity", pipeline, AsyncLogPipeline::getCapacity)
+                        .description("Size of the structured log buffer")
+                        .register(meterRegistry);
+                FunctionCounter.builder("logging.async.dropped", pipeline, AsyncLogPipeline::getDroppedCount)
+                        .description("Structured log events dropped because the buffer was full")
+                        .register(meterRegistry);
+            }
         } else {
-            logSimpleRequest(request);
+            this.pipeline = null;
+        }
+    }
+
+    /**
+     * Write the structured log events still in the buffer
+     */
+    @Override
+    public void destroy() {
+        if (pipeline != null) {
+            pipeline.close();
         }
+    }
 
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        long startTime = System.currentTimeMillis();
+        request.setAttribute("startTime", startTime);
+        onRequest(request);
         return true;
     }
 
@@ -57,9 +114,30 @@ public class AdvancedLoggingInterceptor implements HandlerInterceptor {
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
         long startTime = (Long) request.getAttribute("startTime");
-        long endTime = System.currentTimeMillis();
-        long executeTime = endTime - startTime;
-        String requestId = (String) request.getAttribute("requestId");
+        onCompletion(request, response, System.currentTimeMillis() - startTime, ex);
+    }
+
+    /**
+     * Log the incoming request; called by {@link ObservationInterceptor}
+     */
+    void onRequest(HttpServletRequest request) {
+        // Normally assigned by RequestIdFilter already
+        if (request.getAttribute(RequestIdContext.REQUEST_ATTRIBUTE) == null) {
+            request.setAttribute(RequestIdContext.REQUEST_ATTRIBUTE, RequestIdGenerator.next());
+        }
+
+        if (properties.getLogging().isStructuredLogging()) {
+            logStructuredRequest(request);
+        } else {
+            logSimpleRequest(request);
+        }
+    }
+
+    /**
+     * Log the completed request; called by {@link ObservationInterceptor}
+     */
+    void onCompletion(HttpServletRequest request, HttpServletResponse response, long executeTime, Exception ex) {
+        String requestId = (String) request.getAttribute(RequestIdContext.REQUEST_ATTRIBUTE);
 
         if (properties.getLogging().isStructuredLogging()) {
             logStructuredResponse(request, response, executeTime, requestId, ex);
@@ -78,34 +156,26 @@ public class AdvancedLoggingInterceptor implements HandlerInterceptor {
     }
 
     private void logStructuredRequest(HttpServletRequest request) {
-        Map<String, Object> logData = new HashMap<>();
-        logData.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME));
-        logData.put("level", "INFO");
-        logData.put("type", "request");
-        logData.put("requestId", request.getAttribute("requestId"));
-        logData.put("method", request.getMethod());
-        logData.put("uri", request.getRequestURI());
-        logData.put("queryString", request.getQueryString());
-        logData.put("remoteAddr", request.getRemoteAddr());
-        logData.put("remoteHost", request.getRemoteHost());
-        logData.put("userAgent", request.getHeader("User-Agent"));
-
-        if (properties.getLogging().isLogHeaders()) {
-            logData.put("headers", getHeaders(request));
+        StructuredLogEvent event = claimEvent();
+        if (event == null) {
+            return;
         }
+        try {
+            event.timestamp = System.currentTimeMillis();
+            event.requestId = (String) request.getAttribute(RequestIdContext.REQUEST_ATTRIBUTE);
+            event.method = request.getMethod();
+            event.uri = request.getRequestURI();
+            event.queryString = request.getQueryString();
+            event.remoteAddr = request.getRemoteAddr();
+            event.remoteHost = request.getRemoteHost();
+            event.userAgent = request.getHeader("User-Agent");
 
-        if (properties.getLogging().isLogRequestBody()) {
-            String body = getRequestBody(request);
-            if (body != null && !body.isEmpty()) {
-                logData.put("body", sensitiveDataMasker.maskSensitiveData(body));
+            if (properties.getLogging().isLogHeaders()) {
+                event.headers = getHeaders(request);
             }
-        }
-
-        try {
-            log.info(objectMapper.writeValueAsString(logData));
-        } catch (Exception e) {
-            log.warn("Failed to serialize log data to JSON: {}", e.getMessage());
-            logSimpleRequest(request);
+            event.type = "request";
+        } finally {
+            publishEvent(event);
         }
     }
 
@@ -121,43 +191,209 @@ public class AdvancedLoggingInterceptor implements HandlerInterceptor {
 
     private void logStructuredResponse(HttpServletRequest request, HttpServletResponse response, 
                                        long executeTime, String requestId, Exception ex) {
-        Map<String, Object> logData = new HashMap<>();
-        logData.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME));
-        logData.put("level", ex != null ? "ERROR" : "INFO");
-        logData.put("type", "response");
-        logData.put("requestId", requestId);
-        logData.put("method", request.getMethod());
-        logData.put("uri", request.getRequestURI());
-        logData.put("status", response.getStatus());
-        logData.put("duration", executeTime);
-        logData.put("durationUnit", "ms");
-
-        if (properties.getLogging().isLogHeaders()) {
-            logData.put("responseHeaders", getResponseHeaders(response));
+        StructuredLogEvent event = claimEvent();
+        if (event == null) {
+            return;
         }
+        try {
+            event.timestamp = System.currentTimeMillis();
+            event.error = ex != null;
+            event.requestId = requestId;
+            event.method = request.getMethod();
+            event.uri = request.getRequestURI();
+            event.status = response.getStatus();
+            event.duration = executeTime;
+
+            if (properties.getLogging().isLogHeaders()) {
+                event.headers = getResponseHeaders(response);
+            }
+
+            if (bodyLogSampler.shouldLogBody(request, event.status, executeTime, ex)) {
+                BodyCaptureRequestWrapper capturedRequest =
+                        WebUtils.getNativeRequest(request, BodyCaptureRequestWrapper.class);
+                if (properties.getLogging().isLogRequestBody() && capturedRequest != null) {
+                    event.requestBody = getLoggableBody(capturedRequest.getContentAsByteArray(), request.getContentType());
+                }
+                BodyCaptureResponseWrapper capturedResponse =
+                        WebUtils.getNativeResponse(response, BodyCaptureResponseWrapper.class);
+                if (properties.getLogging().isLogResponseBody() && capturedResponse != null) {
+                    event.body = getLoggableBody(capturedResponse.getContentAsByteArray(), response.getContentType());
+                }
+            }
 
-        if (properties.getLogging().isLogResponseBody()) {
-            String body = getResponseBody(response);
-            if (body != null && !body.isEmpty()) {
-                logData.put("body", sensitiveDataMasker.maskSensitiveData(body));
+            if (ex != null) {
+                event.errorMessage = ex.getMessage();
+                event.errorType = ex.getClass().getName();
             }
+            event.type = "response";
+        } finally {
+            publishEvent(event);
         }
+    }
 
-        if (ex != null) {
-            logData.put("error", ex.getMessage());
-            logData.put("errorType", ex.getClass().getName());
+    /**
+     * Event to fill on the request thread: a buffer slot, or a fresh event written
+     * right away when asynchronous logging is off
+     *
+     * @return null if the buffer is full and the event is dropped
+     */
+    private StructuredLogEvent claimEvent() {
+        return pipeline != null ? pipeline.claim() : new StructuredLogEvent();
+    }
+
+    private void publishEvent(StructuredLogEvent event) {
+        if (pipeline != null) {
+            pipeline.publish(event);
+        } else {
+            writeEvent(event, new StringWriter(1024));
         }
+    }
 
-        try {
-            if (ex != null) {
-                log.error(objectMapper.writeValueAsString(logData));
+    /**
+     * Hand a performance record to the binary log; appended by the log writer thread
+     * like the request and response events, so request threads never wait for the writer
+     *
+     * @return false if there is no binary log and the caller logs the metrics itself
+     */
+    boolean logPerformance(String method, String uri, int status, long executionTime,
+                           Long memoryUsed, Long cpuTimeUsed) {
+        if (binaryLogWriter == null) {
+            return false;
+        }
+        StructuredLogEvent event = claimEvent();
+        if (event == null) {
+            return true;
+        }
+        event.type = "performance";
+        event.timestamp = System.currentTimeMillis();
+        event.method = method;
+        event.uri = uri;
+        event.status = status;
+        event.duration = executionTime;
+        event.memoryUsed = memoryUsed;
+        event.cpuTimeUsed = cpuTimeUsed;
+        publishEvent(event);
+        return true;
+    }
+
+    /**
+     * The body to hand to the writer if its content type is loggable; masking and
+     * truncation to max-body-size happen there
+     */
+    private byte[] getLoggableBody(byte[] content, String contentType) {
+        if (content.length == 0 || contentType == null) {
+            return null;
+        }
+        return properties.getLogging().getLoggableContentTypes().stream().anyMatch(contentType::contains)
+                ? content : null;
+    }
+
+    /**
+     * Mask, serialize and log one event; on the writer thread unless asynchronous logging is off
+     */
+    private void writeEvent(StructuredLogEvent event, StringWriter buffer) {
+        if (event.type == null) {
+            return;
+        }
+        if (binaryLogWriter != null) {
+            writeBinaryEvent(event);
+            return;
+        }
+        boolean response = "response".equals(event.type);
+        buffer.getBuffer().setLength(0);
+        try (JsonGenerator generator = objectMapper.createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeStringField("timestamp", LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(event.timestamp), ZoneId.systemDefault()).format(DateTimeFormatter.ISO_DATE_TIME));
+            generator.writeStringField("level", event.error ? "ERROR" : "INFO");
+            generator.writeStringField("type", event.type);
+            generator.writeStringField("requestId", event.requestId);
+            generator.writeStringField("method", event.method);
+            generator.writeStringField("uri", event.uri);
+            if (response) {
+                generator.writeNumberField("status", event.status);
+                generator.writeNumberField("duration", event.duration);
+                generator.writeStringField("durationUnit", "ms");
             } else {
-                log.info(objectMapper.writeValueAsString(logData));
+                generator.writeStringField("queryString", event.queryString);
+                generator.writeStringField("remoteAddr", event.remoteAddr);
+                generator.writeStringField("remoteHost", event.remoteHost);
+                generator.writeStringField("userAgent", event.userAgent);
+            }
+            if (event.headers != null) {
+                generator.writeObjectField(response ? "responseHeaders" : "headers", sensitiveDataMasker.maskHeaders(event.headers));
+            }
+            if (event.requestBody != null) {
+                generator.writeStringField("requestBody", sensitiveDataMasker.maskSensitiveData(event.requestBody));
+            }
+            if (event.body != null) {
+                generator.writeStringField("body", sensitiveDataMasker.maskSensitiveData(event.body));
+            }
+            if (event.errorType != null) {
+                generator.writeStringField("error", event.errorMessage);
+                generator.writeStringField("errorType", event.errorType);
             }
-        } catch (Exception e) {
+            generator.writeEndObject();
+        } catch (IOException e) {
             log.warn("Failed to serialize log data to JSON: {}", e.getMessage());
-            logSimpleResponse(request, response, executeTime, ex);
+            log.info("{} {} {} - requestId: {}", event.type, event.method, event.uri, event.requestId);
+            return;
+        }
+
+        if (event.error) {
+            log.error(buffer.toString());
+        } else {
+            log.info(buffer.toString());
+        }
+    }
+
+    /**
+     * Mask one event and append it to the binary log
+     */
+    private void writeBinaryEvent(StructuredLogEvent event) {
+        BinaryLogRecord record = new BinaryLogRecord();
+        if ("performance".equals(event.type)) {
+            record.setType(BinaryLogRecord.TYPE_PERFORMANCE);
+            record.setTimestamp(event.timestamp);
+            record.setMethod(event.method);
+            record.setUri(event.uri);
+            record.setStatus(event.status);
+            record.setDuration(event.duration);
+            record.setMemoryUsed(event.memoryUsed);
+            record.setCpuTimeUsed(event.cpuTimeUsed);
+            binaryLogWriter.append(record);
+            return;
+        }
+        boolean response = "response".equals(event.type);
+        record.setType(response ? BinaryLogRecord.TYPE_RESPONSE : BinaryLogRecord.TYPE_REQUEST);
+        record.setError(event.error);
+        record.setTimestamp(event.timestamp);
+        record.setRequestId(event.requestId);
+        record.setMethod(event.method);
+        record.setUri(event.uri);
+        if (response) {
+            record.setStatus(event.status);
+            record.setDuration(event.duration);
+        } else {
+            record.setQueryString(event.queryString);
+            record.setRemoteAddr(event.remoteAddr);
+            record.setRemoteHost(event.remoteHost);
+            record.setUserAgent(event.userAgent);
+        }
+        if (event.headers != null) {
+            record.setHeaders(sensitiveDataMasker.maskHeaders(event.headers));
+        }
+        if (event.requestBody != null) {
+            record.setRequestBody(sensitiveDataMasker.maskSensitiveData(event.requestBody));
+        }
+        if (event.body != null) {
+            record.setBody(sensitiveDataMasker.maskSensitiveData(event.body));
+        }
+        if (event.errorType != null) {
+            record.setErrorMessage(event.errorMessage);
+            record.setErrorType(event.errorType);
         }
+        binaryLogWriter.append(record);
     }
 
     private void logHeaders(HttpServletRequest request) {
@@ -170,6 +406,9 @@ public class AdvancedLoggingInterceptor implements HandlerInterceptor {
         log.debug("Request headers: {}", sensitiveDataMasker.maskHeaders(headers));
     }
 
+    /**
+     * Raw request headers; masked by the writer
+     */
     private Map<String, String> getHeaders(HttpServletRequest request) {
         Map<String, String> headers = new HashMap<>();
         Enumeration<String> headerNames = request.getHeaderNames();
@@ -177,55 +416,18 @@ public class AdvancedLoggingInterceptor implements HandlerInterceptor {
             String headerName = headerNames.nextElement();
             headers.put(headerName, request.getHeader(headerName));
         }
-        return sensitiveDataMasker.maskHeaders(headers);
+        return headers;
     }
 
+    /**
+     * Raw response headers; masked by the writer
+     */
     private Map<String, String> getResponseHeaders(HttpServletResponse response) {
         Map<String, String> headers = new HashMap<>();
         Collection<String> headerNames = response.getHeaderNames();
         for (String headerName : headerNames) {
             headers.put(headerName, response.getHeader(headerName));
         }
-        return sensitiveDataMasker.maskHeaders(headers);
-    }
-
-    private String getRequestBody(HttpServletRequest request) {
-        try {
-            if (request instanceof ContentCachingRequestWrapper) {
-                byte[] content = ((ContentCachingRequestWrapper) request).getContentAsByteArray();
-                if (content.length > properties.getLogging().getMaxBodySize()) {
-                    return "[Body too large: " + content.length + " bytes]";
-                }
-                String contentType = request.getContentType();
-                if (contentType != null && properties.getLogging().getLoggableContentTypes().stream()
-                        .anyMatch(contentType::contains)) {
-                    return new String(content, StandardCharsets.UTF_8);
-                }
-            }
-            return null;
-        } catch (Exception e) {
-            log.warn("Failed to read request body: {}", e.getMessage());
-            return null;
-        }
-    }
-
-    private String getResponseBody(HttpServletResponse response) {
-        try {
-            if (response instanceof ContentCachingResponseWrapper) {
-                byte[] content = ((ContentCachingResponseWrapper) response).getContentAsByteArray();
-                if (content.length > properties.getLogging().getMaxBodySize()) {
-                    return "[Body too large: " + content.length + " bytes]";
-                }
-                String contentType = response.getContentType();
-                if (contentType != null && properties.getLogging().getLoggableContentTypes().stream()
-                        .anyMatch(contentType::contains)) {
-                    return new String(content, StandardCharsets.UTF_8);
-                }
-            }
-            return null;
-        } catch (Exception e) {
-            log.warn("Failed to read response body: {}", e.getMessage());
-            return null;
-        }
+        return headers;
     }
 }
@@ -0,0 +1,182 @@
+package io.commoncore.interceptor;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Bounded multi-producer, single-consumer ring buffer of preallocated
+ * {@link StructuredLogEvent}s, drained by one writer thread.
+ * <p>
+ * A request thread claims a slot with one compare-and-set, fills the event in place
+ * and publishes it; it never serializes, allocates an event or touches an appender.
+ * The writer handles published events in order, up to {@code batchSize} at a time,
+ * and only then frees their slots. When the buffer is full the request either drops
+ * its event or waits for a slot, depending on the {@link LogOverflowPolicy}.
+ * <p>
+ * Every claimed event must be published, filled or not, or the writer stops at it.
+ * <p>
+ * A failing event is logged and skipped; only a {@link VirtualMachineError} stops the
+ * writer. The pipeline then counts as closed, so request threads drop their events
+ * instead of waiting for slots that are never freed again.
+ */
+@Slf4j
+class AsyncLogPipeline implements AutoCloseable {
+
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final StructuredLogEvent[] events;
+    private final AtomicLongArray published;
+    private final int mask;
+    private final boolean block;
+    private final int batchSize;
+    private final Consumer<StructuredLogEvent> handler;
+    private final AtomicLong claimed = new AtomicLong(-1);
+    private final LongAdder droppedCount = new LongAdder();
+    private final Thread writer;
+    private volatile long consumed = -1;
+    private volatile boolean writerIdle;
+    private volatile boolean closed;
+
+    /**
+     * @param bufferSize number of slots, rounded up to a power of two
+     * @param handler    writes one event; runs on the writer thread only
+     */
+    AsyncLogPipeline(String threadName, int bufferSize, LogOverflowPolicy overflowPolicy, int batchSize,
+                     Consumer<StructuredLogEvent> handler) {
+        int size = Integer.highestOneBit(Math.max(2, bufferSize) * 2 - 1);
+        this.events = new StructuredLogEvent[size];
+        this.published = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            events[i] = new StructuredLogEvent();
+            // No sequence is published in any slot yet
+            published.set(i, -1);
+        }
+        this.mask = size - 1;
+        this.block = overflowPolicy == LogOverflowPolicy.BLOCK;
+        this.batchSize = Math.max(1, batchSize);
+        this.handler = handler;
+        this.writer = new Thread(this::run, threadName);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Claim the next free event
+     *
+     * @return the event to fill and {@link #publish}, or null if it was dropped
+     */
+    StructuredLogEvent claim() {
+        while (!closed) {
+            long current = claimed.get();
+            long next = current + 1;
+            if (next - consumed > events.length) {
+                if (!block) {
+                    droppedCount.increment();
+                    return null;
+                }
+                LockSupport.parkNanos(this, FULL_PARK_NANOS);
+                continue;
+            }
+            if (claimed.compareAndSet(current, next)) {
+                StructuredLogEvent event = events[(int) next & mask];
+                event.sequence = next;
+                return event;
+            }
+        }
+        droppedCount.increment();
+        return null;
+    }
+
+    /**
+     * Hand a claimed event to the writer
+     */
+    void publish(StructuredLogEvent event) {
+        published.set((int) event.sequence & mask, event.sequence);
+        if (writerIdle) {
+            writerIdle = false;
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Events waiting to be written
+     */
+    long getQueueDepth() {
+        return Math.max(0, claimed.get() - consumed);
+    }
+
+    /**
+     * Events dropped because the buffer was full
+     */
+    long getDroppedCount() {
+        return droppedCount.sum();
+    }
+
+    int getCapacity() {
+        return events.length;
+    }
+
+    /**
+     * Stop accepting events and write the ones already published
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        try {
+            drain();
+        } finally {
+            // Also when the writer died: producers must not wait for it anymore
+            closed = true;
+        }
+    }
+
+    private void drain() {
+        long next = consumed + 1;
+        while (true) {
+            int written = 0;
+            while (written < batchSize && published.get((int) next & mask) == next) {
+                StructuredLogEvent event = events[(int) next & mask];
+                try {
+                    handler.accept(event);
+                } catch (VirtualMachineError e) {
+                    throw e;
+                } catch (Throwable e) {
+                    log.warn("Failed to write structured log event: {}", e.toString());
+                } finally {
+                    event.reset();
+                }
+                next++;
+                written++;
+            }
+            if (written > 0) {
+                consumed = next - 1;
+                continue;
+            }
+            if (closed) {
+                return;
+            }
+            // Producers check the flag after publishing, so either they see it or we see their event
+            writerIdle = true;
+            if (published.get((int) next & mask) != next && !closed) {
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+            }
+            writerIdle = false;
+        }
+    }
+}
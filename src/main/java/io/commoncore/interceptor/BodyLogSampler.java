@@ -0,0 +1,87 @@
+package io.commoncore.interceptor;
+
+import io.commoncore.config.CommonCoreProperties;
+import io.commoncore.ratelimit.PathPatternTrie;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides which requests get their bodies logged.
+ * <p>
+ * A request is sampled when it starts, at the rate of the first matching route or
+ * the base rate. Requests that are not sampled have their bodies captured only if
+ * they may still qualify by their outcome, a 5xx status or a slow response; bodies
+ * are then logged and masked only if they do. With both outcome triggers off an
+ * unsampled request is not captured at all.
+ */
+@Component
+public class BodyLogSampler {
+
+    private static final String SAMPLED_ATTRIBUTE = BodyLogSampler.class.getName() + ".SAMPLED";
+
+    private final CommonCoreProperties properties;
+    private final List<CommonCoreProperties.Logging.Sampling.Route> routes;
+    private final PathPatternTrie routeTrie;
+
+    public BodyLogSampler(CommonCoreProperties properties) {
+        this.properties = properties;
+        this.routes = List.copyOf(properties.getLogging().getSampling().getRoutes());
+        List<String> patterns = new ArrayList<>(routes.size());
+        for (CommonCoreProperties.Logging.Sampling.Route route : routes) {
+            patterns.add(route.getPathPattern());
+        }
+        this.routeTrie = new PathPatternTrie(patterns);
+    }
+
+    /**
+     * Sample a starting request
+     *
+     * @return whether its bodies have to be captured
+     */
+    public boolean startCapture(HttpServletRequest request) {
+        CommonCoreProperties.Logging.Sampling sampling = properties.getLogging().getSampling();
+        double rate = getRate(request, sampling);
+        boolean sampled = rate >= 1.0 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+        if (sampled || sampling.isAlwaysOnError() || sampling.isAlwaysOnSlow()) {
+            request.setAttribute(SAMPLED_ATTRIBUTE, sampled);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the bodies of a completed request are logged
+     */
+    public boolean shouldLogBody(HttpServletRequest request, int status, long durationMillis, Exception ex) {
+        Object sampled = request.getAttribute(SAMPLED_ATTRIBUTE);
+        if (sampled == null) {
+            return false;
+        }
+        if ((Boolean) sampled) {
+            return true;
+        }
+        CommonCoreProperties.Logging.Sampling sampling = properties.getLogging().getSampling();
+        if (sampling.isAlwaysOnError() && (status >= 500 || ex != null)) {
+            return true;
+        }
+        return sampling.isAlwaysOnSlow() && durationMillis > properties.getMonitoring().getSlowQueryThreshold();
+    }
+
+    private double getRate(HttpServletRequest request, CommonCoreProperties.Logging.Sampling sampling) {
+        if (!routeTrie.isEmpty()) {
+            String method = request.getMethod();
+            String path = request.getRequestURI().substring(request.getContextPath().length());
+            int index = routeTrie.firstMatch(path, i -> routes.get(i).getMethod() == null
+                    || routes.get(i).getMethod().isEmpty()
+                    || routes.get(i).getMethod().equalsIgnoreCase(method));
+            if (index >= 0) {
+                return routes.get(index).getRate();
+            }
+        }
+        return sampling.getRate();
+    }
+}
@@ -0,0 +1,73 @@
+package io.commoncore.interceptor;
+
+import io.commoncore.config.CommonCoreProperties;
+import io.commoncore.exception.ConcurrencyLimitExceededException;
+import io.commoncore.ratelimit.AdaptiveConcurrencyLimiter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+/**
+ * Rejects requests while the adaptive in-flight limit is reached.
+ * The permit is normally released by {@link PerformanceMonitoringInterceptor} with its
+ * measured round trip time; this interceptor releases whatever is still held afterwards.
+ */
+@Component
+@Slf4j
+public class ConcurrencyLimitingInterceptor implements HandlerInterceptor {
+
+    private static final String START_TIME_ATTRIBUTE = "concurrencyLimitStartNanos";
+
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final CommonCoreProperties.RateLimit.Adaptive adaptiveConfig;
+
+    public ConcurrencyLimitingInterceptor(CommonCoreProperties properties, AdaptiveConcurrencyLimiter limiter) {
+        this.adaptiveConfig = properties.getRateLimit().getAdaptive();
+        this.limiter = limiter;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Async dispatches keep the permit taken by the initial dispatch
+        if (!adaptiveConfig.isEnabled() || request.getAttribute(AdaptiveConcurrencyLimiter.PERMIT_ATTRIBUTE) != null) {
+            return true;
+        }
+
+        AdaptiveConcurrencyLimiter.Permit permit = limiter.tryAcquire();
+        if (permit == null) {
+            log.debug("Concurrency limit reached: {} requests in flight", limiter.getInFlight());
+            throw new ConcurrencyLimitExceededException(
+                "Server is busy. Maximum " + limiter.getLimit() + " concurrent requests",
+                adaptiveConfig.getRetryAfterSeconds(),
+                adaptiveConfig.getRejectStatus()
+            );
+        }
+
+        request.setAttribute(START_TIME_ATTRIBUTE, System.nanoTime());
+        request.setAttribute(AdaptiveConcurrencyLimiter.PERMIT_ATTRIBUTE, permit);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object permit = request.getAttribute(AdaptiveConcurrencyLimiter.PERMIT_ATTRIBUTE);
+        if (!(permit instanceof AdaptiveConcurrencyLimiter.Permit)) {
+            return;
+        }
+        long startTime = (Long) request.getAttribute(START_TIME_ATTRIBUTE);
+        ((AdaptiveConcurrencyLimiter.Permit) permit).release(
+                System.nanoTime() - startTime,
+                isDropped(response, ex)
+        );
+    }
+
+    /**
+     * Whether a completed request signals overload rather than a normal response
+     */
+    static boolean isDropped(HttpServletResponse response, Exception ex) {
+        int status = response.getStatus();
+        return ex != null || status == 503 || status == 504;
+    }
+}
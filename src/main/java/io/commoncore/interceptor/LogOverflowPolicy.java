@@ -0,0 +1,17 @@
+package io.commoncore.interceptor;
+
+/**
+ * What a request thread does when the asynchronous log buffer is full
+ */
+public enum LogOverflowPolicy {
+
+    /**
+     * Drop the log event; the request is never slowed down by logging
+     */
+    DROP,
+
+    /**
+     * Wait until the log writer frees a slot; no log event is lost
+     */
+    BLOCK
+}
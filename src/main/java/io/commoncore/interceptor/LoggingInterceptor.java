@@ -7,6 +7,10 @@ import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 
+/**
+ * Simple request logging; registered through {@link ObservationInterceptor}, which calls
+ * {@link #onRequest} and {@link #onCompletion}
+ */
 @Component
 @Slf4j
 public class LoggingInterceptor implements HandlerInterceptor {
@@ -15,7 +19,7 @@ public class LoggingInterceptor implements HandlerInterceptor {
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
         long startTime = System.currentTimeMillis();
         request.setAttribute("startTime", startTime);
-        log.info("Incoming request: {} {} from {}", request.getMethod(), request.getRequestURI(), request.getRemoteAddr());
+        onRequest(request);
         return true;
     }
 
@@ -35,4 +39,18 @@ public class LoggingInterceptor implements HandlerInterceptor {
                     request.getMethod(), request.getRequestURI(), ex.getMessage());
         }
     }
+
+    void onRequest(HttpServletRequest request) {
+        log.info("Incoming request: {} {} from {}", request.getMethod(), request.getRequestURI(), request.getRemoteAddr());
+    }
+
+    void onCompletion(HttpServletRequest request, HttpServletResponse response, long executeTime, Exception ex) {
+        if (ex != null) {
+            log.error("Request failed: {} {} - Error: {}",
+                    request.getMethod(), request.getRequestURI(), ex.getMessage());
+        } else {
+            log.info("Request processed: {} {} - Status: {} - Time: {}ms",
+                    request.getMethod(), request.getRequestURI(), response.getStatus(), executeTime);
+        }
+    }
 }
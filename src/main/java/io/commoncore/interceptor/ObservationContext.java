@@ -0,0 +1,38 @@
+package io.commoncore.interceptor;
+
+import jakarta.servlet.DispatcherType;
+
+/**
+ * Per-request state of {@link ObservationInterceptor}: the start time shared by logging,
+ * metrics and slow request detection, and the resource readings taken at the start.
+ * Kept in one request attribute for the lifetime of the request.
+ */
+final class ObservationContext {
+
+    static final String ATTRIBUTE = ObservationContext.class.getName();
+
+    /**
+     * Dispatch that started the observation; nested forwards and includes are part of it
+     */
+    DispatcherType dispatcherType;
+    long startNanos;
+    long initialMemory;
+    long initialCpuTime;
+
+    /**
+     * The handler went async, so completion runs on another thread than the start
+     */
+    boolean async;
+
+    void start(DispatcherType dispatcherType, long startNanos) {
+        this.dispatcherType = dispatcherType;
+        this.startNanos = startNanos;
+        initialMemory = 0;
+        initialCpuTime = 0;
+        async = false;
+    }
+
+    long elapsedNanos(long nowNanos) {
+        return nowNanos - startNanos;
+    }
+}
@@ -0,0 +1,115 @@
+package io.commoncore.interceptor;
+
+import io.commoncore.config.CommonCoreProperties;
+import jakarta.servlet.DispatcherType;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Observes handler requests in one pass: request logging (simple or advanced),
+ * performance metrics and slow request detection.
+ * <p>
+ * Registered once instead of the logging and performance monitoring interceptors, so
+ * the path patterns are matched once and the clock is read once at each end of the
+ * request. All per-request state lives in one {@link ObservationContext} instead of
+ * boxed request attributes. Async requests are observed
+ * from the initial dispatch until their async dispatch completes.
+ */
+@Component
+public class ObservationInterceptor implements AsyncHandlerInterceptor {
+
+    private final LoggingInterceptor loggingInterceptor;
+    private final AdvancedLoggingInterceptor advancedLoggingInterceptor;
+    private final PerformanceMonitoringInterceptor performanceMonitoringInterceptor;
+    private final boolean advancedLogging;
+    private final boolean simpleLogging;
+    private final boolean monitoring;
+
+    public ObservationInterceptor(CommonCoreProperties properties, LoggingInterceptor loggingInterceptor,
+                                  AdvancedLoggingInterceptor advancedLoggingInterceptor,
+                                  PerformanceMonitoringInterceptor performanceMonitoringInterceptor) {
+        this.loggingInterceptor = loggingInterceptor;
+        this.advancedLoggingInterceptor = advancedLoggingInterceptor;
+        this.performanceMonitoringInterceptor = performanceMonitoringInterceptor;
+        this.advancedLogging = isAdvancedLogging(properties);
+        this.simpleLogging = !advancedLogging && properties.getInterceptor().isEnabled();
+        this.monitoring = properties.getMonitoring().isEnabled();
+    }
+
+    /**
+     * Whether the advanced logging interceptor replaces the simple one
+     */
+    public static boolean isAdvancedLogging(CommonCoreProperties properties) {
+        return properties.getLogging().isStructuredLogging()
+                || properties.getLogging().isLogRequestBody()
+                || properties.getLogging().isLogResponseBody();
+    }
+
+    /**
+     * Whether anything is observed at all
+     */
+    public static boolean isEnabled(CommonCoreProperties properties) {
+        return isAdvancedLogging(properties) || properties.getInterceptor().isEnabled()
+                || properties.getMonitoring().isEnabled();
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // Async dispatches, forwards and includes are part of the request already observed
+        if (request.getAttribute(ObservationContext.ATTRIBUTE) != null) {
+            return true;
+        }
+
+        ObservationContext context = new ObservationContext();
+        context.start(request.getDispatcherType(), System.nanoTime());
+        request.setAttribute(ObservationContext.ATTRIBUTE, context);
+
+        if (advancedLogging) {
+            advancedLoggingInterceptor.onRequest(request);
+        } else if (simpleLogging) {
+            loggingInterceptor.onRequest(request);
+        }
+        if (monitoring) {
+            performanceMonitoringInterceptor.onRequest(context);
+        }
+        return true;
+    }
+
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        Object context = request.getAttribute(ObservationContext.ATTRIBUTE);
+        if (context instanceof ObservationContext) {
+            ((ObservationContext) context).async = true;
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        Object attribute = request.getAttribute(ObservationContext.ATTRIBUTE);
+        if (!(attribute instanceof ObservationContext) || request.isAsyncStarted()) {
+            return;
+        }
+        ObservationContext context = (ObservationContext) attribute;
+        DispatcherType dispatcherType = request.getDispatcherType();
+        if (dispatcherType != context.dispatcherType && dispatcherType != DispatcherType.ASYNC) {
+            // A nested forward or include completed, not the request
+            return;
+        }
+        request.removeAttribute(ObservationContext.ATTRIBUTE);
+        long elapsedNanos = context.elapsedNanos(System.nanoTime());
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+
+        if (advancedLogging) {
+            advancedLoggingInterceptor.onCompletion(request, response, elapsedMillis, ex);
+        } else if (simpleLogging) {
+            loggingInterceptor.onCompletion(request, response, elapsedMillis, ex);
+        }
+        if (monitoring) {
+            performanceMonitoringInterceptor.onCompletion(context, elapsedNanos, request, response, ex);
+        }
+    }
+}
@@ -1,191 +1,235 @@
 package io.commoncore.interceptor;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.commoncore.config.CommonCoreProperties;
-import io.micrometer.core.instrument.Gauge;
+import io.commoncore.logging.LogThrottle;
+import io.commoncore.ratelimit.AdaptiveConcurrencyLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.BaseUnits;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
 import org.springframework.stereotype.Component;
 import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.lang.management.ManagementFactory;
 import java.lang.management.MemoryMXBean;
-import java.lang.management.RuntimeMXBean;
+import java.lang.management.MemoryUsage;
 import java.lang.management.ThreadMXBean;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Performance monitoring interceptor
  * Tracks memory, CPU, and execution time metrics
+ * <p>
+ * Registered through {@link ObservationInterceptor}, which calls {@link #onRequest} and
+ * {@link #onCompletion} with the request's shared start time.
  */
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class PerformanceMonitoringInterceptor implements HandlerInterceptor {
 
+    private static final String CONTEXT_ATTRIBUTE = PerformanceMonitoringInterceptor.class.getName() + ".CONTEXT";
+
+    /**
+     * URI tag of requests no handler mapping matched, so unmapped paths share one set of meters
+     */
+    private static final String UNKNOWN_URI = "UNKNOWN";
+
     private final CommonCoreProperties properties;
     private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    private final AdvancedLoggingInterceptor advancedLoggingInterceptor;
     private final MemoryMXBean memoryBean = ManagementFactory.getMemoryMXBean();
-    private final RuntimeMXBean runtimeBean = ManagementFactory.getRuntimeMXBean();
     private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private final ConcurrentHashMap<MeterKey, RequestMeters> meters = new ConcurrentHashMap<>();
+    private final LogThrottle.Site slowRequestLog;
+
+    public PerformanceMonitoringInterceptor(CommonCoreProperties properties, MeterRegistry meterRegistry,
+                                            ObjectMapper objectMapper, AdvancedLoggingInterceptor advancedLoggingInterceptor,
+                                            LogThrottle logThrottle) {
+        this.properties = properties;
+        this.meterRegistry = meterRegistry;
+        this.objectMapper = objectMapper;
+        this.advancedLoggingInterceptor = advancedLoggingInterceptor;
+        this.slowRequestLog = logThrottle.site(log, Level.WARN, "Slow request detected");
+    }
 
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) {
         if (!properties.getMonitoring().isEnabled()) {
             return true;
         }
-
-        long startTime = System.currentTimeMillis();
-        request.setAttribute("performanceStartTime", startTime);
-
-        if (properties.getMonitoring().isMonitorMemory()) {
-            long initialMemory = getUsedMemory();
-            request.setAttribute("initialMemory", initialMemory);
-        }
-
-        if (properties.getMonitoring().isMonitorCpu()) {
-            long initialCpuTime = threadBean.getCurrentThreadCpuTime();
-            request.setAttribute("initialCpuTime", initialCpuTime);
-        }
-
+        ObservationContext context = new ObservationContext();
+        context.start(request.getDispatcherType(), System.nanoTime());
+        request.setAttribute(CONTEXT_ATTRIBUTE, context);
+        onRequest(context);
         return true;
     }
 
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
-        if (!properties.getMonitoring().isEnabled()) {
+        Object context = request.getAttribute(CONTEXT_ATTRIBUTE);
+        if (!properties.getMonitoring().isEnabled() || !(context instanceof ObservationContext)) {
             return;
         }
+        ObservationContext observation = (ObservationContext) context;
+        onCompletion(observation, observation.elapsedNanos(System.nanoTime()), request, response, ex);
+    }
 
-        long startTime = (Long) request.getAttribute("performanceStartTime");
-        long endTime = System.currentTimeMillis();
-        long executionTime = endTime - startTime;
-
-        Map<String, Object> metrics = new HashMap<>();
-        metrics.put("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME));
-        metrics.put("method", request.getMethod());
-        metrics.put("uri", request.getRequestURI());
-        metrics.put("status", response.getStatus());
-        metrics.put("executionTime", executionTime);
-        metrics.put("executionTimeUnit", "ms");
-
+    /**
+     * Take the resource readings at the start of a request; called by {@link ObservationInterceptor}
+     */
+    void onRequest(ObservationContext context) {
         if (properties.getMonitoring().isMonitorMemory()) {
-            long initialMemory = (Long) request.getAttribute("initialMemory");
-            long finalMemory = getUsedMemory();
-            long memoryUsed = finalMemory - initialMemory;
-            metrics.put("memoryUsed", memoryUsed);
-            metrics.put("memoryUsedUnit", "bytes");
-            metrics.put("memoryUsedMB", memoryUsed / (1024.0 * 1024.0));
-            metrics.put("totalMemory", getTotalMemory());
-            metrics.put("maxMemory", getMaxMemory());
+            context.initialMemory = getUsedMemory();
         }
-
         if (properties.getMonitoring().isMonitorCpu()) {
-            long initialCpuTime = (Long) request.getAttribute("initialCpuTime");
-            long finalCpuTime = threadBean.getCurrentThreadCpuTime();
-            long cpuTimeUsed = finalCpuTime - initialCpuTime;
-            metrics.put("cpuTimeUsed", cpuTimeUsed);
-            metrics.put("cpuTimeUsedUnit", "ns");
+            context.initialCpuTime = threadBean.getCurrentThreadCpuTime();
+        }
+    }
+
+    /**
+     * Log, record and check a completed request; called by {@link ObservationInterceptor}
+     */
+    void onCompletion(ObservationContext context, long elapsedNanos, HttpServletRequest request,
+                      HttpServletResponse response, Exception ex) {
+        long executionTime = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+
+        // Feed the round trip time to the adaptive concurrency limiter
+        Object permit = request.getAttribute(AdaptiveConcurrencyLimiter.PERMIT_ATTRIBUTE);
+        if (permit instanceof AdaptiveConcurrencyLimiter.Permit) {
+            ((AdaptiveConcurrencyLimiter.Permit) permit).release(elapsedNanos,
+                    ConcurrencyLimitingInterceptor.isDropped(response, ex));
         }
 
+        boolean monitorMemory = properties.getMonitoring().isMonitorMemory();
+        // CPU time is per thread, so it is unknown once the request went async
+        boolean monitorCpu = properties.getMonitoring().isMonitorCpu() && !context.async;
+        MemoryUsage heap = monitorMemory ? memoryBean.getHeapMemoryUsage() : null;
+        long memoryUsed = monitorMemory ? heap.getUsed() - context.initialMemory : 0;
+        long cpuTimeUsed = monitorCpu ? threadBean.getCurrentThreadCpuTime() - context.initialCpuTime : 0;
+        String method = request.getMethod();
+        String uri = request.getRequestURI();
+        int status = response.getStatus();
+
         // Log metrics
         if (properties.getLogging().isStructuredLogging()) {
-            logStructuredMetrics(metrics);
-        } else {
-            logSimpleMetrics(metrics);
+            // The binary log is appended on the log writer thread, not here
+            if (!advancedLoggingInterceptor.logPerformance(method, uri, status, executionTime,
+                    monitorMemory ? memoryUsed : null, monitorCpu ? cpuTimeUsed : null)) {
+                logStructuredMetrics(method, uri, status, executionTime, heap, memoryUsed, monitorCpu, cpuTimeUsed);
+            }
+        } else if (log.isInfoEnabled()) {
+            log.info("Performance metrics - Method: {} URI: {} Status: {} ExecutionTime: {}ms MemoryUsed: {}MB",
+                    method, uri, status, executionTime, monitorMemory ? memoryUsed / (1024.0 * 1024.0) : null);
         }
 
         // Record Micrometer metrics
         if (properties.getMonitoring().isEnableMetrics()) {
-            recordMicrometerMetrics(request, response, executionTime, metrics);
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            recordMicrometerMetrics(method, pattern != null ? pattern.toString() : UNKNOWN_URI, status,
+                    elapsedNanos, monitorMemory, memoryUsed);
         }
 
         // Check for slow queries
-        if (executionTime > properties.getMonitoring().getSlowQueryThreshold()) {
+        if (executionTime > properties.getMonitoring().getSlowQueryThreshold()
+                && slowRequestLog.shouldLog(method + " " + uri)) {
             log.warn("Slow request detected: {} {} took {}ms (threshold: {}ms)",
-                    request.getMethod(), request.getRequestURI(), executionTime,
-                    properties.getMonitoring().getSlowQueryThreshold());
+                    method, uri, executionTime, properties.getMonitoring().getSlowQueryThreshold());
         }
     }
 
-    private void logSimpleMetrics(Map<String, Object> metrics) {
-        log.info("Performance metrics - Method: {} URI: {} Status: {} ExecutionTime: {}ms MemoryUsed: {}MB",
-                metrics.get("method"), metrics.get("uri"), metrics.get("status"),
-                metrics.get("executionTime"), metrics.get("memoryUsedMB"));
-    }
-
-    private void logStructuredMetrics(Map<String, Object> metrics) {
-        try {
-            com.fasterxml.jackson.databind.ObjectMapper mapper = new com.fasterxml.jackson.databind.ObjectMapper();
-            log.info(mapper.writeValueAsString(metrics));
-        } catch (Exception e) {
+    private void logStructuredMetrics(String method, String uri, int status, long executionTime,
+                                      MemoryUsage heap, long memoryUsed, boolean monitorCpu, long cpuTimeUsed) {
+        StringWriter buffer = new StringWriter(256);
+        try (JsonGenerator generator = objectMapper.createGenerator(buffer)) {
+            generator.writeStartObject();
+            generator.writeStringField("timestamp", LocalDateTime.now().format(DateTimeFormatter.ISO_DATE_TIME));
+            generator.writeStringField("method", method);
+            generator.writeStringField("uri", uri);
+            generator.writeNumberField("status", status);
+            generator.writeNumberField("executionTime", executionTime);
+            generator.writeStringField("executionTimeUnit", "ms");
+            if (heap != null) {
+                generator.writeNumberField("memoryUsed", memoryUsed);
+                generator.writeStringField("memoryUsedUnit", "bytes");
+                generator.writeNumberField("memoryUsedMB", memoryUsed / (1024.0 * 1024.0));
+                generator.writeNumberField("totalMemory", heap.getCommitted());
+                generator.writeNumberField("maxMemory", heap.getMax());
+            }
+            if (monitorCpu) {
+                generator.writeNumberField("cpuTimeUsed", cpuTimeUsed);
+                generator.writeStringField("cpuTimeUsedUnit", "ns");
+            }
+            generator.writeEndObject();
+        } catch (IOException e) {
             log.warn("Failed to serialize metrics to JSON: {}", e.getMessage());
-            logSimpleMetrics(metrics);
+            return;
         }
+        log.info(buffer.toString());
     }
 
-    private void recordMicrometerMetrics(HttpServletRequest request, HttpServletResponse response,
-                                         long executionTime, Map<String, Object> metrics) {
+    /**
+     * Meters are looked up once per method, URI template and status, then only updated
+     */
+    private void recordMicrometerMetrics(String method, String uriPattern, int status, long elapsedNanos,
+                                         boolean monitorMemory, long memoryUsed) {
         try {
-            // HTTP Request Timer
-            Timer.Sample sample = Timer.start(meterRegistry);
-            sample.stop(Timer.builder("http.request.duration")
-                    .description("HTTP request duration")
-                    .tag("method", request.getMethod())
-                    .tag("uri", sanitizeUri(request.getRequestURI()))
-                    .tag("status", String.valueOf(response.getStatus()))
-                    .register(meterRegistry));
-
-            // HTTP Request Counter
-            meterRegistry.counter("http.requests.total",
-                    "method", request.getMethod(),
-                    "uri", sanitizeUri(request.getRequestURI()),
-                    "status", String.valueOf(response.getStatus())
-            ).increment();
-
-            // Memory Gauge
-            if (properties.getMonitoring().isMonitorMemory() && metrics.containsKey("memoryUsedMB")) {
-                Gauge.builder("http.request.memory.used", () -> (Double) metrics.get("memoryUsedMB"))
-                        .description("Memory used per request")
-                        .tag("method", request.getMethod())
-                        .tag("uri", sanitizeUri(request.getRequestURI()))
-                        .register(meterRegistry);
+            RequestMeters requestMeters = meters.computeIfAbsent(new MeterKey(method, uriPattern, status),
+                    this::registerMeters);
+            requestMeters.duration.record(elapsedNanos, TimeUnit.NANOSECONDS);
+            requestMeters.total.increment();
+            if (monitorMemory) {
+                requestMeters.memoryUsed.record(Math.max(0, memoryUsed));
             }
-
-            // Execution Time Gauge
-            Gauge.builder("http.request.execution.time", () -> executionTime)
-                    .description("Request execution time")
-                    .tag("method", request.getMethod())
-                    .tag("uri", sanitizeUri(request.getRequestURI()))
-                    .register(meterRegistry);
         } catch (Exception e) {
             log.warn("Failed to record Micrometer metrics: {}", e.getMessage());
         }
     }
 
-    private long getUsedMemory() {
-        return memoryBean.getHeapMemoryUsage().getUsed();
+    private RequestMeters registerMeters(MeterKey key) {
+        String status = String.valueOf(key.status());
+        return new RequestMeters(
+                Timer.builder("http.request.duration")
+                        .description("HTTP request duration")
+                        .tag("method", key.method())
+                        .tag("uri", key.uri())
+                        .tag("status", status)
+                        .register(meterRegistry),
+                Counter.builder("http.requests.total")
+                        .description("Total HTTP requests")
+                        .tag("method", key.method())
+                        .tag("uri", key.uri())
+                        .tag("status", status)
+                        .register(meterRegistry),
+                DistributionSummary.builder("http.request.memory.used")
+                        .description("Heap growth during a request")
+                        .baseUnit(BaseUnits.BYTES)
+                        .tag("method", key.method())
+                        .tag("uri", key.uri())
+                        .register(meterRegistry)
+        );
     }
 
-    private long getTotalMemory() {
-        return memoryBean.getHeapMemoryUsage().getCommitted();
+    private long getUsedMemory() {
+        return memoryBean.getHeapMemoryUsage().getUsed();
     }
 
-    private long getMaxMemory() {
-        return memoryBean.getHeapMemoryUsage().getMax();
+    private record MeterKey(String method, String uri, int status) {
     }
 
-
-    private String sanitizeUri(String uri) {
-        // Replace path variables with placeholder
-        return uri.replaceAll("/\\d+", "/{id}")
-                .replaceAll("/[a-f0-9-]{36}", "/{uuid}")
-                .replaceAll("/[^/]+$", "/{param}");
+    private record RequestMeters(Timer duration, Counter total, DistributionSummary memoryUsed) {
     }
 }
@@ -2,27 +2,86 @@ package io.commoncore.interceptor;
 
 import io.commoncore.config.CommonCoreProperties;
 import io.commoncore.exception.RateLimitExceededException;
+import io.commoncore.logging.LogThrottle;
+import io.commoncore.ratelimit.KeyedConcurrencyLimiter;
+import io.commoncore.ratelimit.RateLimitCost;
+import io.commoncore.ratelimit.RateLimitPolicy;
+import io.commoncore.ratelimit.RateLimitRule;
+import io.commoncore.ratelimit.RateLimitService;
+import io.commoncore.ratelimit.RateLimitTelemetry;
 import io.commoncore.ratelimit.RateLimiter;
+import io.commoncore.ratelimit.TimerWheel;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import lombok.extern.slf4j.Slf4j;
+import org.slf4j.event.Level;
+import org.springframework.core.annotation.AnnotatedElementUtils;
 import org.springframework.http.HttpStatus;
+import org.springframework.security.core.context.SecurityContext;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.security.web.context.RequestAttributeSecurityContextRepository;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.method.HandlerMethod;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Enforces the rate limit policies on handler requests.
+ * <p>
+ * Policies with a maximum delay reserve the permits of a request over the limit
+ * instead of rejecting it: the request is put into async mode, the thread goes back
+ * to the pool, and a {@link TimerWheel} dispatches the request again once its permits
+ * are due. The async dispatch is not counted a second time.
+ * <p>
+ * Policies with a per-client in-flight cap also take a {@link KeyedConcurrencyLimiter}
+ * slot, released when the request completes, also after async processing, errors and
+ * timeouts.
+ */
 @Component
 @Slf4j
-public class RateLimitingInterceptor implements HandlerInterceptor {
+public class RateLimitingInterceptor implements AsyncHandlerInterceptor {
+
+    /**
+     * Extra time on top of the delay before the container times a delayed request out
+     */
+    private static final long ASYNC_TIMEOUT_MARGIN_MS = 5000;
 
-    private final RateLimiter rateLimiter;
+    /**
+     * Key of a delayed request, which takes its concurrency slot when it is dispatched again
+     */
+    private static final String DELAYED_KEY_ATTRIBUTE = RateLimitingInterceptor.class.getName() + ".DELAYED_KEY";
+
+    private final RateLimitService rateLimitService;
+    private final RateLimitTelemetry telemetry;
+    private final TimerWheel timerWheel;
+    private final KeyedConcurrencyLimiter concurrencyLimiter;
+    private final RequestAttributeSecurityContextRepository securityContextRepository =
+            new RequestAttributeSecurityContextRepository();
     private final CommonCoreProperties.RateLimit rateLimitConfig;
+    private final ConcurrentHashMap<Method, Integer> annotatedCosts = new ConcurrentHashMap<>();
+    private final LogThrottle.Site rejectedLog;
+    private final LogThrottle.Site concurrencyRejectedLog;
 
-    public RateLimitingInterceptor(CommonCoreProperties properties) {
+    public RateLimitingInterceptor(CommonCoreProperties properties, RateLimitService rateLimitService,
+                                   RateLimitTelemetry telemetry, TimerWheel rateLimitTimerWheel,
+                                   KeyedConcurrencyLimiter concurrencyLimiter, LogThrottle logThrottle) {
         this.rateLimitConfig = properties.getRateLimit();
-        this.rateLimiter = new RateLimiter(
-            rateLimitConfig.getMaxRequests(),
-            rateLimitConfig.getWindowSizeInSeconds()
-        );
+        this.rateLimitService = rateLimitService;
+        this.telemetry = telemetry;
+        this.timerWheel = rateLimitTimerWheel;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.rejectedLog = logThrottle.site(log, Level.WARN, "Rate limit exceeded for key: {}",
+                rateLimitService::describeKey);
+        this.concurrencyRejectedLog = logThrottle.site(log, Level.WARN, "Concurrent request limit reached for key: {}",
+                rateLimitService::describeKey);
     }
 
     @Override
@@ -30,50 +89,226 @@ public class RateLimitingInterceptor implements HandlerInterceptor {
         if (!rateLimitConfig.isEnabled()) {
             return true;
         }
+        // Async dispatches were counted by the initial dispatch
+        if (request.getDispatcherType() == DispatcherType.ASYNC) {
+            Object delayedKey = request.getAttribute(DELAYED_KEY_ATTRIBUTE);
+            if (delayedKey != null) {
+                request.removeAttribute(DELAYED_KEY_ATTRIBUTE);
+                acquireConcurrencySlot(request, rateLimitService.resolvePolicy(request), (String) delayedKey);
+            }
+            return true;
+        }
+
+        RateLimitPolicy policy = rateLimitService.resolvePolicy(request);
+        if (rateLimitConfig.getMode() == CommonCoreProperties.RateLimit.Mode.FILTER
+                && rateLimitService.isEnforcedByFilter(policy)) {
+            // Rate already enforced by RateLimitingFilter; the in-flight cap needs afterCompletion
+            if (policy.getMaxConcurrentRequests() > 0) {
+                acquireConcurrencySlot(request, policy, rateLimitService.resolveKey(request, policy));
+            }
+            return true;
+        }
+
+        RateLimiter rateLimiter = rateLimitService.getRateLimiter(policy);
+        RateLimitRule rule = policy.getRule();
+        String key = rateLimitService.resolveKey(request, policy);
+        int cost = rateLimitService.resolveCost(request, getBaseCost(handler, policy));
+
+        long delayMillis = 0;
+        boolean allowed;
+        if (policy.getMaxDelayMillis() > 0 && request.isAsyncSupported()) {
+            delayMillis = rateLimiter.reserve(key, cost, policy.getMaxDelayMillis());
+            allowed = delayMillis >= 0;
+        } else {
+            allowed = rateLimiter.tryAcquire(key, cost);
+        }
+        telemetry.record(policy, key, allowed);
+        if (!allowed) {
+            long retryAfter = rateLimiter.getRetryAfterSeconds(key, cost);
+            if (rejectedLog.shouldLog(key)) {
+                log.warn("Rate limit exceeded for key: {} - Retry after: {} seconds",
+                        rateLimitService.describeKey(request, policy), retryAfter);
+            }
 
-        String key = getRateLimitKey(request);
-        
-        if (!rateLimiter.tryAcquire(key)) {
-            long retryAfter = rateLimiter.getRetryAfterSeconds(key);
-            log.warn("Rate limit exceeded for key: {} - Retry after: {} seconds", key, retryAfter);
-            
             response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
             response.setHeader("Retry-After", String.valueOf(retryAfter));
-            response.setHeader("X-RateLimit-Limit", String.valueOf(rateLimitConfig.getMaxRequests()));
-            response.setHeader("X-RateLimit-Window", String.valueOf(rateLimitConfig.getWindowSizeInSeconds()));
-            
+            response.setHeader("X-RateLimit-Limit", String.valueOf(rule.getCapacity()));
+            response.setHeader("X-RateLimit-Window", String.valueOf(rule.getWindowSizeInSeconds()));
+
             throw new RateLimitExceededException(
-                "Rate limit exceeded. Maximum " + rateLimitConfig.getMaxRequests() + 
-                " requests per " + rateLimitConfig.getWindowSizeInSeconds() + " seconds",
+                "Rate limit exceeded. Maximum " + rule.getCapacity() +
+                " requests per " + rule.getWindowSizeInSeconds() + " seconds",
                 retryAfter
             );
         }
 
         // Set rate limit headers
-        response.setHeader("X-RateLimit-Limit", String.valueOf(rateLimitConfig.getMaxRequests()));
-        response.setHeader("X-RateLimit-Window", String.valueOf(rateLimitConfig.getWindowSizeInSeconds()));
-        
+        response.setHeader("X-RateLimit-Limit", String.valueOf(rule.getCapacity()));
+        response.setHeader("X-RateLimit-Window", String.valueOf(rule.getWindowSizeInSeconds()));
+
+        if (delayMillis > 0) {
+            request.setAttribute(DELAYED_KEY_ATTRIBUTE, key);
+            delay(request, response, rule, delayMillis);
+            return false;
+        }
+        acquireConcurrencySlot(request, policy, key);
         return true;
     }
 
-    private String getRateLimitKey(HttpServletRequest request) {
-        if (rateLimitConfig.isPerIp()) {
-            return getClientIpAddress(request);
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) {
+        // The handler went async: release once the async request is done, however it ends
+        Object permit = request.getAttribute(KeyedConcurrencyLimiter.PERMIT_ATTRIBUTE);
+        if (permit instanceof KeyedConcurrencyLimiter.Permit && request.isAsyncStarted()) {
+            request.getAsyncContext().addListener(new PermitReleasingListener((KeyedConcurrencyLimiter.Permit) permit));
+        }
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.isAsyncStarted()) {
+            afterConcurrentHandlingStarted(request, response, handler);
+            return;
+        }
+        Object permit = request.getAttribute(KeyedConcurrencyLimiter.PERMIT_ATTRIBUTE);
+        if (permit instanceof KeyedConcurrencyLimiter.Permit) {
+            ((KeyedConcurrencyLimiter.Permit) permit).release();
+            request.removeAttribute(KeyedConcurrencyLimiter.PERMIT_ATTRIBUTE);
+        }
+    }
+
+    /**
+     * Take an in-flight slot for the key if the policy caps concurrent requests
+     *
+     * @throws RateLimitExceededException if the key already has the maximum number of requests in flight
+     */
+    private void acquireConcurrencySlot(HttpServletRequest request, RateLimitPolicy policy, String key) {
+        int limit = policy.getMaxConcurrentRequests();
+        if (limit <= 0 || request.getAttribute(KeyedConcurrencyLimiter.PERMIT_ATTRIBUTE) != null) {
+            return;
         }
-        return "global";
+        KeyedConcurrencyLimiter.Permit permit = concurrencyLimiter.tryAcquire(key, limit);
+        if (permit == null) {
+            if (concurrencyRejectedLog.shouldLog(key)) {
+                log.warn("Concurrent request limit reached for key: {} - {} requests in flight",
+                        rateLimitService.describeKey(request, policy), limit);
+            }
+            throw new RateLimitExceededException(
+                "Too many concurrent requests. Maximum " + limit + " requests in flight per client",
+                1
+            );
+        }
+        request.setAttribute(KeyedConcurrencyLimiter.PERMIT_ATTRIBUTE, permit);
     }
 
-    private String getClientIpAddress(HttpServletRequest request) {
-        String xForwardedFor = request.getHeader("X-Forwarded-For");
-        if (xForwardedFor != null && !xForwardedFor.isEmpty()) {
-            return xForwardedFor.split(",")[0].trim();
+    /**
+     * Park the request without holding its thread and dispatch it again after the delay;
+     * answered with a 429 if it is still parked when the async timeout expires
+     */
+    private void delay(HttpServletRequest request, HttpServletResponse response, RateLimitRule rule, long delayMillis) {
+        // The async dispatch skips the authentication filters; let the security filter chain restore the context
+        SecurityContext securityContext = SecurityContextHolder.getContext();
+        if (securityContext.getAuthentication() != null) {
+            securityContextRepository.saveContext(securityContext, request, response);
+        }
+
+        AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(delayMillis + ASYNC_TIMEOUT_MARGIN_MS);
+        asyncContext.addListener(new DelayTimeoutListener(rule));
+        if (log.isDebugEnabled()) {
+            log.debug("Rate limit reached, delaying request {} by {}ms", request.getRequestURI(), delayMillis);
         }
-        
-        String xRealIp = request.getHeader("X-Real-IP");
-        if (xRealIp != null && !xRealIp.isEmpty()) {
-            return xRealIp;
+        try {
+            timerWheel.schedule(asyncContext::dispatch, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            // Shutting down: serve it now rather than leave it parked
+            asyncContext.dispatch();
+        }
+    }
+
+    /**
+     * Cost from a {@link RateLimitCost} annotation on the handler, otherwise the policy cost
+     */
+    private int getBaseCost(Object handler, RateLimitPolicy policy) {
+        if (!(handler instanceof HandlerMethod)) {
+            return policy.getCost();
+        }
+        HandlerMethod handlerMethod = (HandlerMethod) handler;
+        int annotated = annotatedCosts.computeIfAbsent(handlerMethod.getMethod(), method -> {
+            RateLimitCost cost = AnnotatedElementUtils.findMergedAnnotation(method, RateLimitCost.class);
+            if (cost == null) {
+                cost = AnnotatedElementUtils.findMergedAnnotation(handlerMethod.getBeanType(), RateLimitCost.class);
+            }
+            return cost != null ? Math.max(1, cost.value()) : 0;
+        });
+        return annotated > 0 ? annotated : policy.getCost();
+    }
+
+    /**
+     * Answers a delayed request that was never dispatched again, e.g. because the timer
+     * wheel stopped, with a 429 instead of the container's timeout error. Its permits
+     * were already taken, so the client is told to retry right after.
+     */
+    private static final class DelayTimeoutListener implements AsyncListener {
+        private final RateLimitRule rule;
+
+        private DelayTimeoutListener(RateLimitRule rule) {
+            this.rule = rule;
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) throws IOException {
+            HttpServletResponse response = (HttpServletResponse) event.getSuppliedResponse();
+            if (!response.isCommitted()) {
+                String message = "Rate limit exceeded. Maximum " + rule.getCapacity() +
+                        " requests per " + rule.getWindowSizeInSeconds() + " seconds";
+                response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+                response.setHeader("Retry-After", "1");
+                response.setHeader("X-RateLimit-Limit", String.valueOf(rule.getCapacity()));
+                response.setHeader("X-RateLimit-Window", String.valueOf(rule.getWindowSizeInSeconds()));
+                response.setContentType("application/json");
+                response.getWriter().write("{\"statusCode\":429,\"data\":{\"error\":\"Too Many Requests\",\"message\":\""
+                        + message + "\",\"retryAfterSeconds\":1},\"message\":\"" + message + "\"}");
+            }
+            event.getAsyncContext().complete();
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+    }
+
+    private static final class PermitReleasingListener implements AsyncListener {
+        private final KeyedConcurrencyLimiter.Permit permit;
+
+        private PermitReleasingListener(KeyedConcurrencyLimiter.Permit permit) {
+            this.permit = permit;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            permit.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            permit.release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
         }
-        
-        return request.getRemoteAddr();
     }
 }
@@ -1,26 +1,50 @@
 package io.commoncore.interceptor;
 
-import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import io.commoncore.config.CommonCoreProperties;
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 /**
- * Utility class for masking sensitive data in logs
+ * Utility class for masking sensitive data in logs.
+ * <p>
+ * JSON bodies are masked in one streaming pass: tokens are copied from a parser over
+ * the raw bytes straight to a generator, values of sensitive fields are replaced on
+ * the way and the copy stops once {@code max-body-size} bytes have been read. No tree
+ * and no decoded copy of the body is built. Other content falls back to one
+ * precompiled pattern matching all sensitive fields.
+ * <p>
+ * Field and header names are checked against all sensitive fields in one pass by a
+ * {@link SensitiveFieldMatcher}.
  */
 @Component
 @Slf4j
-@RequiredArgsConstructor
 public class SensitiveDataMasker {
 
+    private static final String TRUNCATED_SUFFIX = "...[truncated]";
+
     private final CommonCoreProperties properties;
-    private final ObjectMapper objectMapper;
+    private final JsonFactory jsonFactory;
+    private volatile CompiledFields compiledFields;
+
+    public SensitiveDataMasker(CommonCoreProperties properties, ObjectMapper objectMapper) {
+        this.properties = properties;
+        this.jsonFactory = objectMapper.getFactory();
+        this.compiledFields = new CompiledFields(properties.getLogging().getSensitiveFields());
+    }
 
     /**
      * Mask sensitive data in JSON string
@@ -29,60 +53,83 @@ public class SensitiveDataMasker {
         if (jsonString == null || jsonString.isEmpty()) {
             return jsonString;
         }
+        return maskSensitiveData(jsonString.getBytes(StandardCharsets.UTF_8));
+    }
 
-        try {
-            JsonNode jsonNode = objectMapper.readTree(jsonString);
-            maskJsonNode(jsonNode);
-            return objectMapper.writeValueAsString(jsonNode);
-        } catch (Exception e) {
-            // If not valid JSON, try regex-based masking
-            return maskString(jsonString);
+    /**
+     * Mask sensitive data in a raw body, e.g. from a body capture wrapper,
+     * truncated to {@code max-body-size} bytes
+     */
+    public String maskSensitiveData(byte[] content) {
+        if (content == null || content.length == 0) {
+            return "";
+        }
+        int maxBodySize = Math.max(0, properties.getLogging().getMaxBodySize());
+        if (isJson(content)) {
+            String masked = maskJson(content, maxBodySize);
+            if (masked != null) {
+                return masked;
+            }
         }
+        // If not valid JSON, try regex-based masking
+        boolean truncated = content.length > maxBodySize;
+        String text = new String(content, 0, truncated ? maxBodySize : content.length, StandardCharsets.UTF_8);
+        return maskString(text) + (truncated ? TRUNCATED_SUFFIX : "");
     }
 
     /**
-     * Mask sensitive fields in JSON node recursively
+     * Copy the JSON token by token, masking sensitive values
+     *
+     * @return null if the content is not valid JSON and not longer than max-body-size
      */
-    private void maskJsonNode(JsonNode node) {
-        if (node.isObject()) {
-            node.fields().forEachRemaining(entry -> {
-                String key = entry.getKey().toLowerCase();
-                JsonNode value = entry.getValue();
-
-                // Check if field name matches sensitive field patterns
-                if (isSensitiveField(key)) {
-                    if (value.isTextual()) {
-                        ((com.fasterxml.jackson.databind.node.ObjectNode) node)
-                                .put(entry.getKey(), properties.getLogging().getMaskPattern());
-                    } else if (value.isArray() || value.isObject()) {
-                        ((com.fasterxml.jackson.databind.node.ObjectNode) node)
-                                .put(entry.getKey(), properties.getLogging().getMaskPattern());
-                    }
-                } else if (value.isObject() || value.isArray()) {
-                    maskJsonNode(value);
+    private String maskJson(byte[] content, int maxBodySize) {
+        StringWriter writer = new StringWriter(Math.min(content.length, maxBodySize) + 16);
+        boolean truncated = false;
+        try (JsonParser parser = jsonFactory.createParser(content, 0, content.length);
+             JsonGenerator generator = jsonFactory.createGenerator(writer)) {
+            // A truncated copy ends where it stopped instead of being closed as if complete
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_JSON_CONTENT);
+            JsonToken token;
+            while ((token = parser.nextToken()) != null) {
+                if (token == JsonToken.VALUE_STRING) {
+                    // Strings are decoded lazily: read to the closing quote so a long value
+                    // starting below the limit is not copied past it
+                    parser.finishToken();
+                }
+                if (parser.currentLocation().getByteOffset() > maxBodySize) {
+                    truncated = true;
+                    break;
                 }
-            });
-        } else if (node.isArray()) {
-            node.forEach(this::maskJsonNode);
+                if (token == JsonToken.FIELD_NAME && isSensitiveField(parser.currentName())) {
+                    generator.writeFieldName(parser.currentName());
+                    parser.nextToken();
+                    parser.skipChildren();
+                    generator.writeString(properties.getLogging().getMaskPattern());
+                } else {
+                    generator.copyCurrentEventExact(parser);
+                }
+            }
+        } catch (IOException e) {
+            if (content.length <= maxBodySize) {
+                return null;
+            }
+            // A captured body cut mid-token: keep what was copied up to the last complete token
+            truncated = true;
         }
+        return truncated ? writer + TRUNCATED_SUFFIX : writer.toString();
     }
 
     /**
      * Mask sensitive data in plain string using regex
      */
     private String maskString(String text) {
-        String masked = text;
-        for (String sensitiveField : properties.getLogging().getSensitiveFields()) {
-            // Pattern: "fieldName": "value" or fieldName=value
-            Pattern pattern = Pattern.compile(
-                    "(?i)(\"?" + Pattern.quote(sensitiveField) + "\"?\\s*[:=]\\s*\"?)([^\",\\s}]+)(\"?)",
-                    Pattern.CASE_INSENSITIVE
-            );
-            masked = pattern.matcher(masked).replaceAll(
-                    "$1" + properties.getLogging().getMaskPattern() + "$3"
-            );
+        Pattern pattern = compiledFields().pattern;
+        if (pattern == null) {
+            return text;
         }
-        return masked;
+        return pattern.matcher(text).replaceAll(
+                "$1" + Matcher.quoteReplacement(properties.getLogging().getMaskPattern()) + "$3"
+        );
     }
 
     /**
@@ -91,8 +138,7 @@ public class SensitiveDataMasker {
     public Map<String, String> maskHeaders(Map<String, String> headers) {
         Map<String, String> maskedHeaders = new HashMap<>();
         for (Map.Entry<String, String> entry : headers.entrySet()) {
-            String key = entry.getKey().toLowerCase();
-            if (isSensitiveField(key)) {
+            if (isSensitiveField(entry.getKey())) {
                 maskedHeaders.put(entry.getKey(), properties.getLogging().getMaskPattern());
             } else {
                 maskedHeaders.put(entry.getKey(), entry.getValue());
@@ -105,8 +151,55 @@ public class SensitiveDataMasker {
      * Check if field name matches sensitive field patterns
      */
     private boolean isSensitiveField(String fieldName) {
-        String lowerFieldName = fieldName.toLowerCase();
-        return properties.getLogging().getSensitiveFields().stream()
-                .anyMatch(sensitive -> lowerFieldName.contains(sensitive.toLowerCase()));
+        return compiledFields().matcher.matches(fieldName);
+    }
+
+    /**
+     * Matchers for the configured sensitive fields, recompiled when the list is replaced,
+     * e.g. by a configuration refresh
+     */
+    private CompiledFields compiledFields() {
+        CompiledFields compiled = compiledFields;
+        List<String> fields = properties.getLogging().getSensitiveFields();
+        if (compiled.fields != fields) {
+            compiled = new CompiledFields(fields);
+            compiledFields = compiled;
+        }
+        return compiled;
+    }
+
+    /**
+     * Whether the content starts like a JSON object or array
+     */
+    private static boolean isJson(byte[] content) {
+        for (byte b : content) {
+            if (b == '{' || b == '[') {
+                return true;
+            }
+            if (b != ' ' && b != '\t' && b != '\r' && b != '\n') {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    private static final class CompiledFields {
+        private final List<String> fields;
+        private final SensitiveFieldMatcher matcher;
+        private final Pattern pattern;
+
+        private CompiledFields(List<String> fields) {
+            this.fields = fields;
+            this.matcher = new SensitiveFieldMatcher(fields);
+            StringBuilder alternatives = new StringBuilder();
+            for (int i = 0; i < fields.size(); i++) {
+                alternatives.append(i > 0 ? "|" : "").append(Pattern.quote(fields.get(i)));
+            }
+            // Pattern: "fieldName": "value" or fieldName=value
+            this.pattern = fields.isEmpty() ? null : Pattern.compile(
+                    "(\"?(?:" + alternatives + ")\"?\\s*[:=]\\s*\"?)([^\",\\s}]+)(\"?)",
+                    Pattern.CASE_INSENSITIVE
+            );
+        }
     }
 }
@@ -0,0 +1,130 @@
+package io.commoncore.interceptor;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * Case-insensitive substring matcher over a fixed set of terms, compiled once into an
+ * Aho-Corasick automaton.
+ * <p>
+ * {@link #matches} walks the name one character at a time through a fully resolved
+ * transition table, so a name is checked against all terms in one pass, without
+ * lowercasing it or allocating anything.
+ */
+final class SensitiveFieldMatcher {
+
+    private static final int ASCII = 128;
+
+    /**
+     * Column of each ASCII character in the transition table, 0 for characters in no term
+     */
+    private final int[] asciiColumns = new int[ASCII];
+    /**
+     * Sorted non-ASCII characters of the terms; their columns follow the ASCII ones
+     */
+    private final char[] otherChars;
+    private final int[] otherColumns;
+    private final int columns;
+    private final int[][] transitions;
+    private final boolean[] accepting;
+
+    SensitiveFieldMatcher(List<String> terms) {
+        // Alphabet: every distinct character of the lowercased terms
+        StringBuilder others = new StringBuilder();
+        int nextColumn = 1;
+        for (String term : terms) {
+            for (int i = 0; i < term.length(); i++) {
+                char c = Character.toLowerCase(term.charAt(i));
+                if (c < ASCII) {
+                    if (asciiColumns[c] == 0) {
+                        asciiColumns[c] = nextColumn++;
+                    }
+                } else if (others.indexOf(String.valueOf(c)) < 0) {
+                    others.append(c);
+                }
+            }
+        }
+        this.otherChars = others.toString().toCharArray();
+        Arrays.sort(otherChars);
+        this.otherColumns = new int[otherChars.length];
+        for (int i = 0; i < otherChars.length; i++) {
+            otherColumns[i] = nextColumn++;
+        }
+        this.columns = nextColumn;
+
+        // Trie of the terms; state 0 is the root
+        List<int[]> trie = new ArrayList<>();
+        List<Boolean> ends = new ArrayList<>();
+        trie.add(new int[columns]);
+        ends.add(false);
+        for (String term : terms) {
+            int state = 0;
+            for (int i = 0; i < term.length(); i++) {
+                int column = column(Character.toLowerCase(term.charAt(i)));
+                if (trie.get(state)[column] == 0) {
+                    trie.get(state)[column] = trie.size();
+                    trie.add(new int[columns]);
+                    ends.add(false);
+                }
+                state = trie.get(state)[column];
+            }
+            ends.set(state, true);
+        }
+
+        // Breadth-first over the trie: missing transitions follow the failure link,
+        // and a state accepts if any suffix of it is a term
+        this.transitions = trie.toArray(new int[0][]);
+        this.accepting = new boolean[transitions.length];
+        for (int s = 0; s < accepting.length; s++) {
+            accepting[s] = ends.get(s);
+        }
+        int[] failure = new int[transitions.length];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 1; c < columns; c++) {
+            if (transitions[0][c] != 0) {
+                queue.add(transitions[0][c]);
+            }
+        }
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            accepting[state] |= accepting[failure[state]];
+            for (int c = 1; c < columns; c++) {
+                int child = transitions[state][c];
+                if (child != 0) {
+                    failure[child] = transitions[failure[state]][c];
+                    queue.add(child);
+                } else {
+                    transitions[state][c] = transitions[failure[state]][c];
+                }
+            }
+        }
+    }
+
+    /**
+     * Whether the name contains any of the terms, ignoring case
+     */
+    boolean matches(CharSequence name) {
+        if (accepting[0]) {
+            return true;
+        }
+        int state = 0;
+        for (int i = 0; i < name.length(); i++) {
+            state = transitions[state][column(Character.toLowerCase(name.charAt(i)))];
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int column(char c) {
+        if (c < ASCII) {
+            return asciiColumns[c];
+        }
+        int index = Arrays.binarySearch(otherChars, c);
+        return index >= 0 ? otherColumns[index] : 0;
+    }
+}
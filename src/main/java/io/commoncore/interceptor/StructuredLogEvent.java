@@ -0,0 +1,67 @@
+package io.commoncore.interceptor;
+
+import java.util.Map;
+
+/**
+ * One structured request, response or performance log line, captured on the request thread and
+ * serialized by the log writer. Instances live in the slots of {@link AsyncLogPipeline}
+ * and are reused; everything is cleared by {@link #reset()} once the line is written.
+ */
+final class StructuredLogEvent {
+
+    /**
+     * Sequence of the ring buffer slot currently holding the event
+     */
+    long sequence;
+
+    /**
+     * "request", "response" or "performance"; null for an event that failed to fill and is skipped
+     */
+    String type;
+    boolean error;
+    long timestamp;
+    String requestId;
+    String method;
+    String uri;
+    String queryString;
+    String remoteAddr;
+    String remoteHost;
+    String userAgent;
+    int status;
+    long duration;
+    Map<String, String> headers;
+    /**
+     * Captured request body, logged with the response once the handler has read it
+     */
+    byte[] requestBody;
+    byte[] body;
+    String errorMessage;
+    String errorType;
+    /**
+     * Resource readings of a performance event; null when not monitored
+     */
+    Long memoryUsed;
+    Long cpuTimeUsed;
+
+    void reset() {
+        type = null;
+        error = false;
+        timestamp = 0;
+        requestId = null;
+        method = null;
+        uri = null;
+        queryString = null;
+        remoteAddr = null;
+        remoteHost = null;
+        userAgent = null;
+        status = 0;
+        duration = 0;
+        headers = null;
+        requestBody = null;
+        body = null;
+        errorMessage = null;
+        errorType = null;
+        memoryUsed = null;
+        cpuTimeUsed = null;
+    }
+}
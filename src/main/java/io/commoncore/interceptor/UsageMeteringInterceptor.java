@@ -0,0 +1,64 @@
+package io.commoncore.interceptor;
+
+import io.commoncore.config.BodyCaptureResponseWrapper;
+import io.commoncore.ratelimit.RateLimitService;
+import io.commoncore.usage.UsageMeter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.HandlerMapping;
+import org.springframework.web.util.WebUtils;
+
+/**
+ * Counts completed requests and their bytes per client and route for usage metering.
+ * Clients are identified by {@link RateLimitService#resolveClientIdentity}: the JWT subject,
+ * or the API key once the API key filter accepted it. Anonymous requests and requests
+ * rejected before the handler, e.g. by rate limiting, are not counted.
+ */
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "commoncore.usage.enabled", havingValue = "true", matchIfMissing = false)
+public class UsageMeteringInterceptor implements HandlerInterceptor {
+
+    private final UsageMeter usageMeter;
+    private final RateLimitService rateLimitService;
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        // Async requests are counted when their async dispatch completes
+        if (request.isAsyncStarted()) {
+            return;
+        }
+        String clientKey = rateLimitService.resolveClientIdentity(request);
+        if (clientKey == null) {
+            return;
+        }
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        String route = request.getMethod() + " " + (pattern != null ? pattern : "/**");
+        usageMeter.record(clientKey, route, Math.max(0, request.getContentLengthLong()), getResponseBytes(response));
+    }
+
+    /**
+     * Response size as far as known: the bytes written if BodyCaptureFilter is active,
+     * otherwise the Content-Length header (0 for chunked responses)
+     */
+    private static long getResponseBytes(HttpServletResponse response) {
+        BodyCaptureResponseWrapper capturedResponse =
+                WebUtils.getNativeResponse(response, BodyCaptureResponseWrapper.class);
+        if (capturedResponse != null) {
+            return capturedResponse.getContentSize();
+        }
+        String contentLength = response.getHeader("Content-Length");
+        if (contentLength == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(contentLength);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,195 @@
+package io.commoncore.logging;
+
+import io.commoncore.config.CommonCoreProperties;
+import org.slf4j.Logger;
+import org.slf4j.event.Level;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.UnaryOperator;
+
+/**
+ * Keeps CommonCore's own per-request log sites from flooding the log under load.
+ * <p>
+ * A log site is a logger plus a message template. Each site logs its first
+ * {@code max-per-interval} messages of an interval as usual; further messages are only
+ * counted, together with a few sample keys (e.g. client keys or URIs), and reported in
+ * one summary line when the interval ends. Counting is lock-free, so a suppressed
+ * message costs a couple of atomic operations and no formatting or appender I/O.
+ * <pre>
+ * private final LogThrottle.Site rejectedLog = logThrottle.site(log, Level.WARN, "Rate limit exceeded for key: {}");
+ *
+ * if (rejectedLog.shouldLog(key)) {
+ *     log.warn("Rate limit exceeded for key: {}", key);
+ * }
+ * </pre>
+ */
+@Component
+public class LogThrottle implements DisposableBean {
+
+    private final CommonCoreProperties.Logging.Throttle config;
+    private final long intervalNanos;
+    private final ConcurrentHashMap<String, Site> sites = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService executor;
+
+    public LogThrottle(CommonCoreProperties properties) {
+        this.config = properties.getLogging().getThrottle();
+        this.intervalNanos = TimeUnit.SECONDS.toNanos(Math.max(1, config.getIntervalSeconds()));
+
+        if (config.isEnabled()) {
+            // Reports the last interval of a storm that has stopped
+            executor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "commoncore-log-throttle");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.scheduleWithFixedDelay(this::flush, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+        } else {
+            executor = null;
+        }
+    }
+
+    /**
+     * The site for a logger and message template; look it up once and keep it in a field
+     */
+    public Site site(Logger logger, Level level, String template) {
+        return site(logger, level, template, UnaryOperator.identity());
+    }
+
+    /**
+     * @param describeSample turns a sample key into its readable form, only when a summary is logged
+     */
+    public Site site(Logger logger, Level level, String template, UnaryOperator<String> describeSample) {
+        return sites.computeIfAbsent(logger.getName() + '\0' + template,
+                name -> new Site(logger, level, template, describeSample,
+                        config.isEnabled() ? config.getMaxPerInterval() : Integer.MAX_VALUE,
+                        Math.max(0, config.getSampleKeys())));
+    }
+
+    /**
+     * Report every site whose interval has ended
+     */
+    void flush() {
+        long now = System.nanoTime();
+        for (Site site : sites.values()) {
+            site.rollIfDue(now);
+        }
+    }
+
+    /**
+     * Report what is still pending
+     */
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (Site site : sites.values()) {
+            site.roll(site.windowEnd.get());
+        }
+    }
+
+    /**
+     * One throttled log site
+     */
+    public final class Site {
+
+        private final Logger logger;
+        private final Level level;
+        private final String template;
+        private final UnaryOperator<String> describeSample;
+        private final int maxPerInterval;
+        private final AtomicLong windowEnd;
+        private final AtomicInteger logged = new AtomicInteger();
+        private final AtomicLong suppressed = new AtomicLong();
+        private final AtomicReferenceArray<String> samples;
+
+        private Site(Logger logger, Level level, String template, UnaryOperator<String> describeSample,
+                     int maxPerInterval, int sampleKeys) {
+            this.logger = logger;
+            this.level = level;
+            this.template = template;
+            this.describeSample = describeSample;
+            this.maxPerInterval = maxPerInterval;
+            this.windowEnd = new AtomicLong(System.nanoTime() + intervalNanos);
+            this.samples = new AtomicReferenceArray<>(sampleKeys);
+        }
+
+        /**
+         * Whether to log this occurrence; if not, it is counted for the interval summary
+         *
+         * @param sampleKey what this occurrence is about, listed in the summary (may be null)
+         */
+        public boolean shouldLog(String sampleKey) {
+            if (maxPerInterval == Integer.MAX_VALUE) {
+                return true;
+            }
+            rollIfDue(System.nanoTime());
+            // Read first, so a storm does not keep incrementing a contended counter
+            if (logged.get() < maxPerInterval && logged.incrementAndGet() <= maxPerInterval) {
+                return true;
+            }
+            suppressed.incrementAndGet();
+            addSample(sampleKey);
+            return false;
+        }
+
+        private void addSample(String sampleKey) {
+            if (sampleKey == null) {
+                return;
+            }
+            for (int i = 0; i < samples.length(); i++) {
+                String sample = samples.get(i);
+                if (sample == null) {
+                    if (samples.compareAndSet(i, null, sampleKey)) {
+                        return;
+                    }
+                    sample = samples.get(i);
+                }
+                if (sampleKey.equals(sample)) {
+                    return;
+                }
+            }
+        }
+
+        private void rollIfDue(long now) {
+            long end = windowEnd.get();
+            if (now - end >= 0) {
+                roll(end);
+            }
+        }
+
+        /**
+         * Start the next interval and report the one that ended; only one thread wins the roll
+         */
+        private void roll(long end) {
+            if (!windowEnd.compareAndSet(end, System.nanoTime() + intervalNanos)) {
+                return;
+            }
+            long count = suppressed.getAndSet(0);
+            List<String> sampleKeys = new ArrayList<>(samples.length());
+            for (int i = 0; i < samples.length(); i++) {
+                String sample = samples.getAndSet(i, null);
+                if (sample != null) {
+                    sampleKeys.add(describeSample.apply(sample));
+                }
+            }
+            logged.set(0);
+
+            if (count > 0) {
+                logger.atLevel(level).log("Suppressed {} more \"{}\" messages in the last {}s{}",
+                        count, template, TimeUnit.NANOSECONDS.toSeconds(intervalNanos),
+                        sampleKeys.isEmpty() ? "" : " (e.g. " + String.join(", ", sampleKeys) + ")");
+            }
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package io.commoncore.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of requests in flight, adjusting the limit from measured
+ * round trip times instead of a fixed requests-per-window value.
+ * <p>
+ * Callers take a {@link Permit} before handling a request and release it with the
+ * observed round trip time when done. While latency stays near its long term average
+ * the limit grows; when a dependency slows down the limit shrinks, so excess requests
+ * are rejected up front instead of queueing on server threads.
+ * <p>
+ * Releasing a permit only adds the sample to a lock-free window. The limit is
+ * recomputed from the window once it holds {@value #SAMPLES_PER_UPDATE} samples or is
+ * {@value #MAX_WINDOW_MILLIS} ms old, by whichever releasing thread gets there first;
+ * other threads never wait for it.
+ */
+public class AdaptiveConcurrencyLimiter {
+
+    /**
+     * Request attribute holding the {@link Permit} of the current request
+     */
+    public static final String PERMIT_ATTRIBUTE = AdaptiveConcurrencyLimiter.class.getName() + ".PERMIT";
+
+    /**
+     * Samples averaged into the long term round trip time
+     */
+    private static final int LONG_WINDOW = 600;
+
+    /**
+     * Samples per limit update
+     */
+    static final int SAMPLES_PER_UPDATE = 32;
+
+    /**
+     * Longest time samples are collected before the limit is updated, for low traffic
+     */
+    static final long MAX_WINDOW_MILLIS = 100;
+
+    private static final long MAX_WINDOW_NANOS = TimeUnit.MILLISECONDS.toNanos(MAX_WINDOW_MILLIS);
+
+    private final ConcurrencyLimitAlgorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long timeoutNanos;
+    private final double backoffRatio;
+    private final double tolerance;
+    private final double smoothing;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong rejectedCount = new AtomicLong();
+    private final AtomicReference<SampleWindow> window = new AtomicReference<>(new SampleWindow());
+    private final AtomicBoolean updating = new AtomicBoolean();
+    private volatile int limit;
+
+    // Only accessed by the thread holding updating
+    private double estimatedLimit;
+    private double longRttNanos;
+
+    /**
+     * @param algorithm     how the limit reacts to samples
+     * @param initialLimit  limit used until samples arrive
+     * @param minLimit      the limit never drops below this
+     * @param maxLimit      the limit never grows above this
+     * @param timeoutMillis AIMD: round trip time treated like an error
+     * @param backoffRatio  AIMD: factor applied to the limit on errors (0.5 - 1.0)
+     * @param tolerance     GRADIENT: how much slower than the long term average a sample may be
+     *                      before the limit shrinks (at least 1.0)
+     * @param smoothing     GRADIENT: weight of a new limit estimate (0.0 - 1.0)
+     */
+    public AdaptiveConcurrencyLimiter(ConcurrencyLimitAlgorithm algorithm, int initialLimit, int minLimit, int maxLimit,
+                                      long timeoutMillis, double backoffRatio, double tolerance, double smoothing) {
+        if (algorithm == null) {
+            throw new IllegalArgumentException("algorithm must not be null");
+        }
+        if (minLimit <= 0 || maxLimit < minLimit) {
+            throw new IllegalArgumentException("limits must satisfy 0 < minLimit <= maxLimit");
+        }
+        if (initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("initialLimit must be between minLimit and maxLimit");
+        }
+        if (backoffRatio < 0.5 || backoffRatio >= 1.0) {
+            throw new IllegalArgumentException("backoffRatio must be in [0.5, 1.0)");
+        }
+        if (tolerance < 1.0) {
+            throw new IllegalArgumentException("tolerance must be at least 1.0");
+        }
+        if (smoothing <= 0.0 || smoothing > 1.0) {
+            throw new IllegalArgumentException("smoothing must be in (0.0, 1.0]");
+        }
+        this.algorithm = algorithm;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.backoffRatio = backoffRatio;
+        this.tolerance = tolerance;
+        this.smoothing = smoothing;
+        this.limit = initialLimit;
+        this.estimatedLimit = initialLimit;
+    }
+
+    /**
+     * Take a slot if fewer than {@link #getLimit()} requests are in flight
+     *
+     * @return the permit to release when the request completes, or null if the limit is reached
+     */
+    public Permit tryAcquire() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                rejectedCount.incrementAndGet();
+                return null;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        return new Permit(current + 1);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    public ConcurrencyLimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    private void onSample(long rttNanos, int inFlightAtStart, boolean dropped) {
+        SampleWindow current = window.get();
+        current.add(rttNanos, inFlightAtStart, dropped, limit);
+        if (current.isComplete() && updating.compareAndSet(false, true)) {
+            try {
+                if (window.get() == current && window.compareAndSet(current, new SampleWindow())) {
+                    update(current);
+                }
+            } finally {
+                updating.set(false);
+            }
+        }
+    }
+
+    private void update(SampleWindow samples) {
+        long count = samples.count.sum();
+        if (count == 0) {
+            return;
+        }
+        long maxInFlight = samples.maxInFlight.get();
+        boolean dropped = samples.drops.sum() > 0;
+        double next = algorithm == ConcurrencyLimitAlgorithm.AIMD
+                ? aimd(samples.maxRttNanos.get(), samples.utilized.sum(), dropped)
+                : gradient(samples.rttSumNanos.sum() / count, count, maxInFlight, dropped);
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, next));
+        limit = (int) estimatedLimit;
+    }
+
+    /**
+     * @param utilized samples that arrived while at least half of the limit was in use
+     */
+    private double aimd(long maxRttNanos, long utilized, boolean dropped) {
+        if (dropped || (timeoutNanos > 0 && maxRttNanos > timeoutNanos)) {
+            return estimatedLimit * backoffRatio;
+        }
+        // Grow by one per sample, but only when the current limit is actually being used
+        return estimatedLimit + utilized;
+    }
+
+    private double gradient(long rttNanos, long samples, long maxInFlight, boolean dropped) {
+        if (rttNanos <= 0) {
+            return estimatedLimit;
+        }
+        if (longRttNanos == 0) {
+            longRttNanos = rttNanos;
+        } else {
+            // Same decay as averaging every sample into the long term round trip time one by one
+            double weight = 1 - Math.pow(1 - 2.0 / (LONG_WINDOW + 1), samples);
+            longRttNanos += (rttNanos - longRttNanos) * weight;
+        }
+
+        // Latency improved a lot (e.g. after a slow dependency recovered): let the average catch up
+        if (longRttNanos / rttNanos > 2.0) {
+            longRttNanos *= 0.95;
+        }
+
+        // Little load, nothing learned about the real capacity
+        if (!dropped && maxInFlight < estimatedLimit / 2) {
+            return estimatedLimit;
+        }
+
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longRttNanos / rttNanos));
+        double queueSize = Math.sqrt(estimatedLimit);
+        double newLimit = estimatedLimit * gradient + queueSize;
+        return estimatedLimit * (1 - smoothing) + newLimit * smoothing;
+    }
+
+    /**
+     * Samples collected since the last limit update; written concurrently without locking
+     */
+    private static final class SampleWindow {
+        private final long startNanos = System.nanoTime();
+        private final LongAdder count = new LongAdder();
+        private final LongAdder rttSumNanos = new LongAdder();
+        private final LongAccumulator maxRttNanos = new LongAccumulator(Math::max, 0);
+        private final LongAccumulator maxInFlight = new LongAccumulator(Math::max, 0);
+        private final LongAdder utilized = new LongAdder();
+        private final LongAdder drops = new LongAdder();
+
+        void add(long rttNanos, int inFlightAtStart, boolean dropped, int limit) {
+            rttSumNanos.add(rttNanos);
+            maxRttNanos.accumulate(rttNanos);
+            maxInFlight.accumulate(inFlightAtStart);
+            if (inFlightAtStart * 2 >= limit) {
+                utilized.increment();
+            }
+            if (dropped) {
+                drops.increment();
+            }
+            count.increment();
+        }
+
+        boolean isComplete() {
+            return count.sum() >= SAMPLES_PER_UPDATE || System.nanoTime() - startNanos >= MAX_WINDOW_NANOS;
+        }
+    }
+
+    /**
+     * One in-flight slot; releasing it more than once has no effect
+     */
+    public final class Permit {
+        private final int inFlightAtStart;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int inFlightAtStart) {
+            this.inFlightAtStart = inFlightAtStart;
+        }
+
+        /**
+         * Free the slot and feed the round trip time into the limit
+         *
+         * @param rttNanos round trip time of the request
+         * @param dropped  whether the request failed in a way that signals overload
+         */
+        public void release(long rttNanos, boolean dropped) {
+            if (!released.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            onSample(rttNanos, inFlightAtStart, dropped);
+        }
+
+        public boolean isReleased() {
+            return released.get();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package io.commoncore.ratelimit;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link RateLimiter} for callers that would rather wait for a permit than be
+ * rejected, e.g. outbound calls paced to a partner's quota.
+ * <p>
+ * Permits are reserved ahead, so concurrent callers queue up behind each other
+ * instead of all retrying when the window opens; a caller then only sleeps until
+ * its own permit is due. Stores that cannot reserve ahead (Redis) are polled at
+ * their retry-after time instead. Reserved permits are spent even if the caller
+ * gives up waiting, as the request slot has already been promised to it.
+ * <p>
+ * Keys are prefixed with the limiter name, so limiters sharing a store never share buckets.
+ */
+public class BlockingRateLimiter {
+
+    private final String keyPrefix;
+    private final RateLimiter rateLimiter;
+    private final TimerWheel timerWheel;
+
+    /**
+     * @param name        prefix for the keys of this limiter in the store
+     * @param rateLimiter limiter holding the rule and the store
+     * @param timerWheel  timer completing the futures of {@link #acquireAsync}
+     */
+    public BlockingRateLimiter(String name, RateLimiter rateLimiter, TimerWheel timerWheel) {
+        this.keyPrefix = name + ":";
+        this.rateLimiter = rateLimiter;
+        this.timerWheel = timerWheel;
+    }
+
+    /**
+     * Take the permits if they are available right now, without waiting
+     */
+    public boolean tryAcquire(String key, int permits) {
+        return rateLimiter.tryAcquire(keyPrefix + key, permits);
+    }
+
+    /**
+     * Wait as long as it takes for the permits
+     */
+    public void acquire(String key, int permits) throws InterruptedException {
+        tryAcquire(key, permits, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Wait for the permits, but not longer than the timeout
+     *
+     * @return false, without waiting, if the permits will not be available within the timeout
+     */
+    public boolean tryAcquire(String key, int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        String storeKey = keyPrefix + key;
+        long timeoutNanos = unit.toNanos(Math.max(0, timeout));
+        long start = System.nanoTime();
+        while (true) {
+            long remainingMillis = TimeUnit.NANOSECONDS.toMillis(timeoutNanos - (System.nanoTime() - start));
+            long waitMillis = rateLimiter.reserve(storeKey, permits, Math.max(0, remainingMillis));
+            if (waitMillis >= 0) {
+                if (waitMillis > 0) {
+                    TimeUnit.MILLISECONDS.sleep(waitMillis);
+                }
+                return true;
+            }
+            long retryMillis = Math.max(1, rateLimiter.getRetryAfterMillis(storeKey, permits));
+            if (retryMillis > remainingMillis) {
+                return false;
+            }
+            TimeUnit.MILLISECONDS.sleep(retryMillis);
+        }
+    }
+
+    /**
+     * Reserve the permits without blocking the calling thread. The future completes on
+     * the timer thread once they are due, so chain slow work with the {@code *Async}
+     * methods of {@link CompletableFuture}. Cancelling it does not give the permits back.
+     */
+    public CompletableFuture<Void> acquireAsync(String key, int permits) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        acquireAsync(keyPrefix + key, permits, future);
+        return future;
+    }
+
+    private void acquireAsync(String storeKey, int permits, CompletableFuture<Void> future) {
+        if (future.isDone()) {
+            return;
+        }
+        try {
+            long waitMillis = rateLimiter.reserve(storeKey, permits, Long.MAX_VALUE);
+            if (waitMillis == 0) {
+                future.complete(null);
+            } else if (waitMillis > 0) {
+                timerWheel.schedule(() -> future.complete(null), waitMillis, TimeUnit.MILLISECONDS);
+            } else {
+                long retryMillis = Math.max(1, rateLimiter.getRetryAfterMillis(storeKey, permits));
+                timerWheel.schedule(() -> acquireAsync(storeKey, permits, future), retryMillis, TimeUnit.MILLISECONDS);
+            }
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    public RateLimitRule getRule() {
+        return rateLimiter.getRule();
+    }
+}
@@ -0,0 +1,60 @@
+package io.commoncore.ratelimit;
+
+/**
+ * Per-key state of an in-memory rate limit
+ */
+interface Bucket {
+
+    boolean tryConsume(int permits);
+
+    /**
+     * Take the permits now, or reserve them for the earliest moment they become available
+     *
+     * @param maxWaitNanos longest acceptable wait, 0 to only take permits available now
+     * @return nanoseconds until the permits may be used (0 = now), or -1 if that would
+     * exceed {@code maxWaitNanos}, in which case nothing is taken
+     */
+    long reserve(int permits, long maxWaitNanos);
+
+    long getRetryAfterMillis(int permits);
+
+    /**
+     * {@link System#nanoTime()} instant at which the bucket is full again,
+     * i.e. indistinguishable from a freshly created one
+     */
+    long getFullAtNanos();
+
+    RateLimitRule getRule();
+
+    /**
+     * Tokens left in the current window (token bucket only)
+     */
+    int getTokens();
+
+    /**
+     * {@link System#nanoTime()} instant the state is anchored to:
+     * the last refill for token buckets, the theoretical arrival time for GCRA
+     */
+    long getStateNanos();
+
+    static Bucket create(RateLimitRule rule) {
+        if (rule.isComposite()) {
+            return new CompositeBucket(rule);
+        }
+        if (rule.getAlgorithm() == RateLimitAlgorithm.GCRA) {
+            return new GcraBucket(rule);
+        }
+        return new TokenBucket(rule);
+    }
+
+    /**
+     * Recreate a bucket from the values of {@link #getTokens()} and {@link #getStateNanos()};
+     * composite rules cannot be restored this way
+     */
+    static Bucket restore(RateLimitRule rule, int tokens, long stateNanos) {
+        if (rule.getAlgorithm() == RateLimitAlgorithm.GCRA) {
+            return new GcraBucket(rule, stateNanos);
+        }
+        return new TokenBucket(rule, tokens, stateNanos);
+    }
+}
@@ -0,0 +1,153 @@
+package io.commoncore.ratelimit;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Bucket of a composite rule: all windows share one immutable state array that is
+ * replaced with a single compare-and-set, so a request is either charged to every
+ * window or to none of them. A per-second window can therefore never spend permits
+ * that the daily window then refuses.
+ * <p>
+ * With GCRA the state holds one theoretical arrival time per window; with token
+ * buckets it holds the start and the consumed permits of each fixed window, where
+ * consumed counts above the capacity are permits reserved in later windows.
+ */
+class CompositeBucket implements Bucket {
+
+    private final RateLimitRule rule;
+    private final boolean gcra;
+    private final int[] capacities;
+    private final long[] windowNanos;
+    private final long[] emissionIntervalNanos;
+    private final AtomicReference<long[]> state;
+
+    CompositeBucket(RateLimitRule rule) {
+        this.rule = rule;
+        this.gcra = rule.getAlgorithm() == RateLimitAlgorithm.GCRA;
+        List<RateLimitRule> limits = rule.getLimits();
+        this.capacities = new int[limits.size()];
+        this.windowNanos = new long[limits.size()];
+        this.emissionIntervalNanos = new long[limits.size()];
+        for (int i = 0; i < limits.size(); i++) {
+            RateLimitRule limit = limits.get(i);
+            capacities[i] = limit.getCapacity();
+            windowNanos[i] = TimeUnit.SECONDS.toNanos(limit.getWindowSizeInSeconds());
+            emissionIntervalNanos[i] = Math.max(1, windowNanos[i] / capacities[i]);
+        }
+
+        long now = System.nanoTime();
+        long[] initial = new long[gcra ? limits.size() : limits.size() * 2];
+        for (int i = 0; i < limits.size(); i++) {
+            if (gcra) {
+                initial[i] = now;
+            } else {
+                initial[i * 2] = now;
+            }
+        }
+        this.state = new AtomicReference<>(initial);
+    }
+
+    @Override
+    public boolean tryConsume(int permits) {
+        return reserve(permits, 0) >= 0;
+    }
+
+    @Override
+    public long reserve(int permits, long maxWaitNanos) {
+        while (true) {
+            long now = System.nanoTime();
+            long[] current = state.get();
+            long[] next = new long[current.length];
+            long waitNanos = advance(current, next, permits, now);
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            if (state.compareAndSet(current, next)) {
+                return Math.max(0, waitNanos);
+            }
+        }
+    }
+
+    /**
+     * The binding window decides: the wait is the longest of all windows
+     */
+    @Override
+    public long getRetryAfterMillis(int permits) {
+        long[] current = state.get();
+        long waitNanos = advance(current, new long[current.length], permits, System.nanoTime());
+        return waitNanos <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999);
+    }
+
+    /**
+     * Write the state after taking {@code permits} into {@code next}
+     *
+     * @return how long the request would have to wait for its binding window
+     */
+    private long advance(long[] current, long[] next, int permits, long now) {
+        long waitNanos = Long.MIN_VALUE;
+        for (int i = 0; i < capacities.length; i++) {
+            long windowWait;
+            if (gcra) {
+                long tat = (current[i] - now > 0 ? current[i] : now) + emissionIntervalNanos[i] * permits;
+                windowWait = tat - now - emissionIntervalNanos[i] * capacities[i];
+                next[i] = tat;
+            } else {
+                long windowStart = current[i * 2];
+                long consumed = current[i * 2 + 1];
+                long windows = (now - windowStart) / windowNanos[i];
+                if (windows > 0) {
+                    consumed = Math.max(0, consumed - windows * capacities[i]);
+                    windowStart = now;
+                }
+                windowWait = 0;
+                if (consumed + permits > capacities[i]) {
+                    long windowsAhead = (consumed + permits - 1) / capacities[i];
+                    windowWait = windowStart + windowsAhead * windowNanos[i] - now;
+                }
+                next[i * 2] = windowStart;
+                next[i * 2 + 1] = consumed + permits;
+            }
+            waitNanos = Math.max(waitNanos, windowWait);
+        }
+        return waitNanos;
+    }
+
+    @Override
+    public long getFullAtNanos() {
+        long[] current = state.get();
+        long fullAt = Long.MIN_VALUE;
+        for (int i = 0; i < capacities.length; i++) {
+            long windowFullAt;
+            if (gcra) {
+                windowFullAt = current[i];
+            } else {
+                long consumed = current[i * 2 + 1];
+                windowFullAt = current[i * 2] + windowNanos[i] * ((consumed + capacities[i] - 1) / capacities[i]);
+            }
+            if (fullAt == Long.MIN_VALUE || windowFullAt - fullAt > 0) {
+                fullAt = windowFullAt;
+            }
+        }
+        return fullAt;
+    }
+
+    @Override
+    public RateLimitRule getRule() {
+        return rule;
+    }
+
+    /**
+     * Not meaningful for several windows; composite buckets are not snapshotted
+     */
+    @Override
+    public int getTokens() {
+        return 0;
+    }
+
+    @Override
+    public long getStateNanos() {
+        return getFullAtNanos();
+    }
+}
@@ -0,0 +1,19 @@
+package io.commoncore.ratelimit;
+
+/**
+ * Algorithms supported by {@link AdaptiveConcurrencyLimiter}
+ */
+public enum ConcurrencyLimitAlgorithm {
+
+    /**
+     * Compares the latest round trip time with a long term average and scales
+     * the limit by their ratio, plus a small queue allowance for probing
+     */
+    GRADIENT,
+
+    /**
+     * Additive increase, multiplicative decrease: grow by one while healthy,
+     * back off by a fixed ratio on errors or slow responses
+     */
+    AIMD
+}
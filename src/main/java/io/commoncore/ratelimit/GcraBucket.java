@@ -0,0 +1,93 @@
+package io.commoncore.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Generic Cell Rate Algorithm bucket.
+ * The whole state is one "theoretical arrival time" (TAT): the instant at which
+ * the bucket would be full again. Each request pushes the TAT forward by one
+ * emission interval, and a request is allowed as long as the TAT stays within
+ * the burst tolerance of now. Refill is therefore continuous, there is no window
+ * boundary to burst across, and a request is only rejected when it really
+ * exceeds the rate (a lost CAS race is simply retried).
+ */
+class GcraBucket implements Bucket {
+
+    private final RateLimitRule rule;
+    private final long emissionIntervalNanos;
+    private final long delayToleranceNanos;
+    private final AtomicLong theoreticalArrivalTime;
+
+    public GcraBucket(RateLimitRule rule) {
+        this(rule, System.nanoTime());
+    }
+
+    /**
+     * Bucket resuming from a saved theoretical arrival time
+     */
+    GcraBucket(RateLimitRule rule, long theoreticalArrivalNanos) {
+        this.rule = rule;
+        this.emissionIntervalNanos = Math.max(1, TimeUnit.SECONDS.toNanos(rule.getWindowSizeInSeconds()) / rule.getCapacity());
+        this.delayToleranceNanos = emissionIntervalNanos * rule.getCapacity();
+        this.theoreticalArrivalTime = new AtomicLong(theoreticalArrivalNanos);
+    }
+
+    @Override
+    public boolean tryConsume(int permits) {
+        return reserve(permits, 0) >= 0;
+    }
+
+    /**
+     * Reserving ahead simply lets the TAT run further than the burst tolerance;
+     * the excess is the time the caller has to wait.
+     */
+    @Override
+    public long reserve(int permits, long maxWaitNanos) {
+        long increment = emissionIntervalNanos * permits;
+        while (true) {
+            long now = System.nanoTime();
+            long tat = theoreticalArrivalTime.get();
+            long newTat = (tat - now > 0 ? tat : now) + increment;
+            long waitNanos = newTat - now - delayToleranceNanos;
+            if (waitNanos > maxWaitNanos) {
+                return -1;
+            }
+            if (theoreticalArrivalTime.compareAndSet(tat, newTat)) {
+                return Math.max(0, waitNanos);
+            }
+        }
+    }
+
+    @Override
+    public long getRetryAfterMillis(int permits) {
+        long waitNanos = theoreticalArrivalTime.get() + emissionIntervalNanos * permits - delayToleranceNanos - System.nanoTime();
+        if (waitNanos <= 0) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999);
+    }
+
+    @Override
+    public long getFullAtNanos() {
+        return theoreticalArrivalTime.get();
+    }
+
+    @Override
+    public RateLimitRule getRule() {
+        return rule;
+    }
+
+    /**
+     * Not used by GCRA, the arrival time alone is the state
+     */
+    @Override
+    public int getTokens() {
+        return 0;
+    }
+
+    @Override
+    public long getStateNanos() {
+        return theoreticalArrivalTime.get();
+    }
+}
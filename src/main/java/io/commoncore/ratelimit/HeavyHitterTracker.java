@@ -0,0 +1,197 @@
+package io.commoncore.ratelimit;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Approximate top-N of the most frequent keys in fixed memory.
+ * <p>
+ * Frequencies are estimated with a Count-Min sketch (never under-counted, rarely
+ * over-counted); the keys worth reporting are kept in a small set-associative
+ * candidate table where a new key replaces the weakest candidate of its group once
+ * its estimate is higher. Updates are plain atomic adds and compare-and-sets, so
+ * recording never blocks. All counts are halved every decay interval, which turns
+ * the totals into a recent rate.
+ */
+public class HeavyHitterTracker {
+
+    private static final int DEPTH = 4;
+    private static final int GROUP_SIZE = 4;
+
+    private final AtomicLongArray sketch;
+    private final int widthMask;
+    private final int widthShift;
+    private final AtomicReferenceArray<Candidate> candidates;
+    private final int groupMask;
+    private final long decayIntervalNanos;
+    private final AtomicLong nextDecayAt;
+
+    /**
+     * @param candidates    keys kept as top-N candidates, a few times the N that will be asked for
+     * @param width         counters per sketch row; more means fewer over-counts
+     * @param decayInterval time after which all counts are halved, zero to never decay
+     */
+    public HeavyHitterTracker(int candidates, int width, long decayInterval, TimeUnit unit) {
+        int sketchWidth = Integer.highestOneBit(Math.max(64, width) * 2 - 1);
+        int candidateCount = Integer.highestOneBit(Math.max(GROUP_SIZE, candidates) * 2 - 1);
+        this.sketch = new AtomicLongArray(DEPTH * sketchWidth);
+        this.widthMask = sketchWidth - 1;
+        this.widthShift = Integer.numberOfTrailingZeros(sketchWidth);
+        this.candidates = new AtomicReferenceArray<>(candidateCount);
+        this.groupMask = candidateCount / GROUP_SIZE - 1;
+        this.decayIntervalNanos = unit.toNanos(Math.max(0, decayInterval));
+        this.nextDecayAt = new AtomicLong(System.nanoTime() + decayIntervalNanos);
+    }
+
+    /**
+     * Count one occurrence of the key
+     */
+    public void record(String key) {
+        record(key, 1);
+    }
+
+    /**
+     * Count {@code weight} occurrences of the key
+     */
+    public void record(String key, long weight) {
+        decayIfDue();
+        long hash = mix(key.hashCode());
+
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.addAndGet(index(hash, row), weight));
+        }
+        offer(key, hash, estimate);
+    }
+
+    /**
+     * Estimated recent count of the key
+     */
+    public long estimate(String key) {
+        long hash = mix(key.hashCode());
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            estimate = Math.min(estimate, sketch.get(index(hash, row)));
+        }
+        return estimate;
+    }
+
+    /**
+     * Up to {@code n} keys with the highest estimated counts, highest first
+     */
+    public List<HeavyHitter> top(int n) {
+        List<HeavyHitter> result = new ArrayList<>();
+        for (int i = 0; i < candidates.length(); i++) {
+            Candidate candidate = candidates.get(i);
+            if (candidate != null) {
+                long estimate = estimate(candidate.key);
+                if (estimate > 0) {
+                    result.add(new HeavyHitter(candidate.key, estimate));
+                }
+            }
+        }
+        result.sort(Comparator.comparingLong(HeavyHitter::getEstimate).reversed());
+        return result.size() > n ? new ArrayList<>(result.subList(0, n)) : result;
+    }
+
+    private void offer(String key, long hash, long estimate) {
+        int group = (int) (hash >>> 32) & groupMask;
+        int base = group * GROUP_SIZE;
+
+        int weakestIndex = -1;
+        Candidate weakest = null;
+        for (int i = base; i < base + GROUP_SIZE; i++) {
+            Candidate candidate = candidates.get(i);
+            if (candidate == null) {
+                if (candidates.compareAndSet(i, null, new Candidate(key, hash, estimate))) {
+                    return;
+                }
+                candidate = candidates.get(i);
+            }
+            if (candidate.hash == hash && candidate.key.equals(key)) {
+                candidate.estimate = estimate;
+                return;
+            }
+            if (weakest == null || candidate.estimate < weakest.estimate) {
+                weakest = candidate;
+                weakestIndex = i;
+            }
+        }
+        if (weakest != null && estimate > weakest.estimate) {
+            // Losing this race only means another heavy key got the slot
+            candidates.compareAndSet(weakestIndex, weakest, new Candidate(key, hash, estimate));
+        }
+    }
+
+    private void decayIfDue() {
+        if (decayIntervalNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long due = nextDecayAt.get();
+        if (now - due < 0 || !nextDecayAt.compareAndSet(due, now + decayIntervalNanos)) {
+            return;
+        }
+        for (int i = 0; i < sketch.length(); i++) {
+            sketch.getAndUpdate(i, count -> count >>> 1);
+        }
+        for (int i = 0; i < candidates.length(); i++) {
+            Candidate candidate = candidates.get(i);
+            if (candidate != null) {
+                candidate.estimate >>>= 1;
+            }
+        }
+    }
+
+    private int index(long hash, int row) {
+        // Derive one column per row from the 64-bit hash (Kirsch-Mitzenmacher)
+        long h = (hash & 0xFFFFFFFFL) + row * (hash >>> 32);
+        return (row << widthShift) | ((int) (h ^ (h >>> widthShift)) & widthMask);
+    }
+
+    private static long mix(long hash) {
+        hash *= 0x9e3779b97f4a7c15L;
+        hash ^= hash >>> 32;
+        hash *= 0xc2b2ae3d27d4eb4fL;
+        hash ^= hash >>> 29;
+        return hash;
+    }
+
+    private static final class Candidate {
+        private final String key;
+        private final long hash;
+        private volatile long estimate;
+
+        private Candidate(String key, long hash, long estimate) {
+            this.key = key;
+            this.hash = hash;
+            this.estimate = estimate;
+        }
+    }
+
+    /**
+     * A key and its estimated recent count
+     */
+    public static final class HeavyHitter {
+        private final String key;
+        private final long estimate;
+
+        public HeavyHitter(String key, long estimate) {
+            this.key = key;
+            this.estimate = estimate;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public long getEstimate() {
+            return estimate;
+        }
+    }
+}
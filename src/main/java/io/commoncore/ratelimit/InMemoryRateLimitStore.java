@@ -0,0 +1,326 @@
+package io.commoncore.ratelimit;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Process-local {@link RateLimitStore}: a bounded map from key to bucket.
+ * <p>
+ * Buckets that are full again and have stayed idle for the configured timeout are
+ * expired by a background cleanup task, which also keeps the number of keys below the
+ * hard cap by evicting the buckets that are closest to being full again. When a new
+ * key arrives while the store is at the cap anyway, e.g. during a flood of distinct
+ * keys, it evicts one bucket inline: out of a few of the oldest keys, the one closest
+ * to being full again, whose place in the insertion order the new key takes. New clients therefore always get a bucket of their own and are
+ * never rejected together with a flood; what a flood can do is make old buckets be
+ * forgotten early. Lookups never wait for the cleanup task.
+ */
+public class InMemoryRateLimitStore implements RateLimitStore {
+
+    /**
+     * Rough heap cost of one entry: map node, key string, bucket and its atomics
+     */
+    static final long ESTIMATED_ENTRY_BYTES = 160;
+
+    private static final int EVICTION_SAMPLE_SIZE = 1024;
+    private static final double LOW_WATERMARK = 0.9;
+
+    /**
+     * Oldest keys compared when a new key has to make room for itself
+     */
+    private static final int INLINE_EVICTION_CANDIDATES = 8;
+
+    /**
+     * Ring slots looked at to find those candidates, some of them being stale
+     */
+    private static final int INLINE_EVICTION_SCAN = 4 * INLINE_EVICTION_CANDIDATES;
+
+    private final ConcurrentHashMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final int maxKeys;
+
+    /**
+     * Keys in insertion order, overwritten round-robin: the slot the cursor points at
+     * and the ones after it hold the oldest keys. Slots of keys removed meanwhile are stale.
+     */
+    private final AtomicReferenceArray<String> insertionOrder;
+    private final AtomicLong insertions = new AtomicLong();
+    private final long idleTimeoutNanos;
+    private final ScheduledExecutorService cleanupExecutor;
+    private final AtomicBoolean cleanupRequested = new AtomicBoolean();
+
+    private final AtomicLong expiredCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /**
+     * Unbounded store without background cleanup
+     */
+    public InMemoryRateLimitStore() {
+        this(0, Duration.ZERO);
+    }
+
+    /**
+     * @param maxKeys     hard cap on the number of keys, 0 for unbounded
+     * @param idleTimeout how long a full bucket is kept before it expires, zero to keep forever
+     */
+    public InMemoryRateLimitStore(int maxKeys, Duration idleTimeout) {
+        this.maxKeys = Math.max(0, maxKeys);
+        this.insertionOrder = this.maxKeys > 0 ? new AtomicReferenceArray<>(this.maxKeys) : null;
+        this.idleTimeoutNanos = idleTimeout == null ? 0 : Math.max(0, idleTimeout.toNanos());
+
+        if (this.maxKeys > 0 || this.idleTimeoutNanos > 0) {
+            this.cleanupExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "commoncore-ratelimit-cleanup");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long intervalMillis = cleanupIntervalMillis(this.idleTimeoutNanos);
+            cleanupExecutor.scheduleWithFixedDelay(this::cleanup, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        } else {
+            this.cleanupExecutor = null;
+        }
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitRule rule, int permits) {
+        return getOrCreate(key, rule).tryConsume(permits);
+    }
+
+    @Override
+    public long reserve(String key, RateLimitRule rule, int permits, long maxWaitMillis) {
+        long waitNanos = getOrCreate(key, rule).reserve(permits, TimeUnit.MILLISECONDS.toNanos(maxWaitMillis));
+        return waitNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999);
+    }
+
+    @Override
+    public long getRetryAfterMillis(String key, RateLimitRule rule, int permits) {
+        Bucket bucket = buckets.get(key);
+        return bucket != null ? bucket.getRetryAfterMillis(permits) : 0;
+    }
+
+    private Bucket getOrCreate(String key, RateLimitRule rule) {
+        Bucket bucket = buckets.get(key);
+        if (bucket != null) {
+            if (bucket.getRule() == rule || bucket.getRule().equals(rule)) {
+                return bucket;
+            }
+            // Restored from a snapshot under a rule that has changed since
+            Bucket replacement = Bucket.create(rule);
+            return buckets.replace(key, bucket, replacement) ? replacement : getOrCreate(key, rule);
+        }
+        if (maxKeys == 0) {
+            return buckets.computeIfAbsent(key, k -> Bucket.create(rule));
+        }
+
+        int slot = (int) (insertions.getAndIncrement() % maxKeys);
+        int victimSlot = -1;
+        if (buckets.mappingCount() >= maxKeys) {
+            requestCleanup();
+            victimSlot = evictOldest(slot);
+        }
+        Bucket created = Bucket.create(rule);
+        bucket = buckets.putIfAbsent(key, created);
+        if (bucket != null) {
+            return bucket;
+        }
+        // Taking over the evicted key's slot leaves the keys that were compared and kept
+        // behind the cursor, so they are only compared again a full round later and
+        // buckets far from full cannot pile up among the oldest keys
+        insertionOrder.set(victimSlot >= 0 ? victimSlot : slot, key);
+        return created;
+    }
+
+    /**
+     * Make room for a new key: out of the oldest keys, evict the one whose bucket
+     * will be full again soonest, so as little quota as possible is forgiven
+     *
+     * @param slot ring slot the cursor points at; it and the slots after it hold the oldest keys
+     * @return ring slot of the evicted key, -1 if none of the oldest keys was still
+     * tracked and an arbitrary sample of keys was used instead
+     */
+    private int evictOldest(int slot) {
+        String victim = null;
+        Bucket victimBucket = null;
+        int victimSlot = -1;
+        int candidates = 0;
+        for (int i = 0; i < INLINE_EVICTION_SCAN && candidates < INLINE_EVICTION_CANDIDATES; i++) {
+            int candidateSlot = (slot + i) % maxKeys;
+            String key = insertionOrder.get(candidateSlot);
+            Bucket bucket = key != null ? buckets.get(key) : null;
+            if (bucket == null) {
+                continue;
+            }
+            candidates++;
+            if (victimBucket == null || bucket.getFullAtNanos() - victimBucket.getFullAtNanos() < 0) {
+                victim = key;
+                victimBucket = bucket;
+                victimSlot = candidateSlot;
+            }
+        }
+
+        if (victim == null) {
+            victimSlot = -1;
+            for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+                if (victimBucket == null || entry.getValue().getFullAtNanos() - victimBucket.getFullAtNanos() < 0) {
+                    victim = entry.getKey();
+                    victimBucket = entry.getValue();
+                }
+                if (++candidates == INLINE_EVICTION_CANDIDATES) {
+                    break;
+                }
+            }
+        }
+        if (victim != null && buckets.remove(victim, victimBucket)) {
+            evictedCount.incrementAndGet();
+        }
+        return victimSlot;
+    }
+
+    @Override
+    public long size() {
+        return buckets.mappingCount();
+    }
+
+    public int getMaxKeys() {
+        return maxKeys;
+    }
+
+    /**
+     * Approximate heap used by the tracked buckets, in bytes
+     */
+    public long getEstimatedMemoryBytes() {
+        // Plus one reference per key in the insertion order ring
+        return buckets.mappingCount() * ESTIMATED_ENTRY_BYTES + maxKeys * 4L;
+    }
+
+    /**
+     * Buckets removed because they were full and idle
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+
+    /**
+     * Buckets removed early because the key cap was reached, by the cleanup task or
+     * to make room for a new key
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * Live buckets, for snapshots
+     */
+    Iterable<Map.Entry<String, Bucket>> entries() {
+        return buckets.entrySet();
+    }
+
+    /**
+     * Add a bucket restored from a snapshot, unless the key is already in use
+     * or the store is full
+     */
+    boolean restore(String key, Bucket bucket) {
+        if (maxKeys == 0) {
+            return buckets.putIfAbsent(key, bucket) == null;
+        }
+        if (buckets.mappingCount() >= maxKeys || buckets.putIfAbsent(key, bucket) != null) {
+            return false;
+        }
+        insertionOrder.set((int) (insertions.getAndIncrement() % maxKeys), key);
+        return true;
+    }
+
+    @Override
+    public void close() {
+        if (cleanupExecutor != null) {
+            cleanupExecutor.shutdownNow();
+        }
+    }
+
+    private void requestCleanup() {
+        if (cleanupExecutor != null && cleanupRequested.compareAndSet(false, true)) {
+            try {
+                cleanupExecutor.execute(this::cleanup);
+            } catch (RuntimeException e) {
+                cleanupRequested.set(false);
+            }
+        }
+    }
+
+    void cleanup() {
+        cleanupRequested.set(false);
+        long now = System.nanoTime();
+
+        if (idleTimeoutNanos > 0) {
+            for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+                Bucket bucket = entry.getValue();
+                if (now - bucket.getFullAtNanos() >= idleTimeoutNanos && buckets.remove(entry.getKey(), bucket)) {
+                    expiredCount.incrementAndGet();
+                }
+            }
+        }
+
+        if (maxKeys > 0) {
+            long excess = buckets.mappingCount() - (long) (maxKeys * LOW_WATERMARK);
+            if (excess > 0) {
+                evictClosestToFull(excess);
+            }
+        }
+    }
+
+    /**
+     * Evict roughly {@code count} buckets, preferring the ones that will be full
+     * again soonest so that evicting them forgives as little quota as possible.
+     * The cut-off is estimated from a sample instead of sorting every entry.
+     */
+    private void evictClosestToFull(long count) {
+        long size = buckets.mappingCount();
+        long step = Math.max(1, size / EVICTION_SAMPLE_SIZE);
+        long[] sample = new long[EVICTION_SAMPLE_SIZE];
+        int sampled = 0;
+        long index = 0;
+        for (Bucket bucket : buckets.values()) {
+            if (index++ % step == 0) {
+                sample[sampled++] = bucket.getFullAtNanos();
+                if (sampled == sample.length) {
+                    break;
+                }
+            }
+        }
+        if (sampled == 0) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        for (int i = 0; i < sampled; i++) {
+            sample[i] -= now;
+        }
+        Arrays.sort(sample, 0, sampled);
+        int cut = (int) Math.min(sampled - 1, (count * sampled + size - 1) / size);
+        long threshold = sample[cut];
+
+        long evicted = 0;
+        for (Map.Entry<String, Bucket> entry : buckets.entrySet()) {
+            if (evicted >= count) {
+                break;
+            }
+            Bucket bucket = entry.getValue();
+            if (bucket.getFullAtNanos() - now <= threshold && buckets.remove(entry.getKey(), bucket)) {
+                evicted++;
+            }
+        }
+        evictedCount.addAndGet(evicted);
+    }
+
+    private static long cleanupIntervalMillis(long idleTimeoutNanos) {
+        long interval = idleTimeoutNanos > 0 ? TimeUnit.NANOSECONDS.toMillis(idleTimeoutNanos) / 2 : 30_000;
+        return Math.min(60_000, Math.max(1_000, interval));
+    }
+}
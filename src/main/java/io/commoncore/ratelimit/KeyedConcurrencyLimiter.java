@@ -0,0 +1,103 @@
+package io.commoncore.ratelimit;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Caps the number of requests one key may have in flight at the same time, so a
+ * single client with slow requests cannot hold the whole server thread pool.
+ * <p>
+ * Counts live in a fixed array of striped counters indexed by the key hash instead
+ * of a map, so there are no per-key entries that could be left behind when a request
+ * aborts, and memory does not grow with the number of clients. Keys that share a
+ * stripe share its count; with the default number of stripes that is rare and only
+ * ever errs on the strict side. Each {@link Permit} is released at most once.
+ */
+public class KeyedConcurrencyLimiter {
+
+    /**
+     * Request attribute holding the {@link Permit} of the current request
+     */
+    public static final String PERMIT_ATTRIBUTE = KeyedConcurrencyLimiter.class.getName() + ".PERMIT";
+
+    private final AtomicIntegerArray inFlight;
+    private final int mask;
+    private final LongAdder totalInFlight = new LongAdder();
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    /**
+     * @param stripes number of counters, rounded up to a power of two
+     */
+    public KeyedConcurrencyLimiter(int stripes) {
+        int size = Integer.highestOneBit(Math.max(16, stripes) * 2 - 1);
+        this.inFlight = new AtomicIntegerArray(size);
+        this.mask = size - 1;
+    }
+
+    /**
+     * Take a slot for the key if it has fewer than {@code limit} requests in flight
+     *
+     * @return the permit to release when the request completes, or null if the key is at its limit
+     */
+    public Permit tryAcquire(String key, int limit) {
+        int stripe = stripe(key);
+        while (true) {
+            int current = inFlight.get(stripe);
+            if (current >= limit) {
+                rejectedCount.incrementAndGet();
+                return null;
+            }
+            if (inFlight.compareAndSet(stripe, current, current + 1)) {
+                totalInFlight.increment();
+                return new Permit(stripe);
+            }
+        }
+    }
+
+    /**
+     * Requests currently in flight for the key (including keys sharing its stripe)
+     */
+    public int getInFlight(String key) {
+        return inFlight.get(stripe(key));
+    }
+
+    /**
+     * Requests currently holding a permit, over all keys
+     */
+    public long getTotalInFlight() {
+        return totalInFlight.sum();
+    }
+
+    /**
+     * Requests rejected because their key was at its limit
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    private int stripe(String key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    /**
+     * One request's slot; releasing it more than once has no effect
+     */
+    public final class Permit {
+        private final int stripe;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(int stripe) {
+            this.stripe = stripe;
+        }
+
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet(stripe);
+                totalInFlight.decrement();
+            }
+        }
+    }
+}
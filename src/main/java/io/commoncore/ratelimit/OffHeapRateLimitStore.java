@@ -0,0 +1,434 @@
+package io.commoncore.ratelimit;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link RateLimitStore} keeping all state in a fixed size open-addressing hash
+ * table outside the Java heap.
+ * <p>
+ * Each key is reduced to a 128-bit fingerprint and each slot is four longs: the
+ * fingerprint, the packed bucket state and the capacity and window of the rule the
+ * state belongs to. Bucket
+ * updates are a single compare-and-set on the state word, so there are no per-key
+ * objects, no GC tracing and no locks on the request path. Slots of buckets that
+ * are full again, including permits reserved in later windows, and have been idle for
+ * the configured timeout are reused in place by new keys. When a key finds neither its
+ * slot nor a free or idle one within its short probe sequence, e.g. during a flood of
+ * distinct keys, it takes over the slot of the bucket closest to being full again, like
+ * {@link InMemoryRateLimitStore} evicts at its cap. New clients therefore always get a
+ * bucket of their own; a flood can only make old buckets be forgotten early.
+ * <p>
+ * A slot being claimed is marked, and lookups of other threads wait for it to be
+ * published, so concurrent first requests of a key end up in the same slot (unless an
+ * earlier slot of the probe sequence turns idle, or another bucket becomes the closest
+ * to full, between their lookups).
+ */
+public class OffHeapRateLimitStore implements RateLimitStore {
+
+    static final int SLOT_BYTES = 32;
+
+    /**
+     * Largest token bucket capacity that fits the packed state
+     */
+    public static final int MAX_TOKEN_BUCKET_CAPACITY = (1 << 24) - 1;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+
+    private static final int CHUNK_SHIFT = 25;
+    private static final int MAX_PROBES = 32;
+    private static final double LOAD_FACTOR = 0.75;
+
+    private static final int KEY_HIGH = 0;
+    private static final int KEY_LOW = 8;
+    private static final int STATE = 16;
+    private static final int META = 24;
+
+    private static final long EMPTY = 0;
+    private static final long CLAIMING = -1;
+    private static final long LOCKED = Long.MIN_VALUE;
+
+    private static final int TOKEN_BITS = 24;
+    private static final long TOKEN_MASK = (1L << TOKEN_BITS) - 1;
+    private static final long TOKEN_BUCKET_FLAG = Long.MIN_VALUE;
+    private static final int CAPACITY_SHIFT = 63 - TOKEN_BITS;
+    private static final long WINDOW_MASK = (1L << CAPACITY_SHIFT) - 1;
+
+    private static final long REJECTED = -1;
+    private static final long LOST = -2;
+
+    private final ByteBuffer[] chunks;
+    private final long slotMask;
+    private final long chunkSlotMask;
+    private final long baseNanos = System.nanoTime();
+    private final long idleTimeoutNanos;
+
+    private final AtomicLong usedSlots = new AtomicLong();
+    private final AtomicLong reusedCount = new AtomicLong();
+    private final AtomicLong evictedCount = new AtomicLong();
+
+    /**
+     * @param maxKeys     number of keys the table is sized for
+     * @param idleTimeout how long a full bucket keeps its slot before another key may take it,
+     *                    zero to only reuse slots when a probe sequence is full
+     */
+    public OffHeapRateLimitStore(int maxKeys, Duration idleTimeout) {
+        if (maxKeys <= 0) {
+            throw new IllegalArgumentException("Off-heap rate limit store needs a positive maxKeys");
+        }
+        long slots = Long.highestOneBit(Math.max(MAX_PROBES, (long) Math.ceil(maxKeys / LOAD_FACTOR)) * 2 - 1);
+        long slotsPerChunk = Math.min(slots, 1L << CHUNK_SHIFT);
+        this.chunks = new ByteBuffer[(int) (slots / slotsPerChunk)];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = ByteBuffer.allocateDirect((int) (slotsPerChunk * SLOT_BYTES)).order(ByteOrder.nativeOrder());
+        }
+        this.slotMask = slots - 1;
+        this.chunkSlotMask = slotsPerChunk - 1;
+        this.idleTimeoutNanos = idleTimeout == null ? 0 : Math.max(0, idleTimeout.toNanos());
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitRule rule, int permits) {
+        return reserve(key, rule, permits, 0) >= 0;
+    }
+
+    @Override
+    public long reserve(String key, RateLimitRule rule, int permits, long maxWaitMillis) {
+        if (rule.isComposite()) {
+            throw new IllegalArgumentException("Off-heap store keeps one state word per key and does not support composite rules");
+        }
+        if (rule.getAlgorithm() == RateLimitAlgorithm.TOKEN_BUCKET && rule.getCapacity() > MAX_TOKEN_BUCKET_CAPACITY) {
+            throw new IllegalArgumentException("Off-heap token buckets support at most " + MAX_TOKEN_BUCKET_CAPACITY + " permits");
+        }
+        long maxWaitNanos = TimeUnit.MILLISECONDS.toNanos(maxWaitMillis);
+        long high = fingerprintHigh(key);
+        long low = fingerprintLow(key);
+        while (true) {
+            long slot = findOrClaim(high, low, rule);
+            long waitNanos = consume(slot, high, low, rule, permits, maxWaitNanos);
+            if (waitNanos != LOST) {
+                return waitNanos < 0 ? -1 : TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999);
+            }
+            // Slot was taken over by another key while we looked at it
+            Thread.onSpinWait();
+        }
+    }
+
+    @Override
+    public long getRetryAfterMillis(String key, RateLimitRule rule, int permits) {
+        long high = fingerprintHigh(key);
+        long low = fingerprintLow(key);
+        long slot = find(high, low);
+        if (slot < 0) {
+            return 0;
+        }
+        long state = (long) LONGS.getVolatile(chunk(slot), offset(slot) + STATE);
+        if (state == LOCKED) {
+            return 0;
+        }
+        long waitNanos;
+        if (rule.getAlgorithm() == RateLimitAlgorithm.GCRA) {
+            long emissionInterval = emissionIntervalNanos(rule);
+            waitNanos = state + emissionInterval * permits - emissionInterval * rule.getCapacity() - nowNanos();
+        } else {
+            long windowStart = state >>> TOKEN_BITS;
+            long consumed = state & TOKEN_MASK;
+            if (consumed + permits <= rule.getCapacity()) {
+                return 0;
+            }
+            long windowsAhead = (consumed + permits - 1) / rule.getCapacity();
+            waitNanos = TimeUnit.MILLISECONDS.toNanos(windowStart + windowsAhead * rule.getWindowSizeInMillis() - nowMillis());
+        }
+        return waitNanos <= 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999);
+    }
+
+    /**
+     * Number of slots ever claimed; slots reused by other keys are counted once
+     */
+    @Override
+    public long size() {
+        return usedSlots.get();
+    }
+
+    /**
+     * Number of slots in the table
+     */
+    public long getCapacity() {
+        return slotMask + 1;
+    }
+
+    /**
+     * Off-heap memory held by the table, in bytes
+     */
+    public long getAllocatedBytes() {
+        return getCapacity() * SLOT_BYTES;
+    }
+
+    /**
+     * Slots of idle buckets taken over by new keys
+     */
+    public long getReusedCount() {
+        return reusedCount.get();
+    }
+
+    /**
+     * Slots of buckets that were not idle yet, taken over by new keys because their
+     * probe sequence was full
+     */
+    public long getEvictedCount() {
+        return evictedCount.get();
+    }
+
+    /**
+     * @return nanoseconds until the taken permits may be used, {@link #REJECTED}, or
+     * {@link #LOST} if the slot no longer belongs to the key
+     */
+    private long consume(long slot, long high, long low, RateLimitRule rule, int permits, long maxWaitNanos) {
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        boolean gcra = rule.getAlgorithm() == RateLimitAlgorithm.GCRA;
+        long emissionInterval = gcra ? emissionIntervalNanos(rule) : 0;
+        long windowMillis = rule.getWindowSizeInMillis();
+        long capacity = rule.getCapacity();
+
+        while (true) {
+            long state = (long) LONGS.getVolatile(chunk, offset + STATE);
+            if (state == LOCKED
+                    || (long) LONGS.getVolatile(chunk, offset + KEY_HIGH) != high
+                    || (long) LONGS.get(chunk, offset + KEY_LOW) != low) {
+                return LOST;
+            }
+
+            long next;
+            long waitNanos;
+            if (gcra) {
+                long now = nowNanos();
+                long tat = (state > now ? state : now) + emissionInterval * permits;
+                waitNanos = tat - now - emissionInterval * capacity;
+                if (waitNanos > maxWaitNanos) {
+                    return REJECTED;
+                }
+                next = tat;
+            } else {
+                // Consumed counts above the capacity are permits reserved in later windows
+                long now = nowMillis();
+                long windowStart = state >>> TOKEN_BITS;
+                long consumed = state & TOKEN_MASK;
+                long windows = (now - windowStart) / windowMillis;
+                if (windows > 0) {
+                    consumed = Math.max(0, consumed - windows * capacity);
+                    windowStart = now;
+                }
+                waitNanos = 0;
+                if (consumed + permits > capacity) {
+                    long windowsAhead = (consumed + permits - 1) / capacity;
+                    waitNanos = TimeUnit.MILLISECONDS.toNanos(windowStart + windowsAhead * windowMillis - now);
+                    if (waitNanos > maxWaitNanos || consumed + permits > TOKEN_MASK) {
+                        return REJECTED;
+                    }
+                }
+                next = (windowStart << TOKEN_BITS) | (consumed + permits);
+            }
+            if (LONGS.compareAndSet(chunk, offset + STATE, state, next)) {
+                return Math.max(0, waitNanos);
+            }
+        }
+    }
+
+    private long find(long high, long low) {
+        long start = high & slotMask;
+        for (int i = 0; i < MAX_PROBES; i++) {
+            long slot = (start + i) & slotMask;
+            ByteBuffer chunk = chunk(slot);
+            int offset = offset(slot);
+            long key = awaitClaimed(chunk, offset);
+            if (key == EMPTY) {
+                return -1;
+            }
+            if (key == high && (long) LONGS.get(chunk, offset + KEY_LOW) == low) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Slot holding the key, claiming an empty or idle one if the key is new, or else the
+     * one of the bucket closest to being full again
+     */
+    private long findOrClaim(long high, long low, RateLimitRule rule) {
+        while (true) {
+            long start = high & slotMask;
+            long reusable = -1;
+            long reusableKey = 0;
+            long reusableState = 0;
+            long empty = -1;
+            long victim = -1;
+            long victimKey = 0;
+            long victimState = 0;
+            long victimFullAt = 0;
+            for (int i = 0; i < MAX_PROBES; i++) {
+                long slot = (start + i) & slotMask;
+                ByteBuffer chunk = chunk(slot);
+                int offset = offset(slot);
+                long key = awaitClaimed(chunk, offset);
+                if (key == high && (long) LONGS.get(chunk, offset + KEY_LOW) == low) {
+                    return slot;
+                }
+                if (key == EMPTY) {
+                    empty = slot;
+                    break;
+                }
+                if (reusable < 0) {
+                    long state = (long) LONGS.getVolatile(chunk, offset + STATE);
+                    if (state == LOCKED) {
+                        continue;
+                    }
+                    long fullAt = fullAtNanos(state, (long) LONGS.get(chunk, offset + META));
+                    if (idleTimeoutNanos > 0 && nowNanos() - fullAt >= idleTimeoutNanos) {
+                        reusable = slot;
+                        reusableKey = key;
+                        reusableState = state;
+                    } else if (victim < 0 || fullAt - victimFullAt < 0) {
+                        victim = slot;
+                        victimKey = key;
+                        victimState = state;
+                        victimFullAt = fullAt;
+                    }
+                }
+            }
+
+            if (reusable >= 0) {
+                if (reuse(reusable, reusableKey, reusableState, high, low, rule)) {
+                    reusedCount.incrementAndGet();
+                    return reusable;
+                }
+            } else if (empty >= 0) {
+                if (claimEmpty(empty, high, low, rule)) {
+                    return empty;
+                }
+            } else if (victim >= 0) {
+                // Forgive as little quota as possible
+                if (reuse(victim, victimKey, victimState, high, low, rule)) {
+                    evictedCount.incrementAndGet();
+                    return victim;
+                }
+            }
+            // Lost a race for the slot, look again
+        }
+    }
+
+    private boolean claimEmpty(long slot, long high, long low, RateLimitRule rule) {
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        if (!LONGS.compareAndSet(chunk, offset + KEY_HIGH, EMPTY, CLAIMING)) {
+            return false;
+        }
+        publish(chunk, offset, high, low, rule);
+        usedSlots.incrementAndGet();
+        return true;
+    }
+
+    private boolean reuse(long slot, long expectedKey, long expectedState, long high, long low, RateLimitRule rule) {
+        ByteBuffer chunk = chunk(slot);
+        int offset = offset(slot);
+        // Marking the key first makes other new keys wait for this one instead of probing past it
+        if (!LONGS.compareAndSet(chunk, offset + KEY_HIGH, expectedKey, CLAIMING)) {
+            return false;
+        }
+        // Locking the state makes in-flight updates of the previous key fail
+        if (!LONGS.compareAndSet(chunk, offset + STATE, expectedState, LOCKED)) {
+            LONGS.setVolatile(chunk, offset + KEY_HIGH, expectedKey);
+            return false;
+        }
+        publish(chunk, offset, high, low, rule);
+        return true;
+    }
+
+    private void publish(ByteBuffer chunk, int offset, long high, long low, RateLimitRule rule) {
+        boolean gcra = rule.getAlgorithm() == RateLimitAlgorithm.GCRA;
+        LONGS.set(chunk, offset + KEY_LOW, low);
+        LONGS.set(chunk, offset + META, gcra ? rule.getWindowSizeInMillis()
+                : TOKEN_BUCKET_FLAG | (long) rule.getCapacity() << CAPACITY_SHIFT | (rule.getWindowSizeInMillis() & WINDOW_MASK));
+        LONGS.setVolatile(chunk, offset + STATE, gcra ? nowNanos() : nowMillis() << TOKEN_BITS);
+        LONGS.setVolatile(chunk, offset + KEY_HIGH, high);
+    }
+
+    /**
+     * When the bucket is full again, on the {@link #nowNanos()} clock
+     */
+    private static long fullAtNanos(long state, long meta) {
+        if ((meta & TOKEN_BUCKET_FLAG) == 0) {
+            return state;
+        }
+        // Permits reserved above the capacity are paid back one window after another
+        long windowStart = state >>> TOKEN_BITS;
+        long consumed = state & TOKEN_MASK;
+        long capacity = (meta & ~TOKEN_BUCKET_FLAG) >>> CAPACITY_SHIFT;
+        long windowsOwed = (consumed + capacity - 1) / capacity;
+        return TimeUnit.MILLISECONDS.toNanos(windowStart + windowsOwed * (meta & WINDOW_MASK));
+    }
+
+    /**
+     * The key of the slot, once a thread claiming it has published it
+     */
+    private static long awaitClaimed(ByteBuffer chunk, int offset) {
+        long key;
+        while ((key = (long) LONGS.getVolatile(chunk, offset + KEY_HIGH)) == CLAIMING) {
+            Thread.onSpinWait();
+        }
+        return key;
+    }
+
+    private ByteBuffer chunk(long slot) {
+        return chunks[(int) (slot >>> CHUNK_SHIFT)];
+    }
+
+    private int offset(long slot) {
+        return (int) (slot & chunkSlotMask) * SLOT_BYTES;
+    }
+
+    private long nowNanos() {
+        return System.nanoTime() - baseNanos;
+    }
+
+    private long nowMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(nowNanos());
+    }
+
+    private static long emissionIntervalNanos(RateLimitRule rule) {
+        return Math.max(1, TimeUnit.SECONDS.toNanos(rule.getWindowSizeInSeconds()) / rule.getCapacity());
+    }
+
+    private static long fingerprintHigh(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        hash = mix(hash ^ key.length());
+        // 0 and -1 mark empty and claiming slots
+        return hash == EMPTY || hash == CLAIMING ? 1 : hash;
+    }
+
+    private static long fingerprintLow(String key) {
+        long hash = 0x9e3779b97f4a7c15L;
+        for (int i = key.length() - 1; i >= 0; i--) {
+            hash = (hash + key.charAt(i)) * 0xc2b2ae3d27d4eb4fL;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,274 @@
+package io.commoncore.ratelimit;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Ant-style path patterns compiled into a segment trie.
+ * <p>
+ * Literal segments are looked up in a hash map, {@code *} and {@code {var}} match any
+ * single segment, segments such as {@code *.csv} are matched as globs and {@code **}
+ * matches any number of segments. Other segments with variables, such as
+ * {@code {id}.json}, {@code v{version}} or {@code {id:\d+}}, are matched as regular
+ * expressions the way {@code AntPathMatcher} builds them. A path is walked segment by
+ * segment, so the cost depends on the path length rather than on the number of patterns.
+ */
+public class PathPatternTrie {
+
+    private static final int[] NO_PATTERNS = new int[0];
+
+    /**
+     * Wildcards and variables within a segment, as in {@code AntPathMatcher}
+     */
+    private static final Pattern SEGMENT_WILDCARDS = Pattern.compile("\\?|\\*|\\{((?:\\{[^/]+?}|[^/{}]|\\\\[{}])+?)}");
+
+    private final int size;
+    private final Node root = new Node(false);
+
+    public PathPatternTrie(List<String> patterns) {
+        this.size = patterns.size();
+        for (int i = 0; i < patterns.size(); i++) {
+            insert(patterns.get(i), i);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Whether any pattern matches the path
+     */
+    public boolean matches(String path) {
+        return firstMatch(path, index -> true) >= 0;
+    }
+
+    /**
+     * Lowest index of a pattern matching the path and accepted by the filter
+     *
+     * @param path   request path within the application, without query string
+     * @param accept extra condition on the pattern index (e.g. HTTP method)
+     * @return the pattern index or -1 if none matches
+     */
+    public int firstMatch(String path, IntPredicate accept) {
+        if (size == 0) {
+            return -1;
+        }
+
+        List<Node> current = new ArrayList<>(4);
+        addWithClosure(current, root);
+        List<Node> next = new ArrayList<>(4);
+
+        int length = path.length();
+        int start = 0;
+        while (start < length && !current.isEmpty()) {
+            int end = path.indexOf('/', start);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > start) {
+                String segment = path.substring(start, end);
+                next.clear();
+                for (Node node : current) {
+                    step(node, segment, next);
+                }
+                List<Node> swap = current;
+                current = next;
+                next = swap;
+            }
+            start = end + 1;
+        }
+
+        int best = Integer.MAX_VALUE;
+        for (Node node : current) {
+            // indexes are sorted, so the first accepted one is the node's best
+            for (int index : node.patternIndexes) {
+                if (index >= best) {
+                    break;
+                }
+                if (accept.test(index)) {
+                    best = index;
+                    break;
+                }
+            }
+        }
+        return best == Integer.MAX_VALUE ? -1 : best;
+    }
+
+    private static void step(Node node, String segment, List<Node> next) {
+        Node literal = node.literals.get(segment);
+        if (literal != null) {
+            addWithClosure(next, literal);
+        }
+        if (node.anySegment != null) {
+            addWithClosure(next, node.anySegment);
+        }
+        for (int i = 0; i < node.globs.size(); i++) {
+            if (globMatches(node.globs.get(i), segment)) {
+                addWithClosure(next, node.globNodes.get(i));
+            }
+        }
+        for (int i = 0; i < node.regexes.size(); i++) {
+            if (node.regexes.get(i).matcher(segment).matches()) {
+                addWithClosure(next, node.regexNodes.get(i));
+            }
+        }
+        if (node.anyPath) {
+            // '**' keeps consuming segments
+            addWithClosure(next, node);
+        }
+    }
+
+    /**
+     * Add the node and every '**' node reachable from it without consuming a segment
+     */
+    private static void addWithClosure(List<Node> states, Node node) {
+        for (Node existing : states) {
+            if (existing == node) {
+                return;
+            }
+        }
+        states.add(node);
+        if (node.anyPathChild != null) {
+            addWithClosure(states, node.anyPathChild);
+        }
+    }
+
+    private void insert(String pattern, int patternIndex) {
+        Node node = root;
+        for (String segment : pattern.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            node = node.child(segment);
+        }
+        int[] indexes = Arrays.copyOf(node.patternIndexes, node.patternIndexes.length + 1);
+        indexes[indexes.length - 1] = patternIndex;
+        node.patternIndexes = indexes;
+    }
+
+    /**
+     * Glob match of a single segment, supporting '*' and '?'
+     */
+    static boolean globMatches(String glob, String text) {
+        int g = 0;
+        int t = 0;
+        int starG = -1;
+        int starT = 0;
+        while (t < text.length()) {
+            if (g < glob.length() && (glob.charAt(g) == '?' || glob.charAt(g) == text.charAt(t))) {
+                g++;
+                t++;
+            } else if (g < glob.length() && glob.charAt(g) == '*') {
+                starG = g++;
+                starT = t;
+            } else if (starG >= 0) {
+                g = starG + 1;
+                t = ++starT;
+            } else {
+                return false;
+            }
+        }
+        while (g < glob.length() && glob.charAt(g) == '*') {
+            g++;
+        }
+        return g == glob.length();
+    }
+
+    /**
+     * Regular expression for a segment with variables: '?' and '*' as in globs,
+     * {@code {name}} matching anything and {@code {name:regex}} matching the regex
+     */
+    static Pattern segmentRegex(String segment) {
+        StringBuilder regex = new StringBuilder();
+        Matcher matcher = SEGMENT_WILDCARDS.matcher(segment);
+        int end = 0;
+        while (matcher.find()) {
+            regex.append(quote(segment, end, matcher.start()));
+            String match = matcher.group();
+            if ("?".equals(match)) {
+                regex.append('.');
+            } else if ("*".equals(match)) {
+                regex.append(".*");
+            } else {
+                int colon = match.indexOf(':');
+                regex.append(colon < 0 ? "((?s).*)" : "(" + match.substring(colon + 1, match.length() - 1) + ")");
+            }
+            end = matcher.end();
+        }
+        regex.append(quote(segment, end, segment.length()));
+        return Pattern.compile(regex.toString(), Pattern.DOTALL);
+    }
+
+    private static String quote(String s, int start, int end) {
+        return start == end ? "" : Pattern.quote(s.substring(start, end));
+    }
+
+    /**
+     * A segment that is a single variable without a regex, e.g. {@code {id}}
+     */
+    private static boolean isPlainVariable(String segment) {
+        return segment.startsWith("{") && segment.endsWith("}")
+                && segment.indexOf('{', 1) < 0 && segment.indexOf(':') < 0;
+    }
+
+    private static final class Node {
+        private final boolean anyPath;
+        private final Map<String, Node> literals = new HashMap<>();
+        private final List<String> globs = new ArrayList<>();
+        private final List<Node> globNodes = new ArrayList<>();
+        private final List<String> regexSegments = new ArrayList<>();
+        private final List<Pattern> regexes = new ArrayList<>();
+        private final List<Node> regexNodes = new ArrayList<>();
+        private Node anySegment;
+        private Node anyPathChild;
+        private int[] patternIndexes = NO_PATTERNS;
+
+        private Node(boolean anyPath) {
+            this.anyPath = anyPath;
+        }
+
+        private Node child(String segment) {
+            if ("**".equals(segment)) {
+                if (anyPathChild == null) {
+                    anyPathChild = new Node(true);
+                }
+                return anyPathChild;
+            }
+            if ("*".equals(segment) || isPlainVariable(segment)) {
+                if (anySegment == null) {
+                    anySegment = new Node(false);
+                }
+                return anySegment;
+            }
+            if (segment.indexOf('{') >= 0) {
+                int existing = regexSegments.indexOf(segment);
+                if (existing >= 0) {
+                    return regexNodes.get(existing);
+                }
+                Node node = new Node(false);
+                regexSegments.add(segment);
+                regexes.add(segmentRegex(segment));
+                regexNodes.add(node);
+                return node;
+            }
+            if (segment.indexOf('*') >= 0 || segment.indexOf('?') >= 0) {
+                int existing = globs.indexOf(segment);
+                if (existing >= 0) {
+                    return globNodes.get(existing);
+                }
+                Node node = new Node(false);
+                globs.add(segment);
+                globNodes.add(node);
+                return node;
+            }
+            return literals.computeIfAbsent(segment, s -> new Node(false));
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package io.commoncore.ratelimit;
+
+/**
+ * Algorithms supported by {@link RateLimiter}
+ */
+public enum RateLimitAlgorithm {
+
+    /**
+     * Fixed window token bucket, refilled all at once when the window elapses
+     */
+    TOKEN_BUCKET,
+
+    /**
+     * Generic Cell Rate Algorithm: smooth refill based on a single
+     * "theoretical arrival time" per key
+     */
+    GCRA
+}
@@ -0,0 +1,300 @@
+package io.commoncore.ratelimit;
+
+import io.commoncore.config.CommonCoreProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.security.SecurityProperties;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Configuration for the rate limit state store and the optional rate limiting filter
+ */
+@Configuration
+@RequiredArgsConstructor
+public class RateLimitConfig {
+
+    private final CommonCoreProperties properties;
+
+    /**
+     * Store holding rate limit state, on or off the heap, or shared through Redis.
+     * Declare your own {@link RateLimitStore} bean to plug in another backend.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RateLimitStore rateLimitStore(MeterRegistry meterRegistry) {
+        CommonCoreProperties.RateLimit.Store config = properties.getRateLimit().getStore();
+        Duration idleTimeout = Duration.ofSeconds(config.getIdleTimeoutSeconds());
+
+        if (config.getType() != CommonCoreProperties.RateLimit.Store.Type.MEMORY && hasAdditionalLimits()) {
+            throw new IllegalStateException("Rate limits with additional-limits require commoncore.rate-limit.store.type=memory");
+        }
+
+        RateLimitStore store;
+        if (config.getType() == CommonCoreProperties.RateLimit.Store.Type.OFF_HEAP) {
+            store = new OffHeapRateLimitStore(config.getMaxKeys(), idleTimeout);
+        } else if (config.getType() == CommonCoreProperties.RateLimit.Store.Type.REDIS) {
+            CommonCoreProperties.RateLimit.Store.Redis redis = config.getRedis();
+            RespClient client = new RespClient(
+                    redis.getHost(),
+                    redis.getPort(),
+                    redis.getPassword(),
+                    redis.getTimeoutMs(),
+                    redis.getPoolSize()
+            );
+            store = new RedisRateLimitStore(
+                    client,
+                    redis.getKeyPrefix(),
+                    config.getLeaseSize(),
+                    Duration.ofMillis(config.getLeaseTtlMs()),
+                    Duration.ofMillis(redis.getRetryIntervalMs()),
+                    new InMemoryRateLimitStore(config.getMaxKeys(), idleTimeout)
+            );
+        } else {
+            store = new InMemoryRateLimitStore(config.getMaxKeys(), idleTimeout);
+        }
+
+        if (properties.getMonitoring().isEnableMetrics()) {
+            registerMetrics(meterRegistry, store);
+        }
+        return store;
+    }
+
+    /**
+     * Saves in-memory buckets on shutdown (and periodically) and restores them on startup
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "commoncore.rate-limit.store.snapshot.enabled", havingValue = "true")
+    public RateLimitSnapshotter rateLimitSnapshotter(RateLimitStore rateLimitStore) {
+        Path file = Path.of(properties.getRateLimit().getStore().getSnapshot().getPath());
+        return startSnapshotter(file, rateLimitStore);
+    }
+
+    /**
+     * Same for the buckets of the {@link RateLimiterFactory} limiters, next to the main snapshot
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnProperty(name = "commoncore.rate-limit.store.snapshot.enabled", havingValue = "true")
+    public RateLimitSnapshotter rateLimiterFactorySnapshotter(RateLimiterFactory rateLimiterFactory) {
+        Path file = Path.of(properties.getRateLimit().getStore().getSnapshot().getPath());
+        return startSnapshotter(file.resolveSibling(file.getFileName() + ".limiters"), rateLimiterFactory.getStore());
+    }
+
+    private RateLimitSnapshotter startSnapshotter(Path file, RateLimitStore store) {
+        if (!(store instanceof InMemoryRateLimitStore)) {
+            throw new IllegalStateException("Rate limit snapshots require commoncore.rate-limit.store.type=memory");
+        }
+        RateLimitSnapshotter snapshotter = new RateLimitSnapshotter(file, (InMemoryRateLimitStore) store);
+        snapshotter.start(properties.getRateLimit().getStore().getSnapshot().getIntervalSeconds());
+        return snapshotter;
+    }
+
+    /**
+     * Latency driven in-flight limit, enforced when commoncore.rate-limit.adaptive.enabled=true
+     */
+    @Bean
+    public AdaptiveConcurrencyLimiter adaptiveConcurrencyLimiter(MeterRegistry meterRegistry) {
+        CommonCoreProperties.RateLimit.Adaptive config = properties.getRateLimit().getAdaptive();
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(
+                config.getAlgorithm(),
+                config.getInitialLimit(),
+                config.getMinLimit(),
+                config.getMaxLimit(),
+                config.getTimeoutMs(),
+                config.getBackoffRatio(),
+                config.getTolerance(),
+                config.getSmoothing()
+        );
+
+        if (config.isEnabled() && properties.getMonitoring().isEnableMetrics()) {
+            Gauge.builder("ratelimit.concurrency.limit", limiter, AdaptiveConcurrencyLimiter::getLimit)
+                    .description("Current adaptive in-flight request limit")
+                    .register(meterRegistry);
+            Gauge.builder("ratelimit.concurrency.inflight", limiter, AdaptiveConcurrencyLimiter::getInFlight)
+                    .description("Requests currently holding a concurrency permit")
+                    .register(meterRegistry);
+            FunctionCounter.builder("ratelimit.concurrency.rejected", limiter, AdaptiveConcurrencyLimiter::getRejectedCount)
+                    .description("Requests rejected because the in-flight limit was reached")
+                    .register(meterRegistry);
+        }
+        return limiter;
+    }
+
+    /**
+     * Accepted/rejected counts per policy and the heaviest keys, shared by the interceptor and filter
+     */
+    @Bean
+    public RateLimitTelemetry rateLimitTelemetry(RateLimitService rateLimitService, MeterRegistry meterRegistry) {
+        CommonCoreProperties.RateLimit.Telemetry config = properties.getRateLimit().getTelemetry();
+        RateLimitTelemetry telemetry = new RateLimitTelemetry(
+                rateLimitService.getPolicies(),
+                config.isHeavyHitters(),
+                config.getTopN() * 8,
+                config.getSketchWidth(),
+                config.getDecaySeconds()
+        );
+
+        if (properties.getMonitoring().isEnableMetrics()) {
+            for (RateLimitPolicy policy : rateLimitService.getPolicies()) {
+                FunctionCounter.builder("ratelimit.requests", policy, telemetry::getAcceptedCount)
+                        .description("Requests checked against a rate limit policy")
+                        .tag("policy", policy.getName())
+                        .tag("result", "accepted")
+                        .register(meterRegistry);
+                FunctionCounter.builder("ratelimit.requests", policy, telemetry::getRejectedCount)
+                        .description("Requests checked against a rate limit policy")
+                        .tag("policy", policy.getName())
+                        .tag("result", "rejected")
+                        .register(meterRegistry);
+            }
+        }
+        return telemetry;
+    }
+
+    /**
+     * Per-client in-flight cap, enforced for policies with max-concurrent-requests
+     */
+    @Bean
+    public KeyedConcurrencyLimiter keyedConcurrencyLimiter(MeterRegistry meterRegistry) {
+        KeyedConcurrencyLimiter limiter = new KeyedConcurrencyLimiter(65536);
+        if (properties.getMonitoring().isEnableMetrics()) {
+            Gauge.builder("ratelimit.client.inflight", limiter, KeyedConcurrencyLimiter::getTotalInFlight)
+                    .description("Requests holding a per-client concurrency slot")
+                    .register(meterRegistry);
+            FunctionCounter.builder("ratelimit.client.concurrency.rejected", limiter, KeyedConcurrencyLimiter::getRejectedCount)
+                    .description("Requests rejected because their client had too many requests in flight")
+                    .register(meterRegistry);
+        }
+        return limiter;
+    }
+
+    /**
+     * Timer dispatching requests delayed by policies with a maximum delay;
+     * its thread only starts when the first request is delayed
+     */
+    @Bean(destroyMethod = "close")
+    public TimerWheel rateLimitTimerWheel(MeterRegistry meterRegistry) {
+        TimerWheel timerWheel = new TimerWheel("commoncore-ratelimit-delay", 10, TimeUnit.MILLISECONDS, 512);
+        if (properties.getMonitoring().isEnableMetrics()) {
+            Gauge.builder("ratelimit.delayed", timerWheel, TimerWheel::getPendingCount)
+                    .description("Requests currently delayed until their rate limit permits are due")
+                    .register(meterRegistry);
+        }
+        return timerWheel;
+    }
+
+    /**
+     * Limiters with blocking, timed and asynchronous acquire, e.g. for outbound calls.
+     * They get an unbounded in-memory store of their own unless state is shared through Redis.
+     */
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    public RateLimiterFactory rateLimiterFactory(RateLimitStore rateLimitStore, TimerWheel rateLimitTimerWheel) {
+        if (rateLimitStore instanceof RedisRateLimitStore) {
+            return new RateLimiterFactory(rateLimitStore, rateLimitTimerWheel, false);
+        }
+        Duration idleTimeout = Duration.ofSeconds(properties.getRateLimit().getStore().getIdleTimeoutSeconds());
+        return new RateLimiterFactory(new InMemoryRateLimitStore(0, idleTimeout), rateLimitTimerWheel, true);
+    }
+
+    /**
+     * Actuator endpoint listing policy counts and the current heavy hitters
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public RateLimitEndpoint rateLimitEndpoint(RateLimitService rateLimitService, RateLimitTelemetry rateLimitTelemetry,
+                                               RateLimitStore rateLimitStore) {
+        return new RateLimitEndpoint(rateLimitService, rateLimitTelemetry, rateLimitStore,
+                properties.getRateLimit().getTelemetry().getTopN());
+    }
+
+    /**
+     * Rate limiting ahead of the Spring Security filter chain, so rejected
+     * requests skip authentication entirely
+     */
+    @Bean
+    @ConditionalOnProperty(name = "commoncore.rate-limit.mode", havingValue = "filter")
+    public FilterRegistrationBean<RateLimitingFilter> rateLimitingFilter(RateLimitService rateLimitService,
+                                                                         RateLimitTelemetry rateLimitTelemetry) {
+        FilterRegistrationBean<RateLimitingFilter> registration =
+                new FilterRegistrationBean<>(new RateLimitingFilter(rateLimitService, rateLimitTelemetry));
+        registration.setName("commonCoreRateLimitingFilter");
+        registration.setOrder(SecurityProperties.DEFAULT_FILTER_ORDER - 10);
+        return registration;
+    }
+
+    private boolean hasAdditionalLimits() {
+        CommonCoreProperties.RateLimit rateLimit = properties.getRateLimit();
+        if (!rateLimit.getAdditionalLimits().isEmpty()) {
+            return true;
+        }
+        for (CommonCoreProperties.RateLimit.Policy policy : rateLimit.getPolicies()) {
+            if (!policy.getAdditionalLimits().isEmpty()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void registerMetrics(MeterRegistry meterRegistry, RateLimitStore store) {
+        Gauge.builder("ratelimit.store.keys", store, RateLimitStore::size)
+                .description("Number of rate limit keys currently tracked")
+                .register(meterRegistry);
+
+        if (store instanceof OffHeapRateLimitStore) {
+            OffHeapRateLimitStore offHeapStore = (OffHeapRateLimitStore) store;
+            Gauge.builder("ratelimit.store.memory.offheap", offHeapStore, OffHeapRateLimitStore::getAllocatedBytes)
+                    .description("Off-heap memory allocated for the rate limit table")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            FunctionCounter.builder("ratelimit.store.removed", offHeapStore, OffHeapRateLimitStore::getReusedCount)
+                    .description("Rate limit buckets removed from the store")
+                    .tag("reason", "idle")
+                    .register(meterRegistry);
+            FunctionCounter.builder("ratelimit.store.removed", offHeapStore, OffHeapRateLimitStore::getEvictedCount)
+                    .description("Rate limit buckets removed from the store")
+                    .tag("reason", "capacity")
+                    .register(meterRegistry);
+            return;
+        }
+
+        if (store instanceof RedisRateLimitStore) {
+            RedisRateLimitStore redisStore = (RedisRateLimitStore) store;
+            FunctionCounter.builder("ratelimit.store.lease.requests", redisStore, RedisRateLimitStore::getLeaseRequestCount)
+                    .description("Permit leases requested from the shared store")
+                    .register(meterRegistry);
+            FunctionCounter.builder("ratelimit.store.lease.returned", redisStore, RedisRateLimitStore::getReturnedPermitCount)
+                    .description("Unused leased permits returned to the shared store")
+                    .register(meterRegistry);
+            FunctionCounter.builder("ratelimit.store.remote.failures", redisStore, RedisRateLimitStore::getRemoteFailureCount)
+                    .description("Shared store calls that failed and fell back to local limits")
+                    .register(meterRegistry);
+            store = redisStore.getFallback();
+        }
+
+        if (store instanceof InMemoryRateLimitStore) {
+            InMemoryRateLimitStore localStore = (InMemoryRateLimitStore) store;
+            Gauge.builder("ratelimit.store.memory.estimated", localStore, InMemoryRateLimitStore::getEstimatedMemoryBytes)
+                    .description("Approximate heap used by in-memory rate limit buckets")
+                    .baseUnit("bytes")
+                    .register(meterRegistry);
+            FunctionCounter.builder("ratelimit.store.removed", localStore, InMemoryRateLimitStore::getExpiredCount)
+                    .description("Rate limit buckets removed from the store")
+                    .tag("reason", "idle")
+                    .register(meterRegistry);
+            FunctionCounter.builder("ratelimit.store.removed", localStore, InMemoryRateLimitStore::getEvictedCount)
+                    .description("Rate limit buckets removed from the store")
+                    .tag("reason", "capacity")
+                    .register(meterRegistry);
+        }
+    }
+}
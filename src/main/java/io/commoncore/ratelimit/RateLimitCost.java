@@ -0,0 +1,26 @@
+package io.commoncore.ratelimit;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Number of rate limit permits a request to the annotated handler costs.
+ * On a controller class it applies to every handler method of the class;
+ * an annotation on the method wins.
+ * <p>
+ * Only seen by the rate limiting interceptor; in filter mode the handler is not
+ * known yet and the policy cost is used.
+ */
+@Target({ElementType.METHOD, ElementType.TYPE})
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface RateLimitCost {
+
+    /**
+     * Permits charged per request, at least 1
+     */
+    int value();
+}
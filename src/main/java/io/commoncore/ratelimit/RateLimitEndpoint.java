@@ -0,0 +1,66 @@
+package io.commoncore.ratelimit;
+
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Actuator endpoint {@code /actuator/ratelimit}: decisions per policy, store size
+ * and the keys currently sending the most requests and collecting the most rejections.
+ * Expose it with {@code management.endpoints.web.exposure.include=ratelimit}.
+ */
+@Endpoint(id = "ratelimit")
+public class RateLimitEndpoint {
+
+    private final RateLimitService rateLimitService;
+    private final RateLimitTelemetry telemetry;
+    private final RateLimitStore store;
+    private final int topN;
+
+    public RateLimitEndpoint(RateLimitService rateLimitService, RateLimitTelemetry telemetry,
+                             RateLimitStore store, int topN) {
+        this.rateLimitService = rateLimitService;
+        this.telemetry = telemetry;
+        this.store = store;
+        this.topN = topN;
+    }
+
+    @ReadOperation
+    public Map<String, Object> rateLimits() {
+        List<Map<String, Object>> policies = new ArrayList<>();
+        for (RateLimitPolicy policy : rateLimitService.getPolicies()) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("name", policy.getName());
+            entry.put("capacity", policy.getRule().getCapacity());
+            entry.put("windowSizeInSeconds", policy.getRule().getWindowSizeInSeconds());
+            entry.put("accepted", telemetry.getAcceptedCount(policy));
+            entry.put("rejected", telemetry.getRejectedCount(policy));
+            policies.add(entry);
+        }
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("enabled", rateLimitService.isEnabled());
+        result.put("storeKeys", store.size());
+        result.put("policies", policies);
+        if (telemetry.isTrackingHeavyHitters()) {
+            result.put("topRequesters", describe(telemetry.getTopRequesters(topN)));
+            result.put("topRejected", describe(telemetry.getTopRejected(topN)));
+        }
+        return result;
+    }
+
+    private List<Map<String, Object>> describe(List<HeavyHitterTracker.HeavyHitter> heavyHitters) {
+        List<Map<String, Object>> result = new ArrayList<>(heavyHitters.size());
+        for (HeavyHitterTracker.HeavyHitter heavyHitter : heavyHitters) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("key", rateLimitService.describeKey(heavyHitter.getKey()));
+            entry.put("estimatedCount", heavyHitter.getEstimate());
+            result.add(entry);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,32 @@
+package io.commoncore.ratelimit;
+
+/**
+ * What a rate limit policy counts requests by
+ */
+public enum RateLimitKeySource {
+
+    /**
+     * Client IP address
+     */
+    IP,
+
+    /**
+     * Authenticated principal name (the JWT subject when JWT authentication is used)
+     */
+    PRINCIPAL,
+
+    /**
+     * API key sent in the configured API key header
+     */
+    API_KEY,
+
+    /**
+     * Value of a request header
+     */
+    HEADER,
+
+    /**
+     * One shared limit for all clients
+     */
+    GLOBAL
+}
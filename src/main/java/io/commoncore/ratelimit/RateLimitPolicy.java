@@ -0,0 +1,113 @@
+package io.commoncore.ratelimit;
+
+import lombok.Builder;
+
+/**
+ * A rate limit applied to requests matching a path pattern and HTTP method
+ */
+public class RateLimitPolicy {
+
+    private final String name;
+    private final String pathPattern;
+    private final String method;
+    private final RateLimitKeySource keySource;
+    private final String headerName;
+    private final RateLimitRule rule;
+    private final int cost;
+    private final long maxDelayMillis;
+    private final int maxConcurrentRequests;
+
+    /**
+     * @param name                  policy name, also used to keep the keys of different policies apart
+     * @param pathPattern           Ant-style path pattern ({@code *}, {@code **}, {@code ?}, {@code {var}})
+     * @param method                HTTP method, null or {@code *} for any method
+     * @param keySource             what requests are counted by, {@link RateLimitKeySource#IP} if not set
+     * @param headerName            header to read the key from when the key source is {@link RateLimitKeySource#HEADER}
+     * @param rule                  limit to enforce
+     * @param cost                  permits charged per request, 1 if not set
+     * @param maxDelayMillis        how long a request over the limit may be delayed instead of rejected, 0 to reject
+     * @param maxConcurrentRequests requests one key may have in flight at once, 0 for no cap
+     */
+    @Builder
+    private RateLimitPolicy(String name, String pathPattern, String method, RateLimitKeySource keySource,
+                            String headerName, RateLimitRule rule, int cost, long maxDelayMillis,
+                            int maxConcurrentRequests) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Rate limit policy name must not be empty");
+        }
+        if (pathPattern == null || pathPattern.isEmpty()) {
+            throw new IllegalArgumentException("Rate limit policy '" + name + "' has no path pattern");
+        }
+        if (keySource == RateLimitKeySource.HEADER && (headerName == null || headerName.isEmpty())) {
+            throw new IllegalArgumentException("Rate limit policy '" + name + "' uses HEADER keys but has no header name");
+        }
+        this.name = name;
+        this.pathPattern = pathPattern;
+        this.method = method == null || method.isEmpty() || "*".equals(method) ? null : method.toUpperCase();
+        this.keySource = keySource != null ? keySource : RateLimitKeySource.IP;
+        this.headerName = headerName;
+        this.rule = rule;
+        this.cost = Math.max(1, cost);
+        this.maxDelayMillis = Math.max(0, maxDelayMillis);
+        this.maxConcurrentRequests = Math.max(0, maxConcurrentRequests);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getPathPattern() {
+        return pathPattern;
+    }
+
+    /**
+     * HTTP method this policy applies to, null for any method
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    public RateLimitKeySource getKeySource() {
+        return keySource;
+    }
+
+    public String getHeaderName() {
+        return headerName;
+    }
+
+    public RateLimitRule getRule() {
+        return rule;
+    }
+
+    /**
+     * Permits charged per request, before any body size surcharge
+     */
+    public int getCost() {
+        return cost;
+    }
+
+    /**
+     * How long a request over the limit may be delayed until its permits are available, 0 to reject it
+     */
+    public long getMaxDelayMillis() {
+        return maxDelayMillis;
+    }
+
+    /**
+     * Requests one key may have in flight at once, 0 for no cap
+     */
+    public int getMaxConcurrentRequests() {
+        return maxConcurrentRequests;
+    }
+
+    public boolean matchesMethod(String requestMethod) {
+        return method == null || method.equalsIgnoreCase(requestMethod);
+    }
+
+    @Override
+    public String toString() {
+        return name + " [" + (method != null ? method : "*") + " " + pathPattern + " by " + keySource + ": " + rule + (cost > 1 ? ", cost " + cost : "")
+                + (maxDelayMillis > 0 ? ", delay up to " + maxDelayMillis + "ms" : "")
+                + (maxConcurrentRequests > 0 ? ", " + maxConcurrentRequests + " in flight" : "") + "]";
+    }
+}
@@ -0,0 +1,45 @@
+package io.commoncore.ratelimit;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Picks the rate limit policy for a request.
+ * <p>
+ * All policy path patterns are compiled once into a {@link PathPatternTrie}, so the
+ * cost of a lookup depends on the path length rather than on the number of policies.
+ * When several policies match, the one declared first wins.
+ */
+public class RateLimitPolicyMatcher {
+
+    private final List<RateLimitPolicy> policies;
+    private final PathPatternTrie trie;
+
+    public RateLimitPolicyMatcher(List<RateLimitPolicy> policies) {
+        this.policies = List.copyOf(policies);
+        List<String> patterns = new ArrayList<>(this.policies.size());
+        for (RateLimitPolicy policy : this.policies) {
+            patterns.add(policy.getPathPattern());
+        }
+        this.trie = new PathPatternTrie(patterns);
+    }
+
+    public List<RateLimitPolicy> getPolicies() {
+        return policies;
+    }
+
+    public boolean isEmpty() {
+        return policies.isEmpty();
+    }
+
+    /**
+     * Find the first declared policy matching the method and path
+     *
+     * @param path request path within the application, without query string
+     * @return the matching policy or null if none matches
+     */
+    public RateLimitPolicy match(String method, String path) {
+        int index = trie.firstMatch(path, i -> policies.get(i).matchesMethod(method));
+        return index >= 0 ? policies.get(index) : null;
+    }
+}
@@ -0,0 +1,125 @@
+package io.commoncore.ratelimit;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Immutable description of a limit: how many requests are allowed per window
+ * and which algorithm enforces it.
+ * <p>
+ * A composite rule adds further windows, e.g. 20 per second, 600 per minute and
+ * 50,000 per day, built with {@link #and(int, long)}. All windows of a composite rule
+ * are checked and charged together in one atomic step; the first window is the one
+ * reported in the {@code X-RateLimit-*} headers.
+ */
+public final class RateLimitRule {
+
+    private final int capacity;
+    private final long windowSizeInSeconds;
+    private final RateLimitAlgorithm algorithm;
+    private final List<RateLimitRule> additionalLimits;
+
+    public RateLimitRule(int capacity, long windowSizeInSeconds, RateLimitAlgorithm algorithm) {
+        this(capacity, windowSizeInSeconds, algorithm, Collections.emptyList());
+    }
+
+    private RateLimitRule(int capacity, long windowSizeInSeconds, RateLimitAlgorithm algorithm,
+                          List<RateLimitRule> additionalLimits) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        if (windowSizeInSeconds <= 0) {
+            throw new IllegalArgumentException("windowSizeInSeconds must be positive");
+        }
+        this.capacity = capacity;
+        this.windowSizeInSeconds = windowSizeInSeconds;
+        this.algorithm = algorithm != null ? algorithm : RateLimitAlgorithm.TOKEN_BUCKET;
+        this.additionalLimits = additionalLimits;
+    }
+
+    /**
+     * This rule with one more window, enforced with the same algorithm
+     */
+    public RateLimitRule and(int capacity, long windowSizeInSeconds) {
+        List<RateLimitRule> limits = new ArrayList<>(additionalLimits);
+        limits.add(new RateLimitRule(capacity, windowSizeInSeconds, algorithm));
+        return new RateLimitRule(this.capacity, this.windowSizeInSeconds, algorithm, Collections.unmodifiableList(limits));
+    }
+
+    public boolean isComposite() {
+        return !additionalLimits.isEmpty();
+    }
+
+    /**
+     * Every window of this rule as a single-window rule, this rule's own window first
+     */
+    public List<RateLimitRule> getLimits() {
+        if (additionalLimits.isEmpty()) {
+            return Collections.singletonList(this);
+        }
+        List<RateLimitRule> limits = new ArrayList<>(additionalLimits.size() + 1);
+        limits.add(new RateLimitRule(capacity, windowSizeInSeconds, algorithm));
+        limits.addAll(additionalLimits);
+        return limits;
+    }
+
+    /**
+     * Most permits a single request can ever get: the smallest capacity of all windows
+     */
+    public int getMaxPermits() {
+        int max = capacity;
+        for (RateLimitRule limit : additionalLimits) {
+            max = Math.min(max, limit.capacity);
+        }
+        return max;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public long getWindowSizeInSeconds() {
+        return windowSizeInSeconds;
+    }
+
+    public long getWindowSizeInMillis() {
+        return TimeUnit.SECONDS.toMillis(windowSizeInSeconds);
+    }
+
+    public RateLimitAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof RateLimitRule)) {
+            return false;
+        }
+        RateLimitRule that = (RateLimitRule) o;
+        return capacity == that.capacity
+                && windowSizeInSeconds == that.windowSizeInSeconds
+                && algorithm == that.algorithm
+                && additionalLimits.equals(that.additionalLimits);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(capacity, windowSizeInSeconds, algorithm, additionalLimits);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(capacity).append(" requests per ").append(windowSizeInSeconds).append('s');
+        for (RateLimitRule limit : additionalLimits) {
+            sb.append(", ").append(limit.capacity).append(" per ").append(limit.windowSizeInSeconds).append('s');
+        }
+        return sb.append(" (").append(algorithm).append(')').toString();
+    }
+}
@@ -0,0 +1,302 @@
+package io.commoncore.ratelimit;
+
+import io.commoncore.config.CommonCoreProperties;
+import io.commoncore.security.ClientAddress;
+import io.commoncore.security.ClientIpResolver;
+import io.commoncore.security.apikey.ApiKeyAuthenticationFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Resolves the rate limit policy and key of a request and holds one
+ * {@link RateLimiter} per policy. Shared by the rate limiting interceptor and filter.
+ */
+@Component
+@Slf4j
+public class RateLimitService {
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    });
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final CommonCoreProperties.RateLimit rateLimitConfig;
+    private final ClientIpResolver clientIpResolver;
+    private final String apiKeyHeaderName;
+    private final RateLimitPolicy defaultPolicy;
+    private final RateLimitPolicyMatcher policyMatcher;
+    private final Map<RateLimitPolicy, RateLimiter> rateLimiters = new IdentityHashMap<>();
+    private final PathPatternTrie includePatterns;
+    private final PathPatternTrie excludePatterns;
+
+    public RateLimitService(CommonCoreProperties properties, RateLimitStore rateLimitStore,
+                            ClientIpResolver clientIpResolver) {
+        this.rateLimitConfig = properties.getRateLimit();
+        this.clientIpResolver = clientIpResolver;
+        this.apiKeyHeaderName = properties.getSecurity().getApiKey().getHeaderName();
+
+        this.defaultPolicy = RateLimitPolicy.builder()
+                .name("default")
+                .pathPattern("/**")
+                .keySource(rateLimitConfig.isPerIp() ? RateLimitKeySource.IP : RateLimitKeySource.GLOBAL)
+                .rule(withLimits(new RateLimitRule(
+                        rateLimitConfig.getMaxRequests(),
+                        rateLimitConfig.getWindowSizeInSeconds(),
+                        rateLimitConfig.getAlgorithm()
+                ), rateLimitConfig.getAdditionalLimits()))
+                .maxDelayMillis(rateLimitConfig.getMaxDelayMs())
+                .maxConcurrentRequests(rateLimitConfig.getMaxConcurrentRequests())
+                .build();
+        rateLimiters.put(defaultPolicy, new RateLimiter(defaultPolicy.getRule(), rateLimitStore));
+
+        List<RateLimitPolicy> policies = new ArrayList<>();
+        List<String> includes = new ArrayList<>(rateLimitConfig.getIncludePatterns());
+        List<CommonCoreProperties.RateLimit.Policy> configured = rateLimitConfig.getPolicies();
+        for (int i = 0; i < configured.size(); i++) {
+            RateLimitPolicy policy = toPolicy(configured.get(i), i);
+            policies.add(policy);
+            rateLimiters.put(policy, new RateLimiter(policy.getRule(), rateLimitStore));
+            if (!includes.isEmpty()) {
+                includes.add(policy.getPathPattern());
+            }
+            log.info("Rate limit policy registered: {}", policy);
+        }
+        this.policyMatcher = new RateLimitPolicyMatcher(policies);
+        this.includePatterns = new PathPatternTrie(includes);
+        this.excludePatterns = new PathPatternTrie(rateLimitConfig.getExcludePatterns());
+    }
+
+    public boolean isEnabled() {
+        return rateLimitConfig.isEnabled();
+    }
+
+    public RateLimitPolicy getDefaultPolicy() {
+        return defaultPolicy;
+    }
+
+    public List<RateLimitPolicy> getPolicies() {
+        List<RateLimitPolicy> all = new ArrayList<>(policyMatcher.getPolicies());
+        all.add(defaultPolicy);
+        return all;
+    }
+
+    /**
+     * Whether the request path falls under the include/exclude patterns.
+     * The interceptor gets this from its registration; the filter has to ask.
+     */
+    public boolean isApplicable(HttpServletRequest request) {
+        String path = getPath(request);
+        if (!includePatterns.isEmpty() && !includePatterns.matches(path)) {
+            return false;
+        }
+        return !excludePatterns.matches(path);
+    }
+
+    public RateLimitPolicy resolvePolicy(HttpServletRequest request) {
+        if (policyMatcher.isEmpty()) {
+            return defaultPolicy;
+        }
+        RateLimitPolicy policy = policyMatcher.match(request.getMethod(), getPath(request));
+        return policy != null ? policy : defaultPolicy;
+    }
+
+    /**
+     * Whether the rate limiting filter enforces the policy. Principal keys need the
+     * security context and delayed requests need an async dispatch that skips the
+     * authentication filters, so both are left to the interceptor.
+     */
+    public boolean isEnforcedByFilter(RateLimitPolicy policy) {
+        return policy.getKeySource() != RateLimitKeySource.PRINCIPAL && policy.getMaxDelayMillis() == 0;
+    }
+
+    public RateLimiter getRateLimiter(RateLimitPolicy policy) {
+        return rateLimiters.get(policy);
+    }
+
+    /**
+     * Permits the request costs under the given policy
+     */
+    public int resolveCost(HttpServletRequest request, RateLimitPolicy policy) {
+        return resolveCost(request, policy.getCost());
+    }
+
+    /**
+     * Permits the request costs: the base cost plus one permit per
+     * {@code bytes-per-permit} bytes of declared request body
+     *
+     * @param baseCost cost of the route, from the policy or a {@link RateLimitCost} annotation
+     */
+    public int resolveCost(HttpServletRequest request, int baseCost) {
+        long bytesPerPermit = rateLimitConfig.getBytesPerPermit();
+        if (bytesPerPermit <= 0) {
+            return baseCost;
+        }
+        long contentLength = request.getContentLengthLong();
+        if (contentLength <= 0) {
+            return baseCost;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, baseCost + contentLength / bytesPerPermit);
+    }
+
+    /**
+     * Store key for the request under the given policy
+     */
+    public String resolveKey(HttpServletRequest request, RateLimitPolicy policy) {
+        return policy.getName() + ":" + getClientKey(request, policy);
+    }
+
+    /**
+     * Readable form of {@link #resolveKey} for logs; IP keys are binary
+     */
+    public String describeKey(HttpServletRequest request, RateLimitPolicy policy) {
+        String clientKey = getClientKey(request, policy);
+        if (clientKey.isEmpty() || (clientKey.charAt(0) != '4' && clientKey.charAt(0) != '6')) {
+            return policy.getName() + ":" + clientKey;
+        }
+        ClientAddress address = clientIpResolver.resolve(request);
+        return policy.getName() + ":" + (address != null ? aggregate(address) : clientKey);
+    }
+
+    /**
+     * Readable form of a store key when the request is no longer at hand,
+     * e.g. for the keys reported by {@link RateLimitTelemetry}
+     */
+    public String describeKey(String key) {
+        int colon = key.indexOf(':');
+        if (colon < 0 || colon + 1 >= key.length()) {
+            return key;
+        }
+        ClientAddress address = ClientAddress.fromKey(key, colon + 1);
+        return address != null ? key.substring(0, colon + 1) + address : key;
+    }
+
+    /**
+     * Who the request is accounted to, e.g. by usage metering: the authenticated
+     * principal (the JWT subject), otherwise the fingerprint of the API key if
+     * {@link ApiKeyAuthenticationFilter} accepted it. An API key header that was not
+     * checked, e.g. on an excluded path, does not identify anyone.
+     *
+     * @return null for anonymous requests
+     */
+    public String resolveClientIdentity(HttpServletRequest request) {
+        String principalKey = getPrincipalKey(request);
+        if (principalKey != null) {
+            return principalKey;
+        }
+        return request.getAttribute(ApiKeyAuthenticationFilter.AUTHENTICATED_ATTRIBUTE) != null
+                ? getApiKeyKey(request) : null;
+    }
+
+    /**
+     * Resolve what the policy counts by, falling back to the client IP
+     * when the request carries no principal, API key or header
+     */
+    private String getClientKey(HttpServletRequest request, RateLimitPolicy policy) {
+        switch (policy.getKeySource()) {
+            case GLOBAL:
+                return "global";
+            case PRINCIPAL: {
+                String principalKey = getPrincipalKey(request);
+                if (principalKey != null) {
+                    return principalKey;
+                }
+                break;
+            }
+            case API_KEY: {
+                String apiKeyKey = getApiKeyKey(request);
+                if (apiKeyKey != null) {
+                    return apiKeyKey;
+                }
+                break;
+            }
+            case HEADER: {
+                String value = request.getHeader(policy.getHeaderName());
+                if (value != null && !value.isEmpty()) {
+                    return "header:" + value;
+                }
+                break;
+            }
+            default:
+                break;
+        }
+        return getClientIpKey(request);
+    }
+
+    private static String getPrincipalKey(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null && principal.getName() != null ? "user:" + principal.getName() : null;
+    }
+
+    private String getApiKeyKey(HttpServletRequest request) {
+        String apiKey = request.getHeader(apiKeyHeaderName);
+        // Never keep raw API keys in the store or in logs
+        return apiKey != null && !apiKey.isEmpty() ? "key:" + fingerprint(apiKey) : null;
+    }
+
+    private RateLimitPolicy toPolicy(CommonCoreProperties.RateLimit.Policy config, int index) {
+        RateLimitAlgorithm algorithm = config.getAlgorithm() != null ? config.getAlgorithm() : rateLimitConfig.getAlgorithm();
+        String name = config.getName() != null && !config.getName().isEmpty() ? config.getName() : "policy-" + index;
+        return RateLimitPolicy.builder()
+                .name(name)
+                .pathPattern(config.getPathPattern())
+                .method(config.getMethod())
+                .keySource(config.getKeySource())
+                .headerName(config.getHeaderName())
+                .rule(withLimits(new RateLimitRule(config.getMaxRequests(), config.getWindowSizeInSeconds(), algorithm),
+                        config.getAdditionalLimits()))
+                .cost(config.getCost())
+                .maxDelayMillis(config.getMaxDelayMs() != null ? config.getMaxDelayMs() : rateLimitConfig.getMaxDelayMs())
+                .maxConcurrentRequests(config.getMaxConcurrentRequests() != null
+                        ? config.getMaxConcurrentRequests() : rateLimitConfig.getMaxConcurrentRequests())
+                .build();
+    }
+
+    private static RateLimitRule withLimits(RateLimitRule rule, List<CommonCoreProperties.RateLimit.Limit> limits) {
+        for (CommonCoreProperties.RateLimit.Limit limit : limits) {
+            rule = rule.and(limit.getMaxRequests(), limit.getWindowSizeInSeconds());
+        }
+        return rule;
+    }
+
+    private static String getPath(HttpServletRequest request) {
+        return request.getRequestURI().substring(request.getContextPath().length());
+    }
+
+    private static String fingerprint(String value) {
+        byte[] digest = SHA_256.get().digest(value.getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[24];
+        for (int i = 0; i < 12; i++) {
+            hex[i * 2] = HEX[(digest[i] >> 4) & 0xF];
+            hex[i * 2 + 1] = HEX[digest[i] & 0xF];
+        }
+        return new String(hex);
+    }
+
+    /**
+     * Compact binary key of the client address, aggregated to the configured prefix.
+     * Falls back to the raw remote address when it is not an IP literal.
+     */
+    private String getClientIpKey(HttpServletRequest request) {
+        ClientAddress address = clientIpResolver.resolve(request);
+        return address != null ? aggregate(address).toKey() : "raw:" + request.getRemoteAddr();
+    }
+
+    private ClientAddress aggregate(ClientAddress address) {
+        return address.mask(address.isIpv4() ? rateLimitConfig.getIpv4PrefixLength() : rateLimitConfig.getIpv6PrefixLength());
+    }
+}
@@ -0,0 +1,313 @@
+package io.commoncore.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Saves the buckets of an {@link InMemoryRateLimitStore} to a memory-mapped file
+ * and restores them on the next start, so a restart does not hand every client a
+ * fresh quota.
+ * <p>
+ * Bucket times are written relative to the moment of the snapshot and shifted by
+ * the wall clock time that passed until it is loaded. Buckets that are full by then
+ * carry no information and are skipped, as are buckets of composite rules, whose
+ * state does not fit the entry format. Loading streams the file entry by entry in
+ * the background and never replaces a bucket that live traffic already created.
+ * <p>
+ * Buckets are restored under the rule they were saved with, whichever limiter of the
+ * store they belong to. A bucket whose key is now used with a changed rule is replaced
+ * by the store on its first use.
+ */
+@Slf4j
+public class RateLimitSnapshotter implements AutoCloseable {
+
+    private static final int MAGIC = 0x43435253;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 8 + 4;
+    private static final int WINDOW_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_KEY_BYTES = 0xFFFF;
+
+    /**
+     * Longest {@link #close()} waits for a restore still in progress
+     */
+    private static final long RESTORE_WAIT_SECONDS = 10;
+
+    private final Path file;
+    private final InMemoryRateLimitStore store;
+    private ScheduledExecutorService executor;
+    private Future<?> restoreTask;
+
+    public RateLimitSnapshotter(Path file, InMemoryRateLimitStore store) {
+        this.file = file;
+        this.store = store;
+    }
+
+    /**
+     * Restore the last snapshot in the background, then save every {@code intervalSeconds}
+     *
+     * @param intervalSeconds seconds between periodic snapshots, 0 to save only on close
+     */
+    public synchronized void start(long intervalSeconds) {
+        executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "commoncore-ratelimit-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        restoreTask = executor.submit(() -> {
+            try {
+                long startNanos = System.nanoTime();
+                int restored = load(null);
+                log.info("Restored {} rate limit buckets from {} in {}ms",
+                        restored, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not restore rate limit snapshot {}: {}", file, e.getMessage());
+            }
+        });
+        if (intervalSeconds > 0) {
+            executor.scheduleWithFixedDelay(this::saveQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Write all buckets that are not full to the snapshot file
+     *
+     * @return number of buckets written
+     */
+    public synchronized int save() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+
+        long nowNanos = System.nanoTime();
+        int count = 0;
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedWindow out = new MappedWindow(channel, FileChannel.MapMode.READ_WRITE, 0);
+            out.ensure(HEADER_BYTES);
+            out.buffer.putInt(MAGIC);
+            out.buffer.putInt(VERSION);
+            out.buffer.putLong(System.currentTimeMillis());
+            out.buffer.putLong(0);
+            out.buffer.putInt(0);
+
+            Map<RateLimitRule, Integer> ruleIndexes = new HashMap<>();
+            List<RateLimitRule> rules = new ArrayList<>();
+            for (Map.Entry<String, Bucket> entry : store.entries()) {
+                Bucket bucket = entry.getValue();
+                if (bucket.getFullAtNanos() - nowNanos <= 0 || bucket.getRule().isComposite()) {
+                    continue;
+                }
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                if (key.length > MAX_KEY_BYTES) {
+                    continue;
+                }
+                Integer ruleIndex = ruleIndexes.get(bucket.getRule());
+                if (ruleIndex == null) {
+                    ruleIndex = rules.size();
+                    ruleIndexes.put(bucket.getRule(), ruleIndex);
+                    rules.add(bucket.getRule());
+                }
+
+                out.ensure(2 + key.length + 4 + 4 + 8);
+                out.buffer.putShort((short) key.length);
+                out.buffer.put(key);
+                out.buffer.putInt(ruleIndex);
+                out.buffer.putInt(bucket.getTokens());
+                out.buffer.putLong(bucket.getStateNanos() - nowNanos);
+                count++;
+            }
+
+            // Rules go after the entries, their indexes are only known now
+            long rulesPosition = out.position();
+            for (RateLimitRule rule : rules) {
+                out.ensure(4 + 8 + 1);
+                out.buffer.putInt(rule.getCapacity());
+                out.buffer.putLong(rule.getWindowSizeInSeconds());
+                out.buffer.put((byte) rule.getAlgorithm().ordinal());
+            }
+            long size = out.position();
+
+            out.buffer.force();
+            channel.truncate(size);
+
+            ByteBuffer header = ByteBuffer.allocate(12);
+            header.putLong(rulesPosition).putInt(rules.size()).flip();
+            channel.write(header, 16);
+            channel.force(false);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return count;
+    }
+
+    /**
+     * Restore buckets from the snapshot file, if there is one
+     *
+     * @param rules rules currently in use, null to accept every rule in the file
+     * @return number of buckets restored
+     */
+    public int load(Set<RateLimitRule> rules) throws IOException {
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedWindow in = new MappedWindow(channel, FileChannel.MapMode.READ_ONLY, 0);
+            in.ensure(HEADER_BYTES);
+            if (in.buffer.getInt() != MAGIC || in.buffer.getInt() != VERSION) {
+                throw new IOException("Not a rate limit snapshot or unsupported version");
+            }
+            long writtenAtMillis = in.buffer.getLong();
+            long rulesPosition = in.buffer.getLong();
+            int ruleCount = in.buffer.getInt();
+
+            RateLimitRule[] snapshotRules = readRules(channel, rulesPosition, ruleCount, rules);
+
+            long elapsedNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - writtenAtMillis));
+            long nowNanos = System.nanoTime();
+            long anchorNanos = nowNanos - elapsedNanos;
+            int restored = 0;
+            byte[] key = new byte[256];
+            while (in.position() < rulesPosition) {
+                in.ensure(2);
+                int keyLength = Short.toUnsignedInt(in.buffer.getShort());
+                if (key.length < keyLength) {
+                    key = new byte[keyLength];
+                }
+                in.ensure(keyLength + 4 + 4 + 8);
+                in.buffer.get(key, 0, keyLength);
+                int ruleIndex = in.buffer.getInt();
+                int tokens = in.buffer.getInt();
+                long stateNanos = anchorNanos + in.buffer.getLong();
+
+                if (ruleIndex < 0 || ruleIndex >= snapshotRules.length) {
+                    throw new IOException("Corrupt rate limit snapshot entry");
+                }
+                RateLimitRule rule = snapshotRules[ruleIndex];
+                if (rule == null) {
+                    continue;
+                }
+                Bucket bucket = Bucket.restore(rule, tokens, stateNanos);
+                if (bucket.getFullAtNanos() - nowNanos > 0
+                        && store.restore(new String(key, 0, keyLength, StandardCharsets.UTF_8), bucket)) {
+                    restored++;
+                }
+            }
+            return restored;
+        }
+    }
+
+    /**
+     * Stop the periodic snapshots and save a last one, unless the snapshot file has not
+     * been restored completely: saving then would replace it with the part that was loaded
+     */
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(RESTORE_WAIT_SECONDS, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            // Checked before shutdownNow(), which would interrupt the restore and make it done
+            boolean restored = restoreTask.isDone();
+            executor.shutdownNow();
+            if (!restored) {
+                log.warn("Rate limit snapshot {} was still being restored on close, not saving over it", file);
+                return;
+            }
+        }
+        saveQuietly();
+    }
+
+    private void saveQuietly() {
+        try {
+            long startNanos = System.nanoTime();
+            int saved = save();
+            log.debug("Saved {} rate limit buckets to {} in {}ms",
+                    saved, file, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not save rate limit snapshot {}: {}", file, e.getMessage());
+        }
+    }
+
+    /**
+     * @return rules by index, null where the rule is no longer in use
+     */
+    private static RateLimitRule[] readRules(FileChannel channel, long position, int count,
+                                             Set<RateLimitRule> accepted) throws IOException {
+        RateLimitAlgorithm[] algorithms = RateLimitAlgorithm.values();
+        RateLimitRule[] result = new RateLimitRule[count];
+        MappedWindow in = new MappedWindow(channel, FileChannel.MapMode.READ_ONLY, position);
+        for (int i = 0; i < count; i++) {
+            in.ensure(4 + 8 + 1);
+            int capacity = in.buffer.getInt();
+            long windowSizeInSeconds = in.buffer.getLong();
+            int algorithm = in.buffer.get();
+            if (algorithm < 0 || algorithm >= algorithms.length) {
+                throw new IOException("Unknown rate limit algorithm in snapshot: " + algorithm);
+            }
+            RateLimitRule rule = new RateLimitRule(capacity, windowSizeInSeconds, algorithms[algorithm]);
+            result[i] = accepted == null || accepted.contains(rule) ? rule : null;
+        }
+        return result;
+    }
+
+    /**
+     * Sliding memory-mapped view over a file, remapped whenever the next
+     * read or write does not fit, so files larger than one mapping work
+     */
+    private static final class MappedWindow {
+        private final FileChannel channel;
+        private final FileChannel.MapMode mode;
+        private long start;
+        private MappedByteBuffer buffer;
+
+        private MappedWindow(FileChannel channel, FileChannel.MapMode mode, long position) {
+            this.channel = channel;
+            this.mode = mode;
+            this.start = position;
+        }
+
+        private long position() {
+            return buffer == null ? start : start + buffer.position();
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer != null && buffer.remaining() >= bytes) {
+                return;
+            }
+            long position = position();
+            long size = WINDOW_BYTES;
+            if (mode == FileChannel.MapMode.READ_ONLY) {
+                size = Math.min(size, channel.size() - position);
+                if (size < bytes) {
+                    throw new IOException("Truncated rate limit snapshot");
+                }
+            } else if (buffer != null) {
+                buffer.force();
+            }
+            start = position;
+            buffer = channel.map(mode, position, size);
+        }
+    }
+}
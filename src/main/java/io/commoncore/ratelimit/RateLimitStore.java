@@ -0,0 +1,63 @@
+package io.commoncore.ratelimit;
+
+/**
+ * Storage backend for rate limit state.
+ * <p>
+ * Implementations decide where the per-key state lives (process memory, a shared
+ * store, ...) and must be safe for concurrent use. The same store may serve several
+ * rules as long as callers keep their keys distinct.
+ */
+public interface RateLimitStore extends AutoCloseable {
+
+    /**
+     * Try to take one permit for the key under the given rule
+     *
+     * @return true if the request is allowed
+     */
+    default boolean tryAcquire(String key, RateLimitRule rule) {
+        return tryAcquire(key, rule, 1);
+    }
+
+    /**
+     * Try to take {@code permits} permits for the key at once; either all of them
+     * are taken or none
+     *
+     * @param permits number of permits, between 1 and the rule capacity
+     * @return true if the request is allowed
+     */
+    boolean tryAcquire(String key, RateLimitRule rule, int permits);
+
+    /**
+     * Take {@code permits} permits now, or reserve them for the earliest moment they become
+     * available so the caller can wait instead of being rejected. Stores that cannot reserve
+     * ahead only hand out permits that are available now.
+     *
+     * @param maxWaitMillis longest acceptable wait
+     * @return milliseconds until the permits may be used (0 = now), or -1 if that would
+     * exceed {@code maxWaitMillis}, in which case nothing is taken
+     */
+    default long reserve(String key, RateLimitRule rule, int permits, long maxWaitMillis) {
+        return tryAcquire(key, rule, permits) ? 0 : -1;
+    }
+
+    /**
+     * Time until the next request for the key would be allowed, in milliseconds
+     */
+    default long getRetryAfterMillis(String key, RateLimitRule rule) {
+        return getRetryAfterMillis(key, rule, 1);
+    }
+
+    /**
+     * Time until {@code permits} permits for the key would be available, in milliseconds
+     */
+    long getRetryAfterMillis(String key, RateLimitRule rule, int permits);
+
+    /**
+     * Number of keys currently tracked by this node
+     */
+    long size();
+
+    @Override
+    default void close() {
+    }
+}
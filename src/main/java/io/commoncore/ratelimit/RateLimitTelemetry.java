@@ -0,0 +1,95 @@
+package io.commoncore.ratelimit;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts rate limit decisions per policy and tracks the keys sending the most
+ * requests and collecting the most rejections.
+ * <p>
+ * Memory is fixed regardless of how many clients there are: two
+ * {@link HeavyHitterTracker}s instead of a counter per key, so a flood of rejected
+ * requests can be inspected without logging each one.
+ */
+public class RateLimitTelemetry {
+
+    private final Map<RateLimitPolicy, Counts> counts = new IdentityHashMap<>();
+    private final HeavyHitterTracker requests;
+    private final HeavyHitterTracker rejections;
+
+    /**
+     * @param policies     policies to count decisions for
+     * @param heavyHitters whether to track the top keys at all
+     * @param candidates   keys kept per tracker
+     * @param sketchWidth  counters per sketch row
+     * @param decaySeconds seconds after which the tracked counts are halved
+     */
+    public RateLimitTelemetry(List<RateLimitPolicy> policies, boolean heavyHitters,
+                              int candidates, int sketchWidth, long decaySeconds) {
+        for (RateLimitPolicy policy : policies) {
+            counts.put(policy, new Counts());
+        }
+        if (heavyHitters) {
+            this.requests = new HeavyHitterTracker(candidates, sketchWidth, decaySeconds, TimeUnit.SECONDS);
+            this.rejections = new HeavyHitterTracker(candidates, sketchWidth, decaySeconds, TimeUnit.SECONDS);
+        } else {
+            this.requests = null;
+            this.rejections = null;
+        }
+    }
+
+    /**
+     * Record the outcome of one rate limit check
+     *
+     * @param key store key the request was counted under
+     */
+    public void record(RateLimitPolicy policy, String key, boolean allowed) {
+        Counts policyCounts = counts.get(policy);
+        if (policyCounts != null) {
+            (allowed ? policyCounts.accepted : policyCounts.rejected).increment();
+        }
+        if (requests != null) {
+            requests.record(key);
+            if (!allowed) {
+                rejections.record(key);
+            }
+        }
+    }
+
+    public long getAcceptedCount(RateLimitPolicy policy) {
+        Counts policyCounts = counts.get(policy);
+        return policyCounts != null ? policyCounts.accepted.sum() : 0;
+    }
+
+    public long getRejectedCount(RateLimitPolicy policy) {
+        Counts policyCounts = counts.get(policy);
+        return policyCounts != null ? policyCounts.rejected.sum() : 0;
+    }
+
+    public boolean isTrackingHeavyHitters() {
+        return requests != null;
+    }
+
+    /**
+     * Keys with the highest recent request counts, highest first
+     */
+    public List<HeavyHitterTracker.HeavyHitter> getTopRequesters(int n) {
+        return requests != null ? requests.top(n) : Collections.emptyList();
+    }
+
+    /**
+     * Keys with the highest recent rejection counts, highest first
+     */
+    public List<HeavyHitterTracker.HeavyHitter> getTopRejected(int n) {
+        return rejections != null ? rejections.top(n) : Collections.emptyList();
+    }
+
+    private static final class Counts {
+        private final LongAdder accepted = new LongAdder();
+        private final LongAdder rejected = new LongAdder();
+    }
+}
@@ -1,79 +1,98 @@
 package io.commoncore.ratelimit;
 
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-
 /**
- * Simple in-memory rate limiter using token bucket algorithm
+ * Rate limiter enforcing one {@link RateLimitRule} per key.
+ * State is kept in a {@link RateLimitStore}, in memory by default.
  */
-public class RateLimiter {
+public class RateLimiter implements AutoCloseable {
 
-    private final ConcurrentHashMap<String, TokenBucket> buckets = new ConcurrentHashMap<>();
-    private final int maxRequests;
-    private final long windowSizeInSeconds;
+    private final RateLimitStore store;
+    private final RateLimitRule rule;
 
     public RateLimiter(int maxRequests, long windowSizeInSeconds) {
-        this.maxRequests = maxRequests;
-        this.windowSizeInSeconds = windowSizeInSeconds;
+        this(maxRequests, windowSizeInSeconds, RateLimitAlgorithm.TOKEN_BUCKET);
+    }
+
+    public RateLimiter(int maxRequests, long windowSizeInSeconds, RateLimitAlgorithm algorithm) {
+        this(new RateLimitRule(maxRequests, windowSizeInSeconds, algorithm), new InMemoryRateLimitStore());
+    }
+
+    public RateLimiter(RateLimitRule rule, RateLimitStore store) {
+        if (rule == null) {
+            throw new IllegalArgumentException("rule must not be null");
+        }
+        this.rule = rule;
+        this.store = store != null ? store : new InMemoryRateLimitStore();
     }
 
     public boolean tryAcquire(String key) {
-        TokenBucket bucket = buckets.computeIfAbsent(key, k -> new TokenBucket(maxRequests, windowSizeInSeconds));
-        return bucket.tryConsume();
+        return store.tryAcquire(key, rule);
+    }
+
+    /**
+     * Take several permits at once, e.g. for a request that is more expensive than usual.
+     * Costs above the capacity (the smallest one for composite rules) are charged as that
+     * capacity, so such a request is still allowed when the bucket is full.
+     */
+    public boolean tryAcquire(String key, int permits) {
+        return store.tryAcquire(key, rule, clampPermits(permits));
+    }
+
+    /**
+     * Take the permits now or reserve them ahead, for callers that would rather delay
+     * a request than reject it
+     *
+     * @param maxWaitMillis longest acceptable delay
+     * @return milliseconds until the request may proceed (0 = now), or -1 if it would have
+     * to wait longer than {@code maxWaitMillis} and has to be rejected
+     */
+    public long reserve(String key, int permits, long maxWaitMillis) {
+        return store.reserve(key, rule, clampPermits(permits), Math.max(0, maxWaitMillis));
     }
 
     public long getRetryAfterSeconds(String key) {
-        TokenBucket bucket = buckets.get(key);
-        if (bucket != null) {
-            return bucket.getRetryAfterSeconds();
-        }
-        return 0;
+        return (getRetryAfterMillis(key) + 999) / 1000;
     }
 
-    private static class TokenBucket {
-        private final int capacity;
-        private final long windowSizeInSeconds;
-        private final AtomicInteger tokens;
-        private final AtomicLong lastRefillTime;
-
-        public TokenBucket(int capacity, long windowSizeInSeconds) {
-            this.capacity = capacity;
-            this.windowSizeInSeconds = windowSizeInSeconds;
-            this.tokens = new AtomicInteger(capacity);
-            this.lastRefillTime = new AtomicLong(System.currentTimeMillis());
-        }
+    public long getRetryAfterSeconds(String key, int permits) {
+        return (store.getRetryAfterMillis(key, rule, clampPermits(permits)) + 999) / 1000;
+    }
 
-        public boolean tryConsume() {
-            refill();
-            int currentTokens = tokens.get();
-            if (currentTokens > 0) {
-                return tokens.compareAndSet(currentTokens, currentTokens - 1);
-            }
-            return false;
-        }
+    /**
+     * Time until the next request for the given key would be allowed, in milliseconds
+     */
+    public long getRetryAfterMillis(String key) {
+        return store.getRetryAfterMillis(key, rule);
+    }
 
-        private void refill() {
-            long now = System.currentTimeMillis();
-            long lastRefill = lastRefillTime.get();
-            long timePassed = (now - lastRefill) / 1000; // seconds
+    /**
+     * Time until the given number of permits would be available for the key, in milliseconds
+     */
+    public long getRetryAfterMillis(String key, int permits) {
+        return store.getRetryAfterMillis(key, rule, clampPermits(permits));
+    }
 
-            if (timePassed >= windowSizeInSeconds) {
-                if (lastRefillTime.compareAndSet(lastRefill, now)) {
-                    tokens.set(capacity);
-                }
-            }
-        }
+    public RateLimitRule getRule() {
+        return rule;
+    }
+
+    public RateLimitAlgorithm getAlgorithm() {
+        return rule.getAlgorithm();
+    }
+
+    public RateLimitStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() {
+        store.close();
+    }
 
-        public long getRetryAfterSeconds() {
-            refill();
-            if (tokens.get() > 0) {
-                return 0;
-            }
-            long now = System.currentTimeMillis();
-            long lastRefill = lastRefillTime.get();
-            long timePassed = (now - lastRefill) / 1000;
-            return Math.max(0, windowSizeInSeconds - timePassed);
+    private int clampPermits(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
         }
+        return Math.min(permits, rule.getMaxPermits());
     }
 }
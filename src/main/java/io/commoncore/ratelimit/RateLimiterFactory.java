@@ -0,0 +1,47 @@
+package io.commoncore.ratelimit;
+
+/**
+ * Creates {@link BlockingRateLimiter}s for code that paces its own work, such as
+ * outbound HTTP calls. The limiters keep their state in a store of their own, so their
+ * few long lived keys never compete with inbound clients for the key cap. With the
+ * Redis store they share the application's store instead, so the limits are shared by
+ * all instances, which is what a partner's quota usually means.
+ */
+public class RateLimiterFactory implements AutoCloseable {
+
+    private final RateLimitStore store;
+    private final TimerWheel timerWheel;
+    private final boolean ownsStore;
+
+    /**
+     * @param store     store of the limiters
+     * @param ownsStore whether closing the factory closes the store
+     */
+    public RateLimiterFactory(RateLimitStore store, TimerWheel timerWheel, boolean ownsStore) {
+        this.store = store;
+        this.timerWheel = timerWheel;
+        this.ownsStore = ownsStore;
+    }
+
+    /**
+     * @param name unique name of the limiter, used as the prefix of its keys
+     */
+    public BlockingRateLimiter create(String name, RateLimitRule rule) {
+        return new BlockingRateLimiter(name, new RateLimiter(rule, store), timerWheel);
+    }
+
+    public BlockingRateLimiter create(String name, int maxRequests, long windowSizeInSeconds) {
+        return create(name, new RateLimitRule(maxRequests, windowSizeInSeconds, RateLimitAlgorithm.GCRA));
+    }
+
+    public RateLimitStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() {
+        if (ownsStore) {
+            store.close();
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package io.commoncore.ratelimit;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Rate limiting filter registered ahead of the Spring Security filter chain
+ * ({@code commoncore.rate-limit.mode=filter}).
+ * <p>
+ * Rejected requests never reach JWT/API key/basic authentication or handler mapping,
+ * and no exception is created: the 429 body and headers are prepared per policy at
+ * startup and only the Retry-After value is filled in. Policies keyed by
+ * {@link RateLimitKeySource#PRINCIPAL} and policies that delay requests are left to the
+ * rate limiting interceptor (see {@link RateLimitService#isEnforcedByFilter}).
+ */
+@Slf4j
+public class RateLimitingFilter extends OncePerRequestFilter {
+
+    private final RateLimitService rateLimitService;
+    private final RateLimitTelemetry telemetry;
+    private final Map<RateLimitPolicy, Rejection> rejections = new IdentityHashMap<>();
+
+    public RateLimitingFilter(RateLimitService rateLimitService, RateLimitTelemetry telemetry) {
+        this.rateLimitService = rateLimitService;
+        this.telemetry = telemetry;
+        for (RateLimitPolicy policy : rateLimitService.getPolicies()) {
+            rejections.put(policy, new Rejection(policy.getRule()));
+        }
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        if (!rateLimitService.isEnabled() || !rateLimitService.isApplicable(request)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        RateLimitPolicy policy = rateLimitService.resolvePolicy(request);
+        if (!rateLimitService.isEnforcedByFilter(policy)) {
+            filterChain.doFilter(request, response);
+            return;
+        }
+
+        RateLimiter rateLimiter = rateLimitService.getRateLimiter(policy);
+        String key = rateLimitService.resolveKey(request, policy);
+        int cost = rateLimitService.resolveCost(request, policy);
+        Rejection rejection = rejections.get(policy);
+
+        boolean allowed = rateLimiter.tryAcquire(key, cost);
+        telemetry.record(policy, key, allowed);
+        if (!allowed) {
+            long retryAfter = rateLimiter.getRetryAfterSeconds(key, cost);
+            if (log.isDebugEnabled()) {
+                log.debug("Rate limit exceeded for key: {} - Retry after: {} seconds",
+                        rateLimitService.describeKey(request, policy), retryAfter);
+            }
+            rejection.write(response, retryAfter);
+            return;
+        }
+
+        response.setHeader("X-RateLimit-Limit", rejection.limitHeader);
+        response.setHeader("X-RateLimit-Window", rejection.windowHeader);
+        filterChain.doFilter(request, response);
+    }
+
+    /**
+     * Pre-serialized 429 response for one policy, same shape as the
+     * {@code CustomResponse} written by the global exception handler
+     */
+    private static final class Rejection {
+        private final String limitHeader;
+        private final String windowHeader;
+        private final byte[] bodyPrefix;
+        private final byte[] bodySuffix;
+
+        private Rejection(RateLimitRule rule) {
+            this.limitHeader = String.valueOf(rule.getCapacity());
+            this.windowHeader = String.valueOf(rule.getWindowSizeInSeconds());
+            String message = "Rate limit exceeded. Maximum " + rule.getCapacity() +
+                    " requests per " + rule.getWindowSizeInSeconds() + " seconds";
+            this.bodyPrefix = ("{\"statusCode\":429,\"data\":{\"error\":\"Too Many Requests\",\"message\":\"" +
+                    message + "\",\"retryAfterSeconds\":").getBytes(StandardCharsets.UTF_8);
+            this.bodySuffix = ("},\"message\":\"" + message + "\"}").getBytes(StandardCharsets.UTF_8);
+        }
+
+        private void write(HttpServletResponse response, long retryAfter) throws IOException {
+            String retryAfterValue = Long.toString(retryAfter);
+            byte[] retryAfterBytes = retryAfterValue.getBytes(StandardCharsets.US_ASCII);
+
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader("Retry-After", retryAfterValue);
+            response.setHeader("X-RateLimit-Limit", limitHeader);
+            response.setHeader("X-RateLimit-Window", windowHeader);
+            response.setContentType("application/json");
+            response.setContentLength(bodyPrefix.length + retryAfterBytes.length + bodySuffix.length);
+
+            ServletOutputStream out = response.getOutputStream();
+            out.write(bodyPrefix);
+            out.write(retryAfterBytes);
+            out.write(bodySuffix);
+            out.flush();
+        }
+    }
+}
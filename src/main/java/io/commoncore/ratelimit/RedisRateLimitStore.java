@@ -0,0 +1,491 @@
+package io.commoncore.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * {@link RateLimitStore} shared by every node through a server speaking the Redis protocol.
+ * <p>
+ * The shared store keeps one value per key, following the rule's algorithm: a
+ * fixed-window counter for {@link RateLimitAlgorithm#TOKEN_BUCKET} and a theoretical
+ * arrival time for {@link RateLimitAlgorithm#GCRA}. To avoid a network round trip per
+ * request, each node leases a block of permits at once and spends it locally with a
+ * CAS; only the request that drains the local lease talks to the server. A window
+ * counter is leased with {@code INCRBY}; the arrival time is pushed forward by a small
+ * script ({@link #GCRA_LEASE_SCRIPT}) that applies GCRA on the server clock, so
+ * refill stays continuous across the fleet. Once the shared value cannot cover a
+ * request, the key is rejected locally until the window ends or, for GCRA, until the
+ * missing permits are due. Permits left in a lease that has not been used for the
+ * lease TTL are given back ({@code DECRBY}) so other nodes can spend them.
+ * <p>
+ * No lock is held during a round trip: per key at most one lease request is in flight,
+ * and requests that find the lease empty meanwhile wait for that one instead of
+ * sending their own. If the server cannot be reached, the store is marked down for the
+ * retry interval (doubling with each failed retry) and requests go straight to a
+ * node-local store, so limits are still enforced per node and an outage costs no
+ * connect timeouts on the request path.
+ */
+@Slf4j
+public class RedisRateLimitStore implements RateLimitStore {
+
+    /**
+     * The retry interval doubles with each failed retry, up to 32 times its configured value
+     */
+    private static final int MAX_BACKOFF_SHIFT = 5;
+
+    /**
+     * Leases up to ARGV[3] permits from the theoretical arrival time (microseconds) in KEYS[1],
+     * given the emission interval (ARGV[1]) and burst tolerance (ARGV[2]) in microseconds.
+     * Returns the number of permits granted or, if none is available, minus the milliseconds
+     * until the next one is.
+     */
+    static final String GCRA_LEASE_SCRIPT = String.join("\n",
+            "if redis.replicate_commands then redis.replicate_commands() end",
+            "local time = redis.call('TIME')",
+            "local now = tonumber(time[1]) * 1000000 + tonumber(time[2])",
+            "local interval = tonumber(ARGV[1])",
+            "local tolerance = tonumber(ARGV[2])",
+            "local tat = math.max(tonumber(redis.call('GET', KEYS[1]) or 0), now)",
+            "local granted = math.min(tonumber(ARGV[3]), math.floor((now + tolerance - tat) / interval))",
+            "if granted <= 0 then",
+            "  return -math.max(1, math.ceil((tat + interval - tolerance - now) / 1000))",
+            "end",
+            "tat = tat + granted * interval",
+            "redis.call('SET', KEYS[1], string.format('%.0f', tat), 'PX', math.ceil((tat - now) / 1000))",
+            "return granted");
+
+    private final RespClient client;
+    private final String keyPrefix;
+    private final int leaseSize;
+    private final long leaseTtlNanos;
+    private final RateLimitStore fallback;
+    private final long retryIntervalNanos;
+    private final ConcurrentHashMap<String, Lease> leases = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService leaseReaper;
+
+    /**
+     * {@link System#nanoTime()} until which the shared store is treated as down, 0 while it is up
+     */
+    private final AtomicLong remoteDownUntil = new AtomicLong();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicLong leaseRequests = new AtomicLong();
+    private final AtomicLong returnedPermits = new AtomicLong();
+    private final AtomicLong remoteFailures = new AtomicLong();
+
+    /**
+     * @param retryInterval how long the shared store is left alone after a failed call
+     *                      before one request tries it again
+     */
+    public RedisRateLimitStore(RespClient client, String keyPrefix, int leaseSize, Duration leaseTtl,
+                               Duration retryInterval, RateLimitStore fallback) {
+        this.client = client;
+        this.keyPrefix = keyPrefix != null ? keyPrefix : "";
+        this.leaseSize = Math.max(1, leaseSize);
+        this.leaseTtlNanos = Math.max(1, leaseTtl.toNanos());
+        this.retryIntervalNanos = Math.max(1, retryInterval.toNanos());
+        this.fallback = fallback != null ? fallback : new InMemoryRateLimitStore();
+        this.leaseReaper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "commoncore-ratelimit-lease-reaper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long intervalMillis = Math.max(100, leaseTtl.toMillis());
+        leaseReaper.scheduleWithFixedDelay(this::reapLeases, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean tryAcquire(String key, RateLimitRule rule, int permits) {
+        if (rule.isComposite()) {
+            throw new IllegalArgumentException("Redis store leases from one counter per key and does not support composite rules");
+        }
+        long now = System.currentTimeMillis();
+        Lease lease = leases.computeIfAbsent(key, k -> new Lease(rule));
+        // GCRA has no windows, its lease stays in window 0
+        long window = lease.isGcra() ? 0 : now / rule.getWindowSizeInMillis();
+        lease.roll(window);
+
+        while (true) {
+            if (lease.tryTake(permits)) {
+                return true;
+            }
+            if (now < lease.exhaustedUntil) {
+                return false;
+            }
+            if (lease.window != window) {
+                // The window ended while this request waited for a lease
+                return tryAcquire(key, rule, permits);
+            }
+
+            CompletableFuture<Boolean> pending = lease.pending.get();
+            if (pending == null) {
+                if (!isRemoteAvailable()) {
+                    return fallback.tryAcquire(key, rule, permits);
+                }
+                CompletableFuture<Boolean> own = new CompletableFuture<>();
+                if (!lease.pending.compareAndSet(null, own)) {
+                    continue;
+                }
+                boolean leased = false;
+                try {
+                    leased = refill(key, rule, lease, window, permits);
+                } finally {
+                    lease.pending.set(null);
+                    own.complete(leased);
+                }
+                if (!leased) {
+                    return fallback.tryAcquire(key, rule, permits);
+                }
+            } else if (!await(pending)) {
+                // The lease request this one waited for failed, the server is down
+                return fallback.tryAcquire(key, rule, permits);
+            }
+        }
+    }
+
+    @Override
+    public long getRetryAfterMillis(String key, RateLimitRule rule, int permits) {
+        Lease lease = leases.get(key);
+        if (lease == null) {
+            return fallback.getRetryAfterMillis(key, rule, permits);
+        }
+        long wait = lease.exhaustedUntil - System.currentTimeMillis();
+        return wait > 0 ? wait : fallback.getRetryAfterMillis(key, rule, permits);
+    }
+
+    @Override
+    public long size() {
+        return leases.size();
+    }
+
+    /**
+     * Number of lease requests sent to the shared store
+     */
+    public long getLeaseRequestCount() {
+        return leaseRequests.get();
+    }
+
+    /**
+     * Unused permits given back to the shared store
+     */
+    public long getReturnedPermitCount() {
+        return returnedPermits.get();
+    }
+
+    /**
+     * Calls to the shared store that failed and were served by the local fallback
+     */
+    public long getRemoteFailureCount() {
+        return remoteFailures.get();
+    }
+
+    /**
+     * Local store used while the shared store is unreachable
+     */
+    public RateLimitStore getFallback() {
+        return fallback;
+    }
+
+    @Override
+    public void close() {
+        leaseReaper.shutdownNow();
+        for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+            returnLease(entry.getKey(), entry.getValue());
+        }
+        client.close();
+        fallback.close();
+    }
+
+    /**
+     * Lease permits for the request, without holding any lock during the round trip
+     *
+     * @return false if the shared store could not be reached
+     */
+    private boolean refill(String key, RateLimitRule rule, Lease lease, long window, int permits) {
+        long needed = permits - lease.remaining.get();
+        // One lease worth of permits, more if a single request needs more
+        long requested = Math.min(Math.max(leaseSize, needed), rule.getCapacity());
+        long reply;
+        try {
+            leaseRequests.incrementAndGet();
+            reply = lease.isGcra()
+                    ? leaseFromArrivalTime(key, lease, rule, requested)
+                    : leaseFromWindow(key, rule, window, requested);
+        } catch (IOException e) {
+            remoteDown(e);
+            return false;
+        }
+        remoteUp();
+
+        long granted = Math.max(0, reply);
+        long exhaustedUntil = 0;
+        if (granted < needed) {
+            // The shared store cannot cover this request yet
+            if (!lease.isGcra()) {
+                exhaustedUntil = (window + 1) * rule.getWindowSizeInMillis();
+            } else if (reply < 0) {
+                exhaustedUntil = System.currentTimeMillis() - reply;
+            } else {
+                exhaustedUntil = System.currentTimeMillis()
+                        + TimeUnit.MICROSECONDS.toMillis((needed - granted) * lease.emissionIntervalMicros + 999);
+            }
+        }
+        lease.add(window, granted, exhaustedUntil);
+        return true;
+    }
+
+    /**
+     * Wait for the lease request another thread has in flight for the same key;
+     * it is bounded by the client timeouts
+     *
+     * @return false if that request failed
+     */
+    private static boolean await(CompletableFuture<Boolean> pending) {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether calls to the shared store should be attempted. Once the retry time of an
+     * outage has passed, a single caller is let through to probe the server; the others
+     * keep using local limits until it reports back.
+     */
+    private boolean isRemoteAvailable() {
+        long downUntil = remoteDownUntil.get();
+        if (downUntil == 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        return now - downUntil >= 0 && remoteDownUntil.compareAndSet(downUntil, now + retryIntervalNanos);
+    }
+
+    private void remoteUp() {
+        if (remoteDownUntil.get() != 0) {
+            remoteDownUntil.set(0);
+            log.info("Rate limit store reachable again, using shared limits");
+        }
+        consecutiveFailures.set(0);
+    }
+
+    private void remoteDown(IOException e) {
+        remoteFailures.incrementAndGet();
+        int failures = consecutiveFailures.incrementAndGet();
+        long backoffNanos = retryIntervalNanos << Math.min(failures - 1, MAX_BACKOFF_SHIFT);
+        remoteDownUntil.set(System.nanoTime() + backoffNanos);
+        if (failures == 1) {
+            log.warn("Rate limit store unavailable, using local limits: {}", e.getMessage());
+        } else {
+            log.debug("Rate limit store still unavailable, next try in {} ms: {}",
+                    TimeUnit.NANOSECONDS.toMillis(backoffNanos), e.getMessage());
+        }
+    }
+
+    /**
+     * Take up to {@code requested} permits from the shared window counter
+     *
+     * @return number of permits granted, 0 when the window is exhausted
+     */
+    private long leaseFromWindow(String key, RateLimitRule rule, long window, long requested) throws IOException {
+        String counterKey = counterKey(key, window);
+        long windowMillis = rule.getWindowSizeInMillis();
+
+        long[] replies = client.execute(
+                new String[]{"INCRBY", counterKey, Long.toString(requested)},
+                new String[]{"PEXPIRE", counterKey, Long.toString(windowMillis * 2)}
+        );
+        long total = replies[0];
+        if (total <= rule.getCapacity()) {
+            return requested;
+        }
+
+        long granted = Math.max(0, rule.getCapacity() - (total - requested));
+        // Undo the part of the increment that was not granted so the counter stays exact
+        client.execute(new String[]{"DECRBY", counterKey, Long.toString(requested - granted)});
+        return granted;
+    }
+
+    /**
+     * Take up to {@code requested} permits from the shared theoretical arrival time
+     *
+     * @return number of permits granted, or minus the milliseconds until one is available
+     */
+    private long leaseFromArrivalTime(String key, Lease lease, RateLimitRule rule, long requested) throws IOException {
+        return client.execute(new String[]{
+                "EVAL", GCRA_LEASE_SCRIPT, "1", arrivalTimeKey(key),
+                Long.toString(lease.emissionIntervalMicros),
+                Long.toString(lease.emissionIntervalMicros * rule.getCapacity()),
+                Long.toString(requested)
+        })[0];
+    }
+
+    private void reapLeases() {
+        if (remoteDownUntil.get() != 0) {
+            // Nothing can be given back during an outage; leases are kept until it ends
+            return;
+        }
+        long now = System.nanoTime();
+        for (Map.Entry<String, Lease> entry : leases.entrySet()) {
+            Lease lease = entry.getValue();
+            if (now - lease.leasedAtNanos < leaseTtlNanos || lease.pending.get() != null) {
+                continue;
+            }
+            try {
+                returnLease(entry.getKey(), lease);
+                if (lease.remaining.get() == 0 && System.currentTimeMillis() >= lease.exhaustedUntil
+                        && lease.pending.get() == null) {
+                    leases.remove(entry.getKey(), lease);
+                }
+            } catch (RuntimeException e) {
+                log.debug("Failed to return rate limit lease for {}: {}", entry.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    private void returnLease(String key, Lease lease) {
+        if (lease.isGcra()) {
+            returnToArrivalTime(key, lease);
+            return;
+        }
+        long unused;
+        long window;
+        synchronized (lease) {
+            window = lease.window;
+            if (window != System.currentTimeMillis() / lease.windowMillis) {
+                // The window's counter is gone or about to expire, nothing to give back
+                lease.remaining.set(0);
+                return;
+            }
+            unused = lease.remaining.getAndSet(0);
+        }
+        if (unused <= 0) {
+            return;
+        }
+        try {
+            client.execute(new String[]{"DECRBY", counterKey(key, window), Long.toString(unused)});
+            returnedPermits.addAndGet(unused);
+        } catch (IOException e) {
+            remoteDown(e);
+        }
+    }
+
+    /**
+     * Move the shared arrival time back by the unused permits
+     */
+    private void returnToArrivalTime(String key, Lease lease) {
+        long unused = lease.remaining.getAndSet(0);
+        if (unused <= 0) {
+            return;
+        }
+        String arrivalTimeKey = arrivalTimeKey(key);
+        try {
+            client.execute(
+                    new String[]{"DECRBY", arrivalTimeKey, Long.toString(unused * lease.emissionIntervalMicros)},
+                    // The arrival time is never further ahead than one window; keeps a key
+                    // that expired meanwhile from staying behind
+                    new String[]{"PEXPIRE", arrivalTimeKey, Long.toString(lease.windowMillis)}
+            );
+            returnedPermits.addAndGet(unused);
+        } catch (IOException e) {
+            remoteDown(e);
+        }
+    }
+
+    private String counterKey(String key, long window) {
+        return keyPrefix + key + ":" + window;
+    }
+
+    private String arrivalTimeKey(String key) {
+        return keyPrefix + key + ":tat";
+    }
+
+    private static final class Lease {
+        private final long windowMillis;
+
+        /**
+         * GCRA emission interval, 0 for window counters
+         */
+        private final long emissionIntervalMicros;
+        private final AtomicLong remaining = new AtomicLong();
+        private volatile long window = -1;
+        private volatile long exhaustedUntil;
+        private volatile long leasedAtNanos = System.nanoTime();
+
+        /**
+         * Lease request in flight for this key, null if there is none
+         */
+        private final AtomicReference<CompletableFuture<Boolean>> pending = new AtomicReference<>();
+
+        Lease(RateLimitRule rule) {
+            this.windowMillis = rule.getWindowSizeInMillis();
+            this.emissionIntervalMicros = rule.getAlgorithm() == RateLimitAlgorithm.GCRA
+                    ? Math.max(1, TimeUnit.MILLISECONDS.toMicros(windowMillis) / rule.getCapacity())
+                    : 0;
+        }
+
+        boolean isGcra() {
+            return emissionIntervalMicros > 0;
+        }
+
+        /**
+         * Move to the given window; permits of a previous window die with that window's counter
+         */
+        void roll(long window) {
+            if (this.window >= window) {
+                return;
+            }
+            synchronized (this) {
+                if (this.window < window) {
+                    remaining.set(0);
+                    exhaustedUntil = 0;
+                    this.window = window;
+                }
+            }
+        }
+
+        /**
+         * Add permits leased for the given window, unless that window has ended meanwhile
+         *
+         * @param exhaustedUntil when the shared store can cover the request again, 0 if it did
+         */
+        synchronized void add(long window, long granted, long exhaustedUntil) {
+            if (this.window != window) {
+                return;
+            }
+            leasedAtNanos = System.nanoTime();
+            remaining.addAndGet(granted);
+            if (exhaustedUntil > 0) {
+                this.exhaustedUntil = exhaustedUntil;
+            }
+        }
+
+        boolean tryTake(int permits) {
+            while (true) {
+                long current = remaining.get();
+                if (current < permits) {
+                    return false;
+                }
+                if (remaining.compareAndSet(current, current - permits)) {
+                    return true;
+                }
+            }
+        }
+    }
+}
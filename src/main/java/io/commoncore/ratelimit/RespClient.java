@@ -0,0 +1,244 @@
+package io.commoncore.ratelimit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal client for the Redis serialization protocol (RESP2).
+ * <p>
+ * Only what the shared rate limit store needs: pipelined commands with integer or
+ * status replies over a small pool of blocking connections. Works against Redis and
+ * any server speaking the same protocol (Valkey, KeyDB, Dragonfly, embedded test servers).
+ */
+public class RespClient implements AutoCloseable {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int timeoutMillis;
+    private final BlockingQueue<Connection> idle;
+    private final AtomicInteger open = new AtomicInteger();
+    private final int poolSize;
+    private volatile boolean closed;
+
+    public RespClient(String host, int port, String password, int timeoutMillis, int poolSize) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.timeoutMillis = timeoutMillis;
+        this.poolSize = Math.max(1, poolSize);
+        this.idle = new ArrayBlockingQueue<>(this.poolSize);
+    }
+
+    /**
+     * Send all commands in one write and read one reply per command.
+     * Integer replies are returned as is, status and bulk replies as 0.
+     *
+     * @throws IOException on connection problems or an error reply
+     */
+    public long[] execute(String[]... commands) throws IOException {
+        Connection connection = borrow();
+        boolean healthy = false;
+        try {
+            for (String[] command : commands) {
+                connection.write(command);
+            }
+            connection.out.flush();
+            long[] replies = new long[commands.length];
+            IOException error = null;
+            for (int i = 0; i < commands.length; i++) {
+                try {
+                    replies[i] = connection.readReply();
+                } catch (RespErrorException e) {
+                    // Keep reading so the connection stays in sync
+                    error = e;
+                }
+            }
+            healthy = true;
+            if (error != null) {
+                throw error;
+            }
+            return replies;
+        } finally {
+            release(connection, healthy);
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.closeQuietly();
+        }
+    }
+
+    private Connection borrow() throws IOException {
+        if (closed) {
+            throw new IOException("Client is closed");
+        }
+        Connection connection = idle.poll();
+        if (connection != null) {
+            return connection;
+        }
+        if (open.incrementAndGet() <= poolSize) {
+            try {
+                return connect();
+            } catch (IOException | RuntimeException e) {
+                open.decrementAndGet();
+                throw e;
+            }
+        }
+        open.decrementAndGet();
+        try {
+            connection = idle.poll(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection", e);
+        }
+        if (connection == null) {
+            throw new IOException("Timed out waiting for a connection to " + host + ":" + port);
+        }
+        return connection;
+    }
+
+    private void release(Connection connection, boolean healthy) {
+        if (healthy && !closed && idle.offer(connection)) {
+            return;
+        }
+        open.decrementAndGet();
+        connection.closeQuietly();
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(timeoutMillis);
+            socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+            Connection connection = new Connection(socket);
+            if (password != null && !password.isEmpty()) {
+                connection.write(new String[]{"AUTH", password});
+                connection.out.flush();
+                connection.readReply();
+            }
+            return connection;
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    private static final class RespErrorException extends IOException {
+        RespErrorException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Connection {
+        private final Socket socket;
+        private final OutputStream out;
+        private final InputStream in;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+            this.in = new BufferedInputStream(socket.getInputStream());
+        }
+
+        void write(String[] command) throws IOException {
+            out.write('*');
+            writeNumber(command.length);
+            for (String arg : command) {
+                byte[] bytes = arg.getBytes(StandardCharsets.UTF_8);
+                out.write('$');
+                writeNumber(bytes.length);
+                out.write(bytes);
+                out.write(CRLF);
+            }
+        }
+
+        private void writeNumber(long value) throws IOException {
+            out.write(Long.toString(value).getBytes(StandardCharsets.US_ASCII));
+            out.write(CRLF);
+        }
+
+        long readReply() throws IOException {
+            int type = in.read();
+            switch (type) {
+                case ':':
+                    return Long.parseLong(readLine());
+                case '+':
+                    readLine();
+                    return 0;
+                case '-':
+                    throw new RespErrorException(readLine());
+                case '$': {
+                    int length = Integer.parseInt(readLine());
+                    if (length >= 0) {
+                        skip(length + 2);
+                    }
+                    return 0;
+                }
+                case '*': {
+                    int count = Integer.parseInt(readLine());
+                    for (int i = 0; i < count; i++) {
+                        readReply();
+                    }
+                    return count;
+                }
+                case -1:
+                    throw new EOFException("Connection closed by server");
+                default:
+                    throw new IOException("Unexpected reply type: " + (char) type);
+            }
+        }
+
+        private String readLine() throws IOException {
+            StringBuilder line = new StringBuilder();
+            int b;
+            while ((b = in.read()) != '\r') {
+                if (b == -1) {
+                    throw new EOFException("Connection closed by server");
+                }
+                line.append((char) b);
+            }
+            in.read(); // '\n'
+            return line.toString();
+        }
+
+        private void skip(long count) throws IOException {
+            while (count > 0) {
+                long skipped = in.skip(count);
+                if (skipped <= 0) {
+                    if (in.read() == -1) {
+                        throw new EOFException("Connection closed by server");
+                    }
+                    skipped = 1;
+                }
+                count -= skipped;
+            }
+        }
+
+        void closeQuietly() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package io.commoncore.ratelimit;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel running short delayed tasks on one thread.
+ * <p>
+ * Scheduling only appends to a lock-free queue; the worker moves new tasks into the
+ * slot of the tick they are due in and, once per tick, runs the tasks of the current
+ * slot. Scheduling and expiring are O(1) no matter how many tasks are pending, at the
+ * price of firing up to one tick late. Tasks must be short, e.g. handing a request
+ * back to the servlet container. The worker thread starts with the first task.
+ * <p>
+ * A task that throws is logged and skipped. Only a JVM error such as
+ * {@link OutOfMemoryError} stops the worker; the wheel then counts as closed, so
+ * callers are told by {@link #schedule} and can run the task themselves.
+ */
+@Slf4j
+public class TimerWheel implements AutoCloseable {
+
+    private final String threadName;
+    private final long tickNanos;
+    private final Timeout[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> scheduled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private volatile boolean closed;
+    private volatile long startNanos;
+    private Thread worker;
+
+    /**
+     * @param threadName name of the worker thread
+     * @param tick       resolution of the wheel
+     * @param wheelSize  slots per rotation, rounded up to a power of two
+     */
+    public TimerWheel(String threadName, long tick, TimeUnit unit, int wheelSize) {
+        this.threadName = threadName;
+        this.tickNanos = Math.max(TimeUnit.MILLISECONDS.toNanos(1), unit.toNanos(tick));
+        int size = Integer.highestOneBit(Math.max(2, wheelSize) * 2 - 1);
+        this.wheel = new Timeout[size];
+        this.mask = size - 1;
+    }
+
+    /**
+     * Run the task on the wheel thread after the delay
+     *
+     * @throws IllegalStateException if the wheel has been closed and will not run the task
+     */
+    public void schedule(Runnable task, long delay, TimeUnit unit) {
+        if (closed) {
+            throw new IllegalStateException("Timer wheel " + threadName + " is closed");
+        }
+        start();
+        pending.incrementAndGet();
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        scheduled.add(timeout);
+        // Closed meanwhile: the worker may have drained the queue already. Whoever takes
+        // the task out of the queue runs it, the worker or the caller.
+        if (closed && scheduled.remove(timeout)) {
+            pending.decrementAndGet();
+            throw new IllegalStateException("Timer wheel " + threadName + " is closed");
+        }
+    }
+
+    /**
+     * Tasks scheduled but not run yet
+     */
+    public int getPendingCount() {
+        return pending.get();
+    }
+
+    /**
+     * Stop the worker; tasks still pending are run right away rather than dropped
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Thread thread;
+        synchronized (this) {
+            thread = worker;
+        }
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join(TimeUnit.NANOSECONDS.toMillis(tickNanos) * 10 + 1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void start() {
+        if (started.get() || !started.compareAndSet(false, true)) {
+            return;
+        }
+        startNanos = System.nanoTime();
+        Thread thread = new Thread(this::run, threadName);
+        thread.setDaemon(true);
+        synchronized (this) {
+            worker = thread;
+        }
+        thread.start();
+    }
+
+    private void run() {
+        try {
+            long tick = 0;
+            while (!closed) {
+                long deadline = startNanos + (tick + 1) * tickNanos;
+                long sleepNanos;
+                while ((sleepNanos = deadline - System.nanoTime()) > 0 && !closed) {
+                    LockSupport.parkNanos(this, sleepNanos);
+                }
+                if (closed) {
+                    break;
+                }
+                transferScheduled(tick);
+                expire((int) (tick & mask));
+                tick++;
+            }
+        } finally {
+            // Also when the worker dies, so schedule() stops accepting tasks nobody would run
+            closed = true;
+        }
+        runRemaining();
+    }
+
+    /**
+     * Move newly scheduled tasks into the slot of the tick they are due in
+     */
+    private void transferScheduled(long tick) {
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            long dueTick = Math.max(tick, (timeout.deadlineNanos - startNanos) / tickNanos);
+            timeout.remainingRounds = (dueTick - tick) / wheel.length;
+            int slot = (int) (dueTick & mask);
+            timeout.next = wheel[slot];
+            wheel[slot] = timeout;
+        }
+    }
+
+    private void expire(int slot) {
+        Timeout previous = null;
+        Timeout timeout = wheel[slot];
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.remainingRounds <= 0) {
+                if (previous == null) {
+                    wheel[slot] = next;
+                } else {
+                    previous.next = next;
+                }
+                runTask(timeout);
+            } else {
+                timeout.remainingRounds--;
+                previous = timeout;
+            }
+            timeout = next;
+        }
+    }
+
+    private void runRemaining() {
+        for (int i = 0; i < wheel.length; i++) {
+            for (Timeout timeout = wheel[i]; timeout != null; timeout = timeout.next) {
+                runTask(timeout);
+            }
+            wheel[i] = null;
+        }
+        Timeout timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            runTask(timeout);
+        }
+    }
+
+    private void runTask(Timeout timeout) {
+        pending.decrementAndGet();
+        try {
+            timeout.task.run();
+        } catch (VirtualMachineError e) {
+            throw e;
+        } catch (Throwable e) {
+            log.warn("Delayed task failed on {}: {}", threadName, e.toString());
+        }
+    }
+
+    private static final class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private long remainingRounds;
+        private Timeout next;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package io.commoncore.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Fixed window token bucket, refilled all at once when the window elapses.
+ * Permits reserved ahead of time drive the token count below zero; that debt is
+ * paid off by the following refills.
+ */
+class TokenBucket implements Bucket {
+
+    /**
+     * Reservations may reach at most this many windows ahead, which keeps the debt within an int
+     */
+    private static final int MAX_DEBT_WINDOWS = 64;
+
+    private final RateLimitRule rule;
+    private final int capacity;
+    private final long minTokens;
+    private final long windowSizeInNanos;
+    private final AtomicInteger tokens;
+    private final AtomicLong lastRefillTime;
+
+    public TokenBucket(RateLimitRule rule) {
+        this(rule, rule.getCapacity(), System.nanoTime());
+    }
+
+    /**
+     * Bucket resuming from saved state
+     */
+    TokenBucket(RateLimitRule rule, int tokens, long lastRefillNanos) {
+        this.rule = rule;
+        this.capacity = rule.getCapacity();
+        this.minTokens = Math.max(Integer.MIN_VALUE, -MAX_DEBT_WINDOWS * (long) capacity);
+        this.windowSizeInNanos = TimeUnit.SECONDS.toNanos(rule.getWindowSizeInSeconds());
+        this.tokens = new AtomicInteger(Math.min(capacity, tokens));
+        this.lastRefillTime = new AtomicLong(lastRefillNanos);
+    }
+
+    @Override
+    public boolean tryConsume(int permits) {
+        return reserve(permits, 0) >= 0;
+    }
+
+    @Override
+    public long reserve(int permits, long maxWaitNanos) {
+        refill();
+        while (true) {
+            int currentTokens = tokens.get();
+            long waitNanos = 0;
+            if (currentTokens < permits) {
+                waitNanos = waitForTokens(currentTokens, permits);
+                if (waitNanos > maxWaitNanos || (long) currentTokens - permits < minTokens) {
+                    return -1;
+                }
+            }
+            if (tokens.compareAndSet(currentTokens, currentTokens - permits)) {
+                return waitNanos;
+            }
+        }
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        long lastRefill = lastRefillTime.get();
+        long elapsed = now - lastRefill;
+
+        if (elapsed >= windowSizeInNanos) {
+            if (lastRefillTime.compareAndSet(lastRefill, now)) {
+                long windows = elapsed / windowSizeInNanos;
+                tokens.getAndUpdate(current -> (int) Math.min(capacity, current + windows * capacity));
+            }
+        }
+    }
+
+    /**
+     * Time until the refills have brought the bucket from {@code currentTokens} to {@code permits}
+     */
+    private long waitForTokens(int currentTokens, int permits) {
+        long windows = ((long) permits - currentTokens + capacity - 1) / capacity;
+        long elapsed = System.nanoTime() - lastRefillTime.get();
+        return Math.max(0, windows * windowSizeInNanos - elapsed);
+    }
+
+    @Override
+    public long getRetryAfterMillis(int permits) {
+        refill();
+        int currentTokens = tokens.get();
+        if (currentTokens >= permits) {
+            return 0;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(waitForTokens(currentTokens, permits) + 999_999);
+    }
+
+    @Override
+    public long getFullAtNanos() {
+        long lastRefill = lastRefillTime.get();
+        int currentTokens = tokens.get();
+        if (currentTokens >= capacity) {
+            return lastRefill;
+        }
+        long windows = ((long) capacity - currentTokens + capacity - 1) / capacity;
+        return lastRefill + windows * windowSizeInNanos;
+    }
+
+    @Override
+    public RateLimitRule getRule() {
+        return rule;
+    }
+
+    @Override
+    public int getTokens() {
+        return tokens.get();
+    }
+
+    @Override
+    public long getStateNanos() {
+        return lastRefillTime.get();
+    }
+}
@@ -0,0 +1,43 @@
+package io.commoncore.requestid;
+
+import io.commoncore.config.CommonCoreProperties;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Configuration for request IDs
+ */
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "commoncore.logging.request-id.enabled", havingValue = "true", matchIfMissing = true)
+public class RequestIdConfig {
+
+    private final CommonCoreProperties properties;
+
+    /**
+     * Runs first, so every later filter and interceptor logs with the request ID
+     */
+    @Bean
+    public FilterRegistrationBean<RequestIdFilter> requestIdFilter() {
+        FilterRegistrationBean<RequestIdFilter> registration =
+                new FilterRegistrationBean<>(new RequestIdFilter(properties.getLogging().getRequestId()));
+        registration.setName("commonCoreRequestIdFilter");
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+
+    /**
+     * Picked up by Spring Boot's task executor, unless the application has its own decorator
+     */
+    @Bean
+    @ConditionalOnMissingBean(TaskDecorator.class)
+    public RequestIdTaskDecorator requestIdTaskDecorator() {
+        return new RequestIdTaskDecorator();
+    }
+}
@@ -0,0 +1,95 @@
+package io.commoncore.requestid;
+
+import org.slf4j.MDC;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+
+/**
+ * Access to the ID of the request the current thread works for. The ID lives in the
+ * SLF4J MDC under {@value #MDC_KEY}, so every log line can include it with
+ * {@code %X{requestId}}.
+ * <p>
+ * Work handed to another thread does not see the MDC; wrap it with {@link #wrap(Runnable)}
+ * or {@link #wrap(Executor)}. Spring's task executors do this through
+ * {@link RequestIdTaskDecorator}.
+ */
+public final class RequestIdContext {
+
+    public static final String MDC_KEY = "requestId";
+
+    /**
+     * Request attribute holding the ID, also for dispatches on other threads
+     */
+    public static final String REQUEST_ATTRIBUTE = "requestId";
+
+    private RequestIdContext() {
+    }
+
+    /**
+     * ID of the current request, or null outside of one
+     */
+    public static String current() {
+        return MDC.get(MDC_KEY);
+    }
+
+    /**
+     * Make the runnable run with the current request ID
+     */
+    public static Runnable wrap(Runnable task) {
+        String requestId = current();
+        if (requestId == null) {
+            return task;
+        }
+        return () -> {
+            String previous = set(requestId);
+            try {
+                task.run();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    /**
+     * Make the callable run with the current request ID
+     */
+    public static <T> Callable<T> wrap(Callable<T> task) {
+        String requestId = current();
+        if (requestId == null) {
+            return task;
+        }
+        return () -> {
+            String previous = set(requestId);
+            try {
+                return task.call();
+            } finally {
+                set(previous);
+            }
+        };
+    }
+
+    /**
+     * Executor running every task with the request ID of the thread submitting it,
+     * e.g. for {@code CompletableFuture.supplyAsync(supplier, RequestIdContext.wrap(executor))}
+     */
+    public static Executor wrap(Executor executor) {
+        return task -> executor.execute(wrap(task));
+    }
+
+    /**
+     * Set the request ID of the current thread
+     *
+     * @param requestId the ID, or null to clear it
+     * @return the ID set before
+     */
+    static String set(String requestId) {
+        String previous = MDC.get(MDC_KEY);
+        if (requestId != null) {
+            MDC.put(MDC_KEY, requestId);
+        } else {
+            MDC.remove(MDC_KEY);
+        }
+        return previous;
+    }
+}
@@ -0,0 +1,81 @@
+package io.commoncore.requestid;
+
+import io.commoncore.config.CommonCoreProperties;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Assigns every request an ID before any other filter runs. A well-formed incoming
+ * ID header is kept, so one ID follows a call across services; otherwise a new one is
+ * generated. The ID is put in the MDC and a request attribute and sent back in the
+ * response header.
+ * <p>
+ * Async dispatches pass through the filter again and restore the ID of their request.
+ */
+public class RequestIdFilter extends OncePerRequestFilter {
+
+    private static final int MAX_INCOMING_LENGTH = 128;
+
+    private final CommonCoreProperties.Logging.RequestId config;
+
+    public RequestIdFilter(CommonCoreProperties.Logging.RequestId config) {
+        this.config = config;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response,
+                                    FilterChain filterChain) throws ServletException, IOException {
+        String requestId = (String) request.getAttribute(RequestIdContext.REQUEST_ATTRIBUTE);
+        if (requestId == null) {
+            requestId = resolveRequestId(request);
+            request.setAttribute(RequestIdContext.REQUEST_ATTRIBUTE, requestId);
+            response.setHeader(config.getHeaderName(), requestId);
+        }
+
+        String previous = RequestIdContext.set(requestId);
+        try {
+            filterChain.doFilter(request, response);
+        } finally {
+            RequestIdContext.set(previous);
+        }
+    }
+
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+
+    private String resolveRequestId(HttpServletRequest request) {
+        if (config.isAcceptIncoming()) {
+            String incoming = request.getHeader(config.getHeaderName());
+            if (isWellFormed(incoming)) {
+                return incoming;
+            }
+        }
+        return RequestIdGenerator.next();
+    }
+
+    /**
+     * Only short IDs of letters, digits and {@code -_.:} are taken over, so a client
+     * cannot inject arbitrary text into the logs
+     */
+    private static boolean isWellFormed(String requestId) {
+        if (requestId == null || requestId.isEmpty() || requestId.length() > MAX_INCOMING_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < requestId.length(); i++) {
+            char c = requestId.charAt(i);
+            boolean allowed = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '-' || c == '_' || c == '.' || c == ':';
+            if (!allowed) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,42 @@
+package io.commoncore.requestid;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Generates ULID-style request IDs: 26 Crockford base32 characters holding a 48-bit
+ * millisecond timestamp followed by 80 random bits, so IDs sort by creation time.
+ * <p>
+ * The random bits come from {@link ThreadLocalRandom}; unlike {@code UUID.randomUUID()}
+ * no shared {@code SecureRandom} is involved, so generating IDs never contends.
+ * Request IDs only need to be unique, not unpredictable.
+ */
+public final class RequestIdGenerator {
+
+    private static final char[] ALPHABET = "0123456789ABCDEFGHJKMNPQRSTVWXYZ".toCharArray();
+    private static final int LENGTH = 26;
+
+    private RequestIdGenerator() {
+    }
+
+    public static String next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        // 128 bits: timestamp (48) and random (16) in high, random (64) in low
+        long high = (System.currentTimeMillis() << 16) | (random.nextInt() & 0xFFFF);
+        long low = random.nextLong();
+
+        char[] chars = new char[LENGTH];
+        for (int i = 0; i < LENGTH; i++) {
+            int shift = (LENGTH - 1 - i) * 5;
+            long bits;
+            if (shift >= 64) {
+                bits = high >>> (shift - 64);
+            } else if (shift > 59) {
+                bits = (low >>> shift) | (high << (64 - shift));
+            } else {
+                bits = low >>> shift;
+            }
+            chars[i] = ALPHABET[(int) bits & 31];
+        }
+        return new String(chars);
+    }
+}
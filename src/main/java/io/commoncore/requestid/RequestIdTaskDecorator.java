@@ -0,0 +1,15 @@
+package io.commoncore.requestid;
+
+import org.springframework.core.task.TaskDecorator;
+
+/**
+ * Carries the request ID into tasks run by Spring task executors, including the
+ * executor of async MVC handlers and {@code @Async} methods
+ */
+public class RequestIdTaskDecorator implements TaskDecorator {
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        return RequestIdContext.wrap(runnable);
+    }
+}
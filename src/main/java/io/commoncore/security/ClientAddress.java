@@ -0,0 +1,372 @@
+package io.commoncore.security;
+
+/**
+ * IP address of a client held as two longs (IPv4 as IPv4-mapped IPv6),
+ * parsed without DNS lookups or intermediate strings.
+ */
+public final class ClientAddress {
+
+    private static final long IPV4_MAPPED_PREFIX = 0x0000FFFFL << 32;
+
+    private final long high;
+    private final long low;
+    private final int prefixLength;
+    private String text;
+
+    private ClientAddress(long high, long low, int prefixLength) {
+        this.high = high;
+        this.low = low;
+        this.prefixLength = prefixLength;
+    }
+
+    /**
+     * Parse an IPv4 or IPv6 literal, optionally in brackets or followed by a port
+     *
+     * @return the address, or null if the text is not an IP literal
+     */
+    public static ClientAddress parse(CharSequence value) {
+        return value == null ? null : parse(value, 0, value.length());
+    }
+
+    /**
+     * Parse the IP literal in {@code value[start, end)}, ignoring surrounding whitespace
+     *
+     * @return the address, or null if the range is not an IP literal
+     */
+    public static ClientAddress parse(CharSequence value, int start, int end) {
+        while (start < end && value.charAt(start) == ' ') {
+            start++;
+        }
+        while (end > start && value.charAt(end - 1) == ' ') {
+            end--;
+        }
+        if (start >= end) {
+            return null;
+        }
+
+        if (value.charAt(start) == '[') {
+            int close = indexOf(value, ']', start, end);
+            return close < 0 ? null : parseIpv6(value, start + 1, close);
+        }
+
+        int firstColon = indexOf(value, ':', start, end);
+        if (firstColon < 0) {
+            return parseIpv4(value, start, end);
+        }
+        if (indexOf(value, ':', firstColon + 1, end) < 0) {
+            // a.b.c.d:port
+            return parseIpv4(value, start, firstColon);
+        }
+        return parseIpv6(value, start, end);
+    }
+
+    public boolean isIpv4() {
+        return high == 0 && (low & 0xFFFFFFFF00000000L) == IPV4_MAPPED_PREFIX;
+    }
+
+    /**
+     * Number of leading bits that identify this address (32 or 128 unless masked)
+     */
+    public int getPrefixLength() {
+        return isIpv4() ? prefixLength - 96 : prefixLength;
+    }
+
+    /**
+     * This address with everything after the first {@code bits} bits cleared,
+     * e.g. {@code mask(24)} turns 203.0.113.57 into 203.0.113.0/24
+     *
+     * @param bits prefix length in the address family of this address
+     */
+    public ClientAddress mask(int bits) {
+        int total = isIpv4() ? bits + 96 : bits;
+        if (total >= prefixLength) {
+            return this;
+        }
+        return new ClientAddress(maskHigh(high, total), maskLow(low, total), Math.max(total, 0));
+    }
+
+    /**
+     * Whether this address lies in the network {@code network/prefixLength of network}
+     */
+    public boolean isIn(ClientAddress network) {
+        int bits = network.prefixLength;
+        return maskHigh(high, bits) == network.high && maskLow(low, bits) == network.low;
+    }
+
+    /**
+     * Compact key: one family byte followed by the significant address bytes only
+     * (5 characters for IPv4, 17 for IPv6, fewer when masked). Each character
+     * holds one byte, so the string stays in Latin-1 compact storage.
+     */
+    public String toKey() {
+        boolean ipv4 = isIpv4();
+        int bits = ipv4 ? prefixLength - 96 : prefixLength;
+        int bytes = (bits + 7) / 8;
+        char[] key = new char[1 + bytes];
+        key[0] = ipv4 ? '4' : '6';
+        int offset = ipv4 ? 12 : 0;
+        for (int i = 0; i < bytes; i++) {
+            key[1 + i] = (char) byteAt(offset + i);
+        }
+        return new String(key);
+    }
+
+    /**
+     * Decode a key written by {@link #toKey()} starting at {@code start};
+     * a masked address comes back rounded to whole bytes
+     *
+     * @return the address, or null if the text there is not such a key
+     */
+    public static ClientAddress fromKey(CharSequence key, int start) {
+        int bytes = key.length() - start - 1;
+        if (bytes < 0) {
+            return null;
+        }
+        char family = key.charAt(start);
+        int offset;
+        if (family == '4' && bytes <= 4) {
+            offset = 12;
+        } else if (family == '6' && bytes <= 16) {
+            offset = 0;
+        } else {
+            return null;
+        }
+        long high = 0;
+        long low = offset == 12 ? IPV4_MAPPED_PREFIX : 0;
+        for (int i = 0; i < bytes; i++) {
+            char c = key.charAt(start + 1 + i);
+            if (c > 0xFF) {
+                return null;
+            }
+            int index = offset + i;
+            if (index < 8) {
+                high |= (long) c << (56 - 8 * index);
+            } else {
+                low |= (long) c << (56 - 8 * (index - 8));
+            }
+        }
+        return new ClientAddress(high, low, offset * 8 + bytes * 8);
+    }
+
+    /**
+     * Parse a CIDR such as {@code 10.0.0.0/8} or {@code fc00::/7}; a plain address is a single host
+     *
+     * @throws IllegalArgumentException if the value is not a valid CIDR
+     */
+    public static ClientAddress parseCidr(String cidr) {
+        int slash = cidr.indexOf('/');
+        ClientAddress address = parse(cidr, 0, slash < 0 ? cidr.length() : slash);
+        if (address == null) {
+            throw new IllegalArgumentException("Invalid IP address or CIDR: " + cidr);
+        }
+        if (slash < 0) {
+            return address;
+        }
+        int bits;
+        try {
+            bits = Integer.parseInt(cidr.substring(slash + 1).trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid CIDR prefix length: " + cidr);
+        }
+        if (bits < 0 || bits > (address.isIpv4() ? 32 : 128)) {
+            throw new IllegalArgumentException("Invalid CIDR prefix length: " + cidr);
+        }
+        return address.mask(bits);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof ClientAddress)) {
+            return false;
+        }
+        ClientAddress that = (ClientAddress) o;
+        return high == that.high && low == that.low && prefixLength == that.prefixLength;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(high) * 31 + Long.hashCode(low) + prefixLength;
+    }
+
+    /**
+     * Text form, e.g. {@code 203.0.113.57}, {@code 2001:db8:0:0:0:0:0:1} or {@code 203.0.113.0/24}
+     */
+    @Override
+    public String toString() {
+        String result = text;
+        if (result == null) {
+            StringBuilder sb = new StringBuilder(40);
+            if (isIpv4()) {
+                sb.append((low >>> 24) & 0xFF).append('.')
+                        .append((low >>> 16) & 0xFF).append('.')
+                        .append((low >>> 8) & 0xFF).append('.')
+                        .append(low & 0xFF);
+            } else {
+                for (int i = 0; i < 8; i++) {
+                    long word = i < 4 ? high : low;
+                    if (i > 0) {
+                        sb.append(':');
+                    }
+                    sb.append(Long.toHexString((word >>> (48 - 16 * (i % 4))) & 0xFFFF));
+                }
+            }
+            if (prefixLength < 128) {
+                sb.append('/').append(getPrefixLength());
+            }
+            result = sb.toString();
+            text = result;
+        }
+        return result;
+    }
+
+    private int byteAt(int index) {
+        long word = index < 8 ? high : low;
+        return (int) (word >>> (56 - 8 * (index % 8))) & 0xFF;
+    }
+
+    private static long maskHigh(long high, int bits) {
+        if (bits >= 64) {
+            return high;
+        }
+        return bits <= 0 ? 0 : high & (-1L << (64 - bits));
+    }
+
+    private static long maskLow(long low, int bits) {
+        if (bits >= 128) {
+            return low;
+        }
+        return bits <= 64 ? 0 : low & (-1L << (128 - bits));
+    }
+
+    private static ClientAddress parseIpv4(CharSequence value, int start, int end) {
+        long ipv4 = parseIpv4Bits(value, start, end);
+        return ipv4 < 0 ? null : new ClientAddress(0, IPV4_MAPPED_PREFIX | ipv4, 128);
+    }
+
+    /**
+     * @return the 32 address bits, or -1 if the range is not a dotted quad
+     */
+    private static long parseIpv4Bits(CharSequence value, int start, int end) {
+        long result = 0;
+        int octets = 0;
+        int octet = -1;
+        for (int i = start; i < end; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                octet = octet < 0 ? c - '0' : octet * 10 + (c - '0');
+                if (octet > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && octet >= 0 && octets < 3) {
+                result = (result << 8) | octet;
+                octets++;
+                octet = -1;
+            } else {
+                return -1;
+            }
+        }
+        if (octet < 0 || octets != 3) {
+            return -1;
+        }
+        return (result << 8) | octet;
+    }
+
+    private static ClientAddress parseIpv6(CharSequence value, int start, int end) {
+        // Drop the zone id (fe80::1%eth0)
+        int percent = indexOf(value, '%', start, end);
+        if (percent >= 0) {
+            end = percent;
+        }
+
+        int[] words = new int[8];
+        int count = 0;
+        int gap = -1;
+        int i = start;
+        if (end - start >= 2 && value.charAt(start) == ':' && value.charAt(start + 1) == ':') {
+            gap = 0;
+            i = start + 2;
+        }
+        while (i < end) {
+            if (count == 8) {
+                return null;
+            }
+            int wordStart = i;
+            int word = 0;
+            while (i < end && i - wordStart < 4) {
+                int digit = Character.digit(value.charAt(i), 16);
+                if (digit < 0) {
+                    break;
+                }
+                word = (word << 4) | digit;
+                i++;
+            }
+            if (i < end && value.charAt(i) == '.') {
+                // Embedded IPv4 tail (::ffff:192.0.2.1)
+                if (count > 6) {
+                    return null;
+                }
+                long ipv4 = parseIpv4Bits(value, wordStart, end);
+                if (ipv4 < 0) {
+                    return null;
+                }
+                words[count++] = (int) (ipv4 >>> 16);
+                words[count++] = (int) (ipv4 & 0xFFFF);
+                i = end;
+                break;
+            }
+            if (i == wordStart) {
+                return null;
+            }
+            words[count++] = word;
+            if (i == end) {
+                break;
+            }
+            if (value.charAt(i) != ':') {
+                return null;
+            }
+            i++;
+            if (i < end && value.charAt(i) == ':') {
+                if (gap >= 0) {
+                    return null;
+                }
+                gap = count;
+                i++;
+            } else if (i == end) {
+                return null;
+            }
+        }
+
+        if (gap >= 0) {
+            if (count == 8) {
+                return null;
+            }
+            int shift = 8 - count;
+            for (int w = count - 1; w >= gap; w--) {
+                words[w + shift] = words[w];
+                words[w] = 0;
+            }
+        } else if (count != 8) {
+            return null;
+        }
+
+        long high = 0;
+        long low = 0;
+        for (int w = 0; w < 4; w++) {
+            high = (high << 16) | words[w];
+            low = (low << 16) | words[w + 4];
+        }
+        return new ClientAddress(high, low, 128);
+    }
+
+    private static int indexOf(CharSequence value, char c, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (value.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,104 @@
+package io.commoncore.security;
+
+import io.commoncore.config.CommonCoreProperties;
+import jakarta.servlet.http.HttpServletRequest;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Resolves the client address of a request, trusting forwarding headers only
+ * when they were added by a configured proxy.
+ * <p>
+ * The header is walked from the right: every hop that is a trusted proxy is skipped
+ * and the first untrusted address is the client. Entries left of it were written by
+ * the client itself and are ignored, so spoofed values cannot pick the key. The result
+ * is cached as a request attribute, so rate limiting and auditing parse the header once.
+ */
+@Component
+@Slf4j
+public class ClientIpResolver {
+
+    /**
+     * Request attribute caching the resolved {@link ClientAddress}
+     */
+    public static final String ATTRIBUTE = ClientIpResolver.class.getName() + ".ADDRESS";
+
+    private final ClientAddress[] trustedProxies;
+    private final String forwardedHeader;
+
+    public ClientIpResolver(CommonCoreProperties properties) {
+        CommonCoreProperties.ClientIp config = properties.getClientIp();
+        List<String> cidrs = config.getTrustedProxies();
+        this.trustedProxies = new ClientAddress[cidrs.size()];
+        for (int i = 0; i < cidrs.size(); i++) {
+            trustedProxies[i] = ClientAddress.parseCidr(cidrs.get(i).trim());
+        }
+        this.forwardedHeader = config.getForwardedHeader();
+        log.debug("Client IP resolver trusting {} proxy networks via {}", trustedProxies.length, forwardedHeader);
+    }
+
+    /**
+     * Client address of the request, or null when the connection comes from
+     * something that is not an IP literal (e.g. a unix socket)
+     */
+    public ClientAddress resolve(HttpServletRequest request) {
+        Object cached = request.getAttribute(ATTRIBUTE);
+        if (cached instanceof ClientAddress) {
+            return (ClientAddress) cached;
+        }
+        ClientAddress address = resolveUncached(request);
+        if (address != null) {
+            request.setAttribute(ATTRIBUTE, address);
+        }
+        return address;
+    }
+
+    /**
+     * Client address as text, falling back to the raw remote address
+     */
+    public String resolveText(HttpServletRequest request) {
+        ClientAddress address = resolve(request);
+        return address != null ? address.toString() : request.getRemoteAddr();
+    }
+
+    public boolean isTrustedProxy(ClientAddress address) {
+        for (ClientAddress network : trustedProxies) {
+            if (address.isIn(network)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private ClientAddress resolveUncached(HttpServletRequest request) {
+        ClientAddress remote = ClientAddress.parse(request.getRemoteAddr());
+        if (remote == null || !isTrustedProxy(remote)) {
+            return remote;
+        }
+
+        String forwarded = request.getHeader(forwardedHeader);
+        if (forwarded == null || forwarded.isEmpty()) {
+            ClientAddress realIp = ClientAddress.parse(request.getHeader("X-Real-IP"));
+            return realIp != null ? realIp : remote;
+        }
+
+        ClientAddress client = remote;
+        int end = forwarded.length();
+        while (end > 0) {
+            int comma = forwarded.lastIndexOf(',', end - 1);
+            ClientAddress hop = ClientAddress.parse(forwarded, comma + 1, end);
+            if (hop == null) {
+                // Garbage written by the client or an unknown hop: stop at the last good address
+                break;
+            }
+            client = hop;
+            if (!isTrustedProxy(hop)) {
+                break;
+            }
+            end = comma;
+        }
+        return client;
+    }
+}
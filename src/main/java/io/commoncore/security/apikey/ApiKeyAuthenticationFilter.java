@@ -17,6 +17,11 @@ import java.util.List;
 @Component
 @ConditionalOnProperty(name = "commoncore.security.api-key.enabled", havingValue = "true")
 public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
+
+    /**
+     * Request attribute set once the request's API key has been accepted
+     */
+    public static final String AUTHENTICATED_ATTRIBUTE = ApiKeyAuthenticationFilter.class.getName() + ".AUTHENTICATED";
     
     @Autowired
     private CommonCoreProperties properties;
@@ -50,6 +55,7 @@ public class ApiKeyAuthenticationFilter extends OncePerRequestFilter {
             return;
         }
         
+        request.setAttribute(AUTHENTICATED_ATTRIBUTE, Boolean.TRUE);
         filterChain.doFilter(request, response);
     }
 }
@@ -0,0 +1,56 @@
+package io.commoncore.usage;
+
+import jakarta.persistence.*;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Aggregated API usage of one client on one route in one period, the basis for billing
+ */
+@Entity
+@Table(name = "api_usage", indexes = {
+    @Index(name = "idx_api_usage_period_start", columnList = "periodStart")
+})
+@Data
+@NoArgsConstructor
+public class ApiUsage {
+
+    @EmbeddedId
+    private ApiUsageId id;
+
+    /**
+     * Number of requests
+     */
+    @Column(nullable = false)
+    private long requestCount;
+
+    /**
+     * Request body bytes
+     */
+    @Column(nullable = false)
+    private long requestBytes;
+
+    /**
+     * Response body bytes
+     */
+    @Column(nullable = false)
+    private long responseBytes;
+
+    /**
+     * Timestamp of the last flush that changed this row
+     */
+    @Column(nullable = false)
+    private LocalDateTime updatedAt;
+
+    /**
+     * Guards against two instances flushing the same row at once
+     */
+    @Version
+    private Long version;
+
+    public ApiUsage(ApiUsageId id) {
+        this.id = id;
+    }
+}
@@ -0,0 +1,38 @@
+package io.commoncore.usage;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Embeddable;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+import java.time.LocalDateTime;
+
+/**
+ * Key of one usage row: who called which route in which period
+ */
+@Embeddable
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ApiUsageId implements Serializable {
+
+    /**
+     * Client identity, "user:{subject}" or "key:{api key fingerprint}"
+     */
+    @Column(nullable = false, length = 150)
+    private String clientKey;
+
+    /**
+     * HTTP method and route pattern, e.g. "GET /api/orders/{id}"
+     */
+    @Column(nullable = false, length = 300)
+    private String route;
+
+    /**
+     * Start of the period, in UTC
+     */
+    @Column(nullable = false)
+    private LocalDateTime periodStart;
+}
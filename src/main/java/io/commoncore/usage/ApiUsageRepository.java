@@ -0,0 +1,32 @@
+package io.commoncore.usage;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Repository for ApiUsage entities
+ */
+@Repository
+public interface ApiUsageRepository extends JpaRepository<ApiUsage, ApiUsageId> {
+
+    /**
+     * Find the usage rows of the given clients in one period
+     */
+    @Query("SELECT u FROM ApiUsage u WHERE u.id.periodStart = :periodStart AND u.id.clientKey IN :clientKeys")
+    List<ApiUsage> findByPeriodAndClientKeys(@Param("periodStart") LocalDateTime periodStart,
+                                             @Param("clientKeys") Collection<String> clientKeys);
+
+    /**
+     * Find the usage of a client in a date range, e.g. for an invoice
+     */
+    @Query("SELECT u FROM ApiUsage u WHERE u.id.clientKey = :clientKey AND u.id.periodStart >= :startDate AND u.id.periodStart < :endDate ORDER BY u.id.periodStart")
+    List<ApiUsage> findByClientKeyAndDateRange(@Param("clientKey") String clientKey,
+                                               @Param("startDate") LocalDateTime startDate,
+                                               @Param("endDate") LocalDateTime endDate);
+}
@@ -0,0 +1,96 @@
+package io.commoncore.usage;
+
+import jakarta.persistence.EntityManager;
+import lombok.extern.slf4j.Slf4j;
+import org.hibernate.Session;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Adds the deltas of a {@link UsageMeter} flush to the api_usage table in one transaction.
+ * <p>
+ * Existing rows are loaded with one query per period and batch of clients, then
+ * all increments and new rows go out as batched JDBC statements on commit. Rows are
+ * versioned, so if two instances flush the same row at once one transaction fails
+ * and the meter retries it with the next flush instead of overwriting the other's counts.
+ */
+@Slf4j
+public class ApiUsageWriter {
+
+    private final ApiUsageRepository repository;
+    private final EntityManager entityManager;
+    private final int batchSize;
+
+    public ApiUsageWriter(ApiUsageRepository repository, EntityManager entityManager, int batchSize) {
+        this.repository = repository;
+        this.entityManager = entityManager;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Transactional
+    public void write(List<UsageDelta> deltas) {
+        entityManager.unwrap(Session.class).setJdbcBatchSize(batchSize);
+        LocalDateTime now = LocalDateTime.now();
+
+        Map<LocalDateTime, List<UsageDelta>> byPeriod = new LinkedHashMap<>();
+        for (UsageDelta delta : deltas) {
+            byPeriod.computeIfAbsent(delta.getId().getPeriodStart(), p -> new ArrayList<>()).add(delta);
+        }
+
+        int created = 0;
+        for (Map.Entry<LocalDateTime, List<UsageDelta>> period : byPeriod.entrySet()) {
+            Map<ApiUsageId, ApiUsage> rows = loadRows(period.getKey(), period.getValue());
+            for (UsageDelta delta : period.getValue()) {
+                ApiUsage row = rows.get(delta.getId());
+                if (row == null) {
+                    row = new ApiUsage(delta.getId());
+                    entityManager.persist(row);
+                    created++;
+                }
+                row.setRequestCount(row.getRequestCount() + delta.getRequestCount());
+                row.setRequestBytes(row.getRequestBytes() + delta.getRequestBytes());
+                row.setResponseBytes(row.getResponseBytes() + delta.getResponseBytes());
+                row.setUpdatedAt(now);
+            }
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("API usage flushed: {} rows updated, {} created", deltas.size() - created, created);
+        }
+    }
+
+    private Map<ApiUsageId, ApiUsage> loadRows(LocalDateTime periodStart, List<UsageDelta> deltas) {
+        Set<String> clientKeys = new LinkedHashSet<>();
+        for (UsageDelta delta : deltas) {
+            clientKeys.add(delta.getId().getClientKey());
+        }
+
+        Map<ApiUsageId, ApiUsage> rows = new HashMap<>();
+        List<String> chunk = new ArrayList<>(Math.min(batchSize, clientKeys.size()));
+        for (String clientKey : clientKeys) {
+            chunk.add(clientKey);
+            if (chunk.size() == batchSize) {
+                addRows(rows, periodStart, chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            addRows(rows, periodStart, chunk);
+        }
+        return rows;
+    }
+
+    private void addRows(Map<ApiUsageId, ApiUsage> rows, LocalDateTime periodStart, List<String> clientKeys) {
+        for (ApiUsage row : repository.findByPeriodAndClientKeys(periodStart, clientKeys)) {
+            rows.put(row.getId(), row);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package io.commoncore.usage;
+
+import java.time.LocalDateTime;
+
+/**
+ * Usage of one client on one route in one period counted since the last successful flush
+ */
+public final class UsageDelta {
+
+    private final ApiUsageId id;
+    private final long requestCount;
+    private final long requestBytes;
+    private final long responseBytes;
+    private final Runnable acknowledgement;
+
+    UsageDelta(String clientKey, String route, LocalDateTime periodStart,
+               long requestCount, long requestBytes, long responseBytes, Runnable acknowledgement) {
+        this.id = new ApiUsageId(clientKey, route, periodStart);
+        this.requestCount = requestCount;
+        this.requestBytes = requestBytes;
+        this.responseBytes = responseBytes;
+        this.acknowledgement = acknowledgement;
+    }
+
+    public ApiUsageId getId() {
+        return id;
+    }
+
+    public long getRequestCount() {
+        return requestCount;
+    }
+
+    public long getRequestBytes() {
+        return requestBytes;
+    }
+
+    public long getResponseBytes() {
+        return responseBytes;
+    }
+
+    /**
+     * Mark the delta as written, so the next flush only carries what was counted after it
+     */
+    void acknowledge() {
+        acknowledgement.run();
+    }
+}
@@ -0,0 +1,256 @@
+package io.commoncore.usage;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Counts API calls and bytes per client and route in memory and hands the
+ * aggregated deltas to a writer on a fixed interval.
+ * <p>
+ * Recording a request only adds to {@link LongAdder} cells, so request threads never
+ * touch the database or contend on a shared counter. Cells are grouped by period; a
+ * period that has ended is written one last time after a full flush interval, by
+ * when no request thread can still be adding to it, and then dropped. A failed
+ * write is not lost: its deltas are carried over into the next flush.
+ */
+@Slf4j
+public class UsageMeter implements AutoCloseable {
+
+    private final long periodMillis;
+    private final Consumer<List<UsageDelta>> writer;
+    private final Object periodsLock = new Object();
+    private final List<Period> periods = new ArrayList<>();
+    private final ScheduledExecutorService flushExecutor;
+    private final AtomicLong flushFailureCount = new AtomicLong();
+    private volatile Period current;
+
+    /**
+     * @param writer               persists one flush; throws to have the deltas retried
+     * @param periodSeconds        length of the period one usage row covers
+     * @param flushIntervalSeconds how often counted usage is written, 0 to only flush on {@link #flush()}
+     */
+    public UsageMeter(Consumer<List<UsageDelta>> writer, long periodSeconds, long flushIntervalSeconds) {
+        this.writer = writer;
+        this.periodMillis = TimeUnit.SECONDS.toMillis(Math.max(1, periodSeconds));
+        this.current = new Period(periodStart(System.currentTimeMillis()));
+        periods.add(current);
+
+        if (flushIntervalSeconds > 0) {
+            this.flushExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "commoncore-usage-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flushExecutor.scheduleWithFixedDelay(this::flush, flushIntervalSeconds, flushIntervalSeconds, TimeUnit.SECONDS);
+        } else {
+            this.flushExecutor = null;
+        }
+    }
+
+    /**
+     * Count one request
+     *
+     * @param clientKey who made the request
+     * @param route     HTTP method and route pattern
+     */
+    public void record(String clientKey, String route, long requestBytes, long responseBytes) {
+        Period period = current;
+        long now = System.currentTimeMillis();
+        if (now - period.start >= periodMillis) {
+            period = rotate(now);
+        }
+        period.cell(clientKey, route).add(requestBytes, responseBytes);
+    }
+
+    /**
+     * Write everything counted since the last successful flush
+     */
+    public synchronized void flush() {
+        List<Period> snapshot;
+        Period active;
+        synchronized (periodsLock) {
+            snapshot = new ArrayList<>(periods);
+            active = current;
+        }
+
+        List<UsageDelta> deltas = new ArrayList<>();
+        for (Period period : snapshot) {
+            period.collect(deltas);
+        }
+        if (!deltas.isEmpty()) {
+            try {
+                writer.accept(deltas);
+            } catch (RuntimeException e) {
+                flushFailureCount.incrementAndGet();
+                log.warn("Failed to write API usage ({} rows), retrying with the next flush: {}", deltas.size(), e.getMessage());
+                return;
+            }
+            for (UsageDelta delta : deltas) {
+                delta.acknowledge();
+            }
+        }
+
+        synchronized (periodsLock) {
+            for (Period period : snapshot) {
+                if (period == active) {
+                    continue;
+                }
+                if (period.retired) {
+                    periods.remove(period);
+                } else {
+                    period.retired = true;
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes that failed and were carried over
+     */
+    public long getFlushFailureCount() {
+        return flushFailureCount.get();
+    }
+
+    /**
+     * Client and route combinations currently counted
+     */
+    public long getTrackedCount() {
+        long count = 0;
+        synchronized (periodsLock) {
+            for (Period period : periods) {
+                for (Map<String, UsageCell> routes : period.clients.values()) {
+                    count += routes.size();
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stop the periodic flush and write what is left
+     */
+    @Override
+    public void close() {
+        if (flushExecutor != null) {
+            flushExecutor.shutdown();
+            try {
+                flushExecutor.awaitTermination(30, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        flush();
+    }
+
+    private Period rotate(long now) {
+        synchronized (periodsLock) {
+            long start = periodStart(now);
+            Period period = current;
+            if (start - period.start > 0) {
+                period = new Period(start);
+                periods.add(period);
+                current = period;
+            }
+            return period;
+        }
+    }
+
+    private long periodStart(long millis) {
+        return millis - Math.floorMod(millis, periodMillis);
+    }
+
+    private static final class Period {
+        private final long start;
+        private final LocalDateTime startTime;
+        private final ConcurrentHashMap<String, ConcurrentHashMap<String, UsageCell>> clients = new ConcurrentHashMap<>();
+        /**
+         * Set by the flush that first saw the period ended; guarded by periodsLock
+         */
+        private boolean retired;
+
+        private Period(long start) {
+            this.start = start;
+            this.startTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(start), ZoneOffset.UTC);
+        }
+
+        private UsageCell cell(String clientKey, String route) {
+            ConcurrentHashMap<String, UsageCell> routes = clients.get(clientKey);
+            if (routes == null) {
+                routes = clients.computeIfAbsent(clientKey, k -> new ConcurrentHashMap<>());
+            }
+            UsageCell cell = routes.get(route);
+            if (cell == null) {
+                cell = routes.computeIfAbsent(route, r -> new UsageCell());
+            }
+            return cell;
+        }
+
+        private void collect(List<UsageDelta> deltas) {
+            for (Map.Entry<String, ConcurrentHashMap<String, UsageCell>> client : clients.entrySet()) {
+                for (Map.Entry<String, UsageCell> route : client.getValue().entrySet()) {
+                    UsageDelta delta = route.getValue().delta(client.getKey(), route.getKey(), startTime);
+                    if (delta != null) {
+                        deltas.add(delta);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Counters of one client and route. The adders only ever grow; the flushed
+     * totals are kept beside them, so nothing counted during a flush can be lost.
+     */
+    private static final class UsageCell {
+        private final LongAdder requests = new LongAdder();
+        private final LongAdder requestBytes = new LongAdder();
+        private final LongAdder responseBytes = new LongAdder();
+        // Only accessed by the flushing thread
+        private long flushedRequests;
+        private long flushedRequestBytes;
+        private long flushedResponseBytes;
+
+        private void add(long requestBytes, long responseBytes) {
+            // Bytes first: a flush that sees the request then also sees its bytes
+            if (requestBytes > 0) {
+                this.requestBytes.add(requestBytes);
+            }
+            if (responseBytes > 0) {
+                this.responseBytes.add(responseBytes);
+            }
+            requests.increment();
+        }
+
+        private UsageDelta delta(String clientKey, String route, LocalDateTime periodStart) {
+            long requestTotal = requests.sum();
+            long requestBytesTotal = requestBytes.sum();
+            long responseBytesTotal = responseBytes.sum();
+            if (requestTotal == flushedRequests && requestBytesTotal == flushedRequestBytes
+                    && responseBytesTotal == flushedResponseBytes) {
+                return null;
+            }
+            return new UsageDelta(clientKey, route, periodStart,
+                    requestTotal - flushedRequests,
+                    requestBytesTotal - flushedRequestBytes,
+                    responseBytesTotal - flushedResponseBytes,
+                    () -> {
+                        flushedRequests = requestTotal;
+                        flushedRequestBytes = requestBytesTotal;
+                        flushedResponseBytes = responseBytesTotal;
+                    });
+        }
+    }
+}
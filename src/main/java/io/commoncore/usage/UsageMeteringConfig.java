@@ -0,0 +1,46 @@
+package io.commoncore.usage;
+
+import io.commoncore.config.CommonCoreProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.EntityManager;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Configuration for API usage metering
+ */
+@Configuration
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "commoncore.usage.enabled", havingValue = "true", matchIfMissing = false)
+public class UsageMeteringConfig {
+
+    private final CommonCoreProperties properties;
+
+    @Bean
+    public ApiUsageWriter apiUsageWriter(ApiUsageRepository apiUsageRepository, EntityManager entityManager) {
+        return new ApiUsageWriter(apiUsageRepository, entityManager, properties.getUsage().getBatchSize());
+    }
+
+    /**
+     * In-memory usage counters, flushed periodically and once more on shutdown
+     */
+    @Bean(destroyMethod = "close")
+    public UsageMeter usageMeter(ApiUsageWriter apiUsageWriter, MeterRegistry meterRegistry) {
+        CommonCoreProperties.Usage config = properties.getUsage();
+        UsageMeter meter = new UsageMeter(apiUsageWriter::write, config.getPeriodSeconds(), config.getFlushIntervalSeconds());
+
+        if (properties.getMonitoring().isEnableMetrics()) {
+            Gauge.builder("usage.tracked", meter, UsageMeter::getTrackedCount)
+                    .description("Client and route combinations with usage counted in memory")
+                    .register(meterRegistry);
+            FunctionCounter.builder("usage.flush.failures", meter, UsageMeter::getFlushFailureCount)
+                    .description("Usage flushes that failed and were retried with the next flush")
+                    .register(meterRegistry);
+        }
+        return meter;
+    }
+}
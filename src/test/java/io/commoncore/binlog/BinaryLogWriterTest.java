@@ -0,0 +1,211 @@
+package io.commoncore.binlog;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryLogWriterTest {
+
+    private static final long SEGMENT_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void decodesEveryFieldAsWritten() throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", "application/json");
+        headers.put("X-Empty", "");
+        BinaryLogRecord request = record(BinaryLogRecord.TYPE_REQUEST, System.currentTimeMillis(), "/api/users/42");
+        request.setRequestId("req-1");
+        request.setQueryString("page=1&size=20");
+        request.setRemoteAddr("10.0.0.1");
+        request.setRemoteHost("client.local");
+        request.setUserAgent("curl/8.0");
+        request.setHeaders(headers);
+        request.setRequestBody("{\"name\":\"a\"}");
+        BinaryLogRecord response = record(BinaryLogRecord.TYPE_RESPONSE, request.getTimestamp() + 12, "/api/users/42");
+        response.setError(true);
+        response.setRequestId("req-1");
+        response.setStatus(500);
+        response.setDuration(12L);
+        response.setHeaders(Map.of("Retry-After", "1"));
+        response.setBody("{\"error\":true}");
+        response.setErrorMessage("boom");
+        response.setErrorType("java.lang.IllegalStateException");
+        BinaryLogRecord performance = record(BinaryLogRecord.TYPE_PERFORMANCE, response.getTimestamp(), "/api/users/42");
+        performance.setStatus(500);
+        performance.setDuration(12L);
+        performance.setMemoryUsed(-4096L);
+        performance.setCpuTimeUsed(3_000_000L);
+
+        List<BinaryLogRecord> written = List.of(request, response, performance);
+        assertEquals(written, roundTrip(written, 64));
+    }
+
+    @Test
+    void decodesVarintsOfEveryLength() throws IOException {
+        long now = System.currentTimeMillis();
+        List<BinaryLogRecord> written = new ArrayList<>();
+        long[] values = {0, 1, 127, 128, 16_383, 16_384, Integer.MAX_VALUE, 1L << 35, 1L << 56, Long.MAX_VALUE};
+        for (long value : values) {
+            BinaryLogRecord record = record(BinaryLogRecord.TYPE_PERFORMANCE, now, "/varint");
+            record.setStatus((int) Math.min(value, Integer.MAX_VALUE));
+            record.setDuration(value);
+            record.setCpuTimeUsed(value);
+            record.setMemoryUsed(value);
+            written.add(record);
+        }
+        // Memory can shrink during a request, so it is zigzag encoded
+        for (long value : new long[]{-1, -64, -65, Integer.MIN_VALUE, Long.MIN_VALUE}) {
+            BinaryLogRecord record = record(BinaryLogRecord.TYPE_PERFORMANCE, now, "/zigzag");
+            record.setMemoryUsed(value);
+            written.add(record);
+        }
+
+        assertEquals(written, roundTrip(written, 64));
+    }
+
+    @Test
+    void decodesTimestampsGoingBackwards() throws IOException {
+        long now = System.currentTimeMillis();
+        List<BinaryLogRecord> written = new ArrayList<>();
+        // Requests complete out of order, and the clock can be set back
+        for (long timestamp : new long[]{now, now - 1, now + 60_000, now - 3_600_000, 0, now, now + 1}) {
+            written.add(record(BinaryLogRecord.TYPE_REQUEST, timestamp, "/time"));
+        }
+
+        assertEquals(written, roundTrip(written, 64));
+    }
+
+    @Test
+    void decodesRepeatedStringsFromTheDictionary() throws IOException {
+        long now = System.currentTimeMillis();
+        String longUri = "/" + "x".repeat(300);
+        List<BinaryLogRecord> written = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            BinaryLogRecord record = record(BinaryLogRecord.TYPE_REQUEST, now + i, i % 7 == 0 ? longUri : "/orders/" + i % 5);
+            record.setUserAgent("agent-" + i % 3);
+            record.setHeaders(Map.of("Accept", "text/plain"));
+            written.add(record);
+        }
+
+        assertEquals(written, roundTrip(written, 64));
+        // Fewer entries than distinct strings: the rest are written in place
+        assertEquals(written, roundTrip(written, 3));
+        assertEquals(written, roundTrip(written, 0));
+    }
+
+    @Test
+    void encodesStringsAsUtf8() throws IOException {
+        long now = System.currentTimeMillis();
+        String[] values = {
+                "ascii",
+                "Şifre ığüöç",
+                "пароль",
+                "日本語",
+                "emoji 🔑 and 👍🏽",
+                "🔑",
+                "high \uD83D alone",
+                "low \uDD11 alone",
+                "reversed \uDD11\uD83D",
+                "ends high \uD83D"
+        };
+        List<BinaryLogRecord> written = new ArrayList<>();
+        List<BinaryLogRecord> expected = new ArrayList<>();
+        for (String value : values) {
+            BinaryLogRecord record = record(BinaryLogRecord.TYPE_RESPONSE, now, "/" + value);
+            record.setBody(value);
+            record.setHeaders(Map.of(value, value));
+            written.add(record);
+
+            // Unpaired surrogates become '?' like in String#getBytes
+            String utf8 = new String(value.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8);
+            BinaryLogRecord decoded = record(BinaryLogRecord.TYPE_RESPONSE, now, "/" + utf8);
+            decoded.setBody(utf8);
+            decoded.setHeaders(Map.of(utf8, utf8));
+            expected.add(decoded);
+        }
+
+        assertEquals(expected, roundTrip(written, 64));
+    }
+
+    @Test
+    void continuesInANewSegmentWhenOneIsFull() throws IOException {
+        long now = System.currentTimeMillis();
+        List<BinaryLogRecord> written = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            BinaryLogRecord record = record(BinaryLogRecord.TYPE_RESPONSE, now + i, "/items/" + i % 10);
+            record.setBody("payload " + i + " " + "y".repeat(80));
+            written.add(record);
+        }
+
+        try (BinaryLogWriter writer = new BinaryLogWriter(directory, SEGMENT_SIZE, 1000, 64)) {
+            for (BinaryLogRecord record : written) {
+                writer.append(record);
+            }
+            assertEquals(0, writer.getDroppedCount());
+        }
+
+        assertTrue(BinaryLogDecoder.listSegments(directory).size() > 1, "segments rotated");
+        assertEquals(written, decodeAll(directory));
+    }
+
+    @Test
+    void dropsRecordsLargerThanASegment() throws IOException {
+        long now = System.currentTimeMillis();
+        BinaryLogRecord tooLarge = record(BinaryLogRecord.TYPE_RESPONSE, now, "/large");
+        tooLarge.setBody("z".repeat((int) SEGMENT_SIZE));
+        tooLarge.setUserAgent("defined-by-the-dropped-record");
+        BinaryLogRecord next = record(BinaryLogRecord.TYPE_REQUEST, now + 1, "/next");
+        next.setUserAgent("defined-by-the-dropped-record");
+
+        try (BinaryLogWriter writer = new BinaryLogWriter(directory, SEGMENT_SIZE, 8, 64)) {
+            writer.append(tooLarge);
+            writer.append(next);
+            assertEquals(1, writer.getDroppedCount());
+        }
+
+        // The dictionary entry of the dropped record is defined again by the next one
+        assertEquals(List.of(next), decodeAll(directory));
+    }
+
+    private List<BinaryLogRecord> roundTrip(List<BinaryLogRecord> records, int dictionarySize) throws IOException {
+        Path run = Files.createTempDirectory(directory, "run");
+        try (BinaryLogWriter writer = new BinaryLogWriter(run, SEGMENT_SIZE, 1000, dictionarySize)) {
+            for (BinaryLogRecord record : records) {
+                writer.append(record);
+            }
+            assertEquals(0, writer.getDroppedCount());
+        }
+        return decodeAll(run);
+    }
+
+    private static List<BinaryLogRecord> decodeAll(Path directory) throws IOException {
+        List<BinaryLogRecord> decoded = new ArrayList<>();
+        for (Path segment : BinaryLogDecoder.listSegments(directory)) {
+            BinaryLogDecoder.decode(segment, decoded::add);
+        }
+        return decoded;
+    }
+
+    private static BinaryLogRecord record(String type, long timestamp, String uri) {
+        BinaryLogRecord record = new BinaryLogRecord();
+        record.setType(type);
+        record.setTimestamp(timestamp);
+        record.setMethod("GET");
+        record.setUri(uri);
+        return record;
+    }
+}
@@ -0,0 +1,216 @@
+package io.commoncore.interceptor;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncLogPipelineTest {
+
+    private final List<String> written = Collections.synchronizedList(new ArrayList<>());
+    private AsyncLogPipeline pipeline;
+
+    @AfterEach
+    void tearDown() {
+        if (pipeline != null) {
+            pipeline.close();
+        }
+    }
+
+    @Test
+    void writesEventsInOrderWhileWrappingAroundTheBuffer() {
+        pipeline = new AsyncLogPipeline("test-writer", 8, LogOverflowPolicy.BLOCK, 3, event -> written.add(event.uri));
+
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(offer(pipeline, "/" + i));
+        }
+        pipeline.close();
+
+        assertEquals(1000, written.size());
+        for (int i = 0; i < 1000; i++) {
+            assertEquals("/" + i, written.get(i));
+        }
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test
+    void waitsForEarlierEventsPublishedLater() throws InterruptedException {
+        pipeline = new AsyncLogPipeline("test-writer", 8, LogOverflowPolicy.BLOCK, 8, event -> written.add(event.uri));
+
+        StructuredLogEvent first = pipeline.claim();
+        StructuredLogEvent second = pipeline.claim();
+        second.uri = "/second";
+        pipeline.publish(second);
+        Thread.sleep(100);
+        assertTrue(written.isEmpty(), "the writer stops at the first unpublished event");
+
+        first.uri = "/first";
+        pipeline.publish(first);
+        await(() -> written.size() == 2);
+        assertEquals(List.of("/first", "/second"), written);
+    }
+
+    @Test
+    void dropsEventsWhileTheBufferIsFull() throws InterruptedException {
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline = new AsyncLogPipeline("test-writer", 4, LogOverflowPolicy.DROP, 8, blockUntil(release));
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(offer(pipeline, "/" + i));
+        }
+        assertNull(pipeline.claim(), "no free slot until the writer is done with its batch");
+        assertEquals(1, pipeline.getDroppedCount());
+
+        release.countDown();
+        await(() -> pipeline.getQueueDepth() == 0);
+        assertTrue(offer(pipeline, "/4"));
+        pipeline.close();
+        assertEquals(List.of("/0", "/1", "/2", "/3", "/4"), written);
+    }
+
+    @Test
+    void blocksUntilTheWriterFreesASlot() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        pipeline = new AsyncLogPipeline("test-writer", 4, LogOverflowPolicy.BLOCK, 8, blockUntil(release));
+        for (int i = 0; i < 4; i++) {
+            assertTrue(offer(pipeline, "/" + i));
+        }
+
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<Boolean> blocked = executor.submit(() -> offer(pipeline, "/4"));
+            assertThrows(TimeoutException.class, () -> blocked.get(100, TimeUnit.MILLISECONDS));
+
+            release.countDown();
+            assertTrue(blocked.get(5, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        pipeline.close();
+        assertEquals(5, written.size());
+        assertEquals(0, pipeline.getDroppedCount());
+    }
+
+    @Test
+    void concurrentProducersLoseNoEvents() throws Exception {
+        pipeline = new AsyncLogPipeline("test-writer", 64, LogOverflowPolicy.BLOCK, 16, event -> written.add(event.uri));
+        int producers = 4;
+        int events = 5000;
+
+        ExecutorService executor = Executors.newFixedThreadPool(producers);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                String producer = "p" + p;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < events; i++) {
+                        assertTrue(offer(pipeline, producer + "/" + i));
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        pipeline.close();
+
+        assertEquals(producers * events, written.size());
+        int[] last = new int[producers];
+        Arrays.fill(last, -1);
+        for (String uri : written) {
+            int producer = uri.charAt(1) - '0';
+            int index = Integer.parseInt(uri.substring(uri.indexOf('/') + 1));
+            assertEquals(last[producer] + 1, index, "events of one producer keep their order");
+            last[producer] = index;
+        }
+    }
+
+    @Test
+    void keepsWritingAfterAnEventFails() {
+        pipeline = new AsyncLogPipeline("test-writer", 8, LogOverflowPolicy.BLOCK, 8, event -> {
+            if ("/error".equals(event.uri)) {
+                throw new AssertionError("not a VM error");
+            }
+            if ("/runtime".equals(event.uri)) {
+                throw new IllegalStateException("broken appender");
+            }
+            written.add(event.uri);
+        });
+
+        assertTrue(offer(pipeline, "/error"));
+        assertTrue(offer(pipeline, "/runtime"));
+        assertTrue(offer(pipeline, "/ok"));
+        pipeline.close();
+
+        assertEquals(List.of("/ok"), written);
+    }
+
+    @Test
+    void stopsAcceptingEventsOnceTheWriterDied() throws InterruptedException {
+        pipeline = new AsyncLogPipeline("test-writer", 4, LogOverflowPolicy.BLOCK, 8, event -> {
+            throw new OutOfMemoryError("test");
+        });
+
+        assertTrue(offer(pipeline, "/fatal"));
+        await(() -> {
+            StructuredLogEvent event = pipeline.claim();
+            if (event != null) {
+                pipeline.publish(event);
+            }
+            return event == null;
+        });
+
+        // Blocking producers would otherwise wait forever for the full buffer to drain
+        for (int i = 0; i < 10; i++) {
+            assertNull(pipeline.claim());
+        }
+        assertTrue(pipeline.getDroppedCount() > 0);
+    }
+
+    private static boolean offer(AsyncLogPipeline pipeline, String uri) {
+        StructuredLogEvent event = pipeline.claim();
+        if (event == null) {
+            return false;
+        }
+        event.uri = uri;
+        pipeline.publish(event);
+        return true;
+    }
+
+    private Consumer<StructuredLogEvent> blockUntil(CountDownLatch release) {
+        return event -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            written.add(event.uri);
+        };
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "timed out");
+            Thread.sleep(10);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package io.commoncore.interceptor;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.commoncore.config.CommonCoreProperties;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SensitiveDataMaskerTest {
+
+    private static final String SECRET = "S3CRET";
+    private static final String TRUNCATED = "...[truncated]";
+
+    private final CommonCoreProperties properties = new CommonCoreProperties();
+    private final SensitiveDataMasker masker = new SensitiveDataMasker(properties, new ObjectMapper());
+
+    @Test
+    void masksSensitiveScalarValues() {
+        String masked = masker.maskSensitiveData(
+                "{\"username\":\"alice\",\"password\":\"" + SECRET + "\",\"cvv\":123,\"ssn\":null,\"token\":true}");
+
+        assertEquals("{\"username\":\"alice\",\"password\":\"****\",\"cvv\":\"****\",\"ssn\":\"****\",\"token\":\"****\"}",
+                masked);
+    }
+
+    @Test
+    void masksSensitiveObjectsAndArraysAsAWhole() {
+        String masked = masker.maskSensitiveData("{\"creditCard\":{\"number\":\"" + SECRET + "\",\"cvv\":\"" + SECRET
+                + "\"},\"token\":[\"" + SECRET + "\",{\"id\":\"" + SECRET + "\"}],\"id\":7}");
+
+        assertEquals("{\"creditCard\":\"****\",\"token\":\"****\",\"id\":7}", masked);
+    }
+
+    @Test
+    void masksSensitiveFieldsInNestedObjectsAndArrays() {
+        String body = "[{\"user\":{\"profile\":{\"userPassword\":\"" + SECRET + "\"}}},"
+                + "{\"items\":[{\"X-Auth-Token\":\"" + SECRET + "\"},[{\"ssn\":\"" + SECRET + "\"}]]},"
+                + "\"password\",[\"" + "plain" + "\"]]";
+        String masked = masker.maskSensitiveData(body);
+
+        assertFalse(masked.contains(SECRET), masked);
+        assertEquals("[{\"user\":{\"profile\":{\"userPassword\":\"****\"}}},"
+                + "{\"items\":[{\"X-Auth-Token\":\"****\"},[{\"ssn\":\"****\"}]]},"
+                + "\"password\",[\"plain\"]]", masked);
+    }
+
+    @Test
+    void truncatesAtMaxBodySizeInsideALongValue() {
+        properties.getLogging().setMaxBodySize(100);
+        String body = "{\"id\":1,\"description\":\"" + "x".repeat(10_000) + "\",\"password\":\"" + SECRET + "\"}";
+        String masked = masker.maskSensitiveData(body);
+
+        assertTrue(masked.endsWith(TRUNCATED), masked);
+        assertTrue(masked.length() <= 100 + TRUNCATED.length(), "length " + masked.length());
+        assertTrue(masked.startsWith("{\"id\":1"), masked);
+        assertFalse(masked.contains(SECRET));
+    }
+
+    @Test
+    void neverLeaksAValueAtAnyTruncationPoint() {
+        String body = "{\"name\":\"alice\",\"password\":\"" + SECRET + "\",\"nested\":{\"token\":[\"" + SECRET
+                + "\"],\"list\":[1,2.5,\"ü\"]},\"creditCard\":{\"number\":\"" + SECRET + "\"}}";
+        int length = body.getBytes(StandardCharsets.UTF_8).length;
+        for (int maxBodySize = 0; maxBodySize <= length + 1; maxBodySize++) {
+            properties.getLogging().setMaxBodySize(maxBodySize);
+            String masked = masker.maskSensitiveData(body);
+
+            assertFalse(masked.contains(SECRET), maxBodySize + ": " + masked);
+            assertEquals(maxBodySize < length, masked.endsWith(TRUNCATED), maxBodySize + ": " + masked);
+        }
+    }
+
+    @Test
+    void keepsTheCompleteTokensOfABodyCutWhileCapturing() {
+        // A capture wrapper stopped in the middle of a value, then more bytes than the limit arrived
+        properties.getLogging().setMaxBodySize(60);
+        String cut = "{\"id\":1,\"password\":\"" + SECRET + "\",\"name\":\"ali";
+        byte[] content = (cut + " ".repeat(100)).getBytes(StandardCharsets.UTF_8);
+
+        String masked = masker.maskSensitiveData(content);
+
+        assertEquals("{\"id\":1,\"password\":\"****\",\"name\"" + TRUNCATED, masked);
+
+        String cutInSecret = "{\"id\":1,\"password\":\"" + SECRET.substring(0, 3);
+        masked = masker.maskSensitiveData((cutInSecret + " ".repeat(100)).getBytes(StandardCharsets.UTF_8));
+        assertTrue(masked.endsWith(TRUNCATED), masked);
+        assertFalse(masked.contains(SECRET.substring(0, 3)), masked);
+    }
+
+    @Test
+    void fallsBackToThePatternForInvalidJsonWithinTheLimit() {
+        String masked = masker.maskSensitiveData("{\"password\": \"" + SECRET + "\", \"name\": alice");
+
+        assertFalse(masked.contains(SECRET), masked);
+        assertTrue(masked.contains("\"password\": \"****\""), masked);
+    }
+
+    @Test
+    void masksNonJsonBodiesWithThePattern() {
+        String form = masker.maskSensitiveData("username=alice&password=" + SECRET + "&remember=true");
+        assertTrue(form.startsWith("username=alice&password=****"), form);
+        assertFalse(form.contains(SECRET), form);
+        assertEquals("token: ****, Authorization=****",
+                masker.maskSensitiveData("token: " + SECRET + ", Authorization=" + SECRET));
+        assertEquals("plain text", masker.maskSensitiveData("plain text"));
+
+        properties.getLogging().setMaxBodySize(30);
+        String masked = masker.maskSensitiveData("user=alice&password=" + SECRET + "&" + "x".repeat(100));
+        assertFalse(masked.contains(SECRET), masked);
+        assertTrue(masked.endsWith(TRUNCATED), masked);
+    }
+
+    @Test
+    void picksUpReplacedFieldLists() {
+        properties.getLogging().setSensitiveFields(List.of("pin"));
+
+        assertEquals("{\"pin\":\"****\",\"password\":\"visible\"}",
+                masker.maskSensitiveData("{\"pin\":\"1234\",\"password\":\"visible\"}"));
+    }
+
+    @Test
+    void handlesEmptyBodies() {
+        assertEquals("", masker.maskSensitiveData(new byte[0]));
+        assertEquals("", masker.maskSensitiveData(""));
+        assertEquals(null, masker.maskSensitiveData((String) null));
+    }
+}
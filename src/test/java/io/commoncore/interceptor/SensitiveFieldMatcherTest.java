@@ -0,0 +1,108 @@
+package io.commoncore.interceptor;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class SensitiveFieldMatcherTest {
+
+    private static final List<String> DEFAULT_FIELDS =
+            List.of("password", "token", "authorization", "creditCard", "cvv", "ssn", "secret");
+
+    /**
+     * Terms that are prefixes, suffixes or infixes of each other
+     */
+    private static final List<String> OVERLAPPING = List.of("he", "she", "his", "hers", "aaa", "aab", "abcd", "bc");
+
+    private static final List<String> NON_ASCII = List.of("Şifre", "parola", "пароль", "Ключ", "straße", "clé", "🔑");
+
+    static Stream<Arguments> names() {
+        return Stream.of(
+                Arguments.of(DEFAULT_FIELDS, "password"),
+                Arguments.of(DEFAULT_FIELDS, "userPassword"),
+                Arguments.of(DEFAULT_FIELDS, "PASSWORD_HASH"),
+                Arguments.of(DEFAULT_FIELDS, "pass"),
+                Arguments.of(DEFAULT_FIELDS, "X-Auth-Token"),
+                Arguments.of(DEFAULT_FIELDS, "creditcardNumber"),
+                Arguments.of(DEFAULT_FIELDS, "CREDIT_CARD"),
+                Arguments.of(DEFAULT_FIELDS, "cvV2"),
+                Arguments.of(DEFAULT_FIELDS, "ssssn"),
+                Arguments.of(DEFAULT_FIELDS, "secre"),
+                Arguments.of(DEFAULT_FIELDS, "username"),
+                Arguments.of(DEFAULT_FIELDS, ""),
+                Arguments.of(OVERLAPPING, "ushers"),
+                Arguments.of(OVERLAPPING, "HIS"),
+                Arguments.of(OVERLAPPING, "shx"),
+                Arguments.of(OVERLAPPING, "aaab"),
+                Arguments.of(OVERLAPPING, "abab"),
+                Arguments.of(OVERLAPPING, "xabcx"),
+                Arguments.of(OVERLAPPING, "ABC"),
+                Arguments.of(OVERLAPPING, "abd"),
+                Arguments.of(NON_ASCII, "kullaniciŞifresi"),
+                Arguments.of(NON_ASCII, "ŞIFRE"),
+                Arguments.of(NON_ASCII, "sifre"),
+                Arguments.of(NON_ASCII, "ПАРОЛЬ"),
+                Arguments.of(NON_ASCII, "апиКлюч"),
+                Arguments.of(NON_ASCII, "Straße"),
+                Arguments.of(NON_ASCII, "STRASSE"),
+                Arguments.of(NON_ASCII, "CLÉ"),
+                Arguments.of(NON_ASCII, "cle"),
+                Arguments.of(NON_ASCII, "key🔑"),
+                Arguments.of(NON_ASCII, "key🔒"),
+                Arguments.of(List.of(), "password"),
+                Arguments.of(List.of(""), "anything")
+        );
+    }
+
+    /**
+     * Random names over a small alphabet, so partial matches and restarts are frequent
+     */
+    static Stream<Arguments> randomNames() {
+        List<String> terms = List.of("ab", "ba", "aşa", "cc", "bcb", "ŞaB");
+        String alphabet = "abAcCşŞ";
+        Random random = new Random(42);
+        List<Arguments> cases = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            StringBuilder name = new StringBuilder();
+            int length = random.nextInt(10);
+            for (int j = 0; j < length; j++) {
+                name.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            cases.add(Arguments.of(terms, name.toString()));
+        }
+        return cases.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("names")
+    void matchesLikeContainsIgnoringCase(List<String> terms, String name) {
+        assertEquals(containsAny(terms, name), new SensitiveFieldMatcher(terms).matches(name), terms + " in " + name);
+    }
+
+    @ParameterizedTest
+    @MethodSource("randomNames")
+    void matchesRandomNamesLikeContainsIgnoringCase(List<String> terms, String name) {
+        assertEquals(containsAny(terms, name), new SensitiveFieldMatcher(terms).matches(name), terms + " in " + name);
+    }
+
+    /**
+     * The loop the automaton replaced
+     */
+    private static boolean containsAny(List<String> terms, String name) {
+        String lowerName = name.toLowerCase(Locale.ROOT);
+        for (String term : terms) {
+            if (lowerName.contains(term.toLowerCase(Locale.ROOT))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,102 @@
+package io.commoncore.interceptor;
+
+import io.commoncore.config.CommonCoreProperties;
+import io.commoncore.ratelimit.InMemoryRateLimitStore;
+import io.commoncore.ratelimit.RateLimitService;
+import io.commoncore.security.ClientIpResolver;
+import io.commoncore.security.apikey.ApiKeyAuthenticationFilter;
+import io.commoncore.usage.UsageDelta;
+import io.commoncore.usage.UsageMeter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UsageMeteringInterceptorTest {
+
+    private final List<UsageDelta> written = new ArrayList<>();
+    private final UsageMeter usageMeter = new UsageMeter(written::addAll, 3600, 0);
+    private final UsageMeteringInterceptor interceptor;
+
+    UsageMeteringInterceptorTest() {
+        CommonCoreProperties properties = new CommonCoreProperties();
+        RateLimitService rateLimitService = new RateLimitService(properties, new InMemoryRateLimitStore(),
+                new ClientIpResolver(properties));
+        interceptor = new UsageMeteringInterceptor(usageMeter, rateLimitService);
+    }
+
+    @AfterEach
+    void tearDown() {
+        usageMeter.close();
+    }
+
+    @Test
+    void apiKeysThatWereNotCheckedAreNotMetered() {
+        // E.g. on a path excluded from API key authentication, or with JWT authentication
+        for (int i = 0; i < 1000; i++) {
+            MockHttpServletRequest request = request();
+            request.addHeader("X-API-Key", UUID.randomUUID().toString());
+            complete(request);
+        }
+
+        assertEquals(0, usageMeter.getTrackedCount());
+        usageMeter.flush();
+        assertTrue(written.isEmpty());
+    }
+
+    @Test
+    void acceptedApiKeysAreMeteredByFingerprint() {
+        for (int i = 0; i < 2; i++) {
+            MockHttpServletRequest request = request();
+            request.addHeader("X-API-Key", "secret-key");
+            request.setAttribute(ApiKeyAuthenticationFilter.AUTHENTICATED_ATTRIBUTE, Boolean.TRUE);
+            complete(request);
+        }
+        usageMeter.flush();
+
+        assertEquals(1, written.size());
+        UsageDelta delta = written.get(0);
+        assertTrue(delta.getId().getClientKey().startsWith("key:"));
+        assertFalse(delta.getId().getClientKey().contains("secret-key"), "raw API keys are never stored");
+        assertEquals("GET /api/orders/{id}", delta.getId().getRoute());
+        assertEquals(2, delta.getRequestCount());
+    }
+
+    @Test
+    void authenticatedPrincipalsAreMetered() {
+        MockHttpServletRequest request = request();
+        request.setUserPrincipal(() -> "alice");
+        request.addHeader("X-API-Key", "unchecked");
+        complete(request);
+        usageMeter.flush();
+
+        assertEquals(1, written.size());
+        assertEquals("user:alice", written.get(0).getId().getClientKey());
+    }
+
+    @Test
+    void anonymousRequestsAreNotMetered() {
+        complete(request());
+
+        assertEquals(0, usageMeter.getTrackedCount());
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/orders/42");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, "/api/orders/{id}");
+        return request;
+    }
+
+    private void complete(MockHttpServletRequest request) {
+        interceptor.afterCompletion(request, new MockHttpServletResponse(), null, null);
+    }
+}
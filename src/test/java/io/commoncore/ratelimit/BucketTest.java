@@ -0,0 +1,180 @@
+package io.commoncore.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Time is moved by restoring buckets from state anchored in the past, the way
+ * snapshots and the off-heap store resume them, so no test has to sleep through a window.
+ */
+class BucketTest {
+
+    private static final int THREADS = 8;
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void allowsABurstEqualToTheCapacity(RateLimitAlgorithm algorithm) {
+        Bucket bucket = Bucket.create(new RateLimitRule(10, 10, algorithm));
+
+        for (int i = 0; i < 10; i++) {
+            assertTrue(bucket.tryConsume(1), "request " + i);
+        }
+        assertFalse(bucket.tryConsume(1));
+
+        Bucket multi = Bucket.create(new RateLimitRule(10, 10, algorithm));
+        assertTrue(multi.tryConsume(10));
+        assertFalse(multi.tryConsume(1));
+        assertFalse(Bucket.create(new RateLimitRule(10, 10, algorithm)).tryConsume(11));
+    }
+
+    @Test
+    void gcraRefillsOnePermitPerEmissionInterval() {
+        RateLimitRule rule = new RateLimitRule(10, 10, RateLimitAlgorithm.GCRA);
+        long now = System.nanoTime();
+
+        // Empty, and half an emission interval has passed: nothing yet
+        Bucket half = new GcraBucket(rule, now + 10 * SECOND - SECOND / 2);
+        assertFalse(half.tryConsume(1));
+
+        // One interval has passed: exactly one permit, not a whole window's worth
+        Bucket one = new GcraBucket(rule, now + 10 * SECOND - SECOND);
+        assertTrue(one.tryConsume(1));
+        assertFalse(one.tryConsume(1));
+
+        // Four intervals have passed
+        Bucket four = new GcraBucket(rule, now + 10 * SECOND - 4 * SECOND);
+        assertTrue(four.tryConsume(4));
+        assertFalse(four.tryConsume(1));
+
+        // Idle for a long time: never more than the burst
+        Bucket idle = new GcraBucket(rule, now - 3600 * SECOND);
+        assertTrue(idle.tryConsume(10));
+        assertFalse(idle.tryConsume(1));
+    }
+
+    @Test
+    void tokenBucketRefillsTheWholeWindowAtOnce() {
+        RateLimitRule rule = new RateLimitRule(10, 10, RateLimitAlgorithm.TOKEN_BUCKET);
+        long now = System.nanoTime();
+
+        Bucket early = new TokenBucket(rule, 0, now - 9 * SECOND);
+        assertFalse(early.tryConsume(1));
+
+        Bucket refilled = new TokenBucket(rule, 0, now - 10 * SECOND);
+        assertTrue(refilled.tryConsume(10));
+        assertFalse(refilled.tryConsume(1));
+
+        // Several idle windows do not add up beyond the capacity
+        Bucket idle = new TokenBucket(rule, 0, now - 50 * SECOND);
+        assertTrue(idle.tryConsume(10));
+        assertFalse(idle.tryConsume(1));
+
+        // Reserved debt is paid off by the next refill first
+        Bucket indebted = new TokenBucket(rule, -4, now - 10 * SECOND);
+        assertTrue(indebted.tryConsume(6));
+        assertFalse(indebted.tryConsume(1));
+    }
+
+    @Test
+    void gcraReportsRetryAfterInMilliseconds() {
+        long now = System.nanoTime();
+        Bucket bucket = new GcraBucket(new RateLimitRule(10, 10, RateLimitAlgorithm.GCRA), now + 10 * SECOND - SECOND / 4);
+
+        assertBetween(700, 750, bucket.getRetryAfterMillis(1));
+        assertBetween(2700, 2750, bucket.getRetryAfterMillis(3));
+
+        // 100 per second: the next permit is milliseconds away, not a whole second
+        Bucket fast = Bucket.create(new RateLimitRule(100, 1, RateLimitAlgorithm.GCRA));
+        assertTrue(fast.tryConsume(100));
+        assertBetween(1, 10, fast.getRetryAfterMillis(1));
+        assertBetween(41, 50, fast.getRetryAfterMillis(5));
+
+        assertEquals(0, Bucket.create(new RateLimitRule(10, 10, RateLimitAlgorithm.GCRA)).getRetryAfterMillis(10));
+    }
+
+    @Test
+    void tokenBucketReportsRetryAfterInMilliseconds() {
+        RateLimitRule rule = new RateLimitRule(10, 10, RateLimitAlgorithm.TOKEN_BUCKET);
+        long now = System.nanoTime();
+        Bucket bucket = new TokenBucket(rule, 0, now - 9 * SECOND - SECOND / 4);
+
+        assertBetween(700, 750, bucket.getRetryAfterMillis(1));
+        // Beyond one refill: the window after the next
+        assertBetween(10_700, 10_750, bucket.getRetryAfterMillis(11));
+        assertEquals(0, new TokenBucket(rule, 3, now).getRetryAfterMillis(3));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void reservesAheadWithinTheMaximumWait(RateLimitAlgorithm algorithm) {
+        Bucket bucket = Bucket.create(new RateLimitRule(10, 1, algorithm));
+        assertTrue(bucket.tryConsume(10));
+        long retryAfterMillis = bucket.getRetryAfterMillis(1);
+
+        assertEquals(-1, bucket.reserve(1, 0));
+        assertEquals(-1, bucket.reserve(1, SECOND / 1000));
+        long waitNanos = bucket.reserve(1, 2 * SECOND);
+        // The rejected reservations took nothing
+        assertTrue(waitNanos > 0 && TimeUnit.NANOSECONDS.toMillis(waitNanos) <= retryAfterMillis, "wait " + waitNanos);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void concurrentRequestsOnAHotKeyGetExactlyTheCapacity(RateLimitAlgorithm algorithm) throws Exception {
+        Bucket bucket = Bucket.create(new RateLimitRule(1000, 3600, algorithm));
+
+        assertEquals(1000, hammer(bucket, 500));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void lostCompareAndSetRacesAreNotRejections(RateLimitAlgorithm algorithm) throws Exception {
+        // Every request fits, so any rejection would come from a lost race
+        Bucket bucket = Bucket.create(new RateLimitRule(THREADS * 20_000, 3600, algorithm));
+
+        assertEquals(THREADS * 20_000, hammer(bucket, 20_000));
+    }
+
+    private static int hammer(Bucket bucket, int requestsPerThread) throws Exception {
+        AtomicInteger allowed = new AtomicInteger();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Future<?>[] futures = new Future<?>[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                futures[t] = executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < requestsPerThread; i++) {
+                        if (bucket.tryConsume(1)) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return allowed.get();
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, "expected " + min + ".." + max + " but was " + actual);
+    }
+}
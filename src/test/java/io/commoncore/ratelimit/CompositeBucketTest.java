@@ -0,0 +1,118 @@
+package io.commoncore.ratelimit;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompositeBucketTest {
+
+    private static final int THREADS = 8;
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void requestsRejectedByTheLongWindowDoNotSpendTheShortOne(RateLimitAlgorithm algorithm) {
+        // 600 per minute, but only 6 per hour
+        Bucket bucket = Bucket.create(new RateLimitRule(600, 60, algorithm).and(6, 3600));
+        assertTrue(bucket.tryConsume(2));
+
+        // The minute window has room for these, the hour window does not
+        for (int i = 0; i < 200; i++) {
+            assertFalse(bucket.tryConsume(5));
+            assertEquals(-1, bucket.reserve(5, 0));
+        }
+
+        // Had the rejections been charged to the minute window, it would be empty by now
+        assertTrue(bucket.tryConsume(4));
+        assertFalse(bucket.tryConsume(1));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void requestsRejectedByTheShortWindowDoNotSpendTheLongOne(RateLimitAlgorithm algorithm) {
+        Bucket bucket = Bucket.create(new RateLimitRule(5, 3600, algorithm).and(10, 7200));
+        assertTrue(bucket.tryConsume(3));
+
+        for (int i = 0; i < 200; i++) {
+            assertFalse(bucket.tryConsume(3));
+        }
+
+        assertTrue(bucket.tryConsume(2));
+        assertFalse(bucket.tryConsume(1));
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void retryAfterComesFromTheLongWindowWhenItBinds(RateLimitAlgorithm algorithm) {
+        Bucket bucket = Bucket.create(new RateLimitRule(600, 60, algorithm).and(6, 3600));
+        assertTrue(bucket.tryConsume(6));
+
+        long retryAfterMillis = bucket.getRetryAfterMillis(1);
+        if (algorithm == RateLimitAlgorithm.GCRA) {
+            // One emission interval of the hour window: 3600 s / 6
+            assertBetween(599_000, 600_000, retryAfterMillis);
+        } else {
+            // The next hour window
+            assertBetween(3_599_000, 3_600_000, retryAfterMillis);
+        }
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void retryAfterComesFromTheShortWindowWhenItBinds(RateLimitAlgorithm algorithm) {
+        Bucket bucket = Bucket.create(new RateLimitRule(2, 1, algorithm).and(1000, 3600));
+        assertTrue(bucket.tryConsume(2));
+
+        long retryAfterMillis = bucket.getRetryAfterMillis(1);
+        if (algorithm == RateLimitAlgorithm.GCRA) {
+            assertBetween(400, 500, retryAfterMillis);
+        } else {
+            assertBetween(900, 1000, retryAfterMillis);
+        }
+        long waitNanos = bucket.reserve(1, TimeUnit.SECONDS.toNanos(2));
+        assertTrue(waitNanos > 0 && TimeUnit.NANOSECONDS.toMillis(waitNanos) <= retryAfterMillis, "wait " + waitNanos);
+    }
+
+    @ParameterizedTest
+    @EnumSource(RateLimitAlgorithm.class)
+    void concurrentRequestsGetExactlyTheBindingCapacity(RateLimitAlgorithm algorithm) throws Exception {
+        Bucket bucket = Bucket.create(new RateLimitRule(1000, 3600, algorithm).and(500, 7200).and(800, 86400));
+        AtomicInteger allowed = new AtomicInteger();
+        CyclicBarrier start = new CyclicBarrier(THREADS);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            Future<?>[] futures = new Future<?>[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                futures[t] = executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < 200; i++) {
+                        if (bucket.tryConsume(1)) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(500, allowed.get());
+    }
+
+    private static void assertBetween(long min, long max, long actual) {
+        assertTrue(actual >= min && actual <= max, "expected " + min + ".." + max + " but was " + actual);
+    }
+}
@@ -0,0 +1,132 @@
+package io.commoncore.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * The stores are closed right after creation so the background cleanup cannot race the
+ * assertions; {@link InMemoryRateLimitStore#cleanup()} is run by hand where needed.
+ */
+class InMemoryRateLimitStoreTest {
+
+    /**
+     * GCRA, so a bucket that took one permit is full again ten times sooner than one that took ten
+     */
+    private static final RateLimitRule RULE = new RateLimitRule(10, 3600, RateLimitAlgorithm.GCRA);
+
+    @Test
+    void newKeysAreAllowedAndTheCapHoldsDuringAKeyFlood() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(100, Duration.ZERO);
+        store.close();
+        List<String> heavy = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            String key = "client-" + i;
+            if (i % 3 == 0) {
+                heavy.add(key);
+                assertTrue(store.tryAcquire(key, RULE, 10));
+            } else {
+                assertTrue(store.tryAcquire(key, RULE, 1));
+            }
+        }
+
+        for (int i = 0; i < 10_000; i++) {
+            assertTrue(store.tryAcquire("flood-" + i, RULE, 1), "new key " + i);
+            assertTrue(store.size() <= 100, "size " + store.size());
+        }
+
+        assertEquals(100, store.size());
+        assertEquals(10_000, store.getEvictedCount());
+        // The buckets furthest from full were never picked, so their clients stay limited
+        for (String key : heavy) {
+            assertTrue(store.getRetryAfterMillis(key, RULE, 1) > 0, key + " was evicted");
+            assertFalse(store.tryAcquire(key, RULE, 1));
+        }
+    }
+
+    @Test
+    void cleanupEvictsTheBucketsClosestToFullDownToTheLowWatermark() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(1000, Duration.ZERO);
+        store.close();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(store.tryAcquire("client-" + i, RULE, i % 10 == 0 ? 1 : 10));
+        }
+
+        store.cleanup();
+
+        assertEquals(900, store.size());
+        assertEquals(100, store.getEvictedCount());
+        int lightLeft = 0;
+        for (int i = 0; i < 1000; i += 10) {
+            if (store.getRetryAfterMillis("client-" + i, RULE, 10) > 0) {
+                lightLeft++;
+            }
+        }
+        // The sampled cut-off may let one heavy bucket go in place of a light one
+        assertTrue(lightLeft <= 1, lightLeft + " light buckets left");
+    }
+
+    @Test
+    void fallsBackToSampledEntriesWhenTheOldestKeysAreGone() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(1000, Duration.ZERO);
+        store.close();
+        // Ring slots 100..199 hold the buckets closest to full
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(store.tryAcquire("client-" + i, RULE, i >= 100 && i < 200 ? 1 : 10));
+        }
+        store.cleanup();
+        assertEquals(900, store.size());
+        // Refilling the store overwrites ring slots 0..99, so the next oldest slots are all stale
+        for (int i = 0; i < 100; i++) {
+            assertTrue(store.tryAcquire("refill-" + i, RULE, 10));
+        }
+        assertEquals(1000, store.size());
+        assertEquals(100, store.getEvictedCount());
+
+        assertTrue(store.tryAcquire("new-client", RULE, 1));
+
+        assertEquals(1000, store.size());
+        assertEquals(101, store.getEvictedCount());
+        assertTrue(store.getRetryAfterMillis("new-client", RULE, 10) > 0);
+    }
+
+    @Test
+    void expiresIdleFullBuckets() {
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore(0, Duration.ofMillis(1));
+        store.close();
+        RateLimitRule rule = new RateLimitRule(10, 3600, RateLimitAlgorithm.TOKEN_BUCKET);
+        Bucket full = new TokenBucket(rule, 10, System.nanoTime() - 1_000_000_000L);
+        Bucket used = new TokenBucket(rule, 5, System.nanoTime());
+        assertTrue(store.restore("idle", full));
+        assertTrue(store.restore("busy", used));
+
+        store.cleanup();
+
+        assertEquals(1, store.size());
+        assertEquals(1, store.getExpiredCount());
+        assertTrue(store.getRetryAfterMillis("busy", rule, 6) > 0);
+    }
+
+    @Test
+    void estimatesMemoryFromTheEntriesAndTheRing() {
+        InMemoryRateLimitStore bounded = new InMemoryRateLimitStore(1000, Duration.ZERO);
+        bounded.close();
+        assertEquals(1000 * 4L, bounded.getEstimatedMemoryBytes());
+        for (int i = 0; i < 10; i++) {
+            bounded.tryAcquire("client-" + i, RULE, 1);
+        }
+        assertEquals(10 * InMemoryRateLimitStore.ESTIMATED_ENTRY_BYTES + 1000 * 4L, bounded.getEstimatedMemoryBytes());
+
+        InMemoryRateLimitStore unbounded = new InMemoryRateLimitStore();
+        for (int i = 0; i < 10; i++) {
+            unbounded.tryAcquire("client-" + i, RULE, 1);
+        }
+        assertEquals(10 * InMemoryRateLimitStore.ESTIMATED_ENTRY_BYTES, unbounded.getEstimatedMemoryBytes());
+    }
+}
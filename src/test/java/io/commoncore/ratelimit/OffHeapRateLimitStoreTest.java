@@ -0,0 +1,163 @@
+package io.commoncore.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OffHeapRateLimitStoreTest {
+
+    private static final int THREADS = 8;
+
+    @Test
+    void concurrentFirstRequestsOfAKeyShareOneSlot() throws Exception {
+        OffHeapRateLimitStore store = new OffHeapRateLimitStore(1000, Duration.ofMinutes(1));
+        RateLimitRule rule = new RateLimitRule(50, 3600, RateLimitAlgorithm.TOKEN_BUCKET);
+        int keys = 300;
+        AtomicInteger allowed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            for (int k = 0; k < keys; k++) {
+                String key = "key-" + k;
+                CyclicBarrier start = new CyclicBarrier(THREADS);
+                Future<?>[] futures = new Future<?>[THREADS];
+                for (int t = 0; t < THREADS; t++) {
+                    futures[t] = executor.submit(() -> {
+                        start.await();
+                        for (int i = 0; i < 10; i++) {
+                            if (store.tryAcquire(key, rule)) {
+                                allowed.incrementAndGet();
+                            }
+                        }
+                        return null;
+                    });
+                }
+                for (Future<?> future : futures) {
+                    future.get(10, TimeUnit.SECONDS);
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(keys, store.size(), "one slot per key");
+        assertEquals(keys * 50, allowed.get(), "no key gets the capacity twice");
+        assertEquals(0, store.getEvictedCount());
+    }
+
+    @Test
+    void concurrentNewKeysFillTheTableWithoutLosingSlots() throws Exception {
+        OffHeapRateLimitStore store = new OffHeapRateLimitStore(2000, Duration.ofMinutes(1));
+        RateLimitRule rule = new RateLimitRule(1, 3600, RateLimitAlgorithm.GCRA);
+        AtomicInteger allowed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            CyclicBarrier start = new CyclicBarrier(THREADS);
+            Future<?>[] futures = new Future<?>[THREADS];
+            for (int t = 0; t < THREADS; t++) {
+                futures[t] = executor.submit(() -> {
+                    start.await();
+                    // Every thread walks the same keys, so most inserts race with another thread
+                    for (int k = 0; k < 2000; k++) {
+                        if (store.tryAcquire("key-" + k, rule)) {
+                            allowed.incrementAndGet();
+                        }
+                    }
+                    return null;
+                });
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertEquals(2000, store.size());
+        assertEquals(2000, allowed.get());
+    }
+
+    @Test
+    void idleSlotsAreReusedByNewKeys() throws InterruptedException {
+        OffHeapRateLimitStore store = new OffHeapRateLimitStore(16, Duration.ofMillis(50));
+        RateLimitRule rule = new RateLimitRule(1, 1, RateLimitAlgorithm.TOKEN_BUCKET);
+        fill(store, rule, 1);
+
+        assertTrue(store.tryAcquire("new", rule), "takes over the slot closest to full");
+        assertEquals(1, store.getEvictedCount());
+        assertEquals(0, store.getReusedCount());
+
+        Thread.sleep(1200);
+
+        assertTrue(store.tryAcquire("newer", rule));
+        assertEquals(1, store.getReusedCount(), "the slot of a full idle bucket is taken over");
+        assertEquals(1, store.getEvictedCount());
+        assertFalse(store.tryAcquire("newer", rule), "the new key keeps its own slot");
+        assertEquals(store.getCapacity(), store.size());
+    }
+
+    @Test
+    void slotsWithReservedPermitsAreNotReused() throws InterruptedException {
+        OffHeapRateLimitStore store = new OffHeapRateLimitStore(16, Duration.ofMillis(50));
+        RateLimitRule rule = new RateLimitRule(2, 1, RateLimitAlgorithm.TOKEN_BUCKET);
+        // Six permits of a two per second bucket: owed until the end of the third window
+        fill(store, rule, 6);
+
+        Thread.sleep(1200);
+
+        for (int i = 0; i < store.getCapacity(); i++) {
+            assertFalse(store.tryAcquire("key-" + i, rule), "key-" + i + " kept its debt");
+        }
+        assertTrue(store.tryAcquire("new", rule));
+        assertEquals(0, store.getReusedCount(), "reserved permits are still owed");
+        assertEquals(1, store.getEvictedCount());
+
+        Thread.sleep(2000);
+
+        assertTrue(store.tryAcquire("newer", rule));
+        assertEquals(1, store.getReusedCount());
+    }
+
+    @Test
+    void newKeysAreAllowedDuringAKeySprayingFlood() {
+        for (RateLimitAlgorithm algorithm : RateLimitAlgorithm.values()) {
+            OffHeapRateLimitStore store = new OffHeapRateLimitStore(1000, Duration.ofSeconds(300));
+            RateLimitRule rule = new RateLimitRule(10, 60, algorithm);
+            for (int i = 0; i < 20_000; i++) {
+                store.tryAcquire("attacker-" + i, rule);
+            }
+            assertTrue(store.getEvictedCount() > 0, algorithm + ": probe sequences filled up");
+
+            for (int i = 0; i < 50; i++) {
+                String key = "client-" + i;
+                for (int j = 0; j < 10; j++) {
+                    assertTrue(store.tryAcquire(key, rule), algorithm + ": " + key + " has a bucket of its own");
+                }
+                assertFalse(store.tryAcquire(key, rule), algorithm + ": " + key + " is still limited");
+            }
+            assertTrue(store.size() <= store.getCapacity());
+        }
+    }
+
+    /**
+     * Give every slot of the table its own key, each holding {@code permits}
+     */
+    private static void fill(OffHeapRateLimitStore store, RateLimitRule rule, int permits) {
+        for (int i = 0; i < store.getCapacity(); i++) {
+            assertTrue(store.reserve("key-" + i, rule, permits, 5000) >= 0);
+        }
+        assertEquals(store.getCapacity(), store.size());
+        assertEquals(0, store.getEvictedCount());
+    }
+}
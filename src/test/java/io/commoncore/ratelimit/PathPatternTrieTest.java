@@ -0,0 +1,73 @@
+package io.commoncore.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.util.AntPathMatcher;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class PathPatternTrieTest {
+
+    private final AntPathMatcher antPathMatcher = new AntPathMatcher();
+
+    static Stream<Arguments> patterns() {
+        return Stream.of(
+                Arguments.of("/api/users", "/api/users"),
+                Arguments.of("/api/users", "/api/orders"),
+                Arguments.of("/api/*", "/api/users"),
+                Arguments.of("/api/*", "/api/users/1"),
+                Arguments.of("/api/**", "/api"),
+                Arguments.of("/api/**", "/api/users/1/orders"),
+                Arguments.of("/api/**/orders", "/api/users/1/orders"),
+                Arguments.of("/api/**/orders", "/api/users/1/items"),
+                Arguments.of("/api/users/{id}", "/api/users/42"),
+                Arguments.of("/api/users/{id}", "/api/users/42/orders"),
+                Arguments.of("/reports/*.csv", "/reports/2024.csv"),
+                Arguments.of("/reports/*.csv", "/reports/2024.json"),
+                Arguments.of("/reports/202?.csv", "/reports/2024.csv"),
+                Arguments.of("/files/{id}.json", "/files/42.json"),
+                Arguments.of("/files/{id}.json", "/files/42.xml"),
+                Arguments.of("/files/{id}.json", "/files/42"),
+                Arguments.of("/files/{name}.{ext}", "/files/report.pdf"),
+                Arguments.of("/files/{name}.{ext}", "/files/report"),
+                Arguments.of("/v{version}/users", "/v2/users"),
+                Arguments.of("/v{version}/users", "/api/users"),
+                Arguments.of("/api/users/{id:\\d+}", "/api/users/42"),
+                Arguments.of("/api/users/{id:\\d+}", "/api/users/me"),
+                Arguments.of("/api/{lang:[a-z]{2}}/docs", "/api/en/docs"),
+                Arguments.of("/api/{lang:[a-z]{2}}/docs", "/api/eng/docs"),
+                Arguments.of("/files/{id}-*.log", "/files/7-app.log"),
+                Arguments.of("/files/{id}-*.log", "/files/7.log"),
+                Arguments.of("/files/{a}.(b)", "/files/x.(b)"),
+                Arguments.of("/files/{a}.(b)", "/files/x.b")
+        );
+    }
+
+    @ParameterizedTest(name = "{0} ~ {1}")
+    @MethodSource("patterns")
+    void matchesLikeAntPathMatcher(String pattern, String path) {
+        PathPatternTrie trie = new PathPatternTrie(List.of(pattern));
+
+        assertEquals(antPathMatcher.match(pattern, path), trie.matches(path));
+    }
+
+    @Test
+    void firstMatchReturnsTheLowestMatchingIndex() {
+        PathPatternTrie trie = new PathPatternTrie(List.of(
+                "/api/admin/**",
+                "/files/{id}.json",
+                "/files/**",
+                "/api/**"
+        ));
+
+        assertEquals(1, trie.firstMatch("/files/42.json", index -> true));
+        assertEquals(2, trie.firstMatch("/files/42.xml", index -> true));
+        assertEquals(3, trie.firstMatch("/api/admin/users", index -> index != 0));
+        assertEquals(-1, trie.firstMatch("/health", index -> true));
+    }
+}
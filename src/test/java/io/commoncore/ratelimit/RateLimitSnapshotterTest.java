@@ -0,0 +1,53 @@
+package io.commoncore.ratelimit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitSnapshotterTest {
+
+    private static final RateLimitRule RULE = new RateLimitRule(10, 3600, RateLimitAlgorithm.TOKEN_BUCKET);
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresSavedBuckets() throws IOException {
+        Path file = directory.resolve("ratelimit.snapshot");
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore();
+        for (int i = 0; i < 100; i++) {
+            assertTrue(store.tryAcquire("client-" + i, RULE, 10));
+        }
+        assertTrue(store.tryAcquire("composite", RULE.and(100, 86400), 1));
+        assertEquals(100, new RateLimitSnapshotter(file, store).save(), "composite rules are not saved");
+
+        InMemoryRateLimitStore restored = new InMemoryRateLimitStore();
+        assertEquals(100, new RateLimitSnapshotter(file, restored).load(null));
+        assertFalse(restored.tryAcquire("client-42", RULE, 1));
+        assertTrue(restored.tryAcquire("new-client", RULE, 1));
+    }
+
+    @Test
+    void closingDuringTheRestoreKeepsTheWholeSnapshot() throws IOException {
+        Path file = directory.resolve("ratelimit.snapshot");
+        int keys = 200_000;
+        InMemoryRateLimitStore store = new InMemoryRateLimitStore();
+        for (int i = 0; i < keys; i++) {
+            store.tryAcquire("client-" + i, RULE, 10);
+        }
+        new RateLimitSnapshotter(file, store).save();
+
+        // Shut down right after start, while the snapshot is still being loaded
+        RateLimitSnapshotter snapshotter = new RateLimitSnapshotter(file, new InMemoryRateLimitStore());
+        snapshotter.start(0);
+        snapshotter.close();
+
+        assertEquals(keys, new RateLimitSnapshotter(file, new InMemoryRateLimitStore()).load(null));
+    }
+}
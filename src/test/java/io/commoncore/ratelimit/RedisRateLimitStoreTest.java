@@ -0,0 +1,200 @@
+package io.commoncore.ratelimit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RedisRateLimitStoreTest {
+
+    private static final String HOST = InetAddress.getLoopbackAddress().getHostAddress();
+
+    private RespTestServer server;
+    private RedisRateLimitStore store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = startServer(0);
+        store = newStore(server.getPort(), Duration.ofSeconds(30));
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        store.close();
+        server.close();
+    }
+
+    @Test
+    void fixedWindowLeasesBlocksOfPermitsUpToCapacity() {
+        RateLimitRule rule = new RateLimitRule(25, 3600, RateLimitAlgorithm.TOKEN_BUCKET);
+
+        int allowed = acquire(store, "k", rule, 30);
+
+        assertEquals(25, allowed);
+        assertEquals(25, sum("test:k:"));
+        assertTrue(store.getLeaseRequestCount() <= 4, "one round trip per lease, not per request");
+        assertTrue(store.getRetryAfterMillis("k", rule) > 0);
+    }
+
+    @Test
+    void concurrentRequestsWaitForTheLeaseInFlight() throws InterruptedException {
+        server.setDelayMillis(20);
+        RateLimitRule rule = new RateLimitRule(1000, 3600, RateLimitAlgorithm.TOKEN_BUCKET);
+        AtomicInteger allowed = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        for (int i = 0; i < 8; i++) {
+            executor.execute(() -> allowed.addAndGet(acquire(store, "hot", rule, 50)));
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(30, TimeUnit.SECONDS));
+
+        assertEquals(400, allowed.get());
+        assertEquals(400, sum("test:hot:"));
+        assertEquals(1, server.getMaxInFlight(), "at most one lease request per key in flight");
+    }
+
+    @Test
+    void gcraLeasesFromTheSharedArrivalTime() throws IOException {
+        RateLimitRule rule = new RateLimitRule(10, 3600, RateLimitAlgorithm.GCRA);
+
+        assertEquals(10, acquire(store, "g", rule, 12));
+        assertEquals(Map.of("test:g:tat", server.get("test:g:tat")), Map.copyOf(server.values()),
+                "GCRA keeps one arrival time and no window counters");
+        long retryAfter = store.getRetryAfterMillis("g", rule);
+        assertTrue(retryAfter > 0 && retryAfter <= 360_000, "due when the next permit is emitted: " + retryAfter);
+
+        try (RedisRateLimitStore otherNode = newStore(server.getPort(), Duration.ofSeconds(30))) {
+            assertFalse(otherNode.tryAcquire("g", rule), "the arrival time is shared by every node");
+        }
+    }
+
+    @Test
+    void unusedWindowPermitsAreReturned() throws InterruptedException {
+        store.close();
+        store = newStore(server.getPort(), Duration.ofMillis(100));
+        RateLimitRule rule = new RateLimitRule(100, 3600, RateLimitAlgorithm.TOKEN_BUCKET);
+
+        assertEquals(3, acquire(store, "r", rule, 3));
+        awaitReturned(7);
+
+        assertEquals(3, sum("test:r:"));
+    }
+
+    @Test
+    void unusedGcraPermitsMoveTheArrivalTimeBack() throws InterruptedException {
+        store.close();
+        store = newStore(server.getPort(), Duration.ofMillis(100));
+        RateLimitRule rule = new RateLimitRule(100, 3600, RateLimitAlgorithm.GCRA);
+        long emissionIntervalMicros = TimeUnit.SECONDS.toMicros(36);
+
+        long before = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        assertEquals(3, acquire(store, "r", rule, 3));
+        long after = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        awaitReturned(7);
+
+        long arrivalTime = server.get("test:r:tat");
+        assertTrue(arrivalTime >= before + 3 * emissionIntervalMicros && arrivalTime <= after + 3 * emissionIntervalMicros,
+                "only the permits used stay charged");
+    }
+
+    @Test
+    void fallsBackToLocalLimitsWhileTheServerIsDown() throws IOException {
+        server.close();
+        RateLimitRule rule = new RateLimitRule(5, 3600, RateLimitAlgorithm.TOKEN_BUCKET);
+
+        assertEquals(5, acquire(store, "down", rule, 20));
+        assertEquals(1, store.getRemoteFailureCount(), "the server is not retried on every request");
+        assertEquals(1, store.getFallback().size());
+    }
+
+    @Test
+    void retriesTheServerAfterTheRetryInterval() throws IOException, InterruptedException {
+        int port = server.getPort();
+        server.close();
+        RateLimitRule rule = new RateLimitRule(100, 3600, RateLimitAlgorithm.TOKEN_BUCKET);
+        assertTrue(store.tryAcquire("back", rule));
+
+        server = startServer(port);
+        assertTrue(store.tryAcquire("back", rule));
+        assertEquals(0, server.count("INCRBY"), "still within the retry interval");
+
+        Thread.sleep(300);
+        assertTrue(store.tryAcquire("back", rule));
+        assertEquals(1, server.count("INCRBY"));
+        assertEquals(10, sum("test:back:"));
+    }
+
+    private RedisRateLimitStore newStore(int port, Duration leaseTtl) {
+        return new RedisRateLimitStore(
+                new RespClient(HOST, port, null, 500, 4),
+                "test:",
+                10,
+                leaseTtl,
+                Duration.ofMillis(200),
+                new InMemoryRateLimitStore()
+        );
+    }
+
+    private static RespTestServer startServer(int port) throws IOException {
+        RespTestServer server = new RespTestServer(port);
+        server.script(RedisRateLimitStore.GCRA_LEASE_SCRIPT, args -> gcraLease(server.values(), args));
+        return server;
+    }
+
+    /**
+     * Same steps as {@link RedisRateLimitStore#GCRA_LEASE_SCRIPT}
+     */
+    private static long gcraLease(Map<String, Long> values, String[] args) {
+        long now = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+        long interval = Long.parseLong(args[1]);
+        long tolerance = Long.parseLong(args[2]);
+        long tat = Math.max(values.getOrDefault(args[0], 0L), now);
+        long granted = Math.min(Long.parseLong(args[3]), Math.floorDiv(now + tolerance - tat, interval));
+        if (granted <= 0) {
+            return -Math.max(1, (tat + interval - tolerance - now + 999) / 1000);
+        }
+        values.put(args[0], tat + granted * interval);
+        return granted;
+    }
+
+    private static int acquire(RateLimitStore store, String key, RateLimitRule rule, int requests) {
+        int allowed = 0;
+        for (int i = 0; i < requests; i++) {
+            if (store.tryAcquire(key, rule)) {
+                allowed++;
+            }
+        }
+        return allowed;
+    }
+
+    private long sum(String keyPrefix) {
+        long sum = 0;
+        for (Map.Entry<String, Long> entry : server.values().entrySet()) {
+            if (entry.getKey().startsWith(keyPrefix)) {
+                sum += entry.getValue();
+            }
+        }
+        return sum;
+    }
+
+    private void awaitReturned(long permits) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (store.getReturnedPermitCount() < permits && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        assertEquals(permits, store.getReturnedPermitCount());
+    }
+}
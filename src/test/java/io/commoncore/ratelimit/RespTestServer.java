@@ -0,0 +1,211 @@
+package io.commoncore.ratelimit;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * In-process stand-in for a Redis server, speaking just enough RESP for
+ * {@link RedisRateLimitStore}: integer values, INCRBY, DECRBY, PEXPIRE and EVAL.
+ * EVAL runs a Java implementation registered for the script text.
+ */
+class RespTestServer implements AutoCloseable {
+
+    private final ServerSocket serverSocket;
+    private final Map<String, Long> values = new ConcurrentHashMap<>();
+    private final Map<String, Function<String[], Long>> scripts = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> commandCounts = new ConcurrentHashMap<>();
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private volatile long delayMillis;
+    private volatile boolean closed;
+
+    /**
+     * @param port port to listen on, 0 for any free port
+     */
+    RespTestServer(int port) throws IOException {
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        Thread acceptor = new Thread(this::accept, "resp-test-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Current value of a key, 0 if it is not set
+     */
+    long get(String key) {
+        return values.getOrDefault(key, 0L);
+    }
+
+    Set<String> keys() {
+        return values.keySet();
+    }
+
+    /**
+     * How often a command was received
+     */
+    int count(String command) {
+        AtomicInteger count = commandCounts.get(command);
+        return count != null ? count.get() : 0;
+    }
+
+    /**
+     * Most commands that were being handled at the same time
+     */
+    int getMaxInFlight() {
+        return maxInFlight.get();
+    }
+
+    /**
+     * Delay every command, to make round trips overlap
+     */
+    void setDelayMillis(long delayMillis) {
+        this.delayMillis = delayMillis;
+    }
+
+    /**
+     * Answer EVAL calls for the given script text; the function receives KEYS followed by ARGV
+     * and, like a script, runs atomically with respect to other commands
+     */
+    void script(String text, Function<String[], Long> script) {
+        scripts.put(text, script);
+    }
+
+    Map<String, Long> values() {
+        return values;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        for (Socket socket : connections) {
+            socket.close();
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.add(socket);
+                Thread thread = new Thread(() -> serve(socket), "resp-test-connection");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (socket) {
+            InputStream in = new BufferedInputStream(socket.getInputStream());
+            OutputStream out = new BufferedOutputStream(socket.getOutputStream());
+            String[] command;
+            // A connection accepted while closing is dropped like a refused one
+            while (!closed && (command = readCommand(in)) != null) {
+                out.write(handle(command).getBytes(StandardCharsets.UTF_8));
+                if (in.available() == 0) {
+                    // End of a pipeline
+                    out.flush();
+                }
+            }
+        } catch (IOException e) {
+            // Closed by the client or by close()
+        } finally {
+            connections.remove(socket);
+        }
+    }
+
+    private String handle(String[] command) {
+        String name = command[0].toUpperCase();
+        commandCounts.computeIfAbsent(name, n -> new AtomicInteger()).incrementAndGet();
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            if (delayMillis > 0) {
+                Thread.sleep(delayMillis);
+            }
+            synchronized (values) {
+                switch (name) {
+                    case "AUTH":
+                        return "+OK\r\n";
+                    case "PEXPIRE":
+                        return values.containsKey(command[1]) ? ":1\r\n" : ":0\r\n";
+                    case "INCRBY":
+                        return ":" + values.merge(command[1], Long.parseLong(command[2]), Long::sum) + "\r\n";
+                    case "DECRBY":
+                        return ":" + values.merge(command[1], -Long.parseLong(command[2]), Long::sum) + "\r\n";
+                    case "EVAL": {
+                        Function<String[], Long> script = scripts.get(command[1]);
+                        if (script == null) {
+                            return "-NOSCRIPT No matching script\r\n";
+                        }
+                        String[] args = new String[command.length - 3];
+                        System.arraycopy(command, 3, args, 0, args.length);
+                        return ":" + script.apply(args) + "\r\n";
+                    }
+                    default:
+                        return "-ERR unknown command '" + name + "'\r\n";
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return "-ERR interrupted\r\n";
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    private static String[] readCommand(InputStream in) throws IOException {
+        int type = in.read();
+        if (type == -1) {
+            return null;
+        }
+        if (type != '*') {
+            throw new IOException("Expected an array, got " + (char) type);
+        }
+        String[] command = new String[Integer.parseInt(readLine(in))];
+        for (int i = 0; i < command.length; i++) {
+            if (in.read() != '$') {
+                throw new IOException("Expected a bulk string");
+            }
+            byte[] bytes = in.readNBytes(Integer.parseInt(readLine(in)));
+            in.readNBytes(2);
+            command[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return command;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b == -1) {
+                throw new IOException("Connection closed");
+            }
+            line.append((char) b);
+        }
+        in.read();
+        return line.toString();
+    }
+}
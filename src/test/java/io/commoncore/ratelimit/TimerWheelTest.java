@@ -0,0 +1,106 @@
+package io.commoncore.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimerWheelTest {
+
+    @Test
+    void runsTasksAfterTheirDelay() throws InterruptedException {
+        try (TimerWheel wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 8)) {
+            CountDownLatch done = new CountDownLatch(3);
+            long start = System.nanoTime();
+            // Longer than one rotation of the wheel
+            wheel.schedule(done::countDown, 30, TimeUnit.MILLISECONDS);
+            wheel.schedule(done::countDown, 5, TimeUnit.MILLISECONDS);
+            wheel.schedule(done::countDown, 0, TimeUnit.MILLISECONDS);
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(30));
+            assertEquals(0, wheel.getPendingCount());
+        }
+    }
+
+    @Test
+    void failingTasksDoNotStopTheOthers() throws InterruptedException {
+        try (TimerWheel wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 8)) {
+            CountDownLatch done = new CountDownLatch(2);
+            wheel.schedule(() -> {
+                throw new IllegalStateException("boom");
+            }, 1, TimeUnit.MILLISECONDS);
+            wheel.schedule(() -> {
+                throw new AssertionError("boom");
+            }, 1, TimeUnit.MILLISECONDS);
+            wheel.schedule(done::countDown, 1, TimeUnit.MILLISECONDS);
+            wheel.schedule(done::countDown, 10, TimeUnit.MILLISECONDS);
+
+            assertTrue(done.await(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    void closeRunsPendingTasksAndRejectsNewOnes() {
+        AtomicInteger ran = new AtomicInteger();
+        TimerWheel wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 8);
+        for (int i = 0; i < 10; i++) {
+            wheel.schedule(ran::incrementAndGet, 1, TimeUnit.HOURS);
+        }
+        wheel.close();
+
+        assertEquals(10, ran.get());
+        assertEquals(0, wheel.getPendingCount());
+        assertThrows(IllegalStateException.class, () -> wheel.schedule(ran::incrementAndGet, 1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void everyTaskRunsOnceWhenScheduledWhileClosing() throws InterruptedException {
+        for (int round = 0; round < 50; round++) {
+            TimerWheel wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 8);
+            AtomicInteger ran = new AtomicInteger();
+            Thread scheduler = new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    try {
+                        wheel.schedule(ran::incrementAndGet, 1, TimeUnit.HOURS);
+                    } catch (IllegalStateException e) {
+                        ran.incrementAndGet();
+                    }
+                }
+            });
+            scheduler.start();
+            wheel.close();
+            scheduler.join();
+
+            assertEquals(1000, ran.get(), "no task is lost or run twice");
+            assertEquals(0, wheel.getPendingCount());
+        }
+    }
+
+    @Test
+    void closesWhenTheWorkerDies() throws InterruptedException {
+        try (TimerWheel wheel = new TimerWheel("test-wheel", 1, TimeUnit.MILLISECONDS, 8)) {
+            wheel.schedule(() -> {
+                throw new InternalError("simulated");
+            }, 0, TimeUnit.MILLISECONDS);
+
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            boolean rejected = false;
+            while (!rejected && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+                try {
+                    wheel.schedule(() -> {
+                    }, 1, TimeUnit.HOURS);
+                } catch (IllegalStateException e) {
+                    rejected = true;
+                }
+            }
+            assertTrue(rejected, "callers are told so they can run the task themselves");
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package io.commoncore.security;
+
+import io.commoncore.config.CommonCoreProperties;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ClientIpResolverTest {
+
+    private final ClientIpResolver resolver = new ClientIpResolver(new CommonCoreProperties());
+
+    @Test
+    void ignoresForwardingHeadersFromUntrustedPeers() {
+        MockHttpServletRequest request = request("203.0.113.9", "198.51.100.7");
+        request.addHeader("X-Real-IP", "198.51.100.8");
+
+        assertEquals(ClientAddress.parse("203.0.113.9"), resolver.resolve(request));
+    }
+
+    @Test
+    void ignoresSpoofedEntriesLeftOfTheFirstUntrustedHop() {
+        // The client sent "6.6.6.6, 7.7.7.7" itself, the load balancer appended its peer
+        assertEquals(ClientAddress.parse("198.51.100.7"),
+                resolver.resolve(request("10.0.0.1", "6.6.6.6, 7.7.7.7, 198.51.100.7, 10.0.0.2")));
+
+        for (int i = 0; i < 100; i++) {
+            String spoofed = "203.0.113." + i + ", 198.51.100.7";
+            assertEquals(ClientAddress.parse("198.51.100.7"), resolver.resolve(request("10.0.0.1", spoofed)));
+        }
+    }
+
+    @Test
+    void usesTheLeftmostHopWhenAllHopsAreTrusted() {
+        assertEquals(ClientAddress.parse("192.168.1.5"),
+                resolver.resolve(request("127.0.0.1", "192.168.1.5, 172.16.0.3, 10.0.0.2")));
+    }
+
+    @Test
+    void stopsAtTheLastGoodAddressBeforeGarbage() {
+        assertEquals(ClientAddress.parse("10.0.0.2"),
+                resolver.resolve(request("10.0.0.1", "198.51.100.7, unknown, 10.0.0.2")));
+        assertEquals(ClientAddress.parse("10.0.0.2"),
+                resolver.resolve(request("10.0.0.1", "198.51.100.7,, 10.0.0.2")));
+        assertEquals(ClientAddress.parse("10.0.0.1"), resolver.resolve(request("10.0.0.1", "garbage")));
+        assertEquals(ClientAddress.parse("10.0.0.1"), resolver.resolve(request("10.0.0.1", "1.2.3.4.5")));
+        assertEquals(ClientAddress.parse("10.0.0.1"), resolver.resolve(request("10.0.0.1", "256.0.0.1")));
+        assertEquals(ClientAddress.parse("10.0.0.1"), resolver.resolve(request("10.0.0.1", " , ")));
+    }
+
+    @Test
+    void resolvesIpv6AndIpv4MappedAddresses() {
+        assertEquals("2001:db8:0:0:0:0:0:1", resolver.resolve(request("::1", "2001:db8::1")).toString());
+        assertEquals("2001:db8:0:0:0:0:0:1", resolver.resolve(request("fd00::5", "2001:db8::1, fd00::6")).toString());
+        assertEquals("fe80:0:0:0:0:0:0:1", resolver.resolve(request("::1", "fe80::1%eth0")).toString());
+
+        // An IPv4 peer seen through a dual-stack socket is still a trusted IPv4 proxy
+        ClientAddress mapped = ClientAddress.parse("::ffff:10.0.0.1");
+        assertTrue(mapped.isIpv4());
+        assertEquals(ClientAddress.parse("10.0.0.1"), mapped);
+        assertEquals(ClientAddress.parse("198.51.100.7"), resolver.resolve(request("::ffff:10.0.0.1", "198.51.100.7")));
+        assertEquals(ClientAddress.parse("198.51.100.7"),
+                resolver.resolve(request("10.0.0.1", "::ffff:198.51.100.7, ::ffff:10.0.0.2")));
+    }
+
+    @Test
+    void stripsPortsFromHops() {
+        assertEquals(ClientAddress.parse("198.51.100.7"),
+                resolver.resolve(request("10.0.0.1", "198.51.100.7:53211, 10.0.0.2:8080")));
+        assertEquals(ClientAddress.parse("2001:db8::2"),
+                resolver.resolve(request("10.0.0.1", "198.51.100.7:53211, [2001:db8::2]:443")));
+        assertEquals(ClientAddress.parse("2001:db8::2"), resolver.resolve(request("10.0.0.1", "[2001:db8::2]")));
+    }
+
+    @Test
+    void fallsBackToXRealIp() {
+        MockHttpServletRequest request = request("10.0.0.1", null);
+        request.addHeader("X-Real-IP", "198.51.100.7");
+        assertEquals(ClientAddress.parse("198.51.100.7"), resolver.resolve(request));
+
+        MockHttpServletRequest garbage = request("10.0.0.1", null);
+        garbage.addHeader("X-Real-IP", "unknown");
+        assertEquals(ClientAddress.parse("10.0.0.1"), resolver.resolve(garbage));
+
+        assertEquals(ClientAddress.parse("10.0.0.1"), resolver.resolve(request("10.0.0.1", null)));
+    }
+
+    @Test
+    void cachesTheAddressAsARequestAttribute() {
+        MockHttpServletRequest request = request("10.0.0.1", "198.51.100.7");
+        ClientAddress first = resolver.resolve(request);
+
+        assertSame(first, request.getAttribute(ClientIpResolver.ATTRIBUTE));
+        request.addHeader("X-Forwarded-For", "203.0.113.1");
+        request.setRemoteAddr("203.0.113.2");
+        assertSame(first, resolver.resolve(request));
+
+        MockHttpServletRequest preset = request("10.0.0.1", "198.51.100.7");
+        ClientAddress address = ClientAddress.parse("192.0.2.1");
+        preset.setAttribute(ClientIpResolver.ATTRIBUTE, address);
+        assertSame(address, resolver.resolve(preset));
+    }
+
+    @Test
+    void returnsNullForPeersThatAreNotIpLiterals() {
+        MockHttpServletRequest request = request("unix:/var/run/app.sock", "198.51.100.7");
+
+        assertNull(resolver.resolve(request));
+        assertNull(request.getAttribute(ClientIpResolver.ATTRIBUTE));
+        assertEquals("unix:/var/run/app.sock", resolver.resolveText(request));
+    }
+
+    @Test
+    void honoursConfiguredProxiesAndHeader() {
+        CommonCoreProperties properties = new CommonCoreProperties();
+        properties.getClientIp().setTrustedProxies(List.of(" 203.0.113.0/24 ", "2001:db8:1::/48"));
+        properties.getClientIp().setForwardedHeader("X-Client-Chain");
+        ClientIpResolver custom = new ClientIpResolver(properties);
+
+        MockHttpServletRequest request = request("203.0.113.200", null);
+        request.addHeader("X-Client-Chain", "198.51.100.7, 2001:db8:1:ffff::1");
+        assertEquals(ClientAddress.parse("198.51.100.7"), custom.resolve(request));
+        // Private networks are no longer trusted
+        assertEquals(ClientAddress.parse("10.0.0.1"), custom.resolve(request("10.0.0.1", "198.51.100.7")));
+    }
+
+    @Test
+    void matchesCidrs() {
+        ClientAddress network = ClientAddress.parseCidr("172.16.0.0/12");
+        assertTrue(ClientAddress.parse("172.16.0.0").isIn(network));
+        assertTrue(ClientAddress.parse("172.31.255.255").isIn(network));
+        assertFalse(ClientAddress.parse("172.32.0.0").isIn(network));
+        assertFalse(ClientAddress.parse("172.15.255.255").isIn(network));
+
+        ClientAddress uniqueLocal = ClientAddress.parseCidr("fc00::/7");
+        assertTrue(ClientAddress.parse("fd12:3456::1").isIn(uniqueLocal));
+        assertFalse(ClientAddress.parse("fe80::1").isIn(uniqueLocal));
+        // IPv4 networks only contain IPv4 addresses
+        assertFalse(ClientAddress.parse("::1").isIn(ClientAddress.parseCidr("0.0.0.0/0")));
+        assertTrue(ClientAddress.parse("198.51.100.7").isIn(ClientAddress.parseCidr("0.0.0.0/0")));
+
+        ClientAddress host = ClientAddress.parseCidr("192.0.2.1");
+        assertTrue(ClientAddress.parse("192.0.2.1").isIn(host));
+        assertFalse(ClientAddress.parse("192.0.2.2").isIn(host));
+
+        assertThrows(IllegalArgumentException.class, () -> ClientAddress.parseCidr("10.0.0.0/33"));
+        assertThrows(IllegalArgumentException.class, () -> ClientAddress.parseCidr("::/129"));
+        assertThrows(IllegalArgumentException.class, () -> ClientAddress.parseCidr("10.0.0.0/x"));
+        assertThrows(IllegalArgumentException.class, () -> ClientAddress.parseCidr("localhost"));
+    }
+
+    @Test
+    void masksAddressesToTheirNetwork() {
+        ClientAddress address = ClientAddress.parse("203.0.113.57");
+        ClientAddress masked = address.mask(24);
+
+        assertEquals("203.0.113.0/24", masked.toString());
+        assertEquals(24, masked.getPrefixLength());
+        assertTrue(address.isIn(masked));
+        assertEquals(masked, ClientAddress.parse("203.0.113.1").mask(24));
+        assertSame(address, address.mask(32));
+
+        ClientAddress ipv6 = ClientAddress.parse("2001:db8:aaaa:bbbb:cccc::1").mask(64);
+        assertEquals("2001:db8:aaaa:bbbb:0:0:0:0/64", ipv6.toString());
+        assertEquals(64, ipv6.getPrefixLength());
+        assertEquals(ClientAddress.parseCidr("2001:db8:aaaa:bbbb::/64"), ipv6);
+    }
+
+    @Test
+    void roundTripsKeys() {
+        for (String value : new String[]{"0.0.0.0", "198.51.100.7", "255.255.255.255", "::", "::1",
+                "2001:db8::1", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff"}) {
+            ClientAddress address = ClientAddress.parse(value);
+            String key = address.toKey();
+            assertEquals(address.isIpv4() ? 5 : 17, key.length());
+            assertTrue(key.chars().allMatch(c -> c <= 0xFF), "Latin-1 only");
+            assertEquals(address, ClientAddress.fromKey(key, 0));
+            assertEquals(address, ClientAddress.fromKey("ip:" + key, 3));
+        }
+
+        ClientAddress network = ClientAddress.parse("203.0.113.57").mask(24);
+        assertEquals(4, network.toKey().length());
+        assertEquals(network, ClientAddress.fromKey(network.toKey(), 0));
+        ClientAddress ipv6Network = ClientAddress.parse("2001:db8::1").mask(48);
+        assertEquals(7, ipv6Network.toKey().length());
+        assertEquals(ipv6Network, ClientAddress.fromKey(ipv6Network.toKey(), 0));
+
+        // Prefixes that are not whole bytes come back rounded up to the next byte
+        ClientAddress odd = ClientAddress.parse("203.0.113.57").mask(20);
+        assertEquals(ClientAddress.parse("203.0.112.0").mask(24), ClientAddress.fromKey(odd.toKey(), 0));
+
+        assertNull(ClientAddress.fromKey("", 0));
+        assertNull(ClientAddress.fromKey("4\u0001\u0002\u0003\u0004\u0005", 0));
+        assertNull(ClientAddress.fromKey("x\u0001", 0));
+        assertNull(ClientAddress.fromKey("4\u0100", 0));
+    }
+
+    private static MockHttpServletRequest request(String remoteAddr, String forwardedFor) {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/orders");
+        request.setRemoteAddr(remoteAddr);
+        if (forwardedFor != null) {
+            request.addHeader("X-Forwarded-For", forwardedFor);
+        }
+        return request;
+    }
+}
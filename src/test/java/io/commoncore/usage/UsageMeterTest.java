@@ -0,0 +1,85 @@
+package io.commoncore.usage;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class UsageMeterTest {
+
+    private final List<UsageDelta> written = new ArrayList<>();
+    private final AtomicBoolean failing = new AtomicBoolean();
+    private final UsageMeter usageMeter = new UsageMeter(deltas -> {
+        if (failing.get()) {
+            throw new IllegalStateException("database down");
+        }
+        written.addAll(deltas);
+    }, 3600, 0);
+
+    @AfterEach
+    void tearDown() {
+        failing.set(false);
+        usageMeter.close();
+    }
+
+    @Test
+    void writesOneRowPerClientAndRoute() {
+        usageMeter.record("user:alice", "GET /orders", 10, 100);
+        usageMeter.record("user:alice", "GET /orders", 20, 200);
+        usageMeter.record("user:alice", "POST /orders", 5, 0);
+        usageMeter.record("user:bob", "GET /orders", 0, 50);
+        usageMeter.flush();
+
+        assertEquals(3, usageMeter.getTrackedCount());
+        assertEquals(3, written.size());
+        UsageDelta alice = find("user:alice", "GET /orders");
+        assertEquals(2, alice.getRequestCount());
+        assertEquals(30, alice.getRequestBytes());
+        assertEquals(300, alice.getResponseBytes());
+        assertEquals(1, find("user:bob", "GET /orders").getRequestCount());
+    }
+
+    @Test
+    void failedFlushIsCarriedOverIntoTheNextOne() {
+        usageMeter.record("user:alice", "GET /orders", 10, 100);
+        usageMeter.record("user:alice", "GET /orders", 10, 100);
+        failing.set(true);
+        usageMeter.flush();
+
+        assertEquals(1, usageMeter.getFlushFailureCount());
+        assertTrue(written.isEmpty());
+
+        usageMeter.record("user:alice", "GET /orders", 5, 50);
+        failing.set(false);
+        usageMeter.flush();
+
+        assertEquals(1, written.size(), "the failed delta and the new requests go out as one row");
+        UsageDelta delta = written.get(0);
+        assertEquals(3, delta.getRequestCount());
+        assertEquals(25, delta.getRequestBytes());
+        assertEquals(250, delta.getResponseBytes());
+
+        written.clear();
+        usageMeter.flush();
+        assertTrue(written.isEmpty(), "written usage is not written again");
+
+        usageMeter.record("user:alice", "GET /orders", 1, 1);
+        usageMeter.flush();
+        assertEquals(1, written.size());
+        assertEquals(1, written.get(0).getRequestCount(), "only what was counted since the last write");
+    }
+
+    private UsageDelta find(String clientKey, String route) {
+        for (UsageDelta delta : written) {
+            if (delta.getId().getClientKey().equals(clientKey) && delta.getId().getRoute().equals(route)) {
+                return delta;
+            }
+        }
+        throw new AssertionError("no row for " + clientKey + " " + route);
+    }
+}